@@ -0,0 +1,160 @@
+package shortener.database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+
+/**
+ * `Database` operations over the alias table stored by each storage engine, so the engines can
+ * be compared head-to-head. The `lsm` engine is the file engine storing aliases in LSM trees.
+ *
+ * <p>Every engine has to pass `StorageEngineConformanceTest` first, the benchmark only compares
+ * their speed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StorageEngineBenchmark {
+
+  private static final String ROOT_DIRECTORY = "engine-benchmark-db";
+  private static final Path ROOT_PATH = Path.of(ROOT_DIRECTORY);
+  private static final int ALIASES_PER_USER = 10;
+
+  @Param({"100000"})
+  private int aliasCount;
+
+  @Param({"file", "lsm", "memory"})
+  private String engine;
+
+  @Param({"os-buffered"})
+  private String durability;
+
+  private Database db;
+  private int lookup;
+  private long created;
+
+
+  /**
+   * Fills the alias table of a fresh database stored by the engine.
+   */
+  @Setup
+  public void fill() {
+    purge();
+
+    try {
+      Database.init(ROOT_DIRECTORY);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(ROOT_DIRECTORY);
+    configuration.setDurability(durability);
+    if (engine.equals("lsm")) {
+      configuration.setLsmTables(List.of(AliasTable.TABLE_NAME));
+    } else {
+      configuration.setEngine(engine);
+    }
+
+    db = new Database(configuration);
+    for (int i = 0; i < aliasCount; i++) {
+      db.create(db.aliasTable, new Alias("alias-" + i, "https://example.com/articles/" + i,
+          (long) i / ALIASES_PER_USER));
+    }
+  }
+
+  /**
+   * Closes the database and removes its files.
+   */
+  @TearDown
+  public void purge() {
+    if (db != null) {
+      db.close();
+      db = null;
+    }
+
+    try (Stream<Path> paths = Files.walk(ROOT_PATH)) {
+      for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(path);
+      }
+    } catch (NoSuchFileException exc) {
+      // Nothing to remove before the first setup
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+  }
+
+
+  /**
+   * Looks an alias up the way a redirect does.
+   *
+   * @return Found record.
+   */
+  @Benchmark
+  public Alias get() {
+    lookup = (lookup + 1) % aliasCount;
+
+    return db.get(db.aliasTable, "alias-" + lookup);
+  }
+
+  /**
+   * Checks an absent alias the way a collision check of a generated alias does.
+   *
+   * @return False.
+   */
+  @Benchmark
+  public boolean existsAbsent() {
+    lookup = (lookup + 1) % aliasCount;
+
+    return db.exists(db.aliasTable, "absent-" + lookup);
+  }
+
+  /**
+   * Searches aliases of a user.
+   *
+   * @return Found records.
+   */
+  @Benchmark
+  public List<Alias> searchByUserId() {
+    lookup = (lookup + 1) % aliasCount;
+
+    return db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, (long) lookup / ALIASES_PER_USER);
+  }
+
+  /**
+   * Creates an alias and deletes it right away, so the table size stays the same.
+   *
+   * @return Deleted record.
+   */
+  @Benchmark
+  public Alias createAndDelete() {
+    String alias = "created-" + created++;
+
+    db.create(db.aliasTable, new Alias(alias, "https://example.com/created", 0L));
+
+    return db.delete(db.aliasTable, alias);
+  }
+}
@@ -0,0 +1,222 @@
+package shortener.database.tables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import shortener.database.entities.Alias;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.UrlPrefixDictionary;
+
+/**
+ * Memory taken by an alias in the in-memory indexes of the alias table, and the cost of the
+ * redirect lookup and of the search of aliases of a user with it.
+ *
+ * <p>The `heap` layout is the one of tables without their own record maps: `Alias` records in a
+ * `ConcurrentHashMap` and user postings in concurrent hash sets. The `columnar` layout is the
+ * one of `AliasTable`. Bytes per alias are reported as the `bytesPerAlias` secondary result and
+ * include both the heap and the direct memory.
+ *
+ * <p>Table file entries are written along, with URLs in full for the `heap` layout and after
+ * their dictionary prefixes for the `columnar` one. Their bytes per alias are reported as the
+ * `diskBytesPerAlias` secondary result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xmx4g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AliasFootprintBenchmark {
+
+  private static final int ALIASES_PER_USER = 10;
+  private static final long SEED = 42;
+  private static final Path ROOT_PATH = Path.of("benchmark-db");
+
+  @Param({"1000000"})
+  private int aliasCount;
+
+  @Param({"heap", "columnar"})
+  private String layout;
+
+  private Map<String, Alias> records;
+  private Map<Long, Set<String>> postings;
+  private long bytesPerAlias;
+  private long diskBytesPerAlias;
+  private String[] lookedUpAliases;
+  private int lookup;
+
+
+  /**
+   * Fills the indexes of the layout and measures the memory they take.
+   */
+  @Setup
+  public void fill() {
+    try {
+      Files.createDirectories(ROOT_PATH);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+
+    AliasTable table = new AliasTable(ROOT_PATH);
+    long diskBytes = 0;
+    long usedBefore = usedMemory();
+
+    if (layout.equals("heap")) {
+      records = new ConcurrentHashMap<>();
+    } else {
+      records = table.createRecordMap(Map.of());
+    }
+    postings = new ConcurrentHashMap<>();
+
+    Random random = new Random(SEED);
+    for (int i = 0; i < aliasCount; i++) {
+      Alias record = new Alias(randomAlias(random), "https://example.com/articles/" + i,
+          (long) i / ALIASES_PER_USER);
+
+      // Prefixes are learned by table file writes, which precede index updates
+      diskBytes += encode(table, record).length;
+      records.put(record.alias(), record);
+      postings.computeIfAbsent(record.userId(), userId -> layout.equals("heap")
+          ? ConcurrentHashMap.newKeySet()
+          : table.createPrimaryKeySet()).add(record.alias());
+    }
+
+    bytesPerAlias = (usedMemory() - usedBefore) / aliasCount;
+    diskBytesPerAlias = diskBytes / aliasCount;
+
+    // Looked up aliases are separate strings, so they are not counted as keys of the heap layout
+    random = new Random(SEED);
+    lookedUpAliases = new String[aliasCount];
+    for (int i = 0; i < aliasCount; i++) {
+      lookedUpAliases[i] = randomAlias(random);
+    }
+  }
+
+
+  /**
+   * Removes the URL prefix dictionary written by the setup.
+   */
+  @TearDown
+  public void purge() {
+    try {
+      Files.deleteIfExists(
+          ROOT_PATH.resolve(AliasTable.TABLE_NAME + UrlPrefixDictionary.FILE_SUFFIX));
+      Files.deleteIfExists(ROOT_PATH);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+  }
+
+
+  /**
+   * Looks an alias up the way a redirect does.
+   *
+   * @param footprint Counters to report bytes per alias with.
+   * @return Found record.
+   */
+  @Benchmark
+  public Alias redirect(Footprint footprint) {
+    footprint.bytesPerAlias = bytesPerAlias;
+    footprint.diskBytesPerAlias = diskBytesPerAlias;
+
+    lookup = (lookup + 1) % aliasCount;
+
+    return records.get(lookedUpAliases[lookup]);
+  }
+
+  /**
+   * Walks the postings of a user the way a search of aliases of a user does.
+   *
+   * @param footprint Counters to report bytes per alias with.
+   * @return Amount of found records.
+   */
+  @Benchmark
+  public int searchByUserId(Footprint footprint) {
+    footprint.bytesPerAlias = bytesPerAlias;
+    footprint.diskBytesPerAlias = diskBytesPerAlias;
+
+    int found = 0;
+    lookup = (lookup + 1) % aliasCount;
+    long userId = lookup / ALIASES_PER_USER;
+
+    for (String alias : postings.get(userId)) {
+      found += records.get(alias) != null ? 1 : 0;
+    }
+
+    return found;
+  }
+
+
+  private byte[] encode(AliasTable table, Alias record) {
+    RecordWriter writer = new RecordWriter();
+
+    if (layout.equals("heap")) {
+      writer.writeString(record.alias());
+      writer.writeString(record.url());
+      writer.writeLong(record.userId());
+    } else {
+      table.encode(record, writer);
+    }
+
+    // Entries are dropped right away, so their buffers are not counted as memory
+    return writer.toEntry(false);
+  }
+
+  private static String randomAlias(Random random) {
+    String digits = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    char[] alias = new char[Alias.ALIAS_LENGTH_DEFAULT];
+
+    for (int i = 0; i < alias.length; i++) {
+      alias[i] = digits.charAt(random.nextInt(digits.length()));
+    }
+
+    return new String(alias);
+  }
+
+  private static long usedMemory() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    Runtime runtime = Runtime.getRuntime();
+    long directMemory = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+        .filter(pool -> pool.getName().equals("direct"))
+        .mapToLong(BufferPoolMXBean::getMemoryUsed)
+        .sum();
+
+    return runtime.totalMemory() - runtime.freeMemory() + directMemory;
+  }
+
+
+  /**
+   * Secondary results of the benchmark.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+
+    public long bytesPerAlias;
+    public long diskBytesPerAlias;
+  }
+}
@@ -0,0 +1,115 @@
+package shortener.cache;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Cache configuration, bound to the `cache` section of `application.yml`.
+ */
+@ConfigurationProperties("cache")
+public class CacheConfiguration {
+
+  private Duration ttl = Duration.ofHours(1);
+  private int maxEntries = 100_000;
+  private int busPort = 0;
+  private List<String> peers = List.of();
+  private Duration batchInterval = Duration.ofMillis(5);
+  private Duration heartbeatInterval = Duration.ofSeconds(1);
+
+
+  /**
+   * Creates a configuration of caches invalidated across instances over the provided port.
+   *
+   * @param busPort Port the invalidations of the other instances are received on.
+   * @param peers   `host:port` bus addresses of the other instances.
+   * @return Cache configuration.
+   */
+  public static CacheConfiguration of(int busPort, List<String> peers) {
+    CacheConfiguration configuration = new CacheConfiguration();
+    configuration.setBusPort(busPort);
+    configuration.setPeers(peers);
+
+    return configuration;
+  }
+
+
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  public void setTtl(Duration ttl) {
+    this.ttl = ttl;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public void setMaxEntries(int maxEntries) {
+    this.maxEntries = maxEntries;
+  }
+
+  public int getBusPort() {
+    return busPort;
+  }
+
+  public void setBusPort(int busPort) {
+    this.busPort = busPort;
+  }
+
+  public List<String> getPeers() {
+    return peers;
+  }
+
+  public void setPeers(List<String> peers) {
+    this.peers = peers;
+  }
+
+  public Duration getBatchInterval() {
+    return batchInterval;
+  }
+
+  public void setBatchInterval(Duration batchInterval) {
+    this.batchInterval = batchInterval;
+  }
+
+  public Duration getHeartbeatInterval() {
+    return heartbeatInterval;
+  }
+
+  public void setHeartbeatInterval(Duration heartbeatInterval) {
+    this.heartbeatInterval = heartbeatInterval;
+  }
+
+  /**
+   * Checks if invalidations are exchanged with other instances.
+   *
+   * @return True if the bus port is configured.
+   */
+  public boolean isBusEnabled() {
+    return busPort > 0;
+  }
+
+  /**
+   * Returns the bus addresses of the other instances.
+   *
+   * @return Peer addresses.
+   * @throws IllegalArgumentException Thrown if a peer is not of the `host:port` form.
+   */
+  public List<InetSocketAddress> getPeerAddresses() {
+    return peers.stream().map(peer -> {
+      int separator = peer.lastIndexOf(':');
+
+      if (separator <= 0 || !peer.substring(separator + 1).matches("\\d{1,5}")) {
+        throw new IllegalArgumentException(
+            String.format("Cache peer %s should be of the host:port form.", peer));
+      }
+
+      return new InetSocketAddress(peer.substring(0, separator),
+          Integer.parseInt(peer.substring(separator + 1)));
+    }).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,378 @@
+package shortener.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bus invalidating cache entries on all instances once a record is changed on one of them.
+ *
+ * <p>Invalidations are sent to `cache.peers` as UDP datagrams. Invalidations published within
+ * `cache.batch-interval` are sent as a single batch, in which duplicates are coalesced. Every
+ * batch carries the id of the sending instance, picked on every start, and its sequence number,
+ * and an idle instance sends a heartbeat with the latest sequence number every
+ * `cache.heartbeat-interval`. A receiver which finds a gap in the sequence numbers of a sender
+ * has lost invalidations, so it drops all its cache entries. Entries are thus stale for about the
+ * batch interval at most, or for the heartbeat interval once a datagram is lost, regardless of
+ * `cache.ttl`.
+ *
+ * <p>Without `cache.bus-port`, the instance only invalidates its own caches.
+ */
+@Singleton
+public class InvalidationBus implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(InvalidationBus.class);
+
+  // Fits the loopback MTU, so a datagram is never fragmented on a single host
+  static final int MAX_DATAGRAM_LENGTH = 16 * 1024;
+  // Sender id, sequence number and amount of invalidations
+  private static final int HEADER_LENGTH = Long.BYTES + Long.BYTES + Integer.BYTES;
+
+  private final Duration ttl;
+  private final int maxEntries;
+  private final Duration batchInterval;
+  private final Duration heartbeatInterval;
+  private final List<InetSocketAddress> peers;
+  private final DatagramSocket socket;
+  private final long senderId = ThreadLocalRandom.current().nextLong();
+  private final Map<String, LocalCache<?>> caches = new ConcurrentHashMap<>();
+
+  // Guarded by the bus
+  private Set<Invalidation> pending = new LinkedHashSet<>();
+  private boolean closed;
+  // Accessed by the sender thread only
+  private long sequence;
+  // Accessed by the receiver thread only
+  private final Map<Long, Long> receivedSequences = new HashMap<>();
+
+  private final LongAdder published = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder sentBatches = new LongAdder();
+  private final LongAdder receivedBatches = new LongAdder();
+  private final LongAdder resyncs = new LongAdder();
+
+
+  /**
+   * Constructs a bus and starts exchanging invalidations with the peers, if configured.
+   *
+   * @param configuration Cache configuration.
+   */
+  @Inject
+  public InvalidationBus(CacheConfiguration configuration) {
+    ttl = configuration.getTtl();
+    maxEntries = configuration.getMaxEntries();
+    batchInterval = configuration.getBatchInterval();
+    heartbeatInterval = configuration.getHeartbeatInterval();
+    peers = configuration.getPeerAddresses();
+
+    if (!configuration.isBusEnabled()) {
+      socket = null;
+      return;
+    }
+
+    try {
+      socket = new DatagramSocket(configuration.getBusPort());
+    } catch (SocketException exc) {
+      throw new RuntimeException("Invalidation bus initialization failure.", exc);
+    }
+
+    Thread sender = new Thread(this::send, "invalidation-sender");
+    sender.setDaemon(true);
+    sender.start();
+
+    Thread receiver = new Thread(this::receive, "invalidation-receiver");
+    receiver.setDaemon(true);
+    receiver.start();
+  }
+
+
+  /**
+   * Creates a cache whose entries are invalidated through the bus.
+   *
+   * @param name      Cache name, the same on all instances.
+   * @param <ValueT>  Type of the cached records.
+   * @return Empty cache.
+   * @throws IllegalArgumentException Thrown if there is a cache of the name already.
+   */
+  public <ValueT> LocalCache<ValueT> createCache(String name) {
+    LocalCache<ValueT> cache = new LocalCache<>(name, ttl, maxEntries);
+
+    if (caches.putIfAbsent(name, cache) != null) {
+      throw new IllegalArgumentException(String.format("There is a cache %s already.", name));
+    }
+
+    return cache;
+  }
+
+  /**
+   * Drops the entry of the key from the cache on this instance right away, and on the other
+   * instances once the batch is sent.
+   *
+   * @param cache Cache created by the bus.
+   * @param key   Key of the changed record.
+   */
+  public void invalidate(LocalCache<?> cache, String key) {
+    cache.invalidate(key);
+    published.increment();
+
+    if (socket == null) {
+      return;
+    }
+
+    synchronized (this) {
+      if (!pending.add(new Invalidation(cache.getName(), key))) {
+        coalesced.increment();
+      } else if (pending.size() == 1) {
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Returns the traffic of the bus.
+   *
+   * @return Bus stats.
+   */
+  public InvalidationBusStats getStats() {
+    return new InvalidationBusStats(published.sum(), coalesced.sum(), sentBatches.sum(),
+        receivedBatches.sum(), resyncs.sum());
+  }
+
+  /**
+   * Stops exchanging invalidations on shutdown, sending the pending ones first.
+   */
+  @Override
+  @PreDestroy
+  public void close() {
+    if (socket == null) {
+      return;
+    }
+
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+  }
+
+
+  private void send() {
+    long lastSentAt = System.nanoTime();
+
+    while (true) {
+      Set<Invalidation> batch;
+      boolean closing;
+
+      try {
+        synchronized (this) {
+          while (pending.isEmpty() && !closed) {
+            long waitMillis =
+                heartbeatInterval.toMillis() - (System.nanoTime() - lastSentAt) / 1_000_000;
+            if (waitMillis <= 0) {
+              break;
+            }
+
+            wait(waitMillis);
+          }
+          closing = closed;
+        }
+
+        // Invalidations published meanwhile join the batch
+        if (!closing) {
+          Thread.sleep(batchInterval.toMillis());
+        }
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      synchronized (this) {
+        batch = pending;
+        pending = new LinkedHashSet<>();
+        closing = closed;
+      }
+
+      try {
+        if (batch.isEmpty()) {
+          if (!closing) {
+            sendDatagram(encode(senderId, sequence, List.of()));
+          }
+        } else {
+          for (List<Invalidation> invalidations : split(batch)) {
+            sendDatagram(encode(senderId, ++sequence, invalidations));
+            sentBatches.increment();
+          }
+        }
+      } catch (IOException exc) {
+        // Receivers detect the gap in the sequence numbers
+        logger.warn("Failed to send invalidations: {}", exc.getMessage());
+      }
+      lastSentAt = System.nanoTime();
+
+      if (closing) {
+        socket.close();
+        return;
+      }
+    }
+  }
+
+  private void sendDatagram(byte[] datagram) throws IOException {
+    for (InetSocketAddress peer : peers) {
+      socket.send(new DatagramPacket(datagram, datagram.length, peer));
+    }
+  }
+
+  private void receive() {
+    byte[] buffer = new byte[MAX_DATAGRAM_LENGTH];
+
+    while (!socket.isClosed()) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+
+      try {
+        socket.receive(packet);
+        apply(new DataInputStream(
+            new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength())));
+      } catch (IOException exc) {
+        if (!socket.isClosed()) {
+          logger.warn("Dropped a malformed invalidation datagram from {}: {}",
+              packet.getSocketAddress(), exc.getMessage());
+        }
+      }
+    }
+  }
+
+  private void apply(DataInputStream in) throws IOException {
+    long sender = in.readLong();
+    long batchSequence = in.readLong();
+    int count = in.readInt();
+
+    // The first batch of a sender is 1, and it sends heartbeats of 0 until then
+    Long lastSequence = receivedSequences.get(sender);
+    long expectedSequence = lastSequence == null ? 1 : lastSequence + 1;
+
+    if (count == 0) {
+      // A heartbeat carries the latest sent sequence number
+      if (batchSequence >= expectedSequence) {
+        resync(sender);
+        receivedSequences.put(sender, batchSequence);
+      }
+      return;
+    }
+
+    if (batchSequence < expectedSequence) {
+      // Duplicated, or reordered behind a batch which caused a resync
+      return;
+    }
+
+    receivedSequences.put(sender, batchSequence);
+    receivedBatches.increment();
+    if (batchSequence > expectedSequence) {
+      resync(sender);
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      LocalCache<?> cache = caches.get(in.readUTF());
+      String key = in.readUTF();
+
+      if (cache != null) {
+        cache.invalidate(key);
+      }
+    }
+  }
+
+  private void resync(long sender) {
+    logger.info("Lost invalidations of instance {}, dropping all cache entries.", sender);
+    resyncs.increment();
+
+    for (LocalCache<?> cache : caches.values()) {
+      cache.invalidateAll();
+    }
+  }
+
+  // Splits invalidations into datagrams of at most `MAX_DATAGRAM_LENGTH` bytes
+  private static List<List<Invalidation>> split(Set<Invalidation> batch) {
+    List<List<Invalidation>> datagrams = new ArrayList<>();
+    List<Invalidation> datagram = new ArrayList<>();
+    int length = HEADER_LENGTH;
+
+    for (Invalidation invalidation : batch) {
+      int invalidationLength = invalidation.length();
+
+      if (!datagram.isEmpty() && length + invalidationLength > MAX_DATAGRAM_LENGTH) {
+        datagrams.add(datagram);
+        datagram = new ArrayList<>();
+        length = HEADER_LENGTH;
+      }
+
+      datagram.add(invalidation);
+      length += invalidationLength;
+    }
+    datagrams.add(datagram);
+
+    return datagrams;
+  }
+
+  static byte[] encode(long senderId, long sequence, List<Invalidation> invalidations)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_LENGTH);
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeLong(senderId);
+    out.writeLong(sequence);
+    out.writeInt(invalidations.size());
+    for (Invalidation invalidation : invalidations) {
+      out.writeUTF(invalidation.cache());
+      out.writeUTF(invalidation.key());
+    }
+
+    return bytes.toByteArray();
+  }
+
+
+  /**
+   * Invalidation of a cache entry.
+   *
+   * @param cache Cache name.
+   * @param key   Key of the changed record.
+   */
+  record Invalidation(String cache, String key) {
+
+    private int length() {
+      return utfLength(cache) + utfLength(key);
+    }
+
+    // Length of the string written by `DataOutput.writeUTF`
+    private static int utfLength(String string) {
+      int length = 2;
+
+      for (int i = 0; i < string.length(); i++) {
+        char c = string.charAt(i);
+        length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+      }
+
+      return length;
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package shortener.cache;
+
+/**
+ * Traffic of an invalidation bus.
+ *
+ * @param published       Amount of invalidations published by the instance.
+ * @param coalesced       Amount of published invalidations dropped as duplicates of pending ones.
+ * @param sentBatches     Amount of batches sent to each peer, heartbeats excluded.
+ * @param receivedBatches Amount of batches received from the peers, heartbeats excluded.
+ * @param resyncs         Amount of times all caches were dropped since invalidations were lost.
+ */
+public record InvalidationBusStats(long published, long coalesced, long sentBatches,
+                                   long receivedBatches, long resyncs) {
+}
@@ -0,0 +1,130 @@
+package shortener.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache of records by their string keys, which expire after a time-to-live.
+ *
+ * <p>Records loaded while any key of the cache is being invalidated are not cached, so a load
+ * racing with an invalidation never brings the stale record back. Absent records are not cached
+ * at all. Once the cache is full, expired entries are dropped, and then arbitrary ones.
+ *
+ * @param <ValueT> Type of the cached records.
+ */
+public class LocalCache<ValueT> {
+
+  // Share of the entries dropped at once from a full cache
+  private static final double EVICTED_SHARE = 0.1;
+
+  private final String name;
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final Map<String, Entry<ValueT>> entries = new ConcurrentHashMap<>();
+  private final AtomicLong invalidations = new AtomicLong();
+
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param name       Cache name, which invalidations refer to.
+   * @param ttl        Time an entry is served for, zero disables caching.
+   * @param maxEntries Amount of entries the cache holds at most.
+   */
+  public LocalCache(String name, Duration ttl, int maxEntries) {
+    this.name = name;
+    this.ttlNanos = ttl.toNanos();
+    this.maxEntries = maxEntries;
+  }
+
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the cached record of the key, loading and caching it if it's absent or expired.
+   *
+   * @param key    Record key.
+   * @param loader Function loading the record, whose exceptions are passed through.
+   * @return Record of the key.
+   */
+  public ValueT get(String key, Function<String, ValueT> loader) {
+    if (ttlNanos <= 0) {
+      return loader.apply(key);
+    }
+
+    long now = System.nanoTime();
+    Entry<ValueT> entry = entries.get(key);
+    if (entry != null && entry.expiresAt() - now > 0) {
+      return entry.value();
+    }
+
+    long invalidationsBeforeLoad = invalidations.get();
+    ValueT value = loader.apply(key);
+
+    if (value != null) {
+      if (entries.size() >= maxEntries) {
+        evict(now);
+      }
+
+      Entry<ValueT> loaded = new Entry<>(value, now + ttlNanos);
+      entries.put(key, loaded);
+
+      // An invalidation during the load might have missed the entry
+      if (invalidations.get() != invalidationsBeforeLoad) {
+        entries.remove(key, loaded);
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * Drops the entry of the key.
+   *
+   * @param key Record key.
+   */
+  public void invalidate(String key) {
+    invalidations.incrementAndGet();
+    entries.remove(key);
+  }
+
+  /**
+   * Drops all the entries.
+   */
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+
+  private void evict(long now) {
+    entries.values().removeIf(entry -> entry.expiresAt() - now <= 0);
+
+    if (entries.size() < maxEntries) {
+      return;
+    }
+
+    // A share of the entries is dropped, so a full cache isn't swept on every load
+    long excess = entries.size() - (long) (maxEntries * (1 - EVICTED_SHARE));
+    Iterator<String> keys = entries.keySet().iterator();
+    while (excess > 0 && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+      excess--;
+    }
+  }
+
+
+  private record Entry<ValueT>(ValueT value, long expiresAt) {
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Caches - local caches of records in front of the repositories, invalidated across instances.
+ */
+package shortener.cache;
@@ -0,0 +1,84 @@
+package shortener.cluster;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.util.List;
+
+/**
+ * Cluster configuration, bound to the `cluster` section of `application.yml`.
+ */
+@ConfigurationProperties("cluster")
+public class ClusterConfiguration {
+
+  private int port = 0;
+  private String address = "";
+  private List<String> seeds = List.of();
+  private int virtualNodes = HashRing.VIRTUAL_NODES_DEFAULT;
+
+
+  /**
+   * Creates a configuration of a cluster node listening on the provided port of the local host.
+   *
+   * @param port  Port other nodes connect to.
+   * @param seeds Addresses of the nodes to join the cluster through, none to start one.
+   * @return Cluster configuration.
+   */
+  public static ClusterConfiguration of(int port, List<String> seeds) {
+    ClusterConfiguration configuration = new ClusterConfiguration();
+    configuration.setPort(port);
+    configuration.setSeeds(seeds);
+
+    return configuration;
+  }
+
+
+  public int getPort() {
+    return port;
+  }
+
+  public void setPort(int port) {
+    this.port = port;
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  public void setAddress(String address) {
+    this.address = address;
+  }
+
+  public List<String> getSeeds() {
+    return seeds;
+  }
+
+  public void setSeeds(List<String> seeds) {
+    this.seeds = seeds;
+  }
+
+  public int getVirtualNodes() {
+    return virtualNodes;
+  }
+
+  public void setVirtualNodes(int virtualNodes) {
+    this.virtualNodes = virtualNodes;
+  }
+
+  /**
+   * Checks if the instance is a cluster node rather than a standalone one.
+   *
+   * @return True if the port is configured.
+   */
+  public boolean isEnabled() {
+    return port > 0;
+  }
+
+  /**
+   * Returns the `host:port` address other nodes reach the node at, which identifies it on the
+   * ring.
+   *
+   * @return Configured address, `localhost` with the port by default.
+   */
+  public String getNodeAddress() {
+    return address == null || address.isBlank() ? "localhost:" + port : address;
+  }
+}
@@ -0,0 +1,590 @@
+package shortener.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.Database;
+import shortener.database.changes.ChangeType;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+import shortener.exceptions.cluster.NodeUnavailable;
+import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.UniqueViolation;
+
+/**
+ * Node of a cluster partitioning aliases on a consistent-hash ring, see `HashRing`.
+ *
+ * <p>Every alias request is routed to the node owning the alias, which serves it from its local
+ * table, so any node answers lookups and takes writes of all aliases. Searches are gathered from
+ * all the nodes. A standalone instance, with no `cluster.port`, is a cluster of itself and serves
+ * everything locally.
+ *
+ * <p>A node joins through one of `cluster.seeds`, gets the members from it and announces itself
+ * to all of them. Each member streams the aliases the new node now owns to it and drops them
+ * afterwards. A node closed on shutdown leaves the cluster the same way: it announces the leave,
+ * then streams all its aliases to their new owners. Until all the partitions of a node have
+ * arrived, it looks aliases it misses up on their previous owner, and checks new aliases for
+ * uniqueness there as well.
+ *
+ * <p>Partitions are streamed by a single thread, which finds the aliases to move on the ring
+ * current at the time. A node which has received all its partitions streams on the aliases it
+ * no longer owns, so overlapping membership changes converge once all the streams finish.
+ */
+@Singleton
+public class ClusterNode implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClusterNode.class);
+
+  private static final String STANDALONE_ADDRESS = "standalone";
+
+  private final Database db;
+  private final AliasTable aliasTable;
+  private final String address;
+  private final ClusterServer server;
+  private final ExecutorService handOffs;
+  private final Map<String, ClusterPeer> peers = new ConcurrentHashMap<>();
+  // Aliases deleted on the previous owner while they might still be streamed to the node
+  private final Set<String> handOffTombstones = ConcurrentHashMap.newKeySet();
+  // Nodes which have finished streaming to the node before it has learned the members
+  private final Set<String> finishedHandOffs = new HashSet<>();
+  private volatile Membership membership;
+  private boolean joined;
+  private boolean closed;
+
+
+  /**
+   * Constructs a node and joins the cluster through the configured seeds.
+   *
+   * <p>A node whose seeds are all unavailable starts a new cluster.
+   *
+   * @param db            Database storing the aliases owned by the node.
+   * @param configuration Cluster configuration.
+   * @throws IllegalArgumentException Thrown if the database is a read-only replica.
+   */
+  @Inject
+  public ClusterNode(Database db, ClusterConfiguration configuration) {
+    this.db = db;
+    this.aliasTable = db.aliasTable;
+    this.address = configuration.isEnabled()
+        ? configuration.getNodeAddress()
+        : STANDALONE_ADDRESS;
+    this.membership = new Membership(
+        new HashRing(List.of(address), configuration.getVirtualNodes()), null, Set.of());
+
+    if (!configuration.isEnabled()) {
+      server = null;
+      handOffs = null;
+      return;
+    }
+    if (db.isReadOnly()) {
+      throw new IllegalArgumentException("A read-only replica can't be a cluster node.");
+    }
+
+    handOffs = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "cluster-handoff");
+      thread.setDaemon(true);
+
+      return thread;
+    });
+    try {
+      server = new ClusterServer(configuration.getPort(), this, aliasTable);
+    } catch (IOException exc) {
+      throw new RuntimeException("Cluster node initialization failure.", exc);
+    }
+
+    join(configuration.getSeeds(), configuration.getVirtualNodes());
+  }
+
+
+  /**
+   * Returns an alias from its owner.
+   *
+   * @param alias Alias to get.
+   * @return Found alias.
+   * @throws NotFound        Thrown if there is no such alias.
+   * @throws NodeUnavailable Thrown if the owner can't be reached.
+   */
+  public Alias get(String alias) throws NotFound {
+    String owner = getRemoteOwner(alias);
+
+    return owner == null ? getAsOwner(alias) : peer(owner).get(alias, ClusterProtocol.ROUTED);
+  }
+
+  /**
+   * Checks if an alias exists on its owner.
+   *
+   * @param alias Alias to check.
+   * @return True if the alias exists.
+   * @throws NodeUnavailable Thrown if the owner can't be reached.
+   */
+  public boolean exists(String alias) {
+    String owner = getRemoteOwner(alias);
+
+    return owner == null ? existsAsOwner(alias) : peer(owner).exists(alias, ClusterProtocol.ROUTED);
+  }
+
+  /**
+   * Creates an alias on its owner.
+   *
+   * @param record Alias to create.
+   * @return Created alias.
+   * @throws UniqueViolation Thrown if the alias is taken.
+   * @throws NodeUnavailable Thrown if the owner can't be reached.
+   */
+  public Alias create(Alias record) throws UniqueViolation {
+    String owner = getRemoteOwner(record.alias());
+
+    return owner == null
+        ? createAsOwner(record)
+        : peer(owner).create(record, ClusterProtocol.ROUTED);
+  }
+
+  /**
+   * Deletes an alias from its owner.
+   *
+   * @param alias Alias to delete.
+   * @return Deleted alias.
+   * @throws NotFound        Thrown if there is no such alias.
+   * @throws NodeUnavailable Thrown if the owner can't be reached.
+   */
+  public Alias delete(String alias) throws NotFound {
+    String owner = getRemoteOwner(alias);
+
+    return owner == null
+        ? deleteAsOwner(alias)
+        : peer(owner).delete(alias, ClusterProtocol.ROUTED);
+  }
+
+  /**
+   * Gathers the aliases of all the nodes.
+   *
+   * @return List of all aliases.
+   * @throws NodeUnavailable Thrown if a node can't be reached.
+   */
+  public List<Alias> search() {
+    return gather(ClusterProtocol.ALL_USERS);
+  }
+
+  /**
+   * Gathers the aliases of the user from all the nodes.
+   *
+   * @param userId Creator's id.
+   * @return List of the user's aliases.
+   * @throws NodeUnavailable Thrown if a node can't be reached.
+   */
+  public List<Alias> searchByUserId(long userId) {
+    return gather(userId);
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  public Set<String> getMembers() {
+    return membership.ring().getNodes();
+  }
+
+  /**
+   * Checks if partitions the node owns are still being streamed to it.
+   *
+   * @return True while rebalancing.
+   */
+  public boolean isRebalancing() {
+    return membership.previousRing() != null;
+  }
+
+  /**
+   * Leaves the cluster, streaming the aliases of the node to their new owners, on shutdown.
+   *
+   * @throws IOException Occurs if the server can't be closed.
+   */
+  @Override
+  @PreDestroy
+  public synchronized void close() throws IOException {
+    if (server == null || closed) {
+      return;
+    }
+    closed = true;
+
+    Membership current = membership;
+    if (current.ring().getNodes().size() > 1) {
+      HashRing ring = current.ring().without(address);
+      // Requests for the aliases of the node are routed to the new owners from now on
+      membership = new Membership(ring, null, Set.of());
+
+      for (String member : ring.getNodes()) {
+        try {
+          peer(member).leave(address);
+        } catch (NodeUnavailable exc) {
+          logger.warn("Failed to notify {} of leaving the cluster: {}", member, exc.getMessage());
+        }
+      }
+
+      try {
+        handOffs.submit(() -> handOffMisplaced(ring.getNodes())).get();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException exc) {
+        logger.error("Failed to stream the aliases on leaving the cluster.", exc.getCause());
+      }
+      logger.info("Left the cluster of {}.", ring.getNodes());
+    }
+
+    handOffs.shutdown();
+    server.close();
+    for (ClusterPeer peer : peers.values()) {
+      peer.close();
+    }
+  }
+
+
+  Alias get(String alias, byte mode) throws NotFound {
+    if (mode == ClusterProtocol.LOCAL) {
+      return db.get(aliasTable, alias);
+    }
+
+    String owner = mode == ClusterProtocol.ROUTED ? getRemoteOwner(alias) : null;
+
+    return owner == null ? getAsOwner(alias) : peer(owner).get(alias, ClusterProtocol.OWNED);
+  }
+
+  boolean exists(String alias, byte mode) {
+    if (mode == ClusterProtocol.LOCAL) {
+      return db.exists(aliasTable, alias);
+    }
+
+    String owner = mode == ClusterProtocol.ROUTED ? getRemoteOwner(alias) : null;
+
+    return owner == null ? existsAsOwner(alias) : peer(owner).exists(alias, ClusterProtocol.OWNED);
+  }
+
+  Alias create(Alias record, byte mode) throws UniqueViolation {
+    if (mode == ClusterProtocol.LOCAL) {
+      return db.create(aliasTable, record);
+    }
+
+    String owner = mode == ClusterProtocol.ROUTED ? getRemoteOwner(record.alias()) : null;
+
+    return owner == null
+        ? createAsOwner(record)
+        : peer(owner).create(record, ClusterProtocol.OWNED);
+  }
+
+  Alias delete(String alias, byte mode) throws NotFound {
+    if (mode == ClusterProtocol.LOCAL) {
+      return db.delete(aliasTable, alias);
+    }
+
+    String owner = mode == ClusterProtocol.ROUTED ? getRemoteOwner(alias) : null;
+
+    return owner == null
+        ? deleteAsOwner(alias)
+        : peer(owner).delete(alias, ClusterProtocol.OWNED);
+  }
+
+  List<Alias> searchLocal(long userId) {
+    return userId == ClusterProtocol.ALL_USERS
+        ? db.search(aliasTable)
+        : db.searchBy(aliasTable, AliasTable.USER_ID_INDEX, userId);
+  }
+
+  /**
+   * Adds a node to the ring and streams the aliases it now owns to it in the background.
+   *
+   * @param node Address of the joining node.
+   * @return Members of the cluster, including the joining node.
+   */
+  synchronized List<String> acceptJoin(String node) {
+    Membership current = membership;
+    HashRing ring = current.ring().with(node);
+    membership = new Membership(ring, current.previousRing(), current.pendingHandOffs());
+    logger.info("Node {} joined the cluster.", node);
+
+    // The joining node waits for every member to finish, even if it has nothing to stream
+    scheduleHandOff(List.of(node));
+
+    return new ArrayList<>(ring.getNodes());
+  }
+
+  /**
+   * Removes a node from the ring, which then streams its aliases to their new owners.
+   *
+   * @param node Address of the leaving node.
+   */
+  synchronized void acceptLeave(String node) {
+    Membership current = membership;
+    Set<String> pendingHandOffs = new HashSet<>(current.pendingHandOffs());
+    pendingHandOffs.add(node);
+
+    membership = new Membership(current.ring().without(node), current.ring(), pendingHandOffs);
+    logger.info("Node {} is leaving the cluster.", node);
+  }
+
+  void receiveHandOff(Alias record) {
+    if (handOffTombstones.remove(record.alias()) || db.exists(aliasTable, record.alias())) {
+      return;
+    }
+
+    db.apply(aliasTable, ChangeType.CREATE, record);
+  }
+
+  synchronized void receiveHandOffEnd(String node) {
+    Membership current = membership;
+
+    if (!current.pendingHandOffs().contains(node)) {
+      if (!joined) {
+        finishedHandOffs.add(node);
+      }
+      return;
+    }
+
+    Set<String> pendingHandOffs = new HashSet<>(current.pendingHandOffs());
+    pendingHandOffs.remove(node);
+    finishRebalancingIfDone(current.ring(), current.previousRing(), pendingHandOffs);
+  }
+
+
+  private void join(List<String> seeds, int virtualNodes) {
+    List<String> members = null;
+    String joinedSeed = null;
+
+    for (String seed : seeds) {
+      if (seed.equals(address)) {
+        continue;
+      }
+
+      try {
+        members = peer(seed).join(address);
+        joinedSeed = seed;
+        break;
+      } catch (NodeUnavailable exc) {
+        logger.warn("Cluster seed {} is unavailable: {}", seed, exc.getMessage());
+      }
+    }
+
+    if (members == null) {
+      synchronized (this) {
+        joined = true;
+      }
+      logger.info("Started a cluster as {}.", address);
+      return;
+    }
+
+    Set<String> others = new TreeSet<>(members);
+    others.remove(address);
+
+    synchronized (this) {
+      HashRing previousRing = new HashRing(others, virtualNodes);
+      Set<String> pendingHandOffs = new HashSet<>(others);
+      pendingHandOffs.removeAll(finishedHandOffs);
+      finishedHandOffs.clear();
+      joined = true;
+
+      finishRebalancingIfDone(previousRing.with(address), previousRing, pendingHandOffs);
+    }
+
+    for (String member : others) {
+      if (!member.equals(joinedSeed)) {
+        try {
+          peer(member).join(address);
+        } catch (NodeUnavailable exc) {
+          logger.warn("Failed to join cluster member {}: {}", member, exc.getMessage());
+          receiveHandOffEnd(member);
+        }
+      }
+    }
+
+    logger.info("Joined the cluster of {} as {}.", others, address);
+  }
+
+  private void scheduleHandOff(Collection<String> notifiedNodes) {
+    try {
+      handOffs.submit(() -> handOffMisplaced(notifiedNodes));
+    } catch (RejectedExecutionException exc) {
+      // The node has left the cluster
+    }
+  }
+
+  // Streams the local aliases the node doesn't own on the current ring to their owners and drops
+  // them afterwards. The notified nodes get the end of the stream even if nothing is streamed.
+  private void handOffMisplaced(Collection<String> notifiedNodes) {
+    HashRing ring = membership.ring();
+    Map<String, List<Alias>> partitions = db.search(aliasTable).stream()
+        .collect(Collectors.groupingBy(record -> ring.getOwner(record.alias())));
+    partitions.remove(address);
+
+    Set<String> nodes = new TreeSet<>(partitions.keySet());
+    nodes.addAll(notifiedNodes);
+
+    for (String node : nodes) {
+      List<Alias> partition = partitions.getOrDefault(node, List.of());
+
+      try {
+        peer(node).handOff(partition.iterator(), address);
+      } catch (NodeUnavailable exc) {
+        logger.error("Failed to stream {} aliases to {}, keeping them.", partition.size(), node,
+            exc);
+        continue;
+      }
+
+      for (Alias record : partition) {
+        db.apply(aliasTable, ChangeType.DELETE, record);
+      }
+      if (!partition.isEmpty()) {
+        logger.info("Streamed {} aliases to {}.", partition.size(), node);
+      }
+    }
+  }
+
+  private void finishRebalancingIfDone(HashRing ring, HashRing previousRing,
+                                       Set<String> pendingHandOffs) {
+    if (pendingHandOffs.isEmpty()) {
+      membership = new Membership(ring, null, Set.of());
+      handOffTombstones.clear();
+      logger.info("Rebalanced the cluster of {}.", ring.getNodes());
+
+      // Streamed aliases might have been moved on by a later membership change
+      scheduleHandOff(List.of());
+    } else {
+      membership = new Membership(ring, previousRing, pendingHandOffs);
+    }
+  }
+
+  private List<Alias> gather(long userId) {
+    Membership current = membership;
+    Set<String> nodes = new TreeSet<>(current.ring().getNodes());
+    if (current.previousRing() != null) {
+      nodes.addAll(current.previousRing().getNodes());
+    }
+
+    // Aliases being streamed may be found on both of their owners
+    Map<String, Alias> records = new LinkedHashMap<>();
+    for (String node : nodes) {
+      List<Alias> found = node.equals(address) ? searchLocal(userId) : peer(node).search(userId);
+
+      for (Alias record : found) {
+        records.putIfAbsent(record.alias(), record);
+      }
+    }
+
+    return new ArrayList<>(records.values());
+  }
+
+  private Alias getAsOwner(String alias) throws NotFound {
+    try {
+      return db.get(aliasTable, alias);
+    } catch (NotFound exc) {
+      String previousOwner = membership.getPreviousOwner(alias, address);
+      if (previousOwner == null) {
+        throw exc;
+      }
+
+      try {
+        return peer(previousOwner).get(alias, ClusterProtocol.LOCAL);
+      } catch (NodeUnavailable unavailable) {
+        throw exc;
+      }
+    }
+  }
+
+  private boolean existsAsOwner(String alias) {
+    if (db.exists(aliasTable, alias)) {
+      return true;
+    }
+
+    String previousOwner = membership.getPreviousOwner(alias, address);
+    try {
+      return previousOwner != null && peer(previousOwner).exists(alias, ClusterProtocol.LOCAL);
+    } catch (NodeUnavailable exc) {
+      return false;
+    }
+  }
+
+  private Alias createAsOwner(Alias record) throws UniqueViolation {
+    // The alias might not have been streamed from its previous owner yet
+    String previousOwner = membership.getPreviousOwner(record.alias(), address);
+    try {
+      if (previousOwner != null
+          && peer(previousOwner).exists(record.alias(), ClusterProtocol.LOCAL)) {
+        throw new UniqueViolation(AliasTable.TABLE_NAME);
+      }
+    } catch (NodeUnavailable exc) {
+      logger.warn("Creating {} without checking its previous owner: {}", record.alias(),
+          exc.getMessage());
+    }
+
+    return db.create(aliasTable, record);
+  }
+
+  private Alias deleteAsOwner(String alias) throws NotFound {
+    try {
+      return db.delete(aliasTable, alias);
+    } catch (NotFound exc) {
+      String previousOwner = membership.getPreviousOwner(alias, address);
+      if (previousOwner == null) {
+        throw exc;
+      }
+
+      // The alias is dropped if it's streamed to the node after the deletion
+      handOffTombstones.add(alias);
+      try {
+        return peer(previousOwner).delete(alias, ClusterProtocol.LOCAL);
+      } catch (NotFound | NodeUnavailable failure) {
+        handOffTombstones.remove(alias);
+        throw exc;
+      }
+    }
+  }
+
+  // Returns the owner of the alias, or null if it's the node itself
+  private String getRemoteOwner(String alias) {
+    if (server == null) {
+      return null;
+    }
+
+    String owner = membership.ring().getOwner(alias);
+
+    return owner.equals(address) ? null : owner;
+  }
+
+  private ClusterPeer peer(String node) {
+    return peers.computeIfAbsent(node, key -> new ClusterPeer(key, aliasTable));
+  }
+
+
+  /**
+   * Ring of the cluster and, while partitions are streamed to the node, the ring before the
+   * latest membership change along with the nodes which still stream.
+   */
+  private record Membership(HashRing ring, HashRing previousRing, Set<String> pendingHandOffs) {
+
+    // Returns the previous owner of an alias which might still be streamed to the node
+    private String getPreviousOwner(String alias, String node) {
+      if (previousRing == null) {
+        return null;
+      }
+
+      String owner = previousRing.getOwner(alias);
+
+      return owner.equals(node) ? null : owner;
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package shortener.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import shortener.database.entities.Alias;
+import shortener.database.storage.RecordFrames;
+import shortener.database.tables.AliasTable;
+import shortener.exceptions.cluster.NodeUnavailable;
+import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.UniqueViolation;
+
+/**
+ * Client of another cluster node, see `ClusterProtocol`.
+ *
+ * <p>Connections are pooled, so concurrent requests to the node go over separate connections and
+ * a connection is reused once its request has been answered. A read which fails on a pooled
+ * connection, e.g. since the node has restarted, is retried once on a new one.
+ */
+final class ClusterPeer implements Closeable {
+
+  private final String address;
+  private final String host;
+  private final int port;
+  private final AliasTable aliasTable;
+  private final Queue<Connection> idleConnections = new ConcurrentLinkedQueue<>();
+
+
+  /**
+   * Constructs a client of the node.
+   *
+   * @param address    Node address.
+   * @param aliasTable Table serializing the records.
+   * @throws IllegalArgumentException Thrown if the address is not of the `host:port` form.
+   */
+  ClusterPeer(String address, AliasTable aliasTable) {
+    int separator = address.lastIndexOf(':');
+
+    if (separator <= 0 || !address.substring(separator + 1).matches("\\d{1,5}")) {
+      throw new IllegalArgumentException(
+          String.format("Node %s should be of the host:port form.", address));
+    }
+
+    this.address = address;
+    this.host = address.substring(0, separator);
+    this.port = Integer.parseInt(address.substring(separator + 1));
+    this.aliasTable = aliasTable;
+  }
+
+
+  Alias get(String alias, byte mode) throws NotFound {
+    Reply<Alias> reply = exchange(true, out -> {
+      out.writeByte(ClusterProtocol.GET);
+      out.writeByte(mode);
+      out.writeUTF(alias);
+    }, this::readRecord);
+
+    if (reply.status() == ClusterProtocol.NOT_FOUND) {
+      throw new NotFound(AliasTable.TABLE_NAME, alias);
+    }
+
+    return reply.value();
+  }
+
+  boolean exists(String alias, byte mode) {
+    return exchange(true, out -> {
+      out.writeByte(ClusterProtocol.EXISTS);
+      out.writeByte(mode);
+      out.writeUTF(alias);
+    }, DataInputStream::readBoolean).value();
+  }
+
+  Alias create(Alias record, byte mode) throws UniqueViolation {
+    Reply<Alias> reply = exchange(false, out -> {
+      out.writeByte(ClusterProtocol.CREATE);
+      out.writeByte(mode);
+      RecordFrames.write(aliasTable, record, out);
+    }, this::readRecord);
+
+    if (reply.status() == ClusterProtocol.TAKEN) {
+      throw new UniqueViolation(AliasTable.TABLE_NAME);
+    }
+
+    return reply.value();
+  }
+
+  Alias delete(String alias, byte mode) throws NotFound {
+    Reply<Alias> reply = exchange(false, out -> {
+      out.writeByte(ClusterProtocol.DELETE);
+      out.writeByte(mode);
+      out.writeUTF(alias);
+    }, this::readRecord);
+
+    if (reply.status() == ClusterProtocol.NOT_FOUND) {
+      throw new NotFound(AliasTable.TABLE_NAME, alias);
+    }
+
+    return reply.value();
+  }
+
+  List<Alias> search(long userId) {
+    return exchange(true, out -> {
+      out.writeByte(ClusterProtocol.SEARCH);
+      out.writeLong(userId);
+    }, in -> {
+      int count = in.readInt();
+      List<Alias> records = new ArrayList<>(count);
+
+      for (int i = 0; i < count; i++) {
+        records.add(RecordFrames.read(aliasTable, in));
+      }
+
+      return records;
+    }).value();
+  }
+
+  List<String> join(String node) {
+    return exchange(false, out -> {
+      out.writeByte(ClusterProtocol.JOIN);
+      out.writeUTF(node);
+    }, in -> {
+      int count = in.readInt();
+      List<String> members = new ArrayList<>(count);
+
+      for (int i = 0; i < count; i++) {
+        members.add(in.readUTF());
+      }
+
+      return members;
+    }).value();
+  }
+
+  void leave(String node) {
+    exchange(false, out -> {
+      out.writeByte(ClusterProtocol.LEAVE);
+      out.writeUTF(node);
+    }, in -> null);
+  }
+
+  /**
+   * Streams the records to the node, which owns them now, and waits until it has stored them.
+   *
+   * @param records Records to hand off.
+   * @param node    Address of the sending node.
+   */
+  void handOff(Iterator<Alias> records, String node) {
+    exchange(false, out -> {
+      while (records.hasNext()) {
+        out.writeByte(ClusterProtocol.HANDOFF);
+        RecordFrames.write(aliasTable, records.next(), out);
+      }
+
+      out.writeByte(ClusterProtocol.HANDOFF_END);
+      out.writeUTF(node);
+    }, in -> null);
+  }
+
+  /**
+   * Closes the idle connections.
+   */
+  @Override
+  public void close() {
+    Connection connection;
+
+    while ((connection = idleConnections.poll()) != null) {
+      connection.close();
+    }
+  }
+
+
+  private <T> Reply<T> exchange(boolean retryable, RequestWriter request,
+                                ResponseReader<T> response) {
+    while (true) {
+      Connection connection = idleConnections.poll();
+      boolean pooled = connection != null;
+
+      try {
+        if (connection == null) {
+          connection = connect();
+        }
+
+        request.write(connection.out);
+        connection.out.flush();
+
+        byte status = connection.in.readByte();
+        Reply<T> reply;
+        if (status == ClusterProtocol.OK) {
+          reply = new Reply<>(status, response.read(connection.in));
+        } else if (status == ClusterProtocol.ERROR) {
+          String message = connection.in.readUTF();
+
+          idleConnections.add(connection);
+          throw new NodeUnavailable(address, new IOException(message));
+        } else {
+          reply = new Reply<>(status, null);
+        }
+
+        idleConnections.add(connection);
+        return reply;
+      } catch (IOException exc) {
+        if (connection != null) {
+          connection.close();
+        }
+        if (!(pooled && retryable)) {
+          throw new NodeUnavailable(address, exc);
+        }
+      }
+    }
+  }
+
+  private Connection connect() throws IOException {
+    Socket socket = new Socket(host, port);
+    socket.setSoTimeout((int) ClusterProtocol.REQUEST_TIMEOUT.toMillis());
+    socket.setTcpNoDelay(true);
+
+    return new Connection(socket,
+        new DataInputStream(new BufferedInputStream(socket.getInputStream())),
+        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())));
+  }
+
+  private Alias readRecord(DataInputStream in) throws IOException {
+    return RecordFrames.read(aliasTable, in);
+  }
+
+
+  private interface RequestWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  private interface ResponseReader<T> {
+    T read(DataInputStream in) throws IOException;
+  }
+
+  private record Reply<T>(byte status, T value) {
+  }
+
+  private record Connection(Socket socket, DataInputStream in, DataOutputStream out) {
+
+    private void close() {
+      try {
+        socket.close();
+      } catch (IOException exc) {
+        // The connection is dropped anyway
+      }
+    }
+  }
+}
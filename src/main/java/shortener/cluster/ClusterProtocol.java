@@ -0,0 +1,62 @@
+package shortener.cluster;
+
+import java.time.Duration;
+
+/**
+ * Requests and responses exchanged by cluster nodes.
+ *
+ * <p>A node keeps connections to its peers open and sends requests over them one at a time, each
+ * starting with its type byte:
+ * <ul>
+ *   <li>`GET`, `EXISTS` and `DELETE` with the routing mode (byte) and the alias (UTF), `CREATE`
+ *       with the routing mode and the record (record frame);</li>
+ *   <li>`SEARCH` with the user id (long), or -1 for all aliases, answered with the aliases the
+ *       node stores;</li>
+ *   <li>`JOIN` and `LEAVE` with the address of the joining or leaving node (UTF), a `JOIN` being
+ *       answered with the members of the cluster;</li>
+ *   <li>`HANDOFF` with a record the node now owns (record frame), which isn't answered so a
+ *       partition is streamed, and `HANDOFF_END` with the address of the sending node (UTF)
+ *       once all of them have been sent.</li>
+ * </ul>
+ *
+ * <p>A response starts with `OK` followed by the record (record frame), the flag (boolean) or the
+ * amount of records (int) and each of them (record frame) or of members (int) and each of them
+ * (UTF), or with `NOT_FOUND`, `TAKEN`, or `ERROR` and a message (UTF).
+ *
+ * <p>The routing mode tells the node how to serve an alias request: `ROUTED` ones were routed by
+ * the ring of the sender and are forwarded once if the node doesn't own the alias on its own
+ * ring, `OWNED` ones are served as the owner, and `LOCAL` ones from the local table only.
+ *
+ * <p>Records are sent in `RecordFrames`, since entries of a table file may refer to state of the
+ * node, e.g. its URL prefix dictionary.
+ */
+final class ClusterProtocol {
+
+  static final byte GET = 1;
+  static final byte EXISTS = 2;
+  static final byte CREATE = 3;
+  static final byte DELETE = 4;
+  static final byte SEARCH = 5;
+  static final byte JOIN = 6;
+  static final byte LEAVE = 7;
+  static final byte HANDOFF = 8;
+  static final byte HANDOFF_END = 9;
+
+  static final byte OK = 0;
+  static final byte NOT_FOUND = 1;
+  static final byte TAKEN = 2;
+  static final byte ERROR = 3;
+
+  static final byte ROUTED = 0;
+  static final byte OWNED = 1;
+  static final byte LOCAL = 2;
+
+  static final long ALL_USERS = -1;
+
+  // A peer which doesn't answer a request in time is considered unavailable
+  static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+
+
+  private ClusterProtocol() {
+  }
+}
@@ -0,0 +1,198 @@
+package shortener.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.entities.Alias;
+import shortener.database.storage.RecordFrames;
+import shortener.database.tables.AliasTable;
+import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.UniqueViolation;
+
+/**
+ * Server answering the requests of other cluster nodes, see `ClusterProtocol`.
+ *
+ * <p>Every connection is served by its own daemon thread, which answers its requests in order.
+ */
+final class ClusterServer implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ClusterServer.class);
+
+  private final ClusterNode node;
+  private final AliasTable aliasTable;
+  private final ServerSocket serverSocket;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+
+  /**
+   * Constructs a server and starts accepting connections.
+   *
+   * @param port       Port to listen on.
+   * @param node       Node serving the requests.
+   * @param aliasTable Table serializing the records.
+   * @throws IOException Occurs if the port can't be listened on.
+   */
+  ClusterServer(int port, ClusterNode node, AliasTable aliasTable) throws IOException {
+    this.node = node;
+    this.aliasTable = aliasTable;
+    this.serverSocket = new ServerSocket(port);
+
+    Thread acceptor = new Thread(this::accept, "cluster-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+
+  /**
+   * Stops accepting connections and drops the open ones.
+   *
+   * @throws IOException Occurs if the server socket can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+
+    for (Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+
+        Thread handler = new Thread(() -> serve(socket), "cluster-connection");
+        handler.setDaemon(true);
+        handler.start();
+      } catch (IOException exc) {
+        if (!serverSocket.isClosed()) {
+          logger.error("Failed to accept a cluster connection.", exc);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+      while (true) {
+        byte request;
+        try {
+          request = in.readByte();
+        } catch (EOFException exc) {
+          return;
+        }
+
+        if (request == ClusterProtocol.HANDOFF) {
+          // Streamed without answers
+          node.receiveHandOff(RecordFrames.read(aliasTable, in));
+        } else {
+          answer(request, in, out);
+          out.flush();
+        }
+      }
+    } catch (IOException exc) {
+      if (!serverSocket.isClosed()) {
+        logger.debug("Cluster connection {} dropped: {}", socket.getRemoteSocketAddress(),
+            exc.getMessage());
+      }
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  private void answer(byte request, DataInputStream in, DataOutputStream out)
+      throws IOException {
+    // Arguments are read before the request is served, so a failure leaves the stream intact
+    if (request == ClusterProtocol.GET || request == ClusterProtocol.EXISTS
+        || request == ClusterProtocol.DELETE) {
+      byte mode = in.readByte();
+      String alias = in.readUTF();
+
+      try {
+        if (request == ClusterProtocol.GET) {
+          writeRecord(out, node.get(alias, mode));
+        } else if (request == ClusterProtocol.EXISTS) {
+          boolean exists = node.exists(alias, mode);
+          out.writeByte(ClusterProtocol.OK);
+          out.writeBoolean(exists);
+        } else {
+          writeRecord(out, node.delete(alias, mode));
+        }
+      } catch (NotFound exc) {
+        out.writeByte(ClusterProtocol.NOT_FOUND);
+      } catch (RuntimeException exc) {
+        writeError(out, exc);
+      }
+    } else if (request == ClusterProtocol.CREATE) {
+      byte mode = in.readByte();
+      Alias record = RecordFrames.read(aliasTable, in);
+
+      try {
+        writeRecord(out, node.create(record, mode));
+      } catch (UniqueViolation exc) {
+        out.writeByte(ClusterProtocol.TAKEN);
+      } catch (RuntimeException exc) {
+        writeError(out, exc);
+      }
+    } else if (request == ClusterProtocol.SEARCH) {
+      long userId = in.readLong();
+
+      try {
+        List<Alias> records = node.searchLocal(userId);
+        out.writeByte(ClusterProtocol.OK);
+        out.writeInt(records.size());
+
+        for (Alias record : records) {
+          RecordFrames.write(aliasTable, record, out);
+        }
+      } catch (RuntimeException exc) {
+        writeError(out, exc);
+      }
+    } else if (request == ClusterProtocol.JOIN) {
+      List<String> members = node.acceptJoin(in.readUTF());
+      out.writeByte(ClusterProtocol.OK);
+      out.writeInt(members.size());
+
+      for (String member : members) {
+        out.writeUTF(member);
+      }
+    } else if (request == ClusterProtocol.LEAVE) {
+      node.acceptLeave(in.readUTF());
+      out.writeByte(ClusterProtocol.OK);
+    } else if (request == ClusterProtocol.HANDOFF_END) {
+      node.receiveHandOffEnd(in.readUTF());
+      out.writeByte(ClusterProtocol.OK);
+    } else {
+      throw new IOException(String.format("Unknown cluster request %d.", request));
+    }
+  }
+
+  private void writeRecord(DataOutputStream out, Alias record) throws IOException {
+    out.writeByte(ClusterProtocol.OK);
+    RecordFrames.write(aliasTable, record, out);
+  }
+
+  private static void writeError(DataOutputStream out, RuntimeException exc) throws IOException {
+    out.writeByte(ClusterProtocol.ERROR);
+    out.writeUTF(String.valueOf(exc.getMessage()));
+  }
+}
@@ -0,0 +1,146 @@
+package shortener.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring of cluster nodes.
+ *
+ * <p>Every node is placed on the ring at `virtualNodes` points, and a key is owned by the node of
+ * the first point at or after the hash of the key, wrapping around. Adding or removing a node
+ * therefore moves only the keys of the ranges it gains or loses, about 1/N of them, and the
+ * virtual nodes spread those ranges evenly over the other nodes.
+ */
+public final class HashRing {
+
+  public static final int VIRTUAL_NODES_DEFAULT = 128;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final Set<String> nodes;
+  private final int virtualNodes;
+  // Sorted points and the nodes placed at them
+  private final long[] points;
+  private final String[] owners;
+
+
+  /**
+   * Constructs a ring of the provided nodes.
+   *
+   * @param nodes        Node addresses, at least one.
+   * @param virtualNodes Amount of points of every node on the ring.
+   * @throws IllegalArgumentException Thrown if there are no nodes or points.
+   */
+  public HashRing(Collection<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty() || virtualNodes <= 0) {
+      throw new IllegalArgumentException("A hash ring needs at least one node and point.");
+    }
+
+    this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+    this.virtualNodes = virtualNodes;
+
+    List<Point> ring = new ArrayList<>(this.nodes.size() * virtualNodes);
+    for (String node : this.nodes) {
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.add(new Point(hash(node + "#" + i), node));
+      }
+    }
+    // Nodes of colliding points are ordered by name, so every member builds the same ring
+    ring.sort(Comparator.comparingLong(Point::hash).thenComparing(Point::node));
+
+    points = new long[ring.size()];
+    owners = new String[ring.size()];
+    for (int i = 0; i < ring.size(); i++) {
+      points[i] = ring.get(i).hash();
+      owners[i] = ring.get(i).node();
+    }
+  }
+
+
+  /**
+   * Returns the node owning the key.
+   *
+   * @param key Key to look the owner up for.
+   * @return Owner node address.
+   */
+  public String getOwner(String key) {
+    int index = Arrays.binarySearch(points, hash(key));
+
+    if (index < 0) {
+      index = -index - 1;
+    } else {
+      // The first of colliding points wins
+      while (index > 0 && points[index - 1] == points[index]) {
+        index--;
+      }
+    }
+
+    return owners[index == points.length ? 0 : index];
+  }
+
+  public Set<String> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * Returns a ring which additionally has the node.
+   *
+   * @param node Node address.
+   * @return Ring with the node.
+   */
+  public HashRing with(String node) {
+    if (nodes.contains(node)) {
+      return this;
+    }
+
+    Set<String> joined = new TreeSet<>(nodes);
+    joined.add(node);
+
+    return new HashRing(joined, virtualNodes);
+  }
+
+  /**
+   * Returns a ring which no longer has the node.
+   *
+   * @param node Node address.
+   * @return Ring without the node.
+   * @throws IllegalArgumentException Thrown if the node is the only one.
+   */
+  public HashRing without(String node) {
+    if (!nodes.contains(node)) {
+      return this;
+    }
+
+    Set<String> left = new TreeSet<>(nodes);
+    left.remove(node);
+
+    return new HashRing(left, virtualNodes);
+  }
+
+
+  // 64-bit FNV-1a of the chars, mixed by the SplitMix64 finalizer since FNV alone clusters the
+  // hashes of similar keys, e.g. of the virtual nodes of a node
+  static long hash(String key) {
+    long hash = FNV_OFFSET_BASIS;
+
+    for (int i = 0; i < key.length(); i++) {
+      hash = (hash ^ key.charAt(i)) * FNV_PRIME;
+    }
+
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+
+    return hash ^ (hash >>> 31);
+  }
+
+
+  private record Point(long hash, String node) {
+  }
+}
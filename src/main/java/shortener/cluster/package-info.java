@@ -0,0 +1,4 @@
+/**
+ * Cluster - partitioning aliases across instances on a consistent-hash ring.
+ */
+package shortener.cluster;
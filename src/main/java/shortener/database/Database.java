@@ -3,21 +3,52 @@ package shortener.database;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import shortener.database.changes.ChangeType;
+import shortener.database.replication.ReplicationServer;
+import shortener.database.replication.ReplicationStatus;
+import shortener.database.replication.TableFollower;
+import shortener.database.storage.LogCommit;
+import shortener.database.storage.MeteredLock;
+import shortener.database.storage.TableCheckpointer;
+import shortener.database.storage.TableCompactor;
+import shortener.database.storage.TableShard;
 import shortener.database.tables.AliasTable;
 import shortener.database.tables.DatabaseTable;
+import shortener.database.tables.IndexDefinition;
+import shortener.database.tables.SecondaryIndex;
 import shortener.database.tables.UserSessionTable;
 import shortener.database.tables.UserTable;
 import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.ReadOnlyReplica;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
  * Database implementation class.
+ *
+ * <p>Writers of a table shard take turns on the shard write lock, and creations additionally take
+ * turns on the table creation lock, since uniqueness checks span all shards. Readers go to the
+ * concurrent in-memory indexes and never wait for writers. Table files are only appended to, and
+ * rewrites (compactions, migrations) go to a temporary file which atomically replaces the
+ * original one. Waits for the locks are measured, see `DatabaseTable.getCreationLock` and
+ * `DatabaseTable.getWriteLockStats`.
+ *
+ * <p>Shards of a table are stored by its storage engine, see `StorageEngine`, configured per
+ * table by `database.table-engines`.
+ *
+ * <p>Every write is published to the table change feed under the shard write lock, so the feed
+ * orders changes of a record as its writes, see `DatabaseTable.getChangeFeed`.
+ *
+ * <p>A leader ships the change feeds to replicas on `database.replication-port`. A database
+ * configured with `database.leader` is a read-only replica which follows the leader's
+ * `database.replicated-tables`, see `TableFollower`.
  */
 @Singleton
 public class Database {
@@ -28,12 +59,18 @@ public class Database {
   public AliasTable aliasTable;
   public UserSessionTable userSessionTable;
 
+  private final TableCompactor compactor = new TableCompactor();
+  private final TableCheckpointer checkpointer = new TableCheckpointer();
+  private final boolean readOnly;
+  private final List<TableFollower<?, ?>> followers = new ArrayList<>();
+  private ReplicationServer replicationServer;
+
 
   /**
    * Constructs an instance of Database with default root path.
    */
   public Database() {
-    this(DEFAULT_ROOT_DIRECTORY);
+    this(new DatabaseConfiguration());
   }
 
   /**
@@ -42,11 +79,60 @@ public class Database {
    * @param rootDirectory A string path to the root db directory.
    */
   public Database(String rootDirectory) {
-    Path rootPath = Path.of(rootDirectory);
+    this(DatabaseConfiguration.of(rootDirectory));
+  }
+
+  /**
+   * Constructs an instance of Database using provided `configuration`.
+   *
+   * <p>Creates the table shards with the configured storage engines, creates missing shard files
+   * and moves records between shards if the shard layout has been reconfigured. Opens the table
+   * change feeds and starts periodic checkpoints of the tables. Starts shipping the changes to
+   * replicas, or following the leader on a replica.
+   *
+   * @param configuration Database configuration.
+   */
+  @Inject
+  public Database(DatabaseConfiguration configuration) {
+    List<Path> rootPaths = configuration.getRootPaths();
 
-    userTable = new UserTable(rootPath);
-    aliasTable = new AliasTable(rootPath);
-    userSessionTable = new UserSessionTable(rootPath);
+    userTable = new UserTable(rootPaths, configuration.getShardsOf(UserTable.TABLE_NAME),
+        configuration.getEngineOf(UserTable.TABLE_NAME));
+    aliasTable = new AliasTable(rootPaths, configuration.getShardsOf(AliasTable.TABLE_NAME),
+        configuration.getEngineOf(AliasTable.TABLE_NAME));
+    userSessionTable = new UserSessionTable(rootPaths,
+        configuration.getShardsOf(UserSessionTable.TABLE_NAME),
+        configuration.getEngineOf(UserSessionTable.TABLE_NAME));
+
+    try {
+      userTable.initShards();
+      aliasTable.initShards();
+      userSessionTable.initShards();
+
+      for (DatabaseTable<?, ?> databaseTable : List.of(userTable, aliasTable, userSessionTable)) {
+        databaseTable.getChangeFeed().open();
+      }
+    } catch (IOException exc) {
+      throw new RuntimeException("Database initialization failure.", exc);
+    }
+
+    checkpointer.start(List.of(userTable, aliasTable, userSessionTable),
+        configuration.getCheckpointInterval());
+
+    readOnly = configuration.isReplica();
+    if (readOnly) {
+      for (String tableName : configuration.getReplicatedTables()) {
+        followers.add(new TableFollower<>(this, getTable(tableName),
+            configuration.getLeaderAddress()));
+      }
+    } else if (configuration.getReplicationPort() > 0) {
+      try {
+        replicationServer = new ReplicationServer(configuration.getReplicationPort(),
+            List.of(userTable, aliasTable, userSessionTable));
+      } catch (IOException exc) {
+        throw new RuntimeException("Database initialization failure.", exc);
+      }
+    }
   }
 
 
@@ -93,9 +179,7 @@ public class Database {
    */
   public <EntityT> List<EntityT> search(DatabaseTable<EntityT, ?> databaseTable) {
     try {
-      return databaseTable.readTable()
-          .parallel()
-          .map(databaseTable::deserialize)
+      return databaseTable.streamRecords()
           .collect(Collectors.toList());
     } catch (IOException exc) {
       throw new RuntimeException("Database operation failure.");
@@ -114,9 +198,7 @@ public class Database {
   public <EntityT> List<EntityT> search(DatabaseTable<EntityT, ?> databaseTable,
                                         Predicate<EntityT> predicate) {
     try {
-      return databaseTable.readTable()
-          .parallel()
-          .map(databaseTable::deserialize)
+      return databaseTable.streamRecords()
           .filter(predicate)
           .collect(Collectors.toList());
     } catch (IOException exc) {
@@ -137,9 +219,7 @@ public class Database {
   public <EntityT> List<EntityT> search(DatabaseTable<EntityT, ?> databaseTable,
                                         Predicate<EntityT> predicate, long limit) {
     try {
-      return databaseTable.readTable()
-          .parallel()
-          .map(databaseTable::deserialize)
+      return databaseTable.streamRecords()
           .filter(predicate)
           .limit(limit)
           .collect(Collectors.toList());
@@ -149,6 +229,76 @@ public class Database {
     }
   }
 
+  /**
+   * Checks if a record with the provided `pk` exists.
+   *
+   * <p>Cheaper than `get` for absent records, which are mostly answered by a Bloom filter of the
+   * table keys, if the table has one.
+   *
+   * @param databaseTable Database table to operate over. (usage: db.exists(db.aliasTable, alias)).
+   * @param pk            Primary key to check.
+   * @param <PrimaryKeyT> Primary key type, inherited from the `databaseTable`
+   * @return True if the record exists.
+   */
+  public <PrimaryKeyT> boolean exists(DatabaseTable<?, PrimaryKeyT> databaseTable,
+                                      PrimaryKeyT pk) {
+    try {
+      return databaseTable.getShard(pk).contains(pk);
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
+
+  /**
+   * Returns records which have the provided `key` in the field of the secondary index.
+   *
+   * <p>Unlike `search`, the lookup uses the index and doesn't scan the table.
+   *
+   * @param databaseTable Database table to operate over. (usage: db.searchBy(db.aliasTable,
+   *                      AliasTable.USER_ID_INDEX, userId)).
+   * @param definition    Secondary index declared by the table.
+   * @param key           Indexed value to look records up by.
+   * @param <EntityT>     Entity type, inherited from the `databaseTable`
+   * @param <KeyT>        Indexed value type, inherited from the `definition`
+   * @return List of found records.
+   */
+  public <EntityT, KeyT> List<EntityT> searchBy(DatabaseTable<EntityT, ?> databaseTable,
+                                                IndexDefinition<EntityT, KeyT> definition,
+                                                KeyT key) {
+    try {
+      return databaseTable.getSecondaryIndex(definition).lookup(key)
+          .collect(Collectors.toList());
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
+
+  /**
+   * Returns a record which has the provided `key` in the field of the unique secondary index.
+   *
+   * @param databaseTable Database table to operate over. (usage: db.getBy(db.userTable,
+   *                      UserTable.EMAIL_INDEX, email)).
+   * @param definition    Secondary index declared by the table.
+   * @param key           Indexed value to get a record by.
+   * @param <EntityT>     Entity type, inherited from the `databaseTable`
+   * @param <KeyT>        Indexed value type, inherited from the `definition`
+   * @return Found record.
+   * @throws NotFound Thrown if no element found by the provided `key`.
+   */
+  public <EntityT, KeyT> EntityT getBy(DatabaseTable<EntityT, ?> databaseTable,
+                                       IndexDefinition<EntityT, KeyT> definition, KeyT key)
+      throws NotFound {
+    try {
+      return databaseTable.getSecondaryIndex(definition).lookup(key)
+          .findFirst()
+          .orElseThrow(
+              () -> new NotFound(databaseTable.getTableName(), key)
+          );
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
+
   /**
    * Returns a record selected by the provided `pk`.
    *
@@ -162,13 +312,8 @@ public class Database {
   public <EntityT, PrimaryKeyT> EntityT get(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
                                             PrimaryKeyT pk)
       throws NotFound {
-    Pattern lineRegex = Pattern.compile("^" + pk + "\\|" + ".*", Pattern.CASE_INSENSITIVE);
-
     try {
-      return databaseTable.readTable()
-          .filter(line -> lineRegex.matcher(line).matches())
-          .findFirst()
-          .map(databaseTable::deserialize)
+      return databaseTable.getShard(pk).get(pk)
           .orElseThrow(
               () -> new NotFound(databaseTable.getTableName(), pk)
           );
@@ -177,6 +322,7 @@ public class Database {
     }
   }
 
+
   /**
    * Inserts a provided `recordToCreate` into the provided `databaseTable` and generates a primary
    * key for it.
@@ -187,21 +333,46 @@ public class Database {
    * @param <PrimaryKeyT>  Primary key type, inherited from the `databaseTable`
    * @return Created recordToCreate.
    * @throws UniqueViolation Thrown if any table field uniqueness check did not pass.
+   * @throws ReadOnlyReplica Thrown on a replica.
    */
   public <EntityT, PrimaryKeyT> EntityT create(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
                                                EntityT recordToCreate)
       throws UniqueViolation {
+    checkWritable(databaseTable);
+
+    MeteredLock creationLock = databaseTable.getCreationLock();
+    EntityT recordToSave;
+    LogCommit commit;
+
+    creationLock.lock();
     try {
-      EntityT recordToSave = databaseTable.prepareRecordForCreation(recordToCreate);
+      recordToSave = databaseTable.prepareRecordForCreation(recordToCreate);
+      databaseTable.prepareRecordForStorage(recordToSave);
+      TableShard<EntityT, PrimaryKeyT> shard =
+          databaseTable.getShard(databaseTable.getPrimaryKey(recordToSave));
 
-      Files.write(databaseTable.getWritableFilePath(),
-          (databaseTable.serialize(recordToSave) + System.lineSeparator()).getBytes(),
-          StandardOpenOption.APPEND);
+      shard.getWriteLock().lock();
+      try {
+        commit = shard.insert(recordToSave);
 
-      return recordToSave;
+        for (SecondaryIndex<EntityT, PrimaryKeyT, ?> index : databaseTable.getSecondaryIndexes()) {
+          index.add(recordToSave);
+        }
+
+        databaseTable.getChangeFeed().publish(ChangeType.CREATE, recordToSave);
+      } finally {
+        shard.getWriteLock().unlock();
+      }
     } catch (IOException exc) {
       throw new RuntimeException("Database operation failure.");
+    } finally {
+      creationLock.unlock();
     }
+
+    // Wait outside of the locks, so concurrent creations are written in a single batch
+    awaitCommit(commit);
+
+    return recordToSave;
   }
 
   /**
@@ -213,26 +384,194 @@ public class Database {
    * @param <PrimaryKeyT> Primary key type, inherited from the `databaseTable`
    * @return Deleted record.
    * @throws NotFound Thrown if no element found by the provided `pk`.
+   * @throws ReadOnlyReplica Thrown on a replica.
    */
   public <EntityT, PrimaryKeyT> EntityT delete(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
                                                PrimaryKeyT pk)
       throws NotFound {
+    checkWritable(databaseTable);
+
+    TableShard<EntityT, PrimaryKeyT> shard = databaseTable.getShard(pk);
+    MeteredLock writeLock = shard.getWriteLock();
+    EntityT record;
+    LogCommit commit;
+
+    writeLock.lock();
     try {
       // Check if the record exists
-      final EntityT record = get(databaseTable, pk);
+      record = get(databaseTable, pk);
+
+      commit = shard.delete(record);
+
+      for (SecondaryIndex<EntityT, PrimaryKeyT, ?> index : databaseTable.getSecondaryIndexes()) {
+        index.remove(record);
+      }
+
+      databaseTable.getChangeFeed().publish(ChangeType.DELETE, record);
+      compactor.compactIfNeeded(shard);
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    } finally {
+      writeLock.unlock();
+    }
+
+    awaitCommit(commit);
 
-      Pattern lineRegex = Pattern.compile("^" + pk + "\\|" + ".*", Pattern.CASE_INSENSITIVE);
+    return record;
+  }
+
+  /**
+   * Applies a change replicated from the leader, replacing the record of the same primary key.
+   *
+   * <p>Unlike `create` and `delete`, applying neither checks uniqueness nor fails on an absent
+   * record, so a change may be applied again. Works on a read-only replica.
+   *
+   * @param databaseTable Database table to operate over.
+   * @param type          Kind of the change.
+   * @param record        Created or deleted record.
+   * @param <EntityT>     Entity type, inherited from the `databaseTable`
+   * @param <PrimaryKeyT> Primary key type, inherited from the `databaseTable`
+   */
+  public <EntityT, PrimaryKeyT> void apply(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                                           ChangeType type, EntityT record) {
+    PrimaryKeyT pk = databaseTable.getPrimaryKey(record);
+    TableShard<EntityT, PrimaryKeyT> shard = databaseTable.getShard(pk);
+    MeteredLock writeLock = shard.getWriteLock();
+    LogCommit commit = null;
+
+    writeLock.lock();
+    try {
+      Optional<EntityT> existing = shard.get(pk);
+
+      if (existing.isPresent()) {
+        commit = shard.delete(existing.get());
+
+        for (SecondaryIndex<EntityT, PrimaryKeyT, ?> index : databaseTable.getSecondaryIndexes()) {
+          index.remove(existing.get());
+        }
+      }
+
+      if (type == ChangeType.CREATE) {
+        databaseTable.prepareRecordForStorage(record);
+        commit = shard.insert(record);
+
+        for (SecondaryIndex<EntityT, PrimaryKeyT, ?> index : databaseTable.getSecondaryIndexes()) {
+          index.add(record);
+        }
+      }
+
+      if (type == ChangeType.CREATE || existing.isPresent()) {
+        databaseTable.getChangeFeed().publish(type, record);
+      }
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    } finally {
+      writeLock.unlock();
+    }
+
+    if (commit != null) {
+      awaitCommit(commit);
+    }
+  }
+
+  /**
+   * Returns the replication state of the followed tables.
+   *
+   * @return Replication statuses, none on a leader.
+   */
+  public List<ReplicationStatus> getReplicationStatus() {
+    return followers.stream().map(TableFollower::getStatus).collect(Collectors.toList());
+  }
+
+  /**
+   * Checks if the database is a read-only replica.
+   *
+   * @return True on a replica.
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * Rewrites the `databaseTable` shard files right away, dropping deleted records from it.
+   *
+   * <p>Deleted records are dropped by a background compaction anyway, once there are enough of
+   * them. This method is useful for maintenance and tests.
+   *
+   * @param databaseTable Database table to operate over. (usage: db.compact(db.userTable)).
+   */
+  public void compact(DatabaseTable<?, ?> databaseTable) {
+    try {
+      compactor.compact(databaseTable);
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
+
+  /**
+   * Writes a snapshot of the `databaseTable` records right away, so the next startup replays
+   * only the entries appended after it.
+   *
+   * <p>Tables are checkpointed periodically anyway. This method is useful for maintenance and
+   * tests.
+   *
+   * @param databaseTable Database table to operate over. (usage: db.checkpoint(db.aliasTable)).
+   */
+  public void checkpoint(DatabaseTable<?, ?> databaseTable) {
+    try {
+      checkpointer.checkpoint(databaseTable);
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
+
+  /**
+   * Writes pending appends of all tables and closes their files and change feeds on shutdown.
+   */
+  @PreDestroy
+  public void close() {
+    checkpointer.close();
 
-      String modifiedLines =
-          databaseTable.readTable()
-              .filter(line -> !lineRegex.matcher(line).matches())
-              .reduce((acc, line) -> acc + System.lineSeparator() + line).orElse("");
+    try {
+      for (TableFollower<?, ?> follower : followers) {
+        follower.close();
+      }
+      if (replicationServer != null) {
+        replicationServer.close();
+      }
+
+      for (DatabaseTable<?, ?> databaseTable : List.of(userTable, aliasTable, userSessionTable)) {
+        databaseTable.getChangeFeed().close();
+
+        for (TableShard<?, ?> shard : databaseTable.getShards()) {
+          shard.close();
+        }
+      }
+    } catch (IOException exc) {
+      throw new RuntimeException("Database operation failure.");
+    }
+  }
 
-      Files.write(databaseTable.getWritableFilePath(),
-          (modifiedLines + System.lineSeparator()).getBytes(),
-          StandardOpenOption.TRUNCATE_EXISTING);
 
-      return record;
+  private DatabaseTable<?, ?> getTable(String tableName) {
+    for (DatabaseTable<?, ?> databaseTable : List.of(userTable, aliasTable, userSessionTable)) {
+      if (databaseTable.getTableName().equals(tableName)) {
+        return databaseTable;
+      }
+    }
+
+    throw new IllegalArgumentException(String.format("There is no table %s.", tableName));
+  }
+
+  private void checkWritable(DatabaseTable<?, ?> databaseTable) {
+    if (readOnly) {
+      throw new ReadOnlyReplica(databaseTable.getTableName());
+    }
+  }
+
+  private static void awaitCommit(LogCommit commit) {
+    try {
+      commit.await();
     } catch (IOException exc) {
       throw new RuntimeException("Database operation failure.");
     }
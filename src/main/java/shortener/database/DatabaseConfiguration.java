@@ -0,0 +1,256 @@
+package shortener.database;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import shortener.database.storage.Durability;
+import shortener.database.storage.DurabilityMode;
+import shortener.database.storage.FileStorageEngine;
+import shortener.database.storage.MemoryStorageEngine;
+import shortener.database.storage.StorageEngine;
+import shortener.database.storage.TableCheckpointer;
+import shortener.database.tables.AliasTable;
+
+/**
+ * Database configuration, bound to the `database` section of `application.yml`.
+ */
+@ConfigurationProperties("database")
+public class DatabaseConfiguration {
+
+  private static final String DEFAULT_ROOT_DIRECTORY = "data";
+
+  private List<String> rootDirectories = List.of(DEFAULT_ROOT_DIRECTORY);
+  private int shards = 1;
+  private Map<String, Integer> tableShards = new HashMap<>();
+  private String engine = FileStorageEngine.NAME;
+  private Map<String, String> tableEngines = new HashMap<>();
+  private List<String> lsmTables = List.of();
+  private DurabilityMode durabilityMode = Durability.DEFAULT.mode();
+  private Duration groupCommitInterval = Durability.DEFAULT.groupCommitInterval();
+  private int groupCommitBatch = Durability.DEFAULT.groupCommitBatch();
+  private Duration checkpointInterval = TableCheckpointer.INTERVAL_DEFAULT;
+  private int replicationPort = 0;
+  private String leader = "";
+  private List<String> replicatedTables = List.of(AliasTable.TABLE_NAME);
+
+
+  /**
+   * Creates a configuration of an unsharded database stored in the provided directory.
+   *
+   * @param rootDirectory A string path to the root db directory.
+   * @return Database configuration.
+   */
+  public static DatabaseConfiguration of(String rootDirectory) {
+    DatabaseConfiguration configuration = new DatabaseConfiguration();
+    configuration.setRootDirectories(List.of(rootDirectory));
+
+    return configuration;
+  }
+
+
+  public List<String> getRootDirectories() {
+    return rootDirectories;
+  }
+
+  public void setRootDirectories(List<String> rootDirectories) {
+    this.rootDirectories = rootDirectories;
+  }
+
+  public int getShards() {
+    return shards;
+  }
+
+  public void setShards(int shards) {
+    this.shards = shards;
+  }
+
+  public Map<String, Integer> getTableShards() {
+    return tableShards;
+  }
+
+  public void setTableShards(Map<String, Integer> tableShards) {
+    this.tableShards = tableShards;
+  }
+
+  public String getEngine() {
+    return engine;
+  }
+
+  public void setEngine(String engine) {
+    this.engine = engine;
+  }
+
+  public Map<String, String> getTableEngines() {
+    return tableEngines;
+  }
+
+  public void setTableEngines(Map<String, String> tableEngines) {
+    this.tableEngines = tableEngines;
+  }
+
+  public List<String> getLsmTables() {
+    return lsmTables;
+  }
+
+  public void setLsmTables(List<String> lsmTables) {
+    this.lsmTables = lsmTables;
+  }
+
+  public DurabilityMode getDurabilityMode() {
+    return durabilityMode;
+  }
+
+  /**
+   * Sets the durability mode by its name: `always-fsync`, `group-commit` or `os-buffered`.
+   *
+   * @param durability Durability mode name.
+   */
+  public void setDurability(String durability) {
+    this.durabilityMode = DurabilityMode.of(durability);
+  }
+
+  public Duration getGroupCommitInterval() {
+    return groupCommitInterval;
+  }
+
+  public void setGroupCommitInterval(Duration groupCommitInterval) {
+    this.groupCommitInterval = groupCommitInterval;
+  }
+
+  public int getGroupCommitBatch() {
+    return groupCommitBatch;
+  }
+
+  public void setGroupCommitBatch(int groupCommitBatch) {
+    this.groupCommitBatch = groupCommitBatch;
+  }
+
+  public Duration getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  public void setCheckpointInterval(Duration checkpointInterval) {
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  public int getReplicationPort() {
+    return replicationPort;
+  }
+
+  public void setReplicationPort(int replicationPort) {
+    this.replicationPort = replicationPort;
+  }
+
+  public String getLeader() {
+    return leader;
+  }
+
+  public void setLeader(String leader) {
+    this.leader = leader;
+  }
+
+  public List<String> getReplicatedTables() {
+    return replicatedTables;
+  }
+
+  public void setReplicatedTables(List<String> replicatedTables) {
+    this.replicatedTables = replicatedTables;
+  }
+
+  /**
+   * Checks if the database is a read-only replica following the `leader`.
+   *
+   * @return True if the leader is configured.
+   */
+  public boolean isReplica() {
+    return leader != null && !leader.isBlank();
+  }
+
+  /**
+   * Returns the address of the leader, which is resolved on every connection.
+   *
+   * @return Unresolved leader address.
+   * @throws IllegalArgumentException Thrown if the leader is not of the `host:port` form.
+   */
+  public InetSocketAddress getLeaderAddress() {
+    int separator = leader.lastIndexOf(':');
+
+    try {
+      if (separator > 0) {
+        return InetSocketAddress.createUnresolved(leader.substring(0, separator),
+            Integer.parseInt(leader.substring(separator + 1)));
+      }
+    } catch (IllegalArgumentException exc) {
+      // Reported below along with a missing port
+    }
+
+    throw new IllegalArgumentException(
+        String.format("Leader %s should be of the host:port form.", leader));
+  }
+
+  /**
+   * Returns durability settings of table file appends.
+   *
+   * @return Durability settings.
+   */
+  public Durability getDurabilitySettings() {
+    return new Durability(durabilityMode, groupCommitInterval, groupCommitBatch);
+  }
+
+  /**
+   * Returns root directories as paths.
+   *
+   * @return Paths to the root directories.
+   */
+  public List<Path> getRootPaths() {
+    return rootDirectories.stream().map(Path::of).collect(Collectors.toList());
+  }
+
+  /**
+   * Returns amount of shards of the table, falling back to the default amount.
+   *
+   * @param tableName Table name.
+   * @return Amount of table shards.
+   */
+  public int getShardsOf(String tableName) {
+    return tableShards.getOrDefault(tableName, shards);
+  }
+
+  /**
+   * Returns the storage engine of the table, falling back to the default engine. Tables of a
+   * replica are kept in memory, since a replica copies them from the leader on every start.
+   *
+   * @param tableName Table name.
+   * @return Storage engine of the table shards.
+   * @throws IllegalArgumentException Thrown if there is no engine of the configured name.
+   */
+  public StorageEngine getEngineOf(String tableName) {
+    String engineName = isReplica()
+        ? MemoryStorageEngine.NAME
+        : tableEngines.getOrDefault(tableName, engine);
+
+    if (FileStorageEngine.NAME.equals(engineName)) {
+      return new FileStorageEngine(getDurabilitySettings(), storesInLsmTrees(tableName));
+    } else if (MemoryStorageEngine.NAME.equals(engineName)) {
+      return new MemoryStorageEngine();
+    }
+
+    throw new IllegalArgumentException(
+        String.format("Table %s has an unknown storage engine %s.", tableName, engineName));
+  }
+
+  /**
+   * Checks if the table stores its records in LSM trees on disk rather than in memory.
+   *
+   * @param tableName Table name.
+   * @return True if the table is listed in `lsmTables`, which applies to the file engine only.
+   */
+  public boolean storesInLsmTrees(String tableName) {
+    return lsmTables.contains(tableName);
+  }
+}
@@ -0,0 +1,12 @@
+package shortener.database.changes;
+
+/**
+ * A table write published to a change feed.
+ *
+ * @param sequence  Sequence number of the change, increasing within the table feed.
+ * @param type      Kind of the write.
+ * @param record    Created or deleted record.
+ * @param <EntityT> Table entity type.
+ */
+public record Change<EntityT>(long sequence, ChangeType type, EntityT record) {
+}
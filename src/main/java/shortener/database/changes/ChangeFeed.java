@@ -0,0 +1,489 @@
+package shortener.database.changes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.storage.ChangeLog;
+
+/**
+ * Ordered feed of the writes of a table for in-process subscribers.
+ *
+ * <p>Every published change gets the next sequence number and goes to a ring of the latest
+ * `capacity` changes, so publishing takes a short lock and no IO. A persister thread appends the
+ * ring to the `ChangeLog` in batches. A ring slot is reused only once its change is persisted,
+ * so writers are held back only if the log falls a whole ring behind.
+ *
+ * <p>Each subscription is delivered by its own daemon thread and only as many changes as it has
+ * requested, so a slow subscriber never holds writers back. A subscriber which falls out of the
+ * ring catches up from the log, which also lets it resume from a sequence number it has stored.
+ * Changes are published before their table writes are durable.
+ *
+ * <p>Sequence numbers increase but are not gapless: after a restart which didn't close the log,
+ * a ring worth of numbers is skipped, since changes numbered by them might have been delivered
+ * without being persisted. Those changes are lost, so a subscriber resuming within a skipped
+ * range gets the same error as one resuming before the retained changes. A feed without a log
+ * keeps only the ring.
+ *
+ * @param <EntityT> Table entity type.
+ */
+public class ChangeFeed<EntityT> implements Flow.Publisher<Change<EntityT>>, Closeable {
+
+  public static final int CAPACITY_DEFAULT = 64 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+
+  private static final int BATCH_SIZE = 1024;
+  private static final long RETRY_DELAY_MILLIS = 1000;
+  private static final long LATEST = Long.MIN_VALUE;
+
+  private final String tableName;
+  private final ChangeLog<EntityT> log;
+  private final Change<EntityT>[] ring;
+  private final int mask;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition published = lock.newCondition();
+  private final Condition persisted = lock.newCondition();
+
+  // Guarded by the lock
+  private boolean opened;
+  private boolean closed;
+  private long lastSequence;
+  private long persistedSequence;
+  private long firstRingSequence = 1;
+  // Sequence numbers from it up to the ring were skipped on the last restart
+  private long firstSkippedSequence = 1;
+  private Thread persister;
+
+
+  /**
+   * Constructs a feed.
+   *
+   * @param tableName Name of the table the changes belong to.
+   * @param log       Log to persist the changes to, null to keep only the ring.
+   * @param capacity  Amount of the latest changes kept in memory, a power of two.
+   */
+  @SuppressWarnings("unchecked")
+  public ChangeFeed(String tableName, ChangeLog<EntityT> log, int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Change feed capacity should be a power of two.");
+    }
+
+    this.tableName = tableName;
+    this.log = log;
+    this.ring = (Change<EntityT>[]) new Change<?>[capacity];
+    this.mask = capacity - 1;
+  }
+
+
+  /**
+   * Reads the log and starts persisting to it, which is done on the first use otherwise.
+   *
+   * @throws IOException Occurs if the log can't be read.
+   */
+  public void open() throws IOException {
+    lock.lock();
+    try {
+      openIfNeeded();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the sequence number of the latest published change.
+   *
+   * @return Sequence number, 0 if no change has ever been published.
+   * @throws IOException Occurs if the log can't be read.
+   */
+  public long getLastSequence() throws IOException {
+    lock.lock();
+    try {
+      openIfNeeded();
+
+      return lastSequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Publishes a table write. Called by the writer holding the shard write lock, so changes of a
+   * record are ordered as its writes.
+   *
+   * @param type   Kind of the write.
+   * @param record Created or deleted record.
+   * @return Sequence number of the change.
+   * @throws IOException Occurs if the log can't be read on the first use.
+   */
+  public long publish(ChangeType type, EntityT record) throws IOException {
+    lock.lock();
+    try {
+      if (closed) {
+        throw new IllegalStateException(
+            String.format("Change feed of table %s is closed.", tableName));
+      }
+      openIfNeeded();
+
+      while (lastSequence - persistedSequence >= ring.length) {
+        persisted.awaitUninterruptibly();
+      }
+
+      long sequence = ++lastSequence;
+      ring[(int) sequence & mask] = new Change<>(sequence, type, record);
+      if (log == null) {
+        persistedSequence = sequence;
+      }
+      published.signalAll();
+
+      return sequence;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Subscribes to the changes published after the call.
+   *
+   * @param subscriber Subscriber of the changes.
+   */
+  @Override
+  public void subscribe(Flow.Subscriber<? super Change<EntityT>> subscriber) {
+    long fromSequence;
+
+    lock.lock();
+    try {
+      fromSequence = opened ? lastSequence + 1 : LATEST;
+    } finally {
+      lock.unlock();
+    }
+
+    subscribe(fromSequence, subscriber);
+  }
+
+  /**
+   * Subscribes to the changes starting from the provided sequence number, e.g. the one after the
+   * last change a subscriber has processed before a restart. The subscriber gets an
+   * `IllegalStateException` error if the change is no longer retained.
+   *
+   * @param fromSequence Sequence number of the first change to deliver.
+   * @param subscriber   Subscriber of the changes.
+   */
+  public void subscribe(long fromSequence, Flow.Subscriber<? super Change<EntityT>> subscriber) {
+    FeedSubscription subscription = new FeedSubscription(subscriber,
+        fromSequence == LATEST ? LATEST : Math.max(fromSequence, 1));
+
+    Thread thread = new Thread(subscription::deliver, "change-subscriber-" + tableName);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Persists the published changes and closes the log. Subscriptions are completed once they
+   * have delivered the published changes they have requested.
+   *
+   * @throws IOException Occurs if the log can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    Thread stoppedPersister;
+
+    lock.lock();
+    try {
+      closed = true;
+      stoppedPersister = persister;
+      published.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    if (stoppedPersister != null) {
+      try {
+        stoppedPersister.join();
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      }
+      log.close();
+    }
+  }
+
+
+  private void openIfNeeded() throws IOException {
+    if (opened || closed) {
+      return;
+    }
+
+    if (log != null) {
+      ChangeLog.OpenedLog openedLog = log.open();
+
+      lastSequence = openedLog.lastSequence() + (openedLog.closed() ? 0 : ring.length);
+      persistedSequence = lastSequence;
+      firstRingSequence = lastSequence + 1;
+      firstSkippedSequence = openedLog.lastSequence() + 1;
+
+      persister = new Thread(this::persist, "change-persister-" + tableName);
+      persister.setDaemon(true);
+      persister.start();
+    }
+
+    opened = true;
+  }
+
+  private void persist() {
+    List<Change<EntityT>> batch = new ArrayList<>(BATCH_SIZE);
+    long appendedSequence;
+
+    lock.lock();
+    try {
+      appendedSequence = persistedSequence;
+    } finally {
+      lock.unlock();
+    }
+
+    while (true) {
+      batch.clear();
+
+      lock.lock();
+      try {
+        while (!closed && isPersisted(appendedSequence)) {
+          published.awaitUninterruptibly();
+        }
+
+        if (isPersisted(appendedSequence)) {
+          return;
+        }
+
+        for (long sequence = appendedSequence + 1;
+             sequence <= lastSequence && batch.size() < BATCH_SIZE; sequence++) {
+          batch.add(ring[(int) sequence & mask]);
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      try {
+        for (Change<EntityT> change : batch) {
+          log.append(change.sequence(), change.type() == ChangeType.DELETE, change.record());
+          appendedSequence = change.sequence();
+        }
+        log.flush();
+      } catch (IOException | RuntimeException exc) {
+        logger.error("Failed to persist changes of table {}.", tableName, exc);
+
+        // Appended changes are kept pending by the log, so the retry resumes after them
+        if (!sleepBeforeRetry()) {
+          return;
+        }
+        continue;
+      }
+
+      lock.lock();
+      try {
+        persistedSequence = appendedSequence;
+        persisted.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private boolean isPersisted(long appendedSequence) {
+    return lastSequence == appendedSequence && persistedSequence == appendedSequence;
+  }
+
+  private boolean sleepBeforeRetry() {
+    lock.lock();
+    try {
+      if (closed) {
+        return false;
+      }
+
+      persisted.await(RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+
+      return true;
+    } catch (InterruptedException exc) {
+      Thread.currentThread().interrupt();
+
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Subscription delivering changes from the ring or, once it falls behind, from the log.
+   */
+  private final class FeedSubscription implements Flow.Subscription {
+
+    private final Flow.Subscriber<? super Change<EntityT>> subscriber;
+    // Read and written by the delivery thread only
+    private long nextSequence;
+
+    // Guarded by the feed lock
+    private long demand;
+    private boolean cancelled;
+    private boolean invalidRequest;
+
+
+    private FeedSubscription(Flow.Subscriber<? super Change<EntityT>> subscriber,
+                             long fromSequence) {
+      this.subscriber = subscriber;
+      this.nextSequence = fromSequence;
+    }
+
+
+    @Override
+    public void request(long n) {
+      lock.lock();
+      try {
+        if (n <= 0) {
+          invalidRequest = true;
+        } else {
+          demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+        }
+        published.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void cancel() {
+      lock.lock();
+      try {
+        cancelled = true;
+        published.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+
+    private void deliver() {
+      subscriber.onSubscribe(this);
+
+      try {
+        lock.lock();
+        try {
+          openIfNeeded();
+          if (nextSequence == LATEST) {
+            nextSequence = lastSequence + 1;
+          }
+        } finally {
+          lock.unlock();
+        }
+
+        List<Change<EntityT>> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (true) {
+          batch.clear();
+          int batchSize;
+          long ringStart;
+
+          boolean completed;
+
+          lock.lock();
+          try {
+            while (!cancelled && !invalidRequest && !closed
+                && (demand == 0 || nextSequence > lastSequence)) {
+              published.awaitUninterruptibly();
+            }
+
+            if (cancelled) {
+              return;
+            }
+            if (invalidRequest) {
+              break;
+            }
+
+            completed = closed && (demand == 0 || nextSequence > lastSequence);
+            batchSize = (int) Math.min(demand, BATCH_SIZE);
+            ringStart = Math.max(firstRingSequence, lastSequence - ring.length + 1);
+
+            for (long sequence = nextSequence;
+                 sequence >= ringStart && sequence <= lastSequence && batch.size() < batchSize;
+                 sequence++) {
+              batch.add(ring[(int) sequence & mask]);
+            }
+          } finally {
+            lock.unlock();
+          }
+
+          if (completed) {
+            subscriber.onComplete();
+            return;
+          }
+          if (batch.isEmpty() && !readLog(ringStart, batchSize, batch)) {
+            return;
+          }
+
+          lock.lock();
+          try {
+            demand -= batch.size();
+          } finally {
+            lock.unlock();
+          }
+
+          for (Change<EntityT> change : batch) {
+            subscriber.onNext(change);
+            nextSequence = change.sequence() + 1;
+          }
+        }
+
+        subscriber.onError(
+            new IllegalArgumentException("Requested amount of changes should be positive."));
+      } catch (IOException exc) {
+        subscriber.onError(exc);
+      } catch (RuntimeException exc) {
+        logger.error("Subscriber of table {} changes failed.", tableName, exc);
+        cancel();
+      }
+    }
+
+    // Reads the next changes from the log, failing the subscription if they are not retained
+    private boolean readLog(long ringStart, int batchSize, List<Change<EntityT>> batch)
+        throws IOException {
+      long firstRetained = log != null ? log.getFirstSequence() : ringStart;
+
+      if (log == null || nextSequence < firstRetained) {
+        return failNotRetained(firstRetained);
+      }
+
+      if (nextSequence >= firstSkippedSequence && nextSequence < firstRingSequence) {
+        return failNotRetained(firstRingSequence);
+      }
+
+      log.read(nextSequence, batchSize, (sequence, deleted, record) -> batch.add(
+          new Change<>(sequence, deleted ? ChangeType.DELETE : ChangeType.CREATE, record)));
+
+      // Sequence numbers skipped on a restart leave a gap in the log, the batch stops before it
+      int contiguous = 0;
+      while (contiguous < batch.size()
+          && batch.get(contiguous).sequence() == nextSequence + contiguous) {
+        contiguous++;
+      }
+
+      if (contiguous == 0) {
+        return failNotRetained(batch.isEmpty() ? ringStart : batch.get(0).sequence());
+      }
+      batch.subList(contiguous, batch.size()).clear();
+
+      return true;
+    }
+
+    private boolean failNotRetained(long firstRetained) {
+      subscriber.onError(new IllegalStateException(String.format(
+          "Changes of table %s before %d are no longer retained.", tableName, firstRetained)));
+
+      return false;
+    }
+  }
+}
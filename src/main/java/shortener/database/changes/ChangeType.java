@@ -0,0 +1,9 @@
+package shortener.database.changes;
+
+/**
+ * Kind of a table write published to a change feed.
+ */
+public enum ChangeType {
+  CREATE,
+  DELETE
+}
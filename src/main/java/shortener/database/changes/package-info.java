@@ -0,0 +1,4 @@
+/**
+ * Database changes - ordered feeds of table writes for in-process subscribers.
+ */
+package shortener.database.changes;
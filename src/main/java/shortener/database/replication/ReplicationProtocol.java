@@ -0,0 +1,42 @@
+package shortener.database.replication;
+
+import java.time.Duration;
+
+/**
+ * Frames of the replication stream.
+ *
+ * <p>A replica connects to the leader and sends the table name (UTF) and the sequence number of
+ * the next change it needs (long), 0 for a snapshot. The leader answers with frames, each
+ * starting with its type byte:
+ * <ul>
+ *   <li>`SNAPSHOT_START` with the sequence number (long) the changes following the snapshot
+ *       start from, then a `SNAPSHOT_RECORD` with each live record (record frame) and
+ *       `SNAPSHOT_END`;</li>
+ *   <li>`CREATE` and `DELETE` with the change sequence number (long) and the record (record
+ *       frame);</li>
+ *   <li>`HEARTBEAT` with the sequence number of the latest change of the leader (long), sent
+ *       once the stream is idle for `HEARTBEAT_INTERVAL`;</li>
+ *   <li>`ERROR` with a message (UTF), after which the leader closes the connection.</li>
+ * </ul>
+ *
+ * <p>Records are sent in `RecordFrames`, since entries of a table file may refer to state of the
+ * leader, e.g. its URL prefix dictionary.
+ */
+final class ReplicationProtocol {
+
+  static final byte SNAPSHOT_START = 1;
+  static final byte SNAPSHOT_RECORD = 2;
+  static final byte SNAPSHOT_END = 3;
+  static final byte CREATE = 4;
+  static final byte DELETE = 5;
+  static final byte HEARTBEAT = 6;
+  static final byte ERROR = 7;
+
+  static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(1);
+  // A replica reconnects once the leader misses this many heartbeats
+  static final int MISSED_HEARTBEATS = 5;
+
+
+  private ReplicationProtocol() {
+  }
+}
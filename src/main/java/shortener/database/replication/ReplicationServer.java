@@ -0,0 +1,266 @@
+package shortener.database.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.changes.Change;
+import shortener.database.changes.ChangeFeed;
+import shortener.database.changes.ChangeType;
+import shortener.database.storage.RecordFrames;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Server of the leader which ships table change feeds to replicas, see `ReplicationProtocol`.
+ *
+ * <p>Every replica connection is served by its own daemon thread subscribed to the change feed
+ * of the requested table, so shipping never holds table writers back. A replica which needs a
+ * snapshot gets the live records first; the changes published meanwhile are shipped after
+ * them, which a replica applies idempotently.
+ */
+public class ReplicationServer implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ReplicationServer.class);
+
+  // Changes buffered between the feed and the socket of a replica
+  private static final int BUFFERED_CHANGES = 1024;
+
+  private final Map<String, DatabaseTable<?, ?>> databaseTables;
+  private final ServerSocket serverSocket;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+
+  /**
+   * Constructs a server and starts accepting replicas.
+   *
+   * @param port           Port to listen on, 0 for an ephemeral one.
+   * @param databaseTables Tables which can be replicated.
+   * @throws IOException Occurs if the port can't be listened on.
+   */
+  public ReplicationServer(int port, Collection<DatabaseTable<?, ?>> databaseTables)
+      throws IOException {
+    this.databaseTables = databaseTables.stream()
+        .collect(Collectors.toMap(DatabaseTable::getTableName, Function.identity()));
+    this.serverSocket = new ServerSocket(port);
+
+    Thread acceptor = new Thread(this::accept, "replication-server");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+
+  /**
+   * Returns the port the server listens on.
+   *
+   * @return Port number.
+   */
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Stops accepting replicas and disconnects the connected ones.
+   *
+   * @throws IOException Occurs if the server socket can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+
+    for (Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connections.add(socket);
+
+        Thread shipper = new Thread(() -> serve(socket), "replication-shipper");
+        shipper.setDaemon(true);
+        shipper.start();
+      } catch (IOException exc) {
+        if (!serverSocket.isClosed()) {
+          logger.error("Failed to accept a replica connection.", exc);
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      String tableName = in.readUTF();
+      long nextSequence = in.readLong();
+      DatabaseTable<?, ?> databaseTable = databaseTables.get(tableName);
+
+      if (databaseTable == null) {
+        out.writeByte(ReplicationProtocol.ERROR);
+        out.writeUTF(String.format("Table %s is not replicated.", tableName));
+        out.flush();
+        return;
+      }
+
+      logger.info("Shipping table {} to replica {} from change {}.", tableName,
+          socket.getRemoteSocketAddress(), nextSequence > 0 ? nextSequence : "snapshot");
+      ship(databaseTable, nextSequence, out);
+    } catch (IOException exc) {
+      logger.info("Replica {} disconnected: {}", socket.getRemoteSocketAddress(),
+          exc.getMessage());
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  private <EntityT> void ship(DatabaseTable<EntityT, ?> databaseTable, long nextSequence,
+                              DataOutputStream out) throws IOException {
+    ChangeFeed<EntityT> feed = databaseTable.getChangeFeed();
+    BufferingSubscriber<EntityT> subscriber = new BufferingSubscriber<>();
+    long fromSequence = nextSequence > 0 ? nextSequence : feed.getLastSequence() + 1;
+
+    // Subscribed before the snapshot is read, so no change after it is missed
+    feed.subscribe(fromSequence, subscriber);
+
+    try {
+      if (nextSequence <= 0) {
+        out.writeByte(ReplicationProtocol.SNAPSHOT_START);
+        out.writeLong(fromSequence);
+
+        Iterator<EntityT> records = databaseTable.streamRecords().iterator();
+        while (records.hasNext()) {
+          out.writeByte(ReplicationProtocol.SNAPSHOT_RECORD);
+          RecordFrames.write(databaseTable, records.next(), out);
+        }
+
+        out.writeByte(ReplicationProtocol.SNAPSHOT_END);
+      }
+
+      while (true) {
+        Change<EntityT> change = subscriber.poll();
+
+        if (change == null) {
+          if (subscriber.error != null) {
+            out.writeByte(ReplicationProtocol.ERROR);
+            out.writeUTF(String.valueOf(subscriber.error.getMessage()));
+            out.flush();
+            return;
+          }
+          if (subscriber.completed) {
+            return;
+          }
+
+          out.writeByte(ReplicationProtocol.HEARTBEAT);
+          out.writeLong(feed.getLastSequence());
+          out.flush();
+          continue;
+        }
+
+        out.writeByte(change.type() == ChangeType.CREATE
+            ? ReplicationProtocol.CREATE
+            : ReplicationProtocol.DELETE);
+        out.writeLong(change.sequence());
+        RecordFrames.write(databaseTable, change.record(), out);
+        subscriber.request(1);
+
+        // Changes arriving together are sent in a single write
+        if (subscriber.isEmpty()) {
+          out.flush();
+        }
+      }
+    } finally {
+      subscriber.cancel();
+    }
+  }
+
+
+  /**
+   * Subscriber buffering a bounded amount of changes for the shipping thread.
+   */
+  private static final class BufferingSubscriber<EntityT>
+      implements Flow.Subscriber<Change<EntityT>> {
+
+    private final BlockingQueue<Change<EntityT>> changes = new LinkedBlockingQueue<>();
+    private Flow.Subscription subscription;
+    private boolean cancelled;
+    private volatile Throwable error;
+    private volatile boolean completed;
+
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+
+      if (cancelled) {
+        subscription.cancel();
+      } else {
+        subscription.request(BUFFERED_CHANGES);
+      }
+    }
+
+    @Override
+    public void onNext(Change<EntityT> item) {
+      changes.add(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+
+
+    private Change<EntityT> poll() {
+      try {
+        return changes.poll(ReplicationProtocol.HEARTBEAT_INTERVAL.toMillis(),
+            TimeUnit.MILLISECONDS);
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        completed = true;
+
+        return null;
+      }
+    }
+
+    private boolean isEmpty() {
+      return changes.isEmpty();
+    }
+
+    private synchronized void request(long n) {
+      subscription.request(n);
+    }
+
+    private synchronized void cancel() {
+      cancelled = true;
+
+      if (subscription != null) {
+        subscription.cancel();
+      }
+    }
+  }
+}
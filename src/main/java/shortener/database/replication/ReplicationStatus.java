@@ -0,0 +1,21 @@
+package shortener.database.replication;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+
+/**
+ * Replication state of a table on a replica.
+ *
+ * @param table              Table name.
+ * @param synced             Whether the snapshot of the table has been copied.
+ * @param appliedSequence    Sequence number of the latest applied change of the leader.
+ * @param leaderSequence     Sequence number of the latest change of the leader the replica
+ *                           knows of.
+ * @param lag                Amount of changes of the leader not applied yet, approximate since
+ *                           sequence numbers may have gaps.
+ * @param millisSinceContact Time since the latest frame from the leader, which grows while the
+ *                           leader is unreachable.
+ */
+@JsonAutoDetect(fieldVisibility = JsonAutoDetect.Visibility.ANY)
+public record ReplicationStatus(String table, boolean synced, long appliedSequence,
+                                long leaderSequence, long lag, long millisSinceContact) {
+}
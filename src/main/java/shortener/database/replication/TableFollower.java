@@ -0,0 +1,185 @@
+package shortener.database.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.Database;
+import shortener.database.changes.ChangeType;
+import shortener.database.storage.RecordFrames;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Follower of a table of the leader on a replica, see `ReplicationProtocol`.
+ *
+ * <p>A daemon thread copies a snapshot of the table, then applies the changes shipped by the
+ * leader. Once the connection is lost, the thread reconnects and resumes after the latest
+ * applied change. A new snapshot is copied if the leader no longer retains that change or is
+ * behind the replica, e.g. after its data has been replaced.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class TableFollower<EntityT, PrimaryKeyT> implements Closeable {
+
+  private static final Logger logger = LoggerFactory.getLogger(TableFollower.class);
+
+  private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+  private final Database db;
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final InetSocketAddress leaderAddress;
+  private final Thread thread;
+
+  private volatile boolean closed;
+  private volatile Socket socket;
+  // Written by the follower thread only
+  private volatile boolean synced;
+  private volatile long appliedSequence;
+  private volatile long leaderSequence;
+  private volatile long lastContactMillis = System.currentTimeMillis();
+
+
+  /**
+   * Constructs a follower and starts following the leader.
+   *
+   * @param db            Replica database to apply the changes to.
+   * @param databaseTable Table to follow.
+   * @param leaderAddress Address of the replication server of the leader.
+   */
+  public TableFollower(Database db, DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                       InetSocketAddress leaderAddress) {
+    this.db = db;
+    this.databaseTable = databaseTable;
+    this.leaderAddress = leaderAddress;
+
+    thread = new Thread(this::follow, "replication-follower-" + databaseTable.getTableName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  /**
+   * Returns the replication state of the table.
+   *
+   * @return Replication status.
+   */
+  public ReplicationStatus getStatus() {
+    long applied = appliedSequence;
+    long leader = Math.max(leaderSequence, applied);
+
+    return new ReplicationStatus(databaseTable.getTableName(), synced, applied, leader,
+        leader - applied, System.currentTimeMillis() - lastContactMillis);
+  }
+
+  /**
+   * Stops following the leader.
+   *
+   * @throws IOException Occurs if the connection can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    thread.interrupt();
+
+    Socket connection = socket;
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+
+  private void follow() {
+    while (!closed) {
+      try (Socket connection = new Socket(leaderAddress.getHostString(),
+          leaderAddress.getPort())) {
+        socket = connection;
+        connection.setSoTimeout((int) ReplicationProtocol.HEARTBEAT_INTERVAL.toMillis()
+            * ReplicationProtocol.MISSED_HEARTBEATS);
+
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        out.writeUTF(databaseTable.getTableName());
+        out.writeLong(synced ? appliedSequence + 1 : 0);
+        out.flush();
+
+        apply(new DataInputStream(new BufferedInputStream(connection.getInputStream())));
+      } catch (IOException exc) {
+        if (!closed) {
+          logger.warn("Lost the leader {} of table {}, reconnecting: {}", leaderAddress,
+              databaseTable.getTableName(), exc.getMessage());
+        }
+      }
+
+      try {
+        Thread.sleep(RECONNECT_DELAY_MILLIS);
+      } catch (InterruptedException exc) {
+        return;
+      }
+    }
+  }
+
+  private void apply(DataInputStream in) throws IOException {
+    Set<PrimaryKeyT> snapshotKeys = new HashSet<>();
+    long snapshotSequence = 0;
+
+    while (true) {
+      byte frame = in.readByte();
+      lastContactMillis = System.currentTimeMillis();
+
+      if (frame == ReplicationProtocol.SNAPSHOT_START) {
+        snapshotSequence = in.readLong() - 1;
+        snapshotKeys.clear();
+      } else if (frame == ReplicationProtocol.SNAPSHOT_RECORD) {
+        EntityT record = RecordFrames.read(databaseTable, in);
+
+        db.apply(databaseTable, ChangeType.CREATE, record);
+        snapshotKeys.add(databaseTable.getPrimaryKey(record));
+      } else if (frame == ReplicationProtocol.SNAPSHOT_END) {
+        // Records deleted on the leader while the replica was disconnected
+        for (EntityT record : db.search(databaseTable)) {
+          if (!snapshotKeys.contains(databaseTable.getPrimaryKey(record))) {
+            db.apply(databaseTable, ChangeType.DELETE, record);
+          }
+        }
+
+        snapshotKeys.clear();
+        appliedSequence = snapshotSequence;
+        synced = true;
+        logger.info("Copied a snapshot of table {} from the leader {}.",
+            databaseTable.getTableName(), leaderAddress);
+      } else if (frame == ReplicationProtocol.CREATE || frame == ReplicationProtocol.DELETE) {
+        long sequence = in.readLong();
+        EntityT record = RecordFrames.read(databaseTable, in);
+
+        db.apply(databaseTable,
+            frame == ReplicationProtocol.CREATE ? ChangeType.CREATE : ChangeType.DELETE, record);
+        appliedSequence = sequence;
+      } else if (frame == ReplicationProtocol.HEARTBEAT) {
+        leaderSequence = in.readLong();
+
+        if (synced && leaderSequence < appliedSequence) {
+          logger.warn("The leader {} is behind table {} of the replica, copying a snapshot.",
+              leaderAddress, databaseTable.getTableName());
+          synced = false;
+          return;
+        }
+      } else if (frame == ReplicationProtocol.ERROR) {
+        logger.warn("The leader {} refused to ship table {}: {} Copying a snapshot.",
+            leaderAddress, databaseTable.getTableName(), in.readUTF());
+        synced = false;
+        return;
+      } else {
+        throw new IOException(String.format("Unknown replication frame %d.", frame));
+      }
+    }
+  }
+}
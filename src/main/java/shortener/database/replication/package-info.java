@@ -0,0 +1,4 @@
+/**
+ * Database replication - shipping table change feeds from the leader to read-only replicas.
+ */
+package shortener.database.replication;
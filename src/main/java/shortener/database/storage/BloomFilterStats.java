@@ -0,0 +1,41 @@
+package shortener.database.storage;
+
+import java.util.Collection;
+
+/**
+ * Size and accuracy of a Bloom filter.
+ *
+ * @param sizeInBits        Amount of bits the filter takes.
+ * @param stages            Amount of fixed-size filters the scalable filter consists of.
+ * @param insertions        Amount of added keys.
+ * @param falsePositiveRate Estimated probability that an absent key is reported as present.
+ */
+public record BloomFilterStats(long sizeInBits, int stages, long insertions,
+                               double falsePositiveRate) {
+
+  /**
+   * Sums stats of filters which cover disjoint key sets, e.g. filters of table shards.
+   *
+   * <p>A key is checked against a single filter, so the false positive rate of the filters is
+   * the average of their rates weighted by their insertions.
+   *
+   * @param stats Stats of the filters.
+   * @return Combined stats.
+   */
+  public static BloomFilterStats combine(Collection<BloomFilterStats> stats) {
+    long sizeInBits = 0;
+    int stages = 0;
+    long insertions = 0;
+    double weightedRate = 0;
+
+    for (BloomFilterStats filterStats : stats) {
+      sizeInBits += filterStats.sizeInBits();
+      stages += filterStats.stages();
+      insertions += filterStats.insertions();
+      weightedRate += filterStats.falsePositiveRate() * filterStats.insertions();
+    }
+
+    return new BloomFilterStats(sizeInBits, stages, insertions,
+        insertions == 0 ? 0 : weightedRate / insertions);
+  }
+}
@@ -0,0 +1,354 @@
+package shortener.database.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * File of the latest changes of a table, which lets change feed subscribers resume from a
+ * sequence number.
+ *
+ * <p>The file is of the table file format: an entry per change, which is a sequence number and
+ * the changed record, with tombstones for deletions. Once the file reaches `maxFileEntries`, it
+ * replaces the archive file (`.changes.old`) and a new one is started, so the changes of the two
+ * latest files are retained. Every `INDEX_INTERVAL`-th entry is indexed in memory, so a read
+ * from a sequence number decodes at most that many skipped entries.
+ *
+ * <p>A closed log ends with a marker, so a reopened feed knows that no appended change was lost
+ * and continues right after the last one. A torn tail is truncated on open, while a corrupted
+ * entry followed by valid ones fails it, since truncating there would drop acknowledged changes.
+ *
+ * @param <EntityT> Table entity type.
+ */
+public class ChangeLog<EntityT> implements Closeable {
+
+  public static final String FILE_SUFFIX = ".changes";
+  public static final String ARCHIVE_FILE_SUFFIX = ".old";
+  public static final long MAX_FILE_ENTRIES_DEFAULT = 1024 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(ChangeLog.class);
+
+  private static final int INDEX_INTERVAL = 1024;
+  private static final long CLOSED_MARKER = -1;
+
+  private final DatabaseTable<EntityT, ?> databaseTable;
+  private final Path filePath;
+  private final Path archiveFilePath;
+  private final long maxFileEntries;
+
+  private final RecordWriter writer = new RecordWriter();
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+  private FileChannel channel;
+  // Sequence numbers of indexed entries mapped to their offsets
+  private NavigableMap<Long, Long> index = new TreeMap<>();
+  private NavigableMap<Long, Long> archiveIndex = Collections.emptyNavigableMap();
+  private long length;
+  private long archiveLength;
+  private long fileEntries;
+  private long lastSequence;
+
+
+  /**
+   * Constructs a log stored in the provided file.
+   *
+   * @param databaseTable  Database table the changes belong to.
+   * @param filePath       Path to the change file.
+   * @param maxFileEntries Amount of changes after which the file is archived.
+   */
+  public ChangeLog(DatabaseTable<EntityT, ?> databaseTable, Path filePath, long maxFileEntries) {
+    if (maxFileEntries < 1) {
+      throw new IllegalArgumentException("A change file should hold at least one change.");
+    }
+
+    this.databaseTable = databaseTable;
+    this.filePath = filePath;
+    this.archiveFilePath = filePath.resolveSibling(filePath.getFileName() + ARCHIVE_FILE_SUFFIX);
+    this.maxFileEntries = maxFileEntries;
+  }
+
+
+  /**
+   * Reads the change files, creating them if they don't exist.
+   *
+   * @return Sequence number of the last change and whether the log was closed after it, the
+   *     sequence number is 0 if there are none.
+   * @throws CorruptedEntryException Occurs if a file has a corrupted entry which is not a torn
+   *                                 tail.
+   * @throws IOException Occurs if the files can't be read or written.
+   */
+  public synchronized OpenedLog open() throws IOException {
+    OpenedLog opened = new OpenedLog(0, true);
+
+    if (Files.exists(archiveFilePath)) {
+      archiveIndex = new TreeMap<>();
+      Scan scan = scan(archiveFilePath, archiveIndex);
+      archiveLength = scan.length;
+      // The archive is complete, but the file which replaced it may be missing after a crash
+      opened = new OpenedLog(scan.lastSequence, false);
+    }
+
+    if (Files.exists(filePath) && Files.size(filePath) > 0) {
+      Scan scan = scan(filePath, index);
+
+      if (scan.length < Files.size(filePath)) {
+        logger.warn("Truncating a torn tail of {} bytes off {}.",
+            Files.size(filePath) - scan.length, filePath);
+      }
+
+      channel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+      channel.truncate(scan.length);
+      channel.position(scan.length);
+      length = scan.length;
+      fileEntries = scan.entries;
+      opened = new OpenedLog(scan.entries > 0 ? scan.lastSequence : opened.lastSequence,
+          scan.closed);
+    } else {
+      createFile();
+    }
+
+    lastSequence = opened.lastSequence;
+
+    return opened;
+  }
+
+  /**
+   * Returns the sequence number of the oldest retained change.
+   *
+   * @return Oldest sequence number, the next one if no change is retained.
+   */
+  public synchronized long getFirstSequence() {
+    if (!archiveIndex.isEmpty()) {
+      return archiveIndex.firstKey();
+    }
+
+    return index.isEmpty() ? lastSequence + 1 : index.firstKey();
+  }
+
+  /**
+   * Appends a change to the pending batch, which is written by `flush`.
+   *
+   * @param sequence Sequence number of the change, larger than the previous one.
+   * @param deleted  Whether the record has been deleted.
+   * @param record   Changed record.
+   * @throws IOException Occurs if the file can't be archived.
+   */
+  public synchronized void append(long sequence, boolean deleted, EntityT record)
+      throws IOException {
+    if (fileEntries >= maxFileEntries) {
+      archive();
+    }
+
+    if (fileEntries % INDEX_INTERVAL == 0) {
+      index.put(sequence, length + pending.size());
+    }
+
+    writer.reset();
+    writer.writeLong(sequence);
+    databaseTable.encode(record, writer);
+    pending.writeBytes(writer.toEntry(deleted));
+    fileEntries++;
+    lastSequence = sequence;
+  }
+
+  /**
+   * Writes and syncs the pending batch, whose changes can be read afterwards.
+   *
+   * @throws IOException Occurs if the file can't be written.
+   */
+  public synchronized void flush() throws IOException {
+    if (pending.size() == 0) {
+      return;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+
+    length += pending.size();
+    pending.reset();
+  }
+
+  /**
+   * Reads written changes in the sequence order.
+   *
+   * @param fromSequence Sequence number to start from, earlier changes are skipped.
+   * @param limit        Maximal amount of changes to read.
+   * @param visitor      Receives the read changes.
+   * @return Amount of read changes.
+   * @throws IOException Occurs if the files can't be read.
+   */
+  public synchronized int read(long fromSequence, int limit, Visitor<EntityT> visitor)
+      throws IOException {
+    int read = 0;
+
+    if (!archiveIndex.isEmpty() && (index.isEmpty() || fromSequence < index.firstKey())) {
+      read = read(archiveFilePath, archiveIndex, archiveLength, fromSequence, limit, visitor);
+    }
+
+    if (read < limit && !index.isEmpty()) {
+      read += read(filePath, index, length, fromSequence, limit - read, visitor);
+    }
+
+    return read;
+  }
+
+  /**
+   * Writes the pending batch and the closing marker, and closes the file.
+   *
+   * @throws IOException Occurs if the file can't be written.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel == null) {
+      return;
+    }
+
+    writer.reset();
+    writer.writeLong(CLOSED_MARKER);
+    pending.writeBytes(writer.toEntry(false));
+    flush();
+
+    channel.close();
+    channel = null;
+  }
+
+
+  private void createFile() throws IOException {
+    Files.write(filePath, RecordFormat.header());
+
+    channel = FileChannel.open(filePath, StandardOpenOption.WRITE);
+    channel.position(RecordFormat.HEADER_LENGTH);
+    channel.force(true);
+    length = RecordFormat.HEADER_LENGTH;
+    fileEntries = 0;
+  }
+
+  private void archive() throws IOException {
+    flush();
+    channel.close();
+
+    Files.move(filePath, archiveFilePath, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    archiveIndex = index;
+    archiveLength = length;
+    index = new TreeMap<>();
+
+    createFile();
+  }
+
+  private int read(Path path, NavigableMap<Long, Long> fileIndex, long fileLength,
+                   long fromSequence, int limit, Visitor<EntityT> visitor) throws IOException {
+    Map.Entry<Long, Long> start = fileIndex.floorEntry(fromSequence);
+    long offset = start != null ? start.getValue() : fileIndex.firstEntry().getValue();
+    int read = 0;
+
+    try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer =
+          readChannel.map(FileChannel.MapMode.READ_ONLY, offset, fileLength - offset);
+      RecordReader reader = new RecordReader(buffer);
+
+      while (read < limit && reader.nextEntry()) {
+        long sequence = reader.readLong();
+
+        if (sequence >= fromSequence) {
+          visitor.visit(sequence, reader.isTombstone(), databaseTable.decode(reader));
+          read++;
+        }
+      }
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+
+    return read;
+  }
+
+  private Scan scan(Path path, NavigableMap<Long, Long> fileIndex) throws IOException {
+    try (FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+      byte version = RecordFormat.checkHeader(buffer, path);
+      RecordReader reader = new RecordReader(buffer.position(RecordFormat.HEADER_LENGTH),
+          version);
+      long entries = 0;
+      long lastFileSequence = 0;
+      boolean closed = false;
+      int validLength = buffer.limit();
+
+      try {
+        while (reader.nextEntry()) {
+          long sequence = reader.readLong();
+
+          if (sequence == CLOSED_MARKER) {
+            closed = true;
+          } else {
+            if (entries % INDEX_INTERVAL == 0) {
+              fileIndex.put(sequence, (long) reader.getEntryStart());
+            }
+            entries++;
+            lastFileSequence = sequence;
+            closed = false;
+          }
+        }
+      } catch (UncheckedIOException exc) {
+        if (!TableScanner.isTornTail(path, reader.getEntryStart())) {
+          throw new CorruptedEntryException(path, reader.getEntryStart(), buffer.limit());
+        }
+
+        // A torn entry after the closing marker means the log has been written to since
+        validLength = reader.getEntryStart();
+        closed = false;
+      }
+
+      return new Scan(validLength, entries, lastFileSequence, closed);
+    }
+  }
+
+
+  /**
+   * Receiver of read changes.
+   *
+   * @param <EntityT> Table entity type.
+   */
+  @FunctionalInterface
+  public interface Visitor<EntityT> {
+
+    /**
+     * Receives a change.
+     *
+     * @param sequence Sequence number of the change.
+     * @param deleted  Whether the record has been deleted.
+     * @param record   Changed record.
+     */
+    void visit(long sequence, boolean deleted, EntityT record);
+  }
+
+  /**
+   * State of an opened log.
+   *
+   * @param lastSequence Sequence number of the last change, 0 if there are none.
+   * @param closed       Whether the log has been closed after the last change, so none of the
+   *                     changes published before the restart is missing.
+   */
+  public record OpenedLog(long lastSequence, boolean closed) {
+  }
+
+  private record Scan(long length, long entries, long lastSequence, boolean closed) {
+  }
+}
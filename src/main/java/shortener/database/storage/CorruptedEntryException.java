@@ -0,0 +1,40 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Exception for a table file entry which is truncated or doesn't match its checksum.
+ */
+public class CorruptedEntryException extends IOException {
+  private static final String message = "%s has a corrupted entry at offset %d of %d.";
+
+  private final long offset;
+  private final long fileLength;
+
+  /**
+   * Constructs an exception.
+   *
+   * @param filePath   Path to the table file.
+   * @param offset     Offset of the first corrupted entry.
+   * @param fileLength Length of the file.
+   */
+  public CorruptedEntryException(Path filePath, long offset, long fileLength) {
+    super(String.format(message, filePath, offset, fileLength));
+    this.offset = offset;
+    this.fileLength = fileLength;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Returns amount of bytes from the corrupted entry up to the end of the file.
+   *
+   * @return Length of the corrupted part.
+   */
+  public long getCorruptedLength() {
+    return fileLength - offset;
+  }
+}
@@ -0,0 +1,27 @@
+package shortener.database.storage;
+
+import java.time.Duration;
+
+/**
+ * Durability settings of table file appends.
+ *
+ * @param mode                When an append is considered durable.
+ * @param groupCommitInterval For how long a group commit collects a batch.
+ * @param groupCommitBatch    Amount of entries which is written without waiting for the interval.
+ */
+public record Durability(DurabilityMode mode, Duration groupCommitInterval,
+                         int groupCommitBatch) {
+
+  public static final Durability DEFAULT =
+      new Durability(DurabilityMode.GROUP_COMMIT, Duration.ofMillis(1), 256);
+
+  /**
+   * Validates the settings.
+   */
+  public Durability {
+    if (mode == null || groupCommitInterval == null || groupCommitInterval.isNegative()
+        || groupCommitBatch < 1) {
+      throw new IllegalArgumentException("Invalid durability settings.");
+    }
+  }
+}
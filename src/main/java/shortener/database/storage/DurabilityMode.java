@@ -0,0 +1,33 @@
+package shortener.database.storage;
+
+import java.util.Locale;
+
+/**
+ * Defines when an appended table file entry is considered durable.
+ */
+public enum DurabilityMode {
+  /**
+   * Every append waits for an fsync, concurrent appends share it.
+   */
+  ALWAYS_FSYNC,
+  /**
+   * Every append waits for an fsync of a batch, which is collected for up to the commit interval.
+   */
+  GROUP_COMMIT,
+  /**
+   * Every append is handed to the OS right away and is never synced.
+   */
+  OS_BUFFERED;
+
+
+  /**
+   * Parses a mode of its configuration name, e.g. `group-commit`.
+   *
+   * @param name Mode name.
+   * @return Durability mode.
+   * @throws IllegalArgumentException Thrown if there is no such mode.
+   */
+  public static DurabilityMode of(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+  }
+}
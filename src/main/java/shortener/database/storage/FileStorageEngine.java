@@ -0,0 +1,54 @@
+package shortener.database.storage;
+
+import java.nio.file.Path;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Storage engine which appends table writes to shard files and keeps the records in memory or
+ * in LSM trees next to the files.
+ */
+public class FileStorageEngine implements StorageEngine {
+
+  public static final String NAME = "file";
+
+  private final Durability durability;
+  private final boolean lsmStorage;
+
+
+  /**
+   * Constructs an engine which keeps the records in memory.
+   *
+   * @param durability Durability settings of the shard file appends.
+   */
+  public FileStorageEngine(Durability durability) {
+    this(durability, false);
+  }
+
+  /**
+   * Constructs an engine.
+   *
+   * @param durability Durability settings of the shard file appends.
+   * @param lsmStorage Whether the records are stored in LSM trees.
+   */
+  public FileStorageEngine(Durability durability, boolean lsmStorage) {
+    this.durability = durability;
+    this.lsmStorage = lsmStorage;
+  }
+
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isPersistent() {
+    return true;
+  }
+
+  @Override
+  public <EntityT, PrimaryKeyT> TableShard<EntityT, PrimaryKeyT> createShard(
+      DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath, boolean filtered) {
+    return new FileTableShard<>(databaseTable, filePath, durability, filtered, lsmStorage);
+  }
+}
@@ -0,0 +1,271 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+import shortener.database.tables.PrimaryKeyIndex;
+
+/**
+ * A table shard stored in its own file by the `FileStorageEngine`.
+ *
+ * <p>Writes are appended to the shard log, and records are read from the primary key index,
+ * which is built of the log on first access.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class FileTableShard<EntityT, PrimaryKeyT> implements TableShard<EntityT, PrimaryKeyT> {
+
+  private static final Logger logger = LoggerFactory.getLogger(FileTableShard.class);
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final TableLog<EntityT, PrimaryKeyT> log;
+  // Null if the records are kept in memory
+  private final LsmTree<EntityT, PrimaryKeyT> lsmTree;
+  private final PrimaryKeyIndex<EntityT, PrimaryKeyT> primaryKeyIndex;
+
+
+  /**
+   * Constructs a shard stored in the provided file.
+   *
+   * @param databaseTable Database table the shard belongs to.
+   * @param filePath      Path to the shard file.
+   * @param durability    Durability settings of the shard file appends.
+   * @param filtered      Whether the shard index is backed by a Bloom filter of its keys.
+   */
+  public FileTableShard(DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath,
+                        Durability durability, boolean filtered) {
+    this(databaseTable, filePath, durability, filtered, false);
+  }
+
+  /**
+   * Constructs a shard stored in the provided file, whose records are either kept in memory or
+   * stored in an `LsmTree` next to the file.
+   *
+   * @param databaseTable Database table the shard belongs to.
+   * @param filePath      Path to the shard file.
+   * @param durability    Durability settings of the shard file appends.
+   * @param filtered      Whether the shard index is backed by a Bloom filter of its keys.
+   * @param lsmStorage    Whether the shard records are stored in an LSM tree.
+   */
+  public FileTableShard(DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath,
+                        Durability durability, boolean filtered, boolean lsmStorage) {
+    this.databaseTable = databaseTable;
+    log = new TableLog<>(databaseTable, filePath, durability);
+    lsmTree = lsmStorage
+        ? new LsmTree<>(databaseTable, log, LsmTree.MEMTABLE_ENTRIES_DEFAULT)
+        : null;
+    // Segments of the tree have Bloom filters of their own
+    primaryKeyIndex = new PrimaryKeyIndex<>(databaseTable, log, filtered && !lsmStorage,
+        lsmTree);
+  }
+
+
+  /**
+   * Returns a pattern of shard file names of the table: `table` or `table.N`.
+   *
+   * @param tableName Table name.
+   * @return Shard file name pattern.
+   */
+  public static Pattern fileNamePattern(String tableName) {
+    return Pattern.compile(Pattern.quote(tableName) + "(\\.\\d+)?");
+  }
+
+
+  @Override
+  public Path getFilePath() {
+    return log.getFilePath();
+  }
+
+  @Override
+  public MeteredLock getWriteLock() {
+    return log.getWriteLock();
+  }
+
+  public TableLog<EntityT, PrimaryKeyT> getLog() {
+    return log;
+  }
+
+  public PrimaryKeyIndex<EntityT, PrimaryKeyT> getPrimaryKeyIndex() {
+    return primaryKeyIndex;
+  }
+
+  /**
+   * Returns the LSM tree the shard records are stored in.
+   *
+   * @return LSM tree or null if the records are kept in memory.
+   */
+  public LsmTree<EntityT, PrimaryKeyT> getLsmTree() {
+    return lsmTree;
+  }
+
+
+  @Override
+  public Optional<EntityT> get(PrimaryKeyT pk) throws IOException {
+    return primaryKeyIndex.get(pk);
+  }
+
+  @Override
+  public boolean contains(PrimaryKeyT pk) throws IOException {
+    return primaryKeyIndex.contains(pk);
+  }
+
+  @Override
+  public Collection<EntityT> values() throws IOException {
+    return primaryKeyIndex.values();
+  }
+
+  @Override
+  public int size() throws IOException {
+    return primaryKeyIndex.size();
+  }
+
+  @Override
+  public LogCommit insert(EntityT record) throws IOException {
+    LogCommit commit = log.append(record);
+    primaryKeyIndex.put(record);
+
+    return commit;
+  }
+
+  @Override
+  public LogCommit delete(EntityT record) throws IOException {
+    LogCommit commit = log.appendTombstone(record);
+    primaryKeyIndex.remove(databaseTable.getPrimaryKey(record));
+
+    return commit;
+  }
+
+  @Override
+  public Optional<BloomFilterStats> getFilterStats() throws IOException {
+    return primaryKeyIndex.getFilterStats();
+  }
+
+
+  /**
+   * Creates the shard file and its directory if they don't exist, migrates the file to the
+   * current record format, and moves records of the LSM tree next to the file into it if the
+   * shard no longer stores records in an LSM tree.
+   *
+   * @throws IOException Filesystem error.
+   */
+  @Override
+  public void init() throws IOException {
+    createFileIfMissing();
+    log.migrateIfNeeded();
+
+    if (lsmTree == null && Files.isDirectory(LsmTree.directoryOf(getFilePath()))) {
+      moveRecordsOutOfLsmTree();
+    }
+  }
+
+  /**
+   * Creates the shard file and its directory if they don't exist.
+   *
+   * @throws IOException Filesystem error.
+   */
+  public void createFileIfMissing() throws IOException {
+    Path filePath = getFilePath();
+
+    Files.createDirectories(filePath.getParent());
+
+    if (!Files.exists(filePath)) {
+      Files.createFile(filePath);
+    }
+  }
+
+  @Override
+  public List<String> readEntries() throws IOException {
+    return log.readEntries();
+  }
+
+  @Override
+  public long getTailEntries() {
+    return log.getTailEntries();
+  }
+
+  @Override
+  public long getDeadEntries() throws IOException {
+    // An LSM tree compacts its segments as it flushes them
+    return lsmTree != null ? 0 : log.getEntries() - primaryKeyIndex.size();
+  }
+
+  /**
+   * Writes a snapshot of the shard records, so loading the shard replays only the later entries.
+   * A shard stored in an LSM tree flushes its memtable instead, which drops the flushed entries
+   * from the shard file.
+   *
+   * @throws IOException Occurs if the snapshot can't be written.
+   */
+  @Override
+  public void checkpoint() throws IOException {
+    if (lsmTree != null) {
+      // Builds the index first, which replays the shard file into the memtable
+      primaryKeyIndex.size();
+      lsmTree.flush();
+    } else {
+      log.checkpoint(primaryKeyIndex);
+    }
+  }
+
+  /**
+   * Rewrites the shard file so it contains only live records. A shard stored in an LSM tree
+   * merges all segments of the tree instead.
+   *
+   * @param throttle Limits the write rate of the compaction.
+   * @throws IOException Occurs if the shard file can't be rewritten.
+   */
+  @Override
+  public void compact(IoThrottle throttle) throws IOException {
+    if (lsmTree != null) {
+      primaryKeyIndex.size();
+      lsmTree.compact(throttle);
+    } else {
+      log.compact(throttle, primaryKeyIndex);
+    }
+  }
+
+  /**
+   * Writes pending appends to the shard file and closes it along with the LSM tree files.
+   *
+   * @throws IOException Occurs if the shard file can't be written.
+   */
+  @Override
+  public void close() throws IOException {
+    log.close();
+
+    if (lsmTree != null) {
+      lsmTree.close();
+    }
+  }
+
+
+  private void moveRecordsOutOfLsmTree() throws IOException {
+    logger.info("Moving {} records out of its LSM tree...", getFilePath());
+
+    LsmTree<EntityT, PrimaryKeyT> movedTree =
+        new LsmTree<>(databaseTable, log, LsmTree.MEMTABLE_ENTRIES_DEFAULT);
+
+    // Records of the shard file are appended once more, which doesn't change them
+    try {
+      for (EntityT record : movedTree.open(log.loadChanges()).values()) {
+        log.append(record);
+      }
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    } finally {
+      movedTree.close();
+    }
+
+    log.flush();
+    LsmTree.delete(getFilePath());
+  }
+}
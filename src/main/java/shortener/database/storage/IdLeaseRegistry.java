@@ -0,0 +1,129 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent registry leasing disjoint ranges of a 64-bit id space to the instances sharing it.
+ *
+ * <p>The lease file stores the first id not leased yet. A lease moves it a whole range ahead
+ * under an exclusive file lock, so instances sharing the file, e.g. on a common volume, never
+ * get overlapping ranges, and each of them hands ids out of its range without asking the others.
+ * Ids of a range left unused by an instance which stopped are never leased again: ids are unique,
+ * but not gapless.
+ */
+public class IdLeaseRegistry {
+
+  public static final String LEASE_FILE_SUFFIX = ".leases";
+
+  // File locks are held by the whole process, so leases of a single process are serialized here
+  private static final Map<Path, Object> processLocks = new ConcurrentHashMap<>();
+
+  private final Path filePath;
+
+
+  /**
+   * Constructs a registry stored in the provided file.
+   *
+   * @param filePath Path to the lease file, which is created on the first lease.
+   */
+  public IdLeaseRegistry(Path filePath) {
+    this.filePath = filePath.toAbsolutePath().normalize();
+  }
+
+
+  /**
+   * Leases the next range of ids.
+   *
+   * @param size Amount of ids in the range.
+   * @return Leased range, durable by the moment it's returned.
+   * @throws IOException Occurs if the lease file can't be read or written.
+   * @throws IllegalStateException Thrown if the id space is exhausted.
+   */
+  public IdRange lease(long size) throws IOException {
+    if (size < 1) {
+      throw new IllegalArgumentException("Lease size should be positive.");
+    }
+
+    synchronized (processLocks.computeIfAbsent(filePath, path -> new Object())) {
+      Files.createDirectories(filePath.getParent());
+
+      try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        FileLock lock = channel.lock();
+
+        try {
+          long start = readNextId(channel);
+
+          if (start > Long.MAX_VALUE - size) {
+            throw new IllegalStateException("The id space of " + filePath + " is exhausted.");
+          }
+
+          // A single aligned 8-byte write can't be torn, so the file is updated in place
+          ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(0, start + size);
+          while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+          }
+          channel.force(true);
+
+          return new IdRange(start, start + size);
+        } finally {
+          lock.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the first id not leased yet.
+   *
+   * @return The first id not leased yet, 0 if nothing was leased.
+   * @throws IOException Occurs if the lease file can't be read.
+   */
+  public long getNextId() throws IOException {
+    if (!Files.exists(filePath)) {
+      return 0;
+    }
+
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      return readNextId(channel);
+    }
+  }
+
+
+  private static long readNextId(FileChannel channel) throws IOException {
+    if (channel.size() == 0) {
+      return 0;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, buffer.position()) < 0) {
+        throw new IOException("Lease file is truncated.");
+      }
+    }
+
+    return buffer.getLong(0);
+  }
+
+
+  /**
+   * Range of leased ids.
+   *
+   * @param start The first id of the range.
+   * @param end   The id following the last one of the range.
+   */
+  public record IdRange(long start, long end) {
+
+    public long size() {
+      return end - start;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent monotonic sequence of numeric primary keys.
+ *
+ * <p>Ids are handed out of an in-memory counter without locking. The sequence file stores the
+ * upper bound of the reserved block of ids, which is moved a whole block ahead once the counter
+ * reaches it, so the file is written once per block. After a restart the sequence continues
+ * after the stored bound, skipping unused ids of the last block: ids are unique and growing, but
+ * not gapless.
+ */
+public class IdSequence {
+
+  public static final String SEQUENCE_FILE_SUFFIX = ".sequence";
+  public static final long BLOCK_SIZE_DEFAULT = 1000;
+
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+  private final Path filePath;
+  private final long blockSize;
+  private final LastIdSource lastIdSource;
+
+  private final AtomicLong nextId = new AtomicLong();
+  // Negative until the sequence is recovered
+  private volatile long reservedUpTo = -1;
+
+
+  /**
+   * Constructs a sequence stored in the provided file.
+   *
+   * @param filePath     Path to the sequence file.
+   * @param blockSize    Amount of ids reserved by a single sequence file write.
+   * @param lastIdSource Returns the largest id in use if there is no sequence file yet.
+   */
+  public IdSequence(Path filePath, long blockSize, LastIdSource lastIdSource) {
+    if (blockSize < 1) {
+      throw new IllegalArgumentException("Sequence block size should be positive.");
+    }
+
+    this.filePath = filePath;
+    this.blockSize = blockSize;
+    this.lastIdSource = lastIdSource;
+  }
+
+
+  /**
+   * Returns the next id of the sequence.
+   *
+   * <p>The sequence is recovered on first use: it continues after the bound stored in the
+   * sequence file, or after the largest id in use if the file doesn't exist yet.
+   *
+   * @return Unique id, larger than all ids returned before.
+   * @throws IOException Occurs if the sequence file can't be read or written.
+   */
+  public long next() throws IOException {
+    if (reservedUpTo < 0) {
+      recover();
+    }
+
+    long id = nextId.getAndIncrement();
+
+    if (id > reservedUpTo) {
+      reserve(id);
+    }
+
+    return id;
+  }
+
+
+  private synchronized void recover() throws IOException {
+    if (reservedUpTo >= 0) {
+      return;
+    }
+
+    long lastId = Files.exists(filePath)
+        ? Long.parseLong(Files.readString(filePath, StandardCharsets.UTF_8).trim())
+        : lastIdSource.getLastId();
+
+    nextId.set(lastId + 1);
+    reservedUpTo = lastId;
+  }
+
+  private synchronized void reserve(long id) throws IOException {
+    if (id <= reservedUpTo) {
+      return;
+    }
+
+    long newReservedUpTo = id - 1 + blockSize;
+    Path temporaryFilePath = filePath.resolveSibling(filePath.getFileName()
+        + TEMPORARY_FILE_SUFFIX);
+
+    try (FileChannel channel = FileChannel.open(temporaryFilePath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(
+          Long.toString(newReservedUpTo).getBytes(StandardCharsets.UTF_8));
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+
+    Files.move(temporaryFilePath, filePath, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+
+    // Ids of the block are handed out only once the bound is durable
+    reservedUpTo = newReservedUpTo;
+  }
+
+
+  /**
+   * Source of the largest id in use, which starts a sequence without a sequence file.
+   */
+  @FunctionalInterface
+  public interface LastIdSource {
+
+    /**
+     * Returns the largest id in use.
+     *
+     * @return The largest id or 0 if there are none.
+     * @throws IOException Occurs if the ids can't be read.
+     */
+    long getLastId() throws IOException;
+  }
+}
@@ -0,0 +1,56 @@
+package shortener.database.storage;
+
+/**
+ * Limits the rate of background disk writes, so they don't starve request handling.
+ */
+public class IoThrottle {
+
+  private static final long NANOS_IN_SECOND = 1_000_000_000L;
+
+  private final long bytesPerSecond;
+
+  private long startedAt = -1;
+  private long acquiredBytes;
+
+
+  /**
+   * Constructs a throttle with the provided rate.
+   *
+   * @param bytesPerSecond Maximum amount of bytes to write per second.
+   */
+  public IoThrottle(long bytesPerSecond) {
+    if (bytesPerSecond <= 0) {
+      throw new IllegalArgumentException("Throttle rate should be positive.");
+    }
+
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+
+  /**
+   * Blocks until `bytes` more bytes can be written without exceeding the rate.
+   *
+   * @param bytes Amount of bytes that are about to be written.
+   */
+  public void acquire(long bytes) {
+    long now = System.nanoTime();
+
+    if (startedAt < 0) {
+      startedAt = now;
+    }
+
+    acquiredBytes += bytes;
+
+    long allowedAt =
+        startedAt + (long) ((double) acquiredBytes * NANOS_IN_SECOND / bytesPerSecond);
+    long delay = allowedAt - now;
+
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+      } catch (InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
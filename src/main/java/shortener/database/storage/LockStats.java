@@ -0,0 +1,52 @@
+package shortener.database.storage;
+
+import java.util.Collection;
+
+/**
+ * Contention of a table lock.
+ *
+ * @param acquisitions          Amount of times the lock was acquired.
+ * @param contendedAcquisitions Amount of times the lock was held by another thread and had to be
+ *                              waited for.
+ * @param totalWaitNanos        Total time threads waited for the lock.
+ * @param maxWaitNanos          Longest time a thread waited for the lock.
+ * @param queueLength           Estimated amount of threads waiting for the lock right now.
+ */
+public record LockStats(long acquisitions, long contendedAcquisitions, long totalWaitNanos,
+                        long maxWaitNanos, int queueLength) {
+
+  /**
+   * Sums stats of locks of the same kind, e.g. write locks of table shards.
+   *
+   * @param stats Stats of the locks.
+   * @return Combined stats.
+   */
+  public static LockStats combine(Collection<LockStats> stats) {
+    long acquisitions = 0;
+    long contendedAcquisitions = 0;
+    long totalWaitNanos = 0;
+    long maxWaitNanos = 0;
+    int queueLength = 0;
+
+    for (LockStats lockStats : stats) {
+      acquisitions += lockStats.acquisitions();
+      contendedAcquisitions += lockStats.contendedAcquisitions();
+      totalWaitNanos += lockStats.totalWaitNanos();
+      maxWaitNanos = Math.max(maxWaitNanos, lockStats.maxWaitNanos());
+      queueLength += lockStats.queueLength();
+    }
+
+    return new LockStats(acquisitions, contendedAcquisitions, totalWaitNanos, maxWaitNanos,
+        queueLength);
+  }
+
+
+  /**
+   * Returns the average time a contended acquisition waited for the lock.
+   *
+   * @return Average wait time in nanoseconds.
+   */
+  public long averageWaitNanos() {
+    return contendedAcquisitions == 0 ? 0 : totalWaitNanos / contendedAcquisitions;
+  }
+}
@@ -0,0 +1,34 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+
+/**
+ * An appended table file entry, which is durable once `await` returns.
+ */
+public class LogCommit {
+
+  static final LogCommit DONE = new LogCommit(null, 0);
+
+  private final LogWriter writer;
+  private final long sequence;
+
+
+  LogCommit(LogWriter writer, long sequence) {
+    this.writer = writer;
+    this.sequence = sequence;
+  }
+
+
+  /**
+   * Blocks until the entry is written to the table file according to the durability mode.
+   *
+   * <p>Don't hold table locks while waiting, so concurrent appends can join the same batch.
+   *
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public void await() throws IOException {
+    if (writer != null) {
+      writer.awaitDurable(sequence);
+    }
+  }
+}
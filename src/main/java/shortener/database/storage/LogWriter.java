@@ -0,0 +1,244 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write pipeline of a table file, which batches concurrent appends into a single write.
+ *
+ * <p>Appended entries are buffered in memory. A thread waiting for its entry to become durable
+ * becomes the batch leader unless there is one already: it writes all buffered entries with a
+ * single write and fsync, while entries appended meanwhile go to the next batch. In the group
+ * commit mode the leader first waits for a full batch, up to the commit interval. In the OS
+ * buffered mode every append is written right away and is never synced.
+ *
+ * <p>A failed write leaves the file in an unknown state, so the writer refuses any further
+ * appends until the database is restarted.
+ */
+public class LogWriter {
+
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+  private static final byte[] NO_HEADER = new byte[0];
+
+  private final Path filePath;
+  private final Durability durability;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition batchFull = lock.newCondition();
+  private final Condition batchWritten = lock.newCondition();
+
+  // Pending entries, swapped with the spare buffer when a batch is taken for writing
+  private byte[] pending = new byte[INITIAL_BUFFER_SIZE];
+  private byte[] spare = new byte[INITIAL_BUFFER_SIZE];
+  private int pendingLength;
+  private int pendingEntries;
+
+  private long appendedSequence;
+  private long durableSequence;
+  private boolean writing;
+  private IOException failure;
+
+  // Used by the batch leader only, opened lazily since the file is replaced by compactions
+  private FileChannel channel;
+
+
+  /**
+   * Constructs a writer of the provided file.
+   *
+   * @param filePath   Path to the table file.
+   * @param durability Durability settings.
+   */
+  public LogWriter(Path filePath, Durability durability) {
+    this.filePath = filePath;
+    this.durability = durability;
+  }
+
+
+  /**
+   * Appends an entry to the pending batch.
+   *
+   * @param entry Encoded table file entry.
+   * @return Commit to wait for the entry to become durable.
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public LogCommit append(byte[] entry) throws IOException {
+    lock.lock();
+    try {
+      checkNotFailed();
+
+      if (pendingLength + entry.length > pending.length) {
+        pending = Arrays.copyOf(pending, Math.max(pendingLength + entry.length,
+            pending.length * 2));
+      }
+      System.arraycopy(entry, 0, pending, pendingLength, entry.length);
+      pendingLength += entry.length;
+      pendingEntries++;
+
+      long sequence = ++appendedSequence;
+
+      if (durability.mode() == DurabilityMode.OS_BUFFERED) {
+        writeBatch(false);
+        return LogCommit.DONE;
+      }
+
+      if (pendingEntries >= durability.groupCommitBatch()) {
+        batchFull.signal();
+      }
+
+      return new LogCommit(this, sequence);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes all pending entries to the table file right away.
+   *
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public void flush() throws IOException {
+    lock.lock();
+    try {
+      writeBatch(durability.mode() != DurabilityMode.OS_BUFFERED);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Flushes pending entries and closes the table file, the next append reopens it.
+   *
+   * <p>Has to be called once the table file is replaced, e.g. by a compaction.
+   *
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (failure == null) {
+        writeBatch(durability.mode() != DurabilityMode.OS_BUFFERED);
+      }
+
+      if (channel != null) {
+        channel.close();
+        channel = null;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  void awaitDurable(long sequence) throws IOException {
+    lock.lock();
+    try {
+      while (durableSequence < sequence) {
+        checkNotFailed();
+
+        if (writing) {
+          batchWritten.awaitUninterruptibly();
+          continue;
+        }
+
+        if (durability.mode() == DurabilityMode.GROUP_COMMIT) {
+          awaitBatch();
+        }
+
+        if (durableSequence < sequence) {
+          writeBatch(true);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void awaitBatch() {
+    long remaining = durability.groupCommitInterval().toNanos();
+
+    try {
+      while (remaining > 0 && !writing && pendingEntries < durability.groupCommitBatch()) {
+        remaining = batchFull.awaitNanos(remaining);
+      }
+    } catch (InterruptedException exc) {
+      // Write the batch right away
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Has to be called with the lock held, releases it while writing
+  private void writeBatch(boolean sync) throws IOException {
+    while (writing) {
+      batchWritten.awaitUninterruptibly();
+    }
+
+    checkNotFailed();
+
+    if (pendingLength == 0) {
+      return;
+    }
+
+    byte[] batch = pending;
+    int batchLength = pendingLength;
+    long batchSequence = appendedSequence;
+
+    pending = spare;
+    pendingLength = 0;
+    pendingEntries = 0;
+    writing = true;
+
+    boolean written = false;
+    Exception error = null;
+
+    lock.unlock();
+    try {
+      write(batch, batchLength, sync);
+      written = true;
+    } catch (IOException | RuntimeException exc) {
+      error = exc;
+      throw exc;
+    } finally {
+      lock.lock();
+
+      spare = batch;
+      writing = false;
+      if (written) {
+        durableSequence = batchSequence;
+      } else {
+        failure = new IOException(String.format("Failed to write %s.", filePath), error);
+      }
+      batchWritten.signalAll();
+    }
+  }
+
+  private void write(byte[] batch, int batchLength, boolean sync) throws IOException {
+    if (channel == null) {
+      channel = FileChannel.open(filePath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    ByteBuffer[] buffers = {
+        ByteBuffer.wrap(channel.size() == 0 ? RecordFormat.header() : NO_HEADER),
+        ByteBuffer.wrap(batch, 0, batchLength)
+    };
+
+    while (buffers[1].hasRemaining()) {
+      channel.write(buffers);
+    }
+
+    if (sync) {
+      channel.force(false);
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,1140 @@
+package shortener.database.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Log-structured merge tree of a table shard, which keeps the shard records on disk, so a shard
+ * may hold far more records than fit in the heap.
+ *
+ * <p>Created and deleted records go to a memtable, and the shard log serves as its write-ahead
+ * log. Once the memtable holds `memtableEntries` keys, it's frozen and flushed in the background
+ * into a level 0 segment, and the flushed head of the log is dropped by `TableLog.truncateHead`.
+ * Segments are `SealedSegment` files sorted by primary key hashes, so the block index of a
+ * segment is a sparse index of a sorted table, and every segment has a Bloom filter of its keys
+ * in a companion file.
+ *
+ * <p>Segments are compacted by levels. Once level 0 has `LEVEL0_SEGMENTS` segments, they are
+ * merged with the overlapping segments of level 1. Once a level N above 0 outgrows
+ * `LEVEL1_LENGTH * LEVEL_RATIO^(N - 1)` bytes, one of its segments is merged with the overlapping
+ * segments of level N + 1, going round the key hash range. A merge keeps the newest entry of a
+ * key and drops tombstones when nothing is stored below its output level. Segments of a level
+ * above 0 cover disjoint key hash ranges, so a lookup reads at most one segment per level, and
+ * only if the Bloom filter of the segment may contain the key: a single block read in most cases.
+ *
+ * <p>The live segments are listed in a manifest file, which is atomically replaced by every flush
+ * and compaction, so files of an interrupted one are deleted on open. A flush lists its segment
+ * before the log head is dropped, so the changes replayed from the log after a crash are already
+ * in the segments at worst.
+ *
+ * <p>The tree is a map of the live records, which is read concurrently and written by one thread
+ * at a time holding the shard write lock, like maps of `DatabaseTable.createRecordMap`. Iteration
+ * merges the memtables with all segments, so it reads the whole tree.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class LsmTree<EntityT, PrimaryKeyT> extends AbstractMap<PrimaryKeyT, EntityT>
+    implements Closeable {
+
+  public static final String DIRECTORY_SUFFIX = ".lsm";
+  public static final int MEMTABLE_ENTRIES_DEFAULT = 64 * 1024;
+  public static final int LEVEL0_SEGMENTS = 4;
+  public static final long LEVEL1_LENGTH = 16L * 1024 * 1024;
+  public static final int LEVEL_RATIO = 10;
+  public static final long SEGMENT_LENGTH = 4L * 1024 * 1024;
+  // Point lookups decompress a whole block, so blocks are kept smaller than in sealed logs
+  public static final int SEGMENT_BLOCK_SIZE = 4 * 1024;
+
+  private static final Logger logger = LoggerFactory.getLogger(LsmTree.class);
+
+  private static final int MAX_LEVEL = 6;
+  private static final String MANIFEST_FILE_NAME = "MANIFEST";
+  private static final String SEGMENT_FILE_SUFFIX = ".sst";
+  private static final String FILTER_FILE_SUFFIX = ".filter";
+  private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+  // Newer segments go first: level 0 by descending sequence numbers, then the deeper levels
+  private static final Comparator<Segment> PRECEDENCE = Comparator.comparingInt(Segment::level)
+      .thenComparingLong(segment -> segment.level() == 0
+          ? -segment.sequence()
+          : segment.firstKeyHash());
+
+  private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "lsm-tree");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final TableLog<EntityT, PrimaryKeyT> log;
+  private final Path directory;
+  private final int memtableEntries;
+  private final Set<Entry<PrimaryKeyT, EntityT>> entrySet = new EntrySet();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  // Key hash every level is compacted from next, so compactions go round the hash range
+  private final long[] compactionPointers = new long[MAX_LEVEL + 1];
+
+  // Null until the tree is opened
+  private volatile State<EntityT, PrimaryKeyT> state;
+  // The following are guarded by the tree monitor
+  private long nextSequence;
+  private boolean replaying;
+
+
+  /**
+   * Constructs a tree stored in a directory next to the shard file, which is read by `open`.
+   *
+   * @param databaseTable   Database table the shard belongs to.
+   * @param log             Log of the shard, which serves as the write-ahead log.
+   * @param memtableEntries Amount of keys in the memtable which triggers a flush.
+   */
+  public LsmTree(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                 TableLog<EntityT, PrimaryKeyT> log, int memtableEntries) {
+    this.databaseTable = databaseTable;
+    this.log = log;
+    this.directory = directoryOf(log.getFilePath());
+    this.memtableEntries = memtableEntries;
+  }
+
+
+  /**
+   * Returns a path to the tree directory of a shard file.
+   *
+   * @param shardFilePath Path to the shard file.
+   * @return Path to the tree directory.
+   */
+  public static Path directoryOf(Path shardFilePath) {
+    return shardFilePath.resolveSibling(shardFilePath.getFileName() + DIRECTORY_SUFFIX);
+  }
+
+  /**
+   * Deletes the tree directory of a shard file if it exists, e.g. once its records are moved
+   * elsewhere. The tree must be closed.
+   *
+   * @param shardFilePath Path to the shard file.
+   * @throws IOException Occurs if the files can't be deleted.
+   */
+  public static void delete(Path shardFilePath) throws IOException {
+    Path directory = directoryOf(shardFilePath);
+
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path filePath : files) {
+        Files.delete(filePath);
+      }
+    }
+    Files.delete(directory);
+  }
+
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Reads the manifest and the Bloom filters of the segments, and replays changes loaded from the
+   * shard log over the segments into the memtable.
+   *
+   * @param changes Records and null tombstones returned by `TableLog.loadChanges`.
+   * @return The tree.
+   * @throws IOException Occurs if the tree files can't be read.
+   */
+  public synchronized LsmTree<EntityT, PrimaryKeyT> open(Map<PrimaryKeyT, EntityT> changes)
+      throws IOException {
+    Files.createDirectories(directory);
+    state = readManifest();
+
+    // The changes may be flushed only after all of them are in the memtable
+    replaying = true;
+    try {
+      changes.forEach((pk, record) -> {
+        if (record == null) {
+          remove(pk);
+        } else {
+          put(pk, record);
+        }
+      });
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    } finally {
+      replaying = false;
+    }
+
+    return this;
+  }
+
+  /**
+   * Looks a record up in the memtables, and then in the segments from the newest to the oldest
+   * ones, skipping segments whose key hash range or Bloom filter rules the key out.
+   *
+   * @param key Primary key of the record.
+   * @return The record or null if there is none.
+   * @throws UncheckedIOException Occurs if a segment can't be read.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public EntityT get(Object key) {
+    Change<EntityT> change = find((PrimaryKeyT) key);
+
+    return change == null || change.deleted() ? null : change.record();
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public EntityT put(PrimaryKeyT pk, EntityT record) {
+    Memtable<EntityT, PrimaryKeyT> memtable = state.memtable();
+    Change<EntityT> previous = find(pk);
+
+    memtable.changes.put(pk, new Change<>(record, false));
+
+    if (previous == null || previous.deleted()) {
+      memtable.addedRecords++;
+      scheduleFlushIfFull(memtable);
+
+      return null;
+    }
+
+    scheduleFlushIfFull(memtable);
+
+    return previous.record();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public EntityT remove(Object key) {
+    PrimaryKeyT pk = (PrimaryKeyT) key;
+    Memtable<EntityT, PrimaryKeyT> memtable = state.memtable();
+    Change<EntityT> previous = find(pk);
+
+    if (previous == null || previous.deleted()) {
+      return null;
+    }
+
+    // A tombstone keeps the record, since a table entry encodes the whole record
+    memtable.changes.put(pk, new Change<>(previous.record(), true));
+    memtable.addedRecords--;
+    scheduleFlushIfFull(memtable);
+
+    return previous.record();
+  }
+
+  @Override
+  public int size() {
+    State<EntityT, PrimaryKeyT> current = state;
+    long records = current.segmentRecords() + current.memtable().addedRecords
+        + (current.frozenMemtable() == null ? 0 : current.frozenMemtable().addedRecords);
+
+    return (int) Math.min(records, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public Set<Entry<PrimaryKeyT, EntityT>> entrySet() {
+    return entrySet;
+  }
+
+  /**
+   * Returns amount of segments of every level, e.g. to watch compactions.
+   *
+   * @return Amounts of segments indexed by levels.
+   */
+  public int[] getLevelSegments() {
+    int[] levelSegments = new int[MAX_LEVEL + 1];
+
+    for (Segment segment : state.segments()) {
+      levelSegments[segment.level()]++;
+    }
+
+    return levelSegments;
+  }
+
+  /**
+   * Flushes the memtable into a level 0 segment, drops the flushed head of the shard log and
+   * compacts the levels which exceed their limits. Writes are paused only while the memtable is
+   * swapped for an empty one.
+   *
+   * @throws IOException Occurs if the tree files or the shard log can't be written.
+   */
+  public synchronized void flush() throws IOException {
+    if (state != null) {
+      flush(null);
+    }
+  }
+
+  /**
+   * Flushes the memtable and merges all segments into a single level, which drops all
+   * overwritten records and tombstones.
+   *
+   * @param throttle Limits the write rate of the compaction.
+   * @throws IOException Occurs if the tree files or the shard log can't be written.
+   */
+  public synchronized void compact(IoThrottle throttle) throws IOException {
+    if (state == null) {
+      return;
+    }
+
+    flush(throttle);
+
+    List<Segment> segments = state.segments();
+
+    if (!segments.isEmpty()) {
+      merge(segments, Math.max(1, segments.get(segments.size() - 1).level()), throttle);
+    }
+  }
+
+  /**
+   * Closes the segment files. The tree can't be read afterwards.
+   *
+   * @throws IOException Occurs if a file can't be closed.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (state != null) {
+      for (Segment segment : state.segments()) {
+        segment.file().close();
+      }
+    }
+  }
+
+
+  private Change<EntityT> find(PrimaryKeyT pk) {
+    while (true) {
+      State<EntityT, PrimaryKeyT> current = state;
+
+      try {
+        return find(current, pk);
+      } catch (ClosedChannelException exc) {
+        // A compaction has closed the segment, the segments replacing it hold its entries
+        if (current == state) {
+          throw new UncheckedIOException(exc);
+        }
+      } catch (IOException exc) {
+        throw new UncheckedIOException(exc);
+      }
+    }
+  }
+
+  private Change<EntityT> find(State<EntityT, PrimaryKeyT> current, PrimaryKeyT pk)
+      throws IOException {
+    Change<EntityT> change = current.memtable().changes.get(pk);
+
+    if (change == null && current.frozenMemtable() != null) {
+      change = current.frozenMemtable().changes.get(pk);
+    }
+
+    if (change != null) {
+      return change;
+    }
+
+    int keyHash = pk.hashCode();
+
+    for (Segment segment : current.segments()) {
+      if (keyHash >= segment.firstKeyHash() && keyHash <= segment.lastKeyHash()
+          && segment.filter().mightContain(pk)) {
+        // Only primary keys of the other entries of the block are decoded
+        change = segment.file().find(keyHash, reader -> {
+          if (!pk.equals(databaseTable.decodePrimaryKey(reader))) {
+            return null;
+          }
+
+          MergedEntry entry = new MergedEntry(pk, reader.isTombstone(), reader.copyEntry(),
+              reader.getVersion(), null);
+
+          return new Change<>(entry.record(), entry.tombstone);
+        });
+
+        if (change != null) {
+          return change;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private void scheduleFlushIfFull(Memtable<EntityT, PrimaryKeyT> memtable) {
+    if (replaying || memtable.changes.size() < memtableEntries
+        || !flushScheduled.compareAndSet(false, true)) {
+      return;
+    }
+
+    executor.execute(() -> {
+      try {
+        flush();
+      } catch (IOException | RuntimeException exc) {
+        logger.error("Failed to flush {} memtable.", directory, exc);
+      } finally {
+        flushScheduled.set(false);
+      }
+    });
+  }
+
+  private void flush(IoThrottle throttle) throws IOException {
+    Memtable<EntityT, PrimaryKeyT> frozenMemtable = freeze();
+
+    if (frozenMemtable != null) {
+      List<Entry<PrimaryKeyT, Change<EntityT>>> changes =
+          new ArrayList<>(frozenMemtable.changes.entrySet());
+      changes.sort(Comparator.comparingInt(change -> change.getKey().hashCode()));
+
+      SegmentBuilder builder = new SegmentBuilder(0, changes.size(), throttle);
+      Segment segment;
+
+      try {
+        for (Entry<PrimaryKeyT, Change<EntityT>> change : changes) {
+          builder.append(change.getKey(),
+              encode(change.getValue().record(), change.getValue().deleted()));
+        }
+
+        segment = builder.finish();
+      } catch (IOException | RuntimeException exc) {
+        builder.abort();
+        throw exc;
+      }
+
+      State<EntityT, PrimaryKeyT> current = state;
+      List<Segment> segments = new ArrayList<>(current.segments());
+      segments.add(segment);
+      segments.sort(PRECEDENCE);
+      long segmentRecords = current.segmentRecords() + frozenMemtable.addedRecords;
+
+      writeManifest(segments, segmentRecords);
+      state = new State<>(current.memtable(), null, List.copyOf(segments), segmentRecords);
+
+      log.truncateHead(frozenMemtable.logLength, frozenMemtable.logEntries);
+    }
+
+    compactIfNeeded(throttle);
+  }
+
+  // Swaps the memtable for an empty one, returns null if there is nothing to flush
+  private Memtable<EntityT, PrimaryKeyT> freeze() throws IOException {
+    if (state.frozenMemtable() != null) {
+      // A failed flush is retried
+      return state.frozenMemtable();
+    }
+
+    MeteredLock writeLock = log.getWriteLock();
+
+    writeLock.lock();
+    try {
+      State<EntityT, PrimaryKeyT> current = state;
+      Memtable<EntityT, PrimaryKeyT> memtable = current.memtable();
+
+      if (memtable.changes.isEmpty()) {
+        return null;
+      }
+
+      memtable.logLength = log.getFlushedLength();
+      memtable.logEntries = log.getEntries();
+      state = new State<>(new Memtable<>(), memtable, current.segments(),
+          current.segmentRecords());
+
+      return memtable;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void compactIfNeeded(IoThrottle throttle) throws IOException {
+    while (true) {
+      List<Segment> segments = state.segments();
+      List<Segment> level0 = segmentsOf(segments, 0);
+
+      if (level0.size() >= LEVEL0_SEGMENTS) {
+        compact(segments, level0, 1, throttle);
+        continue;
+      }
+
+      int level = 1;
+      long maxLength = LEVEL1_LENGTH;
+
+      while (level < MAX_LEVEL && lengthOf(segmentsOf(segments, level)) <= maxLength) {
+        level++;
+        maxLength *= LEVEL_RATIO;
+      }
+
+      if (level == MAX_LEVEL) {
+        return;
+      }
+
+      compact(segments, List.of(nextToCompact(segments, level)), level + 1, throttle);
+    }
+  }
+
+  private void compact(List<Segment> segments, List<Segment> upper, int outputLevel,
+                       IoThrottle throttle) throws IOException {
+    long firstKeyHash = upper.stream().mapToLong(Segment::firstKeyHash).min().orElseThrow();
+    long lastKeyHash = upper.stream().mapToLong(Segment::lastKeyHash).max().orElseThrow();
+    List<Segment> inputs = new ArrayList<>(upper);
+
+    for (Segment segment : segmentsOf(segments, outputLevel)) {
+      if (segment.lastKeyHash() >= firstKeyHash && segment.firstKeyHash() <= lastKeyHash) {
+        inputs.add(segment);
+      }
+    }
+
+    if (inputs.size() == 1) {
+      // Nothing to merge with, the segment just moves down
+      Segment segment = inputs.get(0);
+
+      replace(inputs, List.of(new Segment(segment.sequence(), outputLevel,
+          segment.firstKeyHash(), segment.lastKeyHash(), segment.length(), segment.file(),
+          segment.filter())));
+    } else {
+      merge(inputs, outputLevel, throttle);
+    }
+  }
+
+  // Picks the segment of the level which starts at the compaction pointer or after it
+  private Segment nextToCompact(List<Segment> segments, int level) {
+    List<Segment> levelSegments = segmentsOf(segments, level);
+    Segment next = levelSegments.stream()
+        .filter(segment -> segment.firstKeyHash() >= compactionPointers[level])
+        .findFirst()
+        .orElse(levelSegments.get(0));
+
+    compactionPointers[level] = next.lastKeyHash() + 1L;
+
+    return next;
+  }
+
+  private void merge(List<Segment> inputs, int outputLevel, IoThrottle throttle)
+      throws IOException {
+    // Tombstones have nothing to hide once nothing is stored below the output
+    boolean dropsTombstones = state.segments().stream()
+        .allMatch(segment -> segment.level() <= outputLevel || inputs.contains(segment));
+    List<Segment> outputs = new ArrayList<>();
+
+    mergeInto(outputs, new ArrayList<>(inputs), outputLevel, throttle, dropsTombstones);
+    replace(inputs, outputs);
+  }
+
+  // Lists the outputs instead of the inputs, and closes and deletes the replaced inputs
+  private void replace(List<Segment> inputs, List<Segment> outputs) throws IOException {
+    State<EntityT, PrimaryKeyT> current = state;
+    List<Segment> segments = new ArrayList<>(current.segments());
+    segments.removeAll(inputs);
+    segments.addAll(outputs);
+    segments.sort(PRECEDENCE);
+
+    writeManifest(segments, current.segmentRecords());
+    state = new State<>(current.memtable(), current.frozenMemtable(), List.copyOf(segments),
+        current.segmentRecords());
+
+    for (Segment input : inputs) {
+      if (outputs.stream().noneMatch(output -> output.file() == input.file())) {
+        input.file().close();
+        Files.delete(segmentPath(input.sequence()));
+        Files.delete(filterPath(input.sequence()));
+      }
+    }
+  }
+
+  private void mergeInto(List<Segment> outputs, List<Segment> inputs, int outputLevel,
+                         IoThrottle throttle, boolean dropsTombstones) throws IOException {
+    inputs.sort(PRECEDENCE);
+
+    List<Source> sources = new ArrayList<>();
+    long inputEntries = 0;
+    long inputLength = 0;
+
+    for (Segment input : inputs) {
+      sources.add(new SegmentSource(input, sources.size(), Integer.MIN_VALUE));
+      inputEntries += input.file().getEntries();
+      inputLength += input.length();
+    }
+
+    long outputEntries = Math.min(inputEntries,
+        Math.max(1, inputEntries * SEGMENT_LENGTH / Math.max(1, inputLength)));
+    Merge merge = new Merge(sources);
+    SegmentBuilder builder = null;
+
+    try {
+      for (List<MergedEntry> group = merge.nextGroup(); !group.isEmpty();
+           group = merge.nextGroup()) {
+        // Segments are cut between key hashes, so they don't overlap
+        if (builder != null && builder.writer.getLength() >= SEGMENT_LENGTH) {
+          outputs.add(builder.finish());
+          builder = null;
+        }
+
+        for (MergedEntry entry : group) {
+          if (entry.tombstone && dropsTombstones) {
+            continue;
+          }
+
+          if (builder == null) {
+            builder = new SegmentBuilder(outputLevel, outputEntries, throttle);
+          }
+          builder.append(entry.pk, entry.entry());
+        }
+      }
+
+      if (builder != null) {
+        outputs.add(builder.finish());
+      }
+    } catch (IOException | RuntimeException exc) {
+      if (builder != null) {
+        builder.abort();
+      }
+
+      for (Segment output : outputs) {
+        output.file().close();
+        Files.deleteIfExists(segmentPath(output.sequence()));
+        Files.deleteIfExists(filterPath(output.sequence()));
+      }
+
+      throw exc;
+    }
+  }
+
+  private State<EntityT, PrimaryKeyT> readManifest() throws IOException {
+    Path manifestPath = directory.resolve(MANIFEST_FILE_NAME);
+    List<Segment> segments = new ArrayList<>();
+    long segmentRecords = 0;
+
+    if (Files.exists(manifestPath)) {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(manifestPath));
+      byte version = RecordFormat.checkHeader(buffer, manifestPath);
+      RecordReader reader = new RecordReader(buffer.position(RecordFormat.HEADER_LENGTH),
+          version);
+
+      try {
+        if (reader.nextEntry()) {
+          nextSequence = reader.readLong();
+          segmentRecords = reader.readLong();
+        }
+
+        while (reader.nextEntry()) {
+          long sequence = reader.readLong();
+          int level = (int) reader.readLong();
+          int firstKeyHash = (int) reader.readLong();
+          int lastKeyHash = (int) reader.readLong();
+
+          segments.add(openSegment(sequence, level, firstKeyHash, lastKeyHash));
+        }
+      } catch (UncheckedIOException exc) {
+        closeAll(segments);
+        throw new IOException(String.format("%s is corrupted.", manifestPath), exc);
+      } catch (IOException | RuntimeException exc) {
+        closeAll(segments);
+        throw exc;
+      }
+    }
+
+    // Leftovers of an interrupted flush or compaction
+    Set<Path> segmentFilePaths = new HashSet<>(Set.of(manifestPath));
+    for (Segment segment : segments) {
+      segmentFilePaths.add(segmentPath(segment.sequence()));
+      segmentFilePaths.add(filterPath(segment.sequence()));
+    }
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path filePath : files) {
+        if (!segmentFilePaths.contains(filePath)) {
+          Files.delete(filePath);
+        }
+      }
+    }
+
+    segments.sort(PRECEDENCE);
+
+    return new State<>(new Memtable<>(), null, List.copyOf(segments), segmentRecords);
+  }
+
+  private void writeManifest(List<Segment> segments, long segmentRecords) throws IOException {
+    Path manifestPath = directory.resolve(MANIFEST_FILE_NAME);
+    Path temporaryPath = directory.resolve(MANIFEST_FILE_NAME + TEMPORARY_FILE_SUFFIX);
+    ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+    RecordWriter writer = new RecordWriter();
+
+    manifest.writeBytes(RecordFormat.header());
+    writer.writeLong(nextSequence);
+    writer.writeLong(segmentRecords);
+    manifest.writeBytes(writer.toEntry(false));
+
+    for (Segment segment : segments) {
+      writer.reset();
+      writer.writeLong(segment.sequence());
+      writer.writeLong(segment.level());
+      writer.writeLong(segment.firstKeyHash());
+      writer.writeLong(segment.lastKeyHash());
+      manifest.writeBytes(writer.toEntry(false));
+    }
+
+    try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.wrap(manifest.toByteArray());
+
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+
+    Files.move(temporaryPath, manifestPath, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private Segment openSegment(long sequence, int level, int firstKeyHash, int lastKeyHash)
+      throws IOException {
+    Path segmentPath = segmentPath(sequence);
+    SealedSegment file = SealedSegment.open(segmentPath);
+
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+        Files.newInputStream(filterPath(sequence))))) {
+      return new Segment(sequence, level, firstKeyHash, lastKeyHash, Files.size(segmentPath),
+          file, ScalableBloomFilter.readFrom(input));
+    } catch (IOException | RuntimeException exc) {
+      file.close();
+      throw exc;
+    }
+  }
+
+  private Path segmentPath(long sequence) {
+    return directory.resolve(sequence + SEGMENT_FILE_SUFFIX);
+  }
+
+  private Path filterPath(long sequence) {
+    return directory.resolve(sequence + FILTER_FILE_SUFFIX);
+  }
+
+  private static Path temporaryPath(Path filePath) {
+    return filePath.resolveSibling(filePath.getFileName() + TEMPORARY_FILE_SUFFIX);
+  }
+
+  private static List<Segment> segmentsOf(List<Segment> segments, int level) {
+    List<Segment> levelSegments = new ArrayList<>();
+
+    for (Segment segment : segments) {
+      if (segment.level() == level) {
+        levelSegments.add(segment);
+      }
+    }
+
+    return levelSegments;
+  }
+
+  private static void closeAll(List<Segment> segments) throws IOException {
+    for (Segment segment : segments) {
+      segment.file().close();
+    }
+  }
+
+  private static long lengthOf(List<Segment> segments) {
+    return segments.stream().mapToLong(Segment::length).sum();
+  }
+
+  private byte[] encode(EntityT record, boolean tombstone) {
+    RecordWriter writer = new RecordWriter();
+    databaseTable.encode(record, writer);
+
+    return writer.toEntry(tombstone);
+  }
+
+
+  // A record created or deleted in a memtable or stored in a segment
+  private record Change<EntityT>(EntityT record, boolean deleted) {
+  }
+
+  // Segments are immutable, a compaction replaces them along with their filters
+  private record Segment(long sequence, int level, int firstKeyHash, int lastKeyHash,
+                         long length, SealedSegment file, ScalableBloomFilter filter) {
+  }
+
+  // Replaced as a whole, so readers see consistent memtables and segments
+  private record State<EntityT, PrimaryKeyT>(Memtable<EntityT, PrimaryKeyT> memtable,
+                                             Memtable<EntityT, PrimaryKeyT> frozenMemtable,
+                                             List<Segment> segments, long segmentRecords) {
+  }
+
+
+  private static class Memtable<EntityT, PrimaryKeyT> {
+
+    private final Map<PrimaryKeyT, Change<EntityT>> changes = new ConcurrentHashMap<>();
+    // Amount of records the memtable adds to the ones below it, negative if it deletes more
+    private volatile long addedRecords;
+    // The shard log length and entries the memtable covers, taken once it's frozen
+    private long logLength;
+    private long logEntries;
+  }
+
+
+  private class SegmentBuilder {
+
+    private final long sequence = nextSequence++;
+    private final int level;
+    private final SealedSegment.Writer writer;
+    private final ScalableBloomFilter filter;
+
+    private int firstKeyHash;
+    private int lastKeyHash;
+
+    SegmentBuilder(int level, long expectedEntries, IoThrottle throttle) throws IOException {
+      this.level = level;
+      this.writer = SealedSegment.create(temporaryPath(segmentPath(sequence)), throttle,
+          SEGMENT_BLOCK_SIZE);
+      this.filter = new ScalableBloomFilter(
+          (int) Math.min(Integer.MAX_VALUE, Math.max(1, expectedEntries)),
+          ScalableBloomFilter.FALSE_POSITIVE_RATE_DEFAULT);
+    }
+
+    void append(PrimaryKeyT pk, byte[] entry) throws IOException {
+      int keyHash = pk.hashCode();
+
+      if (writer.getEntries() == 0) {
+        firstKeyHash = keyHash;
+      }
+
+      writer.append(keyHash, entry);
+      filter.add(pk);
+      lastKeyHash = keyHash;
+    }
+
+    Segment finish() throws IOException {
+      Path segmentPath = segmentPath(sequence);
+      Path filterPath = filterPath(sequence);
+
+      writer.finish();
+      writer.close();
+
+      try (FileChannel channel = FileChannel.open(temporaryPath(filterPath),
+          StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+           DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+               Channels.newOutputStream(channel)))) {
+        filter.writeTo(output);
+        output.flush();
+        channel.force(true);
+      }
+
+      Files.move(temporaryPath(filterPath), filterPath, StandardCopyOption.ATOMIC_MOVE);
+      Files.move(temporaryPath(segmentPath), segmentPath, StandardCopyOption.ATOMIC_MOVE);
+
+      return new Segment(sequence, level, firstKeyHash, lastKeyHash, Files.size(segmentPath),
+          SealedSegment.open(segmentPath), filter);
+    }
+
+    void abort() throws IOException {
+      writer.close();
+      Files.deleteIfExists(temporaryPath(segmentPath(sequence)));
+      Files.deleteIfExists(temporaryPath(filterPath(sequence)));
+      Files.deleteIfExists(segmentPath(sequence));
+      Files.deleteIfExists(filterPath(sequence));
+    }
+  }
+
+
+  // An entry of a memtable or a segment, which is decoded or encoded on demand
+  private class MergedEntry {
+
+    private final PrimaryKeyT pk;
+    private final int keyHash;
+    private final boolean tombstone;
+    private byte[] entry;
+    private byte version;
+    private EntityT record;
+
+    MergedEntry(PrimaryKeyT pk, boolean tombstone, byte[] entry, byte version, EntityT record) {
+      this.pk = pk;
+      this.keyHash = pk.hashCode();
+      this.tombstone = tombstone;
+      this.entry = entry;
+      this.version = version;
+      this.record = record;
+    }
+
+    EntityT record() {
+      if (record == null) {
+        RecordReader reader = new RecordReader(ByteBuffer.wrap(entry), version);
+        reader.nextEntry();
+        record = databaseTable.decode(reader);
+      }
+
+      return record;
+    }
+
+    byte[] entry() {
+      // Entries of an older format version are re-encoded rather than copied
+      if (entry == null || version != RecordFormat.VERSION) {
+        entry = encode(record(), tombstone);
+        version = RecordFormat.VERSION;
+      }
+
+      return entry;
+    }
+  }
+
+
+  // Entries of a memtable or a segment in the key hash order, starting at a key hash
+  private abstract class Source {
+
+    private final int rank;
+    private MergedEntry current;
+
+    Source(int rank) {
+      this.rank = rank;
+    }
+
+    abstract MergedEntry read() throws IOException;
+
+    boolean next() throws IOException {
+      current = read();
+
+      return current != null;
+    }
+  }
+
+
+  private class MemtableSource extends Source {
+
+    private final Iterator<Entry<PrimaryKeyT, Change<EntityT>>> changes;
+
+    MemtableSource(Memtable<EntityT, PrimaryKeyT> memtable, int rank, long fromKeyHash) {
+      super(rank);
+
+      List<Entry<PrimaryKeyT, Change<EntityT>>> sortedChanges = new ArrayList<>();
+      for (Entry<PrimaryKeyT, Change<EntityT>> change : memtable.changes.entrySet()) {
+        if (change.getKey().hashCode() >= fromKeyHash) {
+          sortedChanges.add(change);
+        }
+      }
+      sortedChanges.sort(Comparator.comparingInt(change -> change.getKey().hashCode()));
+
+      changes = sortedChanges.iterator();
+    }
+
+    @Override
+    MergedEntry read() {
+      if (!changes.hasNext()) {
+        return null;
+      }
+
+      Entry<PrimaryKeyT, Change<EntityT>> change = changes.next();
+
+      return new MergedEntry(change.getKey(), change.getValue().deleted(), null,
+          RecordFormat.VERSION, change.getValue().record());
+    }
+  }
+
+
+  private class SegmentSource extends Source {
+
+    private final SealedSegment.Cursor cursor;
+    private final long fromKeyHash;
+
+    SegmentSource(Segment segment, int rank, long fromKeyHash) {
+      super(rank);
+      this.cursor = segment.file().cursor((int) Math.max(fromKeyHash, Integer.MIN_VALUE));
+      this.fromKeyHash = fromKeyHash;
+    }
+
+    @Override
+    MergedEntry read() throws IOException {
+      while (cursor.next()) {
+        RecordReader reader = cursor.getReader();
+        boolean tombstone = reader.isTombstone();
+        PrimaryKeyT pk = databaseTable.decodePrimaryKey(reader);
+
+        if (pk.hashCode() >= fromKeyHash) {
+          return new MergedEntry(pk, tombstone, cursor.copyEntry(), reader.getVersion(), null);
+        }
+      }
+
+      return null;
+    }
+  }
+
+
+  // Merges sources by key hashes, keeping the entry of the lowest ranked source per key
+  private class Merge {
+
+    private final PriorityQueue<Source> queue = new PriorityQueue<>(
+        Comparator.<Source>comparingInt(source -> source.current.keyHash)
+            .thenComparingInt(source -> source.rank));
+    private final List<MergedEntry> group = new ArrayList<>();
+
+    Merge(List<Source> sources) throws IOException {
+      for (Source source : sources) {
+        if (source.next()) {
+          queue.add(source);
+        }
+      }
+    }
+
+    // Returns the entries of the next key hash, empty once the sources are exhausted
+    List<MergedEntry> nextGroup() throws IOException {
+      group.clear();
+
+      if (queue.isEmpty()) {
+        return group;
+      }
+
+      int keyHash = queue.peek().current.keyHash;
+
+      while (!queue.isEmpty() && queue.peek().current.keyHash == keyHash) {
+        Source source = queue.poll();
+        boolean hasNext;
+
+        do {
+          MergedEntry candidate = source.current;
+
+          // Sources come in the rank order, so the first entry of a key is the newest one
+          if (group.stream().noneMatch(entry -> entry.pk.equals(candidate.pk))) {
+            group.add(candidate);
+          }
+
+          hasNext = source.next();
+        } while (hasNext && source.current.keyHash == keyHash);
+
+        if (hasNext) {
+          queue.add(source);
+        }
+      }
+
+      return group;
+    }
+  }
+
+
+  private class EntrySet extends AbstractSet<Entry<PrimaryKeyT, EntityT>> {
+
+    @Override
+    public Iterator<Entry<PrimaryKeyT, EntityT>> iterator() {
+      return new MergingIterator();
+    }
+
+    @Override
+    public int size() {
+      return LsmTree.this.size();
+    }
+  }
+
+
+  // Resumes after the last returned key hash if a compaction closes a segment being read
+  private class MergingIterator implements Iterator<Entry<PrimaryKeyT, EntityT>> {
+
+    private final Deque<MergedEntry> pending = new ArrayDeque<>();
+    private State<EntityT, PrimaryKeyT> mergedState;
+    private Merge merge;
+    private long nextKeyHash = Integer.MIN_VALUE;
+
+    @Override
+    public boolean hasNext() {
+      while (pending.isEmpty()) {
+        if (nextKeyHash > Integer.MAX_VALUE || !advance()) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    @Override
+    public Entry<PrimaryKeyT, EntityT> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      MergedEntry entry = pending.poll();
+
+      return new SimpleImmutableEntry<>(entry.pk, entry.record());
+    }
+
+    private boolean advance() {
+      while (true) {
+        try {
+          if (merge == null) {
+            mergedState = state;
+            merge = new Merge(sources(mergedState));
+          }
+
+          List<MergedEntry> group = merge.nextGroup();
+
+          if (group.isEmpty()) {
+            nextKeyHash = Integer.MAX_VALUE + 1L;
+            return false;
+          }
+
+          nextKeyHash = group.get(0).keyHash + 1L;
+
+          for (MergedEntry entry : group) {
+            if (!entry.tombstone) {
+              pending.add(entry);
+            }
+          }
+
+          return true;
+        } catch (ClosedChannelException exc) {
+          if (mergedState == state) {
+            throw new UncheckedIOException(exc);
+          }
+
+          merge = null;
+        } catch (IOException exc) {
+          throw new UncheckedIOException(exc);
+        }
+      }
+    }
+
+    private List<Source> sources(State<EntityT, PrimaryKeyT> current) {
+      List<Source> sources = new ArrayList<>();
+
+      sources.add(new MemtableSource(current.memtable(), sources.size(), nextKeyHash));
+      if (current.frozenMemtable() != null) {
+        sources.add(new MemtableSource(current.frozenMemtable(), sources.size(), nextKeyHash));
+      }
+
+      for (Segment segment : current.segments()) {
+        if (segment.lastKeyHash() >= nextKeyHash) {
+          sources.add(new SegmentSource(segment, sources.size(), nextKeyHash));
+        }
+      }
+
+      return sources;
+    }
+  }
+}
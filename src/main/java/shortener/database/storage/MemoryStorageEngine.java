@@ -0,0 +1,30 @@
+package shortener.database.storage;
+
+import java.nio.file.Path;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Storage engine which keeps table records in memory only, e.g. for benchmarks and tests. The
+ * records are lost on a restart, and shard files are neither read nor written.
+ */
+public class MemoryStorageEngine implements StorageEngine {
+
+  public static final String NAME = "memory";
+
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isPersistent() {
+    return false;
+  }
+
+  @Override
+  public <EntityT, PrimaryKeyT> TableShard<EntityT, PrimaryKeyT> createShard(
+      DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath, boolean filtered) {
+    return new MemoryTableShard<>(databaseTable, filePath);
+  }
+}
@@ -0,0 +1,142 @@
+package shortener.database.storage;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * A table shard kept in memory only by the `MemoryStorageEngine`.
+ *
+ * <p>Records live in the record map of the table and are lost on a restart. Writes are done once
+ * they are in the map, so there is nothing to await, checkpoint or compact.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class MemoryTableShard<EntityT, PrimaryKeyT> implements TableShard<EntityT, PrimaryKeyT> {
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final Path filePath;
+  private final MeteredLock writeLock = new MeteredLock();
+
+  // Created on first access, since the table is not constructed yet when the shard is
+  private volatile Map<PrimaryKeyT, EntityT> records;
+
+
+  /**
+   * Constructs an empty shard.
+   *
+   * @param databaseTable Database table the shard belongs to.
+   * @param filePath      Path a file of the shard would have, which is never created.
+   */
+  public MemoryTableShard(DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath) {
+    this.databaseTable = databaseTable;
+    this.filePath = filePath;
+  }
+
+
+  @Override
+  public Path getFilePath() {
+    return filePath;
+  }
+
+  @Override
+  public MeteredLock getWriteLock() {
+    return writeLock;
+  }
+
+
+  @Override
+  public Optional<EntityT> get(PrimaryKeyT pk) {
+    return Optional.ofNullable(getRecords().get(pk));
+  }
+
+  @Override
+  public boolean contains(PrimaryKeyT pk) {
+    return getRecords().containsKey(pk);
+  }
+
+  @Override
+  public Collection<EntityT> values() {
+    return Collections.unmodifiableCollection(getRecords().values());
+  }
+
+  @Override
+  public int size() {
+    return getRecords().size();
+  }
+
+  @Override
+  public LogCommit insert(EntityT record) {
+    getRecords().put(databaseTable.getPrimaryKey(record), record);
+
+    return LogCommit.DONE;
+  }
+
+  @Override
+  public LogCommit delete(EntityT record) {
+    getRecords().remove(databaseTable.getPrimaryKey(record));
+
+    return LogCommit.DONE;
+  }
+
+  @Override
+  public Optional<BloomFilterStats> getFilterStats() {
+    return Optional.empty();
+  }
+
+
+  @Override
+  public void init() {
+    getRecords();
+  }
+
+  @Override
+  public List<String> readEntries() {
+    return List.of();
+  }
+
+  @Override
+  public long getTailEntries() {
+    return 0;
+  }
+
+  @Override
+  public long getDeadEntries() {
+    return 0;
+  }
+
+  @Override
+  public void checkpoint() {
+  }
+
+  @Override
+  public void compact(IoThrottle throttle) {
+  }
+
+  @Override
+  public void close() {
+  }
+
+
+  private Map<PrimaryKeyT, EntityT> getRecords() {
+    Map<PrimaryKeyT, EntityT> createdRecords = records;
+
+    if (createdRecords == null) {
+      synchronized (this) {
+        createdRecords = records;
+
+        if (createdRecords == null) {
+          createdRecords = databaseTable.createRecordMap(Map.of());
+          records = createdRecords;
+        }
+      }
+    }
+
+    return createdRecords;
+  }
+}
@@ -0,0 +1,49 @@
+package shortener.database.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant lock which measures how long threads wait for it.
+ *
+ * <p>Table writers are serialized by such locks, so a lock queue is the queue of pending writes
+ * of a table or a shard. An uncontended acquisition costs a single `tryLock`, only contended ones
+ * are timed.
+ */
+public class MeteredLock extends ReentrantLock {
+
+  private static final long serialVersionUID = 1L;
+
+  private final LongAdder acquisitions = new LongAdder();
+  private final LongAdder contendedAcquisitions = new LongAdder();
+  private final LongAdder totalWaitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+
+  @Override
+  public void lock() {
+    if (!tryLock()) {
+      long waitStart = System.nanoTime();
+      super.lock();
+      long waitNanos = System.nanoTime() - waitStart;
+
+      contendedAcquisitions.increment();
+      totalWaitNanos.add(waitNanos);
+      maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    acquisitions.increment();
+  }
+
+
+  /**
+   * Returns contention of the lock since it was created.
+   *
+   * @return Lock stats.
+   */
+  public LockStats getStats() {
+    return new LockStats(acquisitions.sum(), contendedAcquisitions.sum(), totalWaitNanos.sum(),
+        maxWaitNanos.get(), getQueueLength());
+  }
+}
@@ -0,0 +1,53 @@
+package shortener.database.storage;
+
+import java.util.Collection;
+
+/**
+ * Memory usage of an off-heap map.
+ *
+ * @param entries      Amount of entries in the map.
+ * @param slots        Amount of hash table slots, including the slots of a table being resized.
+ * @param slotBytes    Direct memory taken by the hash table slots.
+ * @param arenaBytes   Direct memory taken by the entry arenas.
+ * @param garbageBytes Arena bytes of removed or replaced entries, reclaimed by a resize.
+ * @param resizing     Whether a resize is in progress.
+ */
+public record OffHeapMapStats(long entries, long slots, long slotBytes, long arenaBytes,
+                              long garbageBytes, boolean resizing) {
+
+  /**
+   * Sums stats of maps of the same kind, e.g. maps of table shards.
+   *
+   * @param stats Stats of the maps.
+   * @return Combined stats, resizing if any map is resizing.
+   */
+  public static OffHeapMapStats combine(Collection<OffHeapMapStats> stats) {
+    long entries = 0;
+    long slots = 0;
+    long slotBytes = 0;
+    long arenaBytes = 0;
+    long garbageBytes = 0;
+    boolean resizing = false;
+
+    for (OffHeapMapStats mapStats : stats) {
+      entries += mapStats.entries();
+      slots += mapStats.slots();
+      slotBytes += mapStats.slotBytes();
+      arenaBytes += mapStats.arenaBytes();
+      garbageBytes += mapStats.garbageBytes();
+      resizing |= mapStats.resizing();
+    }
+
+    return new OffHeapMapStats(entries, slots, slotBytes, arenaBytes, garbageBytes, resizing);
+  }
+
+
+  /**
+   * Returns the direct memory taken by the map.
+   *
+   * @return Size in bytes.
+   */
+  public long totalBytes() {
+    return slotBytes + arenaBytes;
+  }
+}
@@ -0,0 +1,602 @@
+package shortener.database.storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map of positive `long` keys to URLs and ids of their owners, stored in direct memory.
+ *
+ * <p>The hash table is an array of direct buffers of slots, each holding up to 1 GiB, since a
+ * buffer is limited to 2 GiB. A slot is a key and a reference to an arena
+ * entry which holds the owner id and the URL: the id of its prefix in a `UrlPrefixDictionary`,
+ * if the map has one, and UTF-8 bytes of the rest. The URL is only put together when an entry
+ * is looked up. Collisions are resolved by
+ * linear probing, removed keys are marked and their slots are reused by later insertions. The
+ * arena is a list of direct buffers which is only appended to, so an entry found by a lookup is
+ * never overwritten. Neither keys nor values are Java objects, so the map adds nothing to the
+ * heap whatever the amount of entries.
+ *
+ * <p>A resize is incremental: a bigger table is allocated next to the current one, and every
+ * following write moves a few slots of the previous table to it along with their arena entries.
+ * Lookups check the new table first and the previous one next, so no operation waits for a whole
+ * table to be copied. A resize is also started to reclaim arena bytes of removed entries once
+ * they outweigh the live ones.
+ *
+ * <p>Lookups never block. Writes are expected to be serialized by the caller, e.g. by a table
+ * write lock.
+ */
+public class OffHeapUrlMap {
+
+  public static final int INITIAL_CAPACITY_DEFAULT = 1024;
+  // Arena entry references keep 24-bit offsets and lengths
+  private static final int ENTRY_HEADER_LENGTH = Long.BYTES + Short.BYTES;
+  public static final int MAX_URL_LENGTH = (1 << 24) - 1 - ENTRY_HEADER_LENGTH;
+  // Leaves room for a resize to twice the entries at the maximum load factor
+  public static final int MAX_ENTRIES = 1 << 28;
+
+  private static final long EMPTY = 0;
+  private static final long REMOVED = -1;
+  private static final int SLOT_LENGTH = 2 * Long.BYTES;
+  private static final int MIN_SLOTS = 16;
+  private static final int MAX_SLOTS = 1 << 30;
+  private static final int SEGMENT_SLOTS_SHIFT = 26;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_SLOTS_SHIFT) - 1;
+  private static final double MAX_LOAD_FACTOR = 0.5;
+  private static final int MIGRATION_STEP = 8;
+  private static final int MIN_CHUNK_LENGTH = 1 << 16;
+  private static final int MAX_CHUNK_LENGTH = 1 << 24;
+  private static final int MAX_CHUNKS = 1 << 16;
+  private static final long MIN_RECLAIMED_BYTES = 1 << 20;
+
+  private static final VarHandle LONGS =
+      MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+  // Null if URLs are kept in full
+  private final UrlPrefixDictionary urlPrefixes;
+
+  private volatile Tables tables;
+  private volatile int size;
+  // Slots of the previous table moved to the current one, accessed by the writer only
+  private int migratedSlots;
+
+
+  /**
+   * Constructs a map of the default initial capacity.
+   */
+  public OffHeapUrlMap() {
+    this(INITIAL_CAPACITY_DEFAULT, null);
+  }
+
+  /**
+   * Constructs a map which keeps URLs in full.
+   *
+   * @param initialCapacity Amount of entries the map holds before its first resize.
+   */
+  public OffHeapUrlMap(int initialCapacity) {
+    this(initialCapacity, null);
+  }
+
+  /**
+   * Constructs a map.
+   *
+   * @param initialCapacity Amount of entries the map holds before its first resize.
+   * @param urlPrefixes     Dictionary to look prefixes of put URLs up in, null to keep URLs in
+   *                        full.
+   */
+  public OffHeapUrlMap(int initialCapacity, UrlPrefixDictionary urlPrefixes) {
+    if (initialCapacity < 1 || initialCapacity > MAX_ENTRIES) {
+      throw new IllegalArgumentException("Invalid off-heap map capacity.");
+    }
+
+    this.urlPrefixes = urlPrefixes;
+    tables = new Tables(new Table(slotsFor(initialCapacity), urlPrefixes), null);
+  }
+
+
+  /**
+   * Looks up an entry.
+   *
+   * @param key    A positive key.
+   * @param mapper Function to build the found entry of.
+   * @param <T>    Entry type.
+   * @return Entry built by the `mapper` or null if the key is absent.
+   */
+  public <T> T get(long key, EntryMapper<T> mapper) {
+    Tables loadedTables = tables;
+    T entry = loadedTables.current().get(key, mapper);
+
+    if (entry == null && loadedTables.previous() != null) {
+      entry = loadedTables.previous().get(key, mapper);
+    }
+
+    return entry;
+  }
+
+  /**
+   * Checks if the key is present.
+   *
+   * @param key A positive key.
+   * @return True if the key is present.
+   */
+  public boolean contains(long key) {
+    Tables loadedTables = tables;
+
+    return loadedTables.current().find(key) >= 0
+        || loadedTables.previous() != null && loadedTables.previous().find(key) >= 0;
+  }
+
+  /**
+   * Puts an entry, replacing the entry of the same key.
+   *
+   * @param key   A positive key.
+   * @param url   A URL.
+   * @param owner Id of the URL owner.
+   * @return False if the entry doesn't fit: the URL without its prefix is longer than
+   *         `MAX_URL_LENGTH` bytes or the map holds `MAX_ENTRIES` entries already.
+   */
+  public boolean put(long key, String url, long owner) {
+    checkKey(key);
+
+    // Only known prefixes are used, the dictionary learns them from table file writes
+    int prefixId = urlPrefixes == null ? UrlPrefixDictionary.NO_PREFIX : urlPrefixes.find(url);
+    String suffix = prefixId == UrlPrefixDictionary.NO_PREFIX
+        ? url
+        : url.substring(urlPrefixes.getPrefix(prefixId).length());
+    byte[] suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+
+    if (suffixBytes.length > MAX_URL_LENGTH) {
+      return false;
+    }
+
+    migrate(MIGRATION_STEP);
+
+    boolean added = !contains(key);
+
+    if (added && size >= MAX_ENTRIES) {
+      return false;
+    }
+
+    if (tables.current().isFull()) {
+      startResize(size + 1);
+    }
+
+    tables.current().put(key, owner, prefixId, suffixBytes);
+
+    if (added) {
+      size++;
+    } else {
+      reclaimIfNeeded();
+    }
+
+    return true;
+  }
+
+  /**
+   * Removes an entry.
+   *
+   * @param key A positive key.
+   * @return True if the key was present.
+   */
+  public boolean remove(long key) {
+    checkKey(key);
+    migrate(MIGRATION_STEP);
+
+    Tables loadedTables = tables;
+    boolean removed = loadedTables.current().remove(key);
+
+    // An entry put during a resize is in both tables
+    if (loadedTables.previous() != null) {
+      removed |= loadedTables.previous().remove(key);
+    }
+
+    if (removed) {
+      size--;
+      reclaimIfNeeded();
+    }
+
+    return removed;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Iterates over the entries.
+   *
+   * <p>The iteration is weakly consistent: entries put or removed during it may or may not be
+   * returned, every other entry is returned once.
+   *
+   * @param mapper Function to build the entries of.
+   * @param <T>    Entry type.
+   * @return Entry iterator.
+   */
+  public <T> Iterator<T> iterator(EntryMapper<T> mapper) {
+    return new EntryIterator<>(tables, mapper);
+  }
+
+  /**
+   * Returns memory usage of the map.
+   *
+   * @return Map stats.
+   */
+  public OffHeapMapStats getStats() {
+    Tables loadedTables = tables;
+    long slots = 0;
+    long arenaBytes = 0;
+    long garbageBytes = 0;
+
+    for (Table table : new Table[] {loadedTables.current(), loadedTables.previous()}) {
+      if (table != null) {
+        slots += table.capacity;
+        arenaBytes += table.arenaBytes;
+        garbageBytes += table.garbageBytes;
+      }
+    }
+
+    return new OffHeapMapStats(size, slots, slots * SLOT_LENGTH, arenaBytes, garbageBytes,
+        loadedTables.previous() != null);
+  }
+
+
+  private static void checkKey(long key) {
+    if (key <= 0) {
+      throw new IllegalArgumentException("Off-heap map keys have to be positive.");
+    }
+  }
+
+  // The smallest power of two to hold the entries at the maximum load factor
+  private static int slotsFor(long entries) {
+    long slots = (long) Math.ceil(entries / MAX_LOAD_FACTOR);
+
+    return (int) Math.min(MAX_SLOTS, Math.max(MIN_SLOTS, Long.highestOneBit(slots * 2 - 1)));
+  }
+
+  private void startResize(long entries) {
+    // A table is never left behind unmigrated
+    migrate(Integer.MAX_VALUE);
+
+    // Twice the entries, so the previous table is migrated well before the new one fills up
+    tables = new Tables(new Table(slotsFor(2 * entries), urlPrefixes), tables.current());
+    migratedSlots = 0;
+  }
+
+  private void reclaimIfNeeded() {
+    Tables loadedTables = tables;
+    Table current = loadedTables.current();
+
+    if (loadedTables.previous() == null && current.garbageBytes >= MIN_RECLAIMED_BYTES
+        && current.garbageBytes > current.entryBytes - current.garbageBytes) {
+      startResize(Math.max(size, 1));
+    }
+  }
+
+  private void migrate(int slotCount) {
+    Tables loadedTables = tables;
+    Table previous = loadedTables.previous();
+
+    if (previous == null) {
+      return;
+    }
+
+    Table current = loadedTables.current();
+    int end = (int) Math.min(previous.capacity, (long) migratedSlots + slotCount);
+
+    for (; migratedSlots < end; migratedSlots++) {
+      long key = previous.keyAt(migratedSlots);
+
+      // A key in the current table has been put during the resize and is newer
+      if (key != EMPTY && key != REMOVED && current.find(key) < 0) {
+        current.copy(key, previous, previous.valueAt(migratedSlots));
+      }
+    }
+
+    if (migratedSlots == previous.capacity) {
+      tables = new Tables(current, null);
+    }
+  }
+
+
+  /**
+   * Builds entries of the map.
+   *
+   * @param <T> Entry type.
+   */
+  @FunctionalInterface
+  public interface EntryMapper<T> {
+
+    /**
+     * Builds an entry.
+     *
+     * @param key   Entry key.
+     * @param url   Entry URL.
+     * @param owner Id of the URL owner.
+     * @return A non-null entry.
+     */
+    T map(long key, String url, long owner);
+  }
+
+
+  private record Tables(Table current, Table previous) {
+  }
+
+
+  private static class Table {
+
+    private final ByteBuffer[] segments;
+    private final int capacity;
+    private final int mask;
+    private final UrlPrefixDictionary urlPrefixes;
+
+    // Replaced on every new chunk, read after a slot so that the chunk of its entry is visible
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    // Read by stats, written by the writer only
+    private volatile long arenaBytes;
+    private volatile long garbageBytes;
+    private long entryBytes;
+    private int chunkPosition;
+    private int usedSlots;
+
+    Table(int capacity, UrlPrefixDictionary urlPrefixes) {
+      int segmentSlots = Math.min(capacity, 1 << SEGMENT_SLOTS_SHIFT);
+
+      this.segments = new ByteBuffer[capacity / segmentSlots];
+      for (int i = 0; i < segments.length; i++) {
+        segments[i] = ByteBuffer.allocateDirect(segmentSlots * SLOT_LENGTH)
+            .order(ByteOrder.nativeOrder());
+      }
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.urlPrefixes = urlPrefixes;
+    }
+
+    boolean isFull() {
+      return usedSlots + 1 > capacity * MAX_LOAD_FACTOR;
+    }
+
+    long keyAt(int slot) {
+      return (long) LONGS.getAcquire(segmentOf(slot), offsetInSegment(slot));
+    }
+
+    long valueAt(int slot) {
+      return (long) LONGS.getAcquire(segmentOf(slot), offsetInSegment(slot) + Long.BYTES);
+    }
+
+    int find(long key) {
+      for (int slot = indexOf(key); ; slot = (slot + 1) & mask) {
+        long slotKey = keyAt(slot);
+
+        if (slotKey == key) {
+          return slot;
+        } else if (slotKey == EMPTY) {
+          return -1;
+        }
+      }
+    }
+
+    <T> T get(long key, EntryMapper<T> mapper) {
+      int slot = find(key);
+
+      return slot < 0 ? null : getAt(slot, key, mapper);
+    }
+
+    <T> T getAt(int slot, long key, EntryMapper<T> mapper) {
+      long value = valueAt(slot);
+
+      // The slot might have been reused by another key since the key was read
+      if (keyAt(slot) != key) {
+        return null;
+      }
+
+      ByteBuffer chunk = chunkOf(value);
+      int offset = offsetOf(value);
+      int prefixId = Short.toUnsignedInt(chunk.getShort(offset + Long.BYTES));
+      byte[] suffix = new byte[lengthOf(value) - ENTRY_HEADER_LENGTH];
+
+      chunk.duplicate().position(offset + ENTRY_HEADER_LENGTH).get(suffix);
+
+      String url = new String(suffix, StandardCharsets.UTF_8);
+      if (prefixId != UrlPrefixDictionary.NO_PREFIX) {
+        url = urlPrefixes.getPrefix(prefixId) + url;
+      }
+
+      return mapper.map(key, url, chunk.getLong(offset));
+    }
+
+    void put(long key, long owner, int prefixId, byte[] suffix) {
+      int slot = find(key);
+      long value = append(owner, prefixId, suffix);
+
+      if (slot >= 0) {
+        release(valueAt(slot));
+        LONGS.setRelease(segmentOf(slot), offsetInSegment(slot) + Long.BYTES, value);
+      } else {
+        insert(key, value);
+      }
+    }
+
+    void copy(long key, Table source, long sourceValue) {
+      ByteBuffer entry = source.chunkOf(sourceValue).duplicate();
+      long value = reserve(lengthOf(sourceValue));
+
+      entry.position(offsetOf(sourceValue)).limit(offsetOf(sourceValue) + lengthOf(value));
+      chunkOf(value).duplicate().position(offsetOf(value)).put(entry);
+      insert(key, value);
+    }
+
+    boolean remove(long key) {
+      int slot = find(key);
+
+      if (slot < 0) {
+        return false;
+      }
+
+      LONGS.setRelease(segmentOf(slot), offsetInSegment(slot), REMOVED);
+      release(valueAt(slot));
+
+      return true;
+    }
+
+    private ByteBuffer segmentOf(int slot) {
+      return segments[slot >>> SEGMENT_SLOTS_SHIFT];
+    }
+
+    private static int offsetInSegment(int slot) {
+      return (slot & SEGMENT_MASK) * SLOT_LENGTH;
+    }
+
+    private int indexOf(long key) {
+      long hash = key * 0x9e3779b97f4a7c15L;
+
+      return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private void insert(long key, long value) {
+      int slot = indexOf(key);
+      long slotKey;
+
+      while ((slotKey = keyAt(slot)) != EMPTY && slotKey != REMOVED) {
+        slot = (slot + 1) & mask;
+      }
+
+      if (slotKey == EMPTY) {
+        usedSlots++;
+      }
+
+      // The value goes first, so a lookup which sees the key sees its value too
+      LONGS.setRelease(segmentOf(slot), offsetInSegment(slot) + Long.BYTES, value);
+      LONGS.setRelease(segmentOf(slot), offsetInSegment(slot), key);
+    }
+
+    private long append(long owner, int prefixId, byte[] suffix) {
+      long value = reserve(ENTRY_HEADER_LENGTH + suffix.length);
+      ByteBuffer chunk = chunkOf(value);
+      int offset = offsetOf(value);
+
+      chunk.putLong(offset, owner);
+      chunk.putShort(offset + Long.BYTES, (short) prefixId);
+      chunk.duplicate().position(offset + ENTRY_HEADER_LENGTH).put(suffix);
+
+      return value;
+    }
+
+    // Allocates an arena entry and returns its reference
+    private long reserve(int length) {
+      ByteBuffer[] loadedChunks = chunks;
+      ByteBuffer chunk = loadedChunks.length == 0 ? null : loadedChunks[loadedChunks.length - 1];
+
+      if (chunk == null || chunkPosition + length > chunk.capacity()) {
+        if (loadedChunks.length == MAX_CHUNKS) {
+          throw new IllegalStateException("Off-heap map arena is full.");
+        }
+
+        int chunkLength = chunk == null
+            ? MIN_CHUNK_LENGTH
+            : Math.min(MAX_CHUNK_LENGTH, chunk.capacity() * 2);
+        chunk = ByteBuffer.allocateDirect(Math.max(length, chunkLength));
+
+        loadedChunks = Arrays.copyOf(loadedChunks, loadedChunks.length + 1);
+        loadedChunks[loadedChunks.length - 1] = chunk;
+        chunks = loadedChunks;
+        chunkPosition = 0;
+        arenaBytes += chunk.capacity();
+      }
+
+      int offset = chunkPosition;
+
+      chunkPosition += length;
+      entryBytes += length;
+
+      return (long) (loadedChunks.length - 1) << 48 | (long) offset << 24 | length;
+    }
+
+    private void release(long value) {
+      garbageBytes += lengthOf(value);
+    }
+
+    private ByteBuffer chunkOf(long value) {
+      return chunks[(int) (value >>> 48)];
+    }
+
+    private static int offsetOf(long value) {
+      return (int) (value >>> 24) & 0xffffff;
+    }
+
+    private static int lengthOf(long value) {
+      return (int) value & 0xffffff;
+    }
+  }
+
+
+  private static class EntryIterator<T> implements Iterator<T> {
+
+    private final Tables tables;
+    private final EntryMapper<T> mapper;
+    private Table table;
+    private int slot;
+    private T next;
+
+    EntryIterator(Tables tables, EntryMapper<T> mapper) {
+      this.tables = tables;
+      this.mapper = mapper;
+      this.table = tables.previous() != null ? tables.previous() : tables.current();
+      this.next = advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public T next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+
+      T entry = next;
+      next = advance();
+
+      return entry;
+    }
+
+    // Entries of the previous table go first, so an entry migrated during the iteration is
+    // returned by the previous table and skipped in the current one
+    private T advance() {
+      while (true) {
+        if (slot == table.capacity) {
+          if (table == tables.current()) {
+            return null;
+          }
+
+          table = tables.current();
+          slot = 0;
+        }
+
+        int index = slot++;
+        long key = table.keyAt(index);
+        T entry = null;
+
+        if (key == EMPTY || key == REMOVED) {
+          continue;
+        } else if (table == tables.previous()) {
+          // A key put during the resize is newer in the current table
+          entry = tables.current().get(key, mapper);
+          entry = entry != null ? entry : table.getAt(index, key, mapper);
+        } else if (tables.previous() == null || tables.previous().find(key) < 0) {
+          entry = table.getAt(index, key, mapper);
+        }
+
+        if (entry != null) {
+          return entry;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary layout of table files.
+ *
+ * <p>A file starts with a header: a zero byte, `SHDB` and a format version byte. A zero byte
+ * can't start a legacy pipe-delimited text file, so such files are told apart by the first byte.
+ * The header is followed by entries, each of them is a varint `payloadLength << 1 | tombstone`,
+ * the payload, which is written by `DatabaseTable.encode`, and a big-endian CRC32C of the varint
+ * and the payload:
+ * <ul>
+ *   <li>a string is a varint `length + 1` (0 for null) and its UTF-8 bytes;</li>
+ *   <li>a long is a zigzag varint.</li>
+ * </ul>
+ * An empty file is a valid file of no entries, the header is written with the first entry.
+ *
+ * <p>Entries of version 1 files have no checksums, and payloads of version 2 and older files
+ * store alias URLs in full rather than as prefixes of a `UrlPrefixDictionary` and suffixes. Such
+ * files are still read, and are rewritten in the current version when they are loaded.
+ */
+public class RecordFormat {
+
+  public static final byte VERSION = 3;
+  public static final byte UNCHECKSUMMED_VERSION = 1;
+  public static final byte UNPREFIXED_VERSION = 2;
+  // Layout of entries exchanged between instances, see `RecordFrames`
+  public static final byte PORTABLE_VERSION = UNPREFIXED_VERSION;
+  public static final int CHECKSUM_LENGTH = Integer.BYTES;
+
+  private static final byte[] HEADER = {0, 'S', 'H', 'D', 'B', VERSION};
+  private static final int MAGIC_LENGTH = HEADER.length - 1;
+  public static final int HEADER_LENGTH = HEADER.length;
+
+
+  private RecordFormat() {
+  }
+
+
+  /**
+   * Returns the header every non-empty table file starts with.
+   *
+   * @return A copy of the file header.
+   */
+  public static byte[] header() {
+    return HEADER.clone();
+  }
+
+  /**
+   * Checks if the file is written in the legacy pipe-delimited text format.
+   *
+   * @param filePath Path to a table file.
+   * @return True for a legacy text file.
+   * @throws IOException Occurs if the file can't be read or its format version is unsupported.
+   */
+  public static boolean isLegacyText(Path filePath) throws IOException {
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      if (channel.size() == 0) {
+        return false;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      while (header.hasRemaining()) {
+        if (channel.read(header) == -1) {
+          break;
+        }
+      }
+
+      if (header.get(0) != HEADER[0]) {
+        return true;
+      }
+
+      checkHeader(header.flip(), filePath);
+      return false;
+    }
+  }
+
+  /**
+   * Checks if the file has to be rewritten in the current format: it's a legacy text file or a
+   * binary file of an older version.
+   *
+   * @param filePath Path to a table file.
+   * @return True if the file has to be migrated.
+   * @throws IOException Occurs if the file can't be read or its format version is unsupported.
+   */
+  public static boolean needsMigration(Path filePath) throws IOException {
+    return isLegacyText(filePath) || readVersion(filePath) < VERSION;
+  }
+
+  /**
+   * Checks that the buffer starts with a header of a supported format version.
+   *
+   * @param buffer   Buffer holding the beginning of a table file.
+   * @param filePath Path to the table file, used in the error message.
+   * @return Format version of the file.
+   * @throws IOException Occurs if the header is missing or has an unsupported version.
+   */
+  static byte checkHeader(ByteBuffer buffer, Path filePath) throws IOException {
+    if (buffer.limit() < HEADER_LENGTH
+        || !buffer.slice(0, MAGIC_LENGTH).equals(ByteBuffer.wrap(HEADER, 0, MAGIC_LENGTH))) {
+      throw new IOException(String.format("%s is not a table file.", filePath));
+    }
+
+    byte version = buffer.get(MAGIC_LENGTH);
+
+    if (version < UNCHECKSUMMED_VERSION || version > VERSION) {
+      throw new IOException(String.format("%s has unsupported format version %d.", filePath,
+          version));
+    }
+
+    return version;
+  }
+
+  /**
+   * Computes the checksum of an entry.
+   *
+   * @param buffer Buffer holding the entry.
+   * @param index  Position of the entry start.
+   * @param length Length of the entry varint and payload.
+   * @return Entry checksum.
+   */
+  static int checksum(ByteBuffer buffer, int index, int length) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.slice(index, length));
+
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Reads an unsigned varint at the absolute `index` of the buffer.
+   *
+   * @param buffer Buffer to read from.
+   * @param index  Position of the first varint byte.
+   * @param limit  Position the varint can't cross.
+   * @return Decoded value.
+   * @throws UncheckedIOException Occurs if the varint is malformed or crosses the `limit`.
+   */
+  static long getVarLong(ByteBuffer buffer, int index, int limit) {
+    long value = 0;
+
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      if (index >= limit) {
+        break;
+      }
+
+      byte current = buffer.get(index++);
+      value |= (long) (current & 0x7F) << shift;
+
+      if ((current & 0x80) == 0) {
+        return value;
+      }
+    }
+
+    throw malformedEntry();
+  }
+
+  /**
+   * Returns amount of bytes an unsigned varint of the `value` takes.
+   *
+   * @param value Encoded value.
+   * @return Varint length in bytes.
+   */
+  static int varLongSize(long value) {
+    int size = 1;
+
+    while ((value & ~0x7FL) != 0) {
+      value >>>= 7;
+      size++;
+    }
+
+    return size;
+  }
+
+  static UncheckedIOException malformedEntry() {
+    return new UncheckedIOException(new IOException("Malformed table file entry."));
+  }
+
+
+  private static byte readVersion(Path filePath) throws IOException {
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      if (channel.size() == 0) {
+        return VERSION;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      while (header.hasRemaining()) {
+        if (channel.read(header) == -1) {
+          break;
+        }
+      }
+
+      return checkHeader(header.flip(), filePath);
+    }
+  }
+}
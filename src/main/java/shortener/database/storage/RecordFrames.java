@@ -0,0 +1,84 @@
+package shortener.database.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Frames of records exchanged between instances over a stream.
+ *
+ * <p>A frame is the entry length (int) followed by a checksummed table file entry of the record,
+ * whose payload is written by `DatabaseTable.encodePortable` in the layout of
+ * `RecordFormat.PORTABLE_VERSION`. Unlike the legacy text format, any field value survives the
+ * trip, and unlike the entries of a table file, the payload doesn't refer to state of the
+ * sending instance, e.g. its URL prefix dictionary.
+ */
+public class RecordFrames {
+
+  // A larger length is a corrupted stream rather than a record
+  public static final int MAX_ENTRY_LENGTH = 64 * 1024 * 1024;
+
+
+  private RecordFrames() {
+  }
+
+
+  /**
+   * Writes a frame of the record.
+   *
+   * @param databaseTable Table of the record.
+   * @param record        A record to send.
+   * @param out           Stream to write to.
+   * @param <EntityT>     Table entity type.
+   * @throws IOException Occurs if the record is too large or the stream can't be written.
+   */
+  public static <EntityT> void write(DatabaseTable<EntityT, ?> databaseTable, EntityT record,
+                                     DataOutput out) throws IOException {
+    RecordWriter writer = new RecordWriter();
+    databaseTable.encodePortable(record, writer);
+    byte[] entry = writer.toEntry(false);
+
+    if (entry.length > MAX_ENTRY_LENGTH) {
+      throw new IOException(String.format("A record of table %s is too large to be sent.",
+          databaseTable.getTableName()));
+    }
+
+    out.writeInt(entry.length);
+    out.write(entry);
+  }
+
+  /**
+   * Reads a frame of a record.
+   *
+   * @param databaseTable Table of the record.
+   * @param in            Stream to read from.
+   * @param <EntityT>     Table entity type.
+   * @return Received record.
+   * @throws IOException Occurs if the frame is malformed or the stream can't be read.
+   */
+  public static <EntityT> EntityT read(DatabaseTable<EntityT, ?> databaseTable, DataInput in)
+      throws IOException {
+    int length = in.readInt();
+
+    if (length < 1 || length > MAX_ENTRY_LENGTH) {
+      throw new IOException(String.format("Malformed record frame of length %d.", length));
+    }
+
+    byte[] entry = new byte[length];
+    in.readFully(entry);
+
+    try {
+      RecordReader reader = new RecordReader(ByteBuffer.wrap(entry), RecordFormat.PORTABLE_VERSION);
+      if (!reader.nextEntry()) {
+        throw RecordFormat.malformedEntry();
+      }
+
+      return databaseTable.decode(reader);
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package shortener.database.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decoder of table file entries in a buffer.
+ *
+ * <p>The reader walks entries in place with absolute reads, so a buffer of any size is decoded
+ * without copying it. A single reader is reused for all entries of a buffer, and string bytes
+ * are copied to a reused scratch array, so decoded strings are the only allocations.
+ *
+ * <p>Entry checksums are verified as the reader moves to the entries.
+ */
+public class RecordReader {
+
+  private static final int INITIAL_SCRATCH_SIZE = 128;
+
+  private final ByteBuffer buffer;
+  private final byte version;
+  private final boolean checksummed;
+  private byte[] scratch = new byte[INITIAL_SCRATCH_SIZE];
+
+  private int position;
+  private int entryStart;
+  private int payloadEnd;
+  private int entryEnd;
+  private boolean tombstone;
+
+
+  /**
+   * Constructs a reader of entries of the current format version from the buffer position up to
+   * its limit.
+   *
+   * @param buffer Buffer holding whole entries.
+   */
+  public RecordReader(ByteBuffer buffer) {
+    this(buffer, RecordFormat.VERSION);
+  }
+
+  /**
+   * Constructs a reader of entries from the buffer position up to its limit.
+   *
+   * @param buffer  Buffer holding whole entries.
+   * @param version Format version of the file the entries come from.
+   */
+  public RecordReader(ByteBuffer buffer, byte version) {
+    this.buffer = buffer;
+    this.version = version;
+    this.checksummed = version != RecordFormat.UNCHECKSUMMED_VERSION;
+    this.entryEnd = buffer.position();
+  }
+
+
+  /**
+   * Moves the reader to the payload of the next entry, skipping unread fields of the current one.
+   *
+   * @return False if there are no entries left.
+   * @throws java.io.UncheckedIOException Occurs if the entry is malformed, truncated or doesn't
+   *                                      match its checksum.
+   */
+  public boolean nextEntry() {
+    entryStart = entryEnd;
+    position = entryEnd;
+
+    if (position >= buffer.limit()) {
+      return false;
+    }
+
+    long entryHeader = RecordFormat.getVarLong(buffer, position, buffer.limit());
+    position += RecordFormat.varLongSize(entryHeader);
+
+    long payloadLength = entryHeader >>> 1;
+    int checksumLength = checksummed ? RecordFormat.CHECKSUM_LENGTH : 0;
+    if (payloadLength > buffer.limit() - position - checksumLength) {
+      throw RecordFormat.malformedEntry();
+    }
+
+    payloadEnd = position + (int) payloadLength;
+
+    if (checksummed && buffer.getInt(payloadEnd)
+        != RecordFormat.checksum(buffer, entryStart, payloadEnd - entryStart)) {
+      throw RecordFormat.malformedEntry();
+    }
+
+    entryEnd = payloadEnd + checksumLength;
+    tombstone = (entryHeader & 1) == 1;
+
+    return true;
+  }
+
+  /**
+   * Returns the format version of the entries, so a table can decode payloads of older versions.
+   *
+   * @return Format version.
+   */
+  public byte getVersion() {
+    return version;
+  }
+
+  /**
+   * Checks if the current entry is a tombstone of a deleted record.
+   *
+   * @return True for a tombstone.
+   */
+  public boolean isTombstone() {
+    return tombstone;
+  }
+
+  /**
+   * Reads a nullable string field of the current entry.
+   *
+   * @return A field value.
+   */
+  public String readString() {
+    long encodedLength = readVarLong();
+
+    if (encodedLength == 0) {
+      return null;
+    }
+
+    long length = encodedLength - 1;
+    if (length > payloadEnd - position) {
+      throw RecordFormat.malformedEntry();
+    }
+
+    if (length > scratch.length) {
+      scratch = new byte[Math.max((int) length, scratch.length * 2)];
+    }
+
+    buffer.get(position, scratch, 0, (int) length);
+    position += (int) length;
+
+    return new String(scratch, 0, (int) length, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads a long field of the current entry.
+   *
+   * @return A field value.
+   */
+  public long readLong() {
+    long encoded = readVarLong();
+
+    return (encoded >>> 1) ^ -(encoded & 1);
+  }
+
+
+  /**
+   * Returns the buffer position of the current entry, or of the entry which failed to be read.
+   *
+   * @return Entry start position.
+   */
+  int getEntryStart() {
+    return entryStart;
+  }
+
+  /**
+   * Copies the whole current entry along with its header and checksum, so it can be written
+   * elsewhere as is.
+   *
+   * @return Entry bytes.
+   */
+  byte[] copyEntry() {
+    byte[] entry = new byte[entryEnd - entryStart];
+    buffer.duplicate().position(entryStart).get(entry);
+
+    return entry;
+  }
+
+
+  private long readVarLong() {
+    long value = RecordFormat.getVarLong(buffer, position, payloadEnd);
+    position += RecordFormat.varLongSize(value);
+
+    return value;
+  }
+}
@@ -0,0 +1,93 @@
+package shortener.database.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Encoder of a table file entry payload.
+ *
+ * <p>A writer can be reused for several entries: `toEntry` frames the written payload, and
+ * `reset` starts a new one.
+ */
+public class RecordWriter {
+
+  private static final int INITIAL_CAPACITY = 128;
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int length;
+
+
+  /**
+   * Writes a nullable string field.
+   *
+   * @param value A field value.
+   */
+  public void writeString(String value) {
+    if (value == null) {
+      writeVarLong(0);
+      return;
+    }
+
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+    writeVarLong(bytes.length + 1L);
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  /**
+   * Writes a long field.
+   *
+   * @param value A field value.
+   */
+  public void writeLong(long value) {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  /**
+   * Frames the written payload as a checksummed table file entry.
+   *
+   * @param tombstone Whether the entry is a tombstone of a deleted record.
+   * @return Entry bytes.
+   */
+  public byte[] toEntry(boolean tombstone) {
+    long entryHeader = (long) length << 1 | (tombstone ? 1 : 0);
+    int headerSize = RecordFormat.varLongSize(entryHeader);
+    int checkedLength = headerSize + length;
+    ByteBuffer entry = ByteBuffer.allocate(checkedLength + RecordFormat.CHECKSUM_LENGTH);
+
+    for (int i = 0; i < headerSize; i++, entryHeader >>>= 7) {
+      entry.put((byte) (i < headerSize - 1 ? (entryHeader & 0x7F) | 0x80 : entryHeader));
+    }
+    entry.put(buffer, 0, length);
+    entry.putInt(RecordFormat.checksum(entry, 0, checkedLength));
+
+    return entry.array();
+  }
+
+  /**
+   * Drops the written payload, so the writer can encode another entry.
+   */
+  public void reset() {
+    length = 0;
+  }
+
+
+  private void writeVarLong(long value) {
+    ensureCapacity(RecordFormat.varLongSize(value));
+
+    while ((value & ~0x7FL) != 0) {
+      buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[length++] = (byte) value;
+  }
+
+  private void ensureCapacity(int bytes) {
+    if (length + bytes > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(length + bytes, buffer.length * 2));
+    }
+  }
+}
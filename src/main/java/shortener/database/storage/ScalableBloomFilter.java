@@ -0,0 +1,253 @@
+package shortener.database.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter which grows with the amount of added keys.
+ *
+ * <p>The filter is a series of fixed-size stages. A key is added to the last stage, and a new
+ * stage of twice the capacity and half the false positive rate is started once the last one is
+ * full, so the total false positive rate stays under twice the rate of the first stage however
+ * many keys are added. Keys can't be removed: a removed key stays a possible match, which
+ * the caller has to check exactly anyway.
+ *
+ * <p>Lookups never block. Adds are expected to be serialized by the caller, e.g. by a table
+ * write lock. A filter can be written to a stream and read back, so a filter of immutable keys,
+ * e.g. of an `LsmTree` segment, is built once.
+ */
+public class ScalableBloomFilter {
+
+  public static final int INITIAL_CAPACITY_DEFAULT = 1024;
+  public static final double FALSE_POSITIVE_RATE_DEFAULT = 0.01;
+
+  private static final double STAGE_RATE_RATIO = 0.5;
+  private static final double LN_2 = Math.log(2);
+
+  private final List<Stage> stages = new CopyOnWriteArrayList<>();
+
+
+  /**
+   * Constructs a filter with default capacity and false positive rate.
+   */
+  public ScalableBloomFilter() {
+    this(INITIAL_CAPACITY_DEFAULT, FALSE_POSITIVE_RATE_DEFAULT);
+  }
+
+  /**
+   * Constructs a filter.
+   *
+   * @param initialCapacity   Amount of keys the first stage holds.
+   * @param falsePositiveRate Upper bound of the false positive rate of the whole filter.
+   */
+  public ScalableBloomFilter(int initialCapacity, double falsePositiveRate) {
+    if (initialCapacity < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException("Invalid Bloom filter settings.");
+    }
+
+    stages.add(new Stage(initialCapacity, falsePositiveRate * (1 - STAGE_RATE_RATIO)));
+  }
+
+  private ScalableBloomFilter(List<Stage> stages) {
+    this.stages.addAll(stages);
+  }
+
+
+  /**
+   * Reads a filter written by `writeTo`.
+   *
+   * @param input Input to read the filter from.
+   * @return The filter.
+   * @throws IOException Occurs if the input can't be read or doesn't hold a filter.
+   */
+  public static ScalableBloomFilter readFrom(DataInput input) throws IOException {
+    int stageCount = input.readInt();
+
+    if (stageCount < 1 || stageCount > Long.SIZE) {
+      throw new IOException("Malformed Bloom filter.");
+    }
+
+    Stage[] readStages = new Stage[stageCount];
+
+    for (int i = 0; i < stageCount; i++) {
+      long capacity = input.readLong();
+      double falsePositiveRate = input.readDouble();
+      long insertions = input.readLong();
+
+      if (capacity < 1 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+        throw new IOException("Malformed Bloom filter.");
+      }
+
+      Stage stage = new Stage(capacity, falsePositiveRate);
+      if (input.readInt() != stage.bits.length()) {
+        throw new IOException("Malformed Bloom filter.");
+      }
+
+      for (int word = 0; word < stage.bits.length(); word++) {
+        stage.bits.set(word, input.readLong());
+      }
+      stage.insertions.set(insertions);
+      readStages[i] = stage;
+    }
+
+    return new ScalableBloomFilter(List.of(readStages));
+  }
+
+
+  /**
+   * Adds a key to the filter.
+   *
+   * @param key A key.
+   */
+  public void add(Object key) {
+    Stage lastStage = stages.get(stages.size() - 1);
+
+    if (lastStage.insertions.get() >= lastStage.capacity) {
+      lastStage = new Stage(lastStage.capacity * 2, lastStage.falsePositiveRate * STAGE_RATE_RATIO);
+      stages.add(lastStage);
+    }
+
+    lastStage.add(hash(key));
+  }
+
+  /**
+   * Checks if the key might have been added.
+   *
+   * @param key A key.
+   * @return False if the key definitely has not been added.
+   */
+  public boolean mightContain(Object key) {
+    long hash = hash(key);
+
+    for (Stage stage : stages) {
+      if (stage.mightContain(hash)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns size and estimated accuracy of the filter.
+   *
+   * @return Filter stats.
+   */
+  public BloomFilterStats getStats() {
+    long sizeInBits = 0;
+    long insertions = 0;
+    double trueNegativeRate = 1;
+
+    for (Stage stage : stages) {
+      sizeInBits += stage.bitCount;
+      insertions += stage.insertions.get();
+      trueNegativeRate *= 1 - stage.getFalsePositiveRate();
+    }
+
+    return new BloomFilterStats(sizeInBits, stages.size(), insertions, 1 - trueNegativeRate);
+  }
+
+
+  /**
+   * Writes the filter, which must not be added to meanwhile.
+   *
+   * @param output Output to write the filter to.
+   * @throws IOException Occurs if the output can't be written.
+   */
+  public void writeTo(DataOutput output) throws IOException {
+    output.writeInt(stages.size());
+
+    for (Stage stage : stages) {
+      output.writeLong(stage.capacity);
+      output.writeDouble(stage.falsePositiveRate);
+      output.writeLong(stage.insertions.get());
+      output.writeInt(stage.bits.length());
+
+      for (int word = 0; word < stage.bits.length(); word++) {
+        output.writeLong(stage.bits.get(word));
+      }
+    }
+  }
+
+
+  // 64-bit FNV-1a of the key string finalized with the MurmurHash3 mixer
+  private static long hash(Object key) {
+    String string = String.valueOf(key);
+    long hash = 0xcbf29ce484222325L;
+
+    for (int i = 0; i < string.length(); i++) {
+      hash ^= string.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+
+    return hash;
+  }
+
+
+  private static class Stage {
+
+    private final long capacity;
+    private final double falsePositiveRate;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final AtomicLongArray bits;
+    private final AtomicLong insertions = new AtomicLong();
+
+    Stage(long capacity, double falsePositiveRate) {
+      this.capacity = capacity;
+      this.falsePositiveRate = falsePositiveRate;
+
+      long words = (long) Math.ceil(
+          -capacity * Math.log(falsePositiveRate) / (LN_2 * LN_2) / Long.SIZE);
+      this.bits = new AtomicLongArray((int) Math.max(1, words));
+      this.bitCount = (long) bits.length() * Long.SIZE;
+      this.hashFunctions = (int) Math.max(1, Math.round((double) bitCount / capacity * LN_2));
+    }
+
+    void add(long hash) {
+      // Kirsch-Mitzenmacher double hashing: the i-th bit is h1 + i * h2
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+
+      for (int i = 0; i < hashFunctions; i++) {
+        long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+        long mask = 1L << bit;
+
+        bits.getAndUpdate((int) (bit >>> 6), word -> word | mask);
+      }
+
+      insertions.incrementAndGet();
+    }
+
+    boolean mightContain(long hash) {
+      int h1 = (int) hash;
+      int h2 = (int) (hash >>> 32);
+
+      for (int i = 0; i < hashFunctions; i++) {
+        long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+
+        if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    double getFalsePositiveRate() {
+      return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions.get() / bitCount),
+          hashFunctions);
+    }
+  }
+}
@@ -0,0 +1,531 @@
+package shortener.database.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Read-only file of table entries compressed in blocks.
+ *
+ * <p>A segment holds records which are not expected to change, e.g. live records of a compacted
+ * table file, sorted by primary key hashes. It starts with the `RecordFormat` header, which is
+ * followed by blocks of about `BLOCK_SIZE` bytes (by default) of entries compressed with
+ * `Deflater`, a block index and a trailer. An index entry is the first key hash of a block, the
+ * block offset and its compressed and uncompressed lengths. The trailer is the index offset, the
+ * amounts of blocks and entries, and a CRC32C of the index and the trailer. Entries keep their own
+ * checksums.
+ *
+ * <p>Entries of a key hash never span two blocks, so a point lookup decompresses a single block,
+ * while a scan decompresses all blocks in parallel and a cursor decompresses them one by one.
+ */
+public class SealedSegment implements Closeable {
+
+  public static final int BLOCK_SIZE = 16 * 1024;
+
+  private static final int INDEX_ENTRY_LENGTH = Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+  private static final int TRAILER_LENGTH = Long.BYTES + Integer.BYTES + Long.BYTES
+      + Integer.BYTES;
+
+  private final Path filePath;
+  private final FileChannel channel;
+  private final byte version;
+  private final ByteBuffer index;
+  private final int blocks;
+  private final long entries;
+
+
+  private SealedSegment(Path filePath, FileChannel channel, byte version, ByteBuffer index,
+                        int blocks, long entries) {
+    this.filePath = filePath;
+    this.channel = channel;
+    this.version = version;
+    this.index = index;
+    this.blocks = blocks;
+    this.entries = entries;
+  }
+
+
+  /**
+   * Opens a segment file and reads its block index.
+   *
+   * @param filePath Path to a segment file.
+   * @return Opened segment, which has to be closed.
+   * @throws IOException Occurs if the file can't be read or is corrupted.
+   */
+  public static SealedSegment open(Path filePath) throws IOException {
+    FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+
+    try {
+      long size = channel.size();
+
+      if (size < RecordFormat.HEADER_LENGTH + TRAILER_LENGTH) {
+        throw corrupted(filePath);
+      }
+
+      byte version = RecordFormat.checkHeader(read(channel, 0, RecordFormat.HEADER_LENGTH),
+          filePath);
+      ByteBuffer trailer = read(channel, size - TRAILER_LENGTH, TRAILER_LENGTH);
+      long indexOffset = trailer.getLong(0);
+      int blocks = trailer.getInt(Long.BYTES);
+      long entries = trailer.getLong(Long.BYTES + Integer.BYTES);
+
+      if (blocks < 0 || indexOffset < RecordFormat.HEADER_LENGTH
+          || indexOffset + (long) blocks * INDEX_ENTRY_LENGTH != size - TRAILER_LENGTH) {
+        throw corrupted(filePath);
+      }
+
+      ByteBuffer index = read(channel, indexOffset, blocks * INDEX_ENTRY_LENGTH);
+      CRC32C crc = new CRC32C();
+      crc.update(index.duplicate());
+      crc.update(trailer.duplicate().limit(TRAILER_LENGTH - Integer.BYTES));
+
+      if ((int) crc.getValue() != trailer.getInt(TRAILER_LENGTH - Integer.BYTES)) {
+        throw corrupted(filePath);
+      }
+
+      return new SealedSegment(filePath, channel, version, index, blocks, entries);
+    } catch (IOException | RuntimeException exc) {
+      channel.close();
+      throw exc;
+    }
+  }
+
+  /**
+   * Writes a segment file.
+   *
+   * @param filePath  Path to the segment file, which is replaced if it exists.
+   * @param throttle  Limits the write rate, null for no limit.
+   * @param keyHashes Primary key hashes of the entries in a non-descending order.
+   * @param entries   Entries to write, produced by `RecordWriter.toEntry`.
+   * @throws IOException Occurs if the file can't be written.
+   */
+  public static void write(Path filePath, IoThrottle throttle, int[] keyHashes,
+                           Iterable<byte[]> entries) throws IOException {
+    try (Writer writer = create(filePath, throttle)) {
+      int entry = 0;
+
+      for (byte[] entryBytes : entries) {
+        writer.append(keyHashes[entry++], entryBytes);
+      }
+
+      writer.finish();
+    }
+  }
+
+  /**
+   * Creates a segment file which is written entry by entry, e.g. when the entries are merged
+   * from other segments and their amount is not known upfront.
+   *
+   * @param filePath Path to the segment file, which is replaced if it exists.
+   * @param throttle Limits the write rate, null for no limit.
+   * @return Writer, which has to be finished and closed.
+   * @throws IOException Occurs if the file can't be created.
+   */
+  public static Writer create(Path filePath, IoThrottle throttle) throws IOException {
+    return create(filePath, throttle, BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a segment file with blocks of the given size, smaller blocks make point lookups
+   * cheaper at the cost of a larger index and a worse compression.
+   *
+   * @param filePath  Path to the segment file, which is replaced if it exists.
+   * @param throttle  Limits the write rate, null for no limit.
+   * @param blockSize Uncompressed length after which a block is cut.
+   * @return Writer, which has to be finished and closed.
+   * @throws IOException Occurs if the file can't be created.
+   */
+  public static Writer create(Path filePath, IoThrottle throttle, int blockSize)
+      throws IOException {
+    FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    try {
+      writeFully(channel, ByteBuffer.wrap(RecordFormat.header()));
+    } catch (IOException exc) {
+      channel.close();
+      throw exc;
+    }
+
+    return new Writer(channel, throttle, blockSize);
+  }
+
+
+  public Path getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Returns amount of entries in the segment.
+   *
+   * @return Amount of entries.
+   */
+  public long getEntries() {
+    return entries;
+  }
+
+  /**
+   * Decompresses and scans all blocks in parallel, the same way `TableScanner` scans ranges.
+   *
+   * @param supplier    Creates an empty accumulator for a block.
+   * @param accumulator Adds an entry to an accumulator. The reader is positioned on the entry
+   *                    payload and must not be used after the call.
+   * @param combiner    Combines accumulators of two adjacent blocks, the left one goes first.
+   * @param <ResultT>   Accumulator type.
+   * @return Accumulator holding all entries of the segment.
+   * @throws IOException Occurs if the file can't be read or a block is corrupted.
+   */
+  public <ResultT> ResultT scan(Supplier<ResultT> supplier,
+                                BiConsumer<ResultT, RecordReader> accumulator,
+                                BinaryOperator<ResultT> combiner) throws IOException {
+    try {
+      return IntStream.range(0, blocks)
+          .parallel()
+          .mapToObj(block -> {
+            ResultT result = supplier.get();
+            RecordReader reader = readBlock(block);
+
+            while (reader.nextEntry()) {
+              accumulator.accept(result, reader);
+            }
+
+            return result;
+          })
+          .reduce(combiner)
+          .orElseGet(supplier);
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Decompresses the block which may hold entries of the key hash and returns the first entry
+   * the matcher accepts.
+   *
+   * @param keyHash   Primary key hash of the looked up entry.
+   * @param matcher   Decodes an entry, returns null if it doesn't match. The reader is
+   *                  positioned on the entry payload and must not be used after the call.
+   * @param <ResultT> Type of the decoded entry.
+   * @return Decoded entry or null if none matches.
+   * @throws IOException Occurs if the file can't be read or the block is corrupted.
+   */
+  public <ResultT> ResultT find(int keyHash, Function<RecordReader, ResultT> matcher)
+      throws IOException {
+    int block = blockOf(keyHash);
+
+    if (block < 0) {
+      return null;
+    }
+
+    try {
+      RecordReader reader = readBlock(block);
+
+      while (reader.nextEntry()) {
+        ResultT result = matcher.apply(reader);
+
+        if (result != null) {
+          return result;
+        }
+      }
+
+      return null;
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Returns a cursor over the entries in the key hash order, which decompresses a block at a
+   * time, e.g. to merge segments.
+   *
+   * @return Cursor positioned before the first entry.
+   */
+  public Cursor cursor() {
+    return new Cursor(0);
+  }
+
+  /**
+   * Returns a cursor which starts at the block holding entries of the key hash, if any. Entries
+   * of lower hashes at the start of the block are left for the caller to skip.
+   *
+   * @param keyHash Primary key hash to start from.
+   * @return Cursor positioned before the first entry of the block.
+   */
+  public Cursor cursor(int keyHash) {
+    return new Cursor(Math.max(0, blockOf(keyHash)));
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+
+  // The last block which starts with the hash or a lower one, -1 if there is none
+  private int blockOf(int keyHash) {
+    int low = 0;
+    int high = blocks - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+
+      if (index.getInt(middle * INDEX_ENTRY_LENGTH) <= keyHash) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+
+    return high;
+  }
+
+  private RecordReader readBlock(int block) {
+    int indexOffset = block * INDEX_ENTRY_LENGTH + Integer.BYTES;
+    long offset = index.getLong(indexOffset);
+    int compressedLength = index.getInt(indexOffset + Long.BYTES);
+    int length = index.getInt(indexOffset + Long.BYTES + Integer.BYTES);
+    byte[] entryBytes = new byte[length];
+    Inflater inflater = new Inflater();
+
+    try {
+      inflater.setInput(read(channel, offset, compressedLength));
+
+      if (inflater.inflate(entryBytes) != length || !inflater.finished()) {
+        throw corrupted(filePath);
+      }
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    } catch (DataFormatException exc) {
+      throw new UncheckedIOException(corrupted(filePath));
+    } finally {
+      inflater.end();
+    }
+
+    return new RecordReader(ByteBuffer.wrap(entryBytes), version);
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) == -1) {
+        throw new IOException("Unexpected end of a segment file.");
+      }
+    }
+
+    return buffer.flip();
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static IOException corrupted(Path filePath) {
+    return new IOException(String.format("%s is a corrupted segment file.", filePath));
+  }
+
+
+  /**
+   * Writer of a segment file, which appends entries sorted by their key hashes.
+   */
+  public static class Writer implements Closeable {
+
+    private final FileChannel channel;
+    private final IoThrottle throttle;
+    private final int blockSize;
+    private final ByteArrayOutputStream block;
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater();
+    private final byte[] compressed;
+
+    private long position = RecordFormat.HEADER_LENGTH;
+    private int blocks;
+    private long entries;
+    private int firstKeyHash;
+    private int lastKeyHash;
+
+    private Writer(FileChannel channel, IoThrottle throttle, int blockSize) {
+      this.channel = channel;
+      this.throttle = throttle;
+      this.blockSize = blockSize;
+      this.block = new ByteArrayOutputStream(blockSize);
+      this.compressed = new byte[blockSize];
+    }
+
+
+    /**
+     * Appends an entry.
+     *
+     * @param keyHash Primary key hash of the entry, not lower than the one of the previous entry.
+     * @param entry   Entry produced by `RecordWriter.toEntry`.
+     * @throws IOException Occurs if the file can't be written.
+     */
+    public void append(int keyHash, byte[] entry) throws IOException {
+      if (entries > 0 && keyHash < lastKeyHash) {
+        throw new IllegalArgumentException("Segment entries are not sorted by key hashes.");
+      }
+
+      // A block is only cut between key hashes, so a lookup reads a single one
+      if (block.size() >= blockSize && keyHash != lastKeyHash) {
+        flushBlock();
+      }
+
+      if (block.size() == 0) {
+        firstKeyHash = keyHash;
+      }
+
+      block.writeBytes(entry);
+      lastKeyHash = keyHash;
+      entries++;
+    }
+
+    /**
+     * Returns amount of the appended entries.
+     *
+     * @return Amount of entries.
+     */
+    public long getEntries() {
+      return entries;
+    }
+
+    /**
+     * Returns the length of the written blocks along with the uncompressed entries of the pending
+     * one.
+     *
+     * @return Approximate segment file length.
+     */
+    public long getLength() {
+      return position + block.size();
+    }
+
+    /**
+     * Writes the pending block, the index and the trailer, and syncs the file.
+     *
+     * @throws IOException Occurs if the file can't be written.
+     */
+    public void finish() throws IOException {
+      if (block.size() > 0) {
+        flushBlock();
+      }
+
+      ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH)
+          .putLong(position)
+          .putInt(blocks)
+          .putLong(entries);
+      CRC32C crc = new CRC32C();
+      crc.update(index.toByteArray());
+      crc.update(trailer.array(), 0, TRAILER_LENGTH - Integer.BYTES);
+      trailer.putInt((int) crc.getValue());
+
+      writeFully(channel, ByteBuffer.wrap(index.toByteArray()));
+      writeFully(channel, trailer.flip());
+      channel.force(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+      deflater.end();
+      channel.close();
+    }
+
+
+    private void flushBlock() throws IOException {
+      long blockOffset = position;
+
+      deflater.reset();
+      deflater.setInput(block.toByteArray());
+      deflater.finish();
+
+      while (!deflater.finished()) {
+        int length = deflater.deflate(compressed);
+
+        if (throttle != null) {
+          throttle.acquire(length);
+        }
+        writeFully(channel, ByteBuffer.wrap(compressed, 0, length));
+        position += length;
+      }
+
+      index.writeBytes(ByteBuffer.allocate(INDEX_ENTRY_LENGTH)
+          .putInt(firstKeyHash)
+          .putLong(blockOffset)
+          .putInt((int) (position - blockOffset))
+          .putInt(block.size())
+          .array());
+      block.reset();
+      blocks++;
+    }
+  }
+
+
+  /**
+   * Cursor over the segment entries, which is not thread-safe.
+   */
+  public class Cursor {
+
+    private int block;
+    private RecordReader reader;
+
+    private Cursor(int block) {
+      this.block = block;
+    }
+
+
+    /**
+     * Moves the cursor to the payload of the next entry, decompressing the next block if needed.
+     *
+     * @return False if there are no entries left.
+     * @throws IOException Occurs if the file can't be read or a block is corrupted.
+     */
+    public boolean next() throws IOException {
+      try {
+        while (reader == null || !reader.nextEntry()) {
+          if (block >= blocks) {
+            return false;
+          }
+
+          reader = readBlock(block++);
+        }
+
+        return true;
+      } catch (UncheckedIOException exc) {
+        throw exc.getCause();
+      }
+    }
+
+    /**
+     * Returns the reader positioned on the payload of the current entry.
+     *
+     * @return Entry reader.
+     */
+    public RecordReader getReader() {
+      return reader;
+    }
+
+    /**
+     * Copies the current entry, so it can be appended to another segment as is.
+     *
+     * @return Entry bytes.
+     */
+    public byte[] copyEntry() {
+      return reader.copyEntry();
+    }
+  }
+}
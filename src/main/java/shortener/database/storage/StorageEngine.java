@@ -0,0 +1,42 @@
+package shortener.database.storage;
+
+import java.nio.file.Path;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Storage engine of database tables, selected per table by `database.table-engines`.
+ *
+ * <p>An engine creates the shards of a table, which store its records and serve the `Database`
+ * reads and writes. Every engine passes the same conformance suite, see
+ * `StorageEngineConformanceTest`.
+ */
+public interface StorageEngine {
+
+  /**
+   * Returns the engine name, which selects the engine in the configuration.
+   *
+   * @return Engine name.
+   */
+  String getName();
+
+  /**
+   * Checks if the engine stores records in table files, which are then kept in the shard layout
+   * of the table on startup.
+   *
+   * @return True if records survive a restart.
+   */
+  boolean isPersistent();
+
+  /**
+   * Creates a shard of the table.
+   *
+   * @param databaseTable Database table the shard belongs to.
+   * @param filePath      Path to the shard file.
+   * @param filtered      Whether lookups of absent keys should be answered by a Bloom filter.
+   * @param <EntityT>     Table entity type.
+   * @param <PrimaryKeyT> Table primary key type.
+   * @return Table shard.
+   */
+  <EntityT, PrimaryKeyT> TableShard<EntityT, PrimaryKeyT> createShard(
+      DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath, boolean filtered);
+}
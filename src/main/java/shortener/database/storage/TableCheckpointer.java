@@ -0,0 +1,111 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Periodic checkpointer of table shards.
+ *
+ * <p>Every interval a snapshot is written for each shard whose log tail has grown by enough
+ * entries since the previous snapshot, so a restart replays a short tail instead of the whole
+ * file. Checkpoints run one at a time on a single daemon thread and don't block table writes.
+ */
+public class TableCheckpointer {
+
+  private static final Logger logger = LoggerFactory.getLogger(TableCheckpointer.class);
+
+  public static final Duration INTERVAL_DEFAULT = Duration.ofMinutes(5);
+  public static final long MIN_TAIL_ENTRIES_DEFAULT = 10_000;
+
+  private final long minTailEntries;
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+      runnable -> {
+        Thread thread = new Thread(runnable, "table-checkpointer");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+
+  /**
+   * Constructs a checkpointer with the default threshold.
+   */
+  public TableCheckpointer() {
+    this(MIN_TAIL_ENTRIES_DEFAULT);
+  }
+
+  /**
+   * Constructs a checkpointer.
+   *
+   * @param minTailEntries Minimal amount of entries appended after the previous snapshot which
+   *                       triggers a checkpoint.
+   */
+  public TableCheckpointer(long minTailEntries) {
+    this.minTailEntries = minTailEntries;
+  }
+
+
+  /**
+   * Starts periodic checkpoints of the tables.
+   *
+   * @param databaseTables Tables to checkpoint.
+   * @param interval       Interval between checks, a non-positive one disables checkpoints.
+   */
+  public void start(Collection<DatabaseTable<?, ?>> databaseTables, Duration interval) {
+    if (interval.isZero() || interval.isNegative()) {
+      return;
+    }
+
+    List<DatabaseTable<?, ?>> tables = List.copyOf(databaseTables);
+    long period = interval.toMillis();
+
+    executor.scheduleWithFixedDelay(() -> checkpointIfNeeded(tables), period, period,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Checkpoints all shards of the table in the calling thread.
+   *
+   * @param databaseTable Database table to checkpoint.
+   * @throws IOException Occurs if a shard snapshot can't be written.
+   */
+  public void checkpoint(DatabaseTable<?, ?> databaseTable) throws IOException {
+    for (TableShard<?, ?> shard : databaseTable.getShards()) {
+      shard.checkpoint();
+    }
+  }
+
+  /**
+   * Stops periodic checkpoints, letting a running one finish.
+   */
+  public void close() {
+    executor.shutdown();
+  }
+
+
+  private void checkpointIfNeeded(List<DatabaseTable<?, ?>> tables) {
+    for (DatabaseTable<?, ?> databaseTable : tables) {
+      for (TableShard<?, ?> shard : databaseTable.getShards()) {
+        // Shards which have not been loaded yet have no tail to speak of
+        if (shard.getTailEntries() < minTailEntries) {
+          continue;
+        }
+
+        try {
+          shard.checkpoint();
+        } catch (IOException | RuntimeException exc) {
+          // A thrown exception would cancel the periodic task
+          logger.error("Failed to checkpoint {} file.", shard.getFilePath(), exc);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+
+/**
+ * Background compactor of table shard files.
+ *
+ * <p>A shard is compacted once the ratio of dead lines (deleted records and their tombstones) in
+ * its file reaches the threshold. Compactions run one at a time on a single daemon thread.
+ */
+public class TableCompactor {
+
+  private static final Logger logger = LoggerFactory.getLogger(TableCompactor.class);
+
+  public static final double DEAD_ENTRIES_RATIO_DEFAULT = 0.5;
+  public static final long MIN_DEAD_ENTRIES_DEFAULT = 1024;
+  public static final long BYTES_PER_SECOND_DEFAULT = 8L * 1024 * 1024;
+
+  private final double deadEntriesRatio;
+  private final long minDeadEntries;
+  private final long bytesPerSecond;
+
+  private final Set<TableShard<?, ?>> scheduledShards = ConcurrentHashMap.newKeySet();
+  private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "table-compactor");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+
+  /**
+   * Constructs a compactor with default thresholds.
+   */
+  public TableCompactor() {
+    this(DEAD_ENTRIES_RATIO_DEFAULT, MIN_DEAD_ENTRIES_DEFAULT, BYTES_PER_SECOND_DEFAULT);
+  }
+
+  /**
+   * Constructs a compactor.
+   *
+   * @param deadEntriesRatio Ratio of dead lines in a table file which triggers compaction.
+   * @param minDeadEntries   Minimal amount of dead lines which triggers compaction.
+   * @param bytesPerSecond   Maximum write rate of a compaction.
+   */
+  public TableCompactor(double deadEntriesRatio, long minDeadEntries, long bytesPerSecond) {
+    this.deadEntriesRatio = deadEntriesRatio;
+    this.minDeadEntries = minDeadEntries;
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+
+  /**
+   * Schedules a background compaction of the shard if its file has too many dead lines.
+   *
+   * @param shard Table shard to check.
+   * @throws IOException Occurs if the shard index can't be built.
+   */
+  public void compactIfNeeded(TableShard<?, ?> shard) throws IOException {
+    long deadEntries = shard.getDeadEntries();
+    long entries = deadEntries + shard.size();
+
+    if (deadEntries < minDeadEntries || deadEntries < entries * deadEntriesRatio) {
+      return;
+    }
+
+    if (scheduledShards.add(shard)) {
+      executor.execute(() -> {
+        try {
+          shard.compact(new IoThrottle(bytesPerSecond));
+        } catch (IOException exc) {
+          logger.error("Failed to compact {} file.", shard.getFilePath(), exc);
+        } finally {
+          scheduledShards.remove(shard);
+        }
+      });
+    }
+  }
+
+  /**
+   * Compacts all shards of the table in the calling thread without throttling.
+   *
+   * @param databaseTable Database table to compact.
+   * @throws IOException Occurs if a shard file can't be rewritten.
+   */
+  public void compact(DatabaseTable<?, ?> databaseTable) throws IOException {
+    for (TableShard<?, ?> shard : databaseTable.getShards()) {
+      shard.compact(new IoThrottle(Long.MAX_VALUE));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.AliasTable;
+import shortener.database.tables.DatabaseTable;
+import shortener.database.tables.UserSessionTable;
+import shortener.database.tables.UserTable;
+
+/**
+ * Offline migrator of table files from the legacy pipe-delimited text format and older binary
+ * versions to the current binary format.
+ *
+ * <p>The `Database` migrates its shard files on startup anyway, the tool allows doing it ahead of
+ * a deployment, whatever the shard layout is:
+ * `java -cp shortener.jar shortener.database.storage.TableFileMigrator data [other-root...]`.
+ */
+public class TableFileMigrator {
+
+  private static final Logger logger = LoggerFactory.getLogger(TableFileMigrator.class);
+
+
+  /**
+   * Migrates table files in the provided root directories, `data` by default.
+   *
+   * @param args Paths to the root directories.
+   * @throws IOException Occurs if a table file can't be read or rewritten.
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> rootDirectories = args.length == 0 ? List.of("data") : List.of(args);
+
+    for (String rootDirectory : rootDirectories) {
+      Path rootPath = Path.of(rootDirectory);
+
+      int migratedFiles = migrate(new UserTable(rootPath), rootPath)
+          + migrate(new AliasTable(rootPath), rootPath)
+          + migrate(new UserSessionTable(rootPath), rootPath);
+
+      logger.info("Migrated {} table files in {}.", migratedFiles, rootPath);
+    }
+  }
+
+  /**
+   * Migrates all shard files of the table in the root directory.
+   *
+   * @param databaseTable Table to decode the legacy files with.
+   * @param rootPath      Path to the root directory.
+   * @param <EntityT>     Table entity type.
+   * @param <PrimaryKeyT> Table primary key type.
+   * @return Amount of migrated files.
+   * @throws IOException Occurs if a table file can't be read or rewritten.
+   */
+  public static <EntityT, PrimaryKeyT> int migrate(
+      DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path rootPath) throws IOException {
+    Pattern shardFileName = FileTableShard.fileNamePattern(databaseTable.getTableName());
+    int migratedFiles = 0;
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(rootPath)) {
+      for (Path filePath : files) {
+        if (shardFileName.matcher(filePath.getFileName().toString()).matches()
+            && RecordFormat.needsMigration(filePath)) {
+          new TableLog<>(databaseTable, filePath).migrateIfNeeded();
+          migratedFiles++;
+        }
+      }
+    }
+
+    return migratedFiles;
+  }
+}
@@ -0,0 +1,722 @@
+package shortener.database.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.tables.DatabaseTable;
+import shortener.database.tables.PrimaryKeyIndex;
+
+/**
+ * Append-only log of a database table shard file.
+ *
+ * <p>Every created record is appended to the table file, and every deleted record is appended as
+ * a tombstone entry, so no operation rewrites the file. Dead entries are dropped by `compact`,
+ * which seals the live records into a block-compressed `SealedSegment` next to the table file in
+ * the background. The table file is then replaced with one holding only the entries appended
+ * meanwhile, so recent records stay uncompressed while old ones take less disk and page cache.
+ *
+ * <p>Entries are written in the binary `RecordFormat`. A file of the legacy pipe-delimited text
+ * format or of an older binary version is migrated in place when it is loaded.
+ *
+ * <p>Entry checksums are verified on load. A truncated or corrupted entry which no whole entry
+ * follows is taken for a torn write of the last batch before a crash: the file is truncated
+ * right before it, dropping the entries which were never acknowledged as durable. Corruption
+ * followed by valid entries, e.g. a flipped bit, fails the load rather than dropping them.
+ *
+ * <p>`checkpoint` writes a snapshot of the live records next to the table file along with the
+ * file offset it covers, so `load` reads the snapshot and replays only the log tail after that
+ * offset. A compaction rewrites the file and drops the snapshot, since its offset no longer
+ * matches.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class TableLog<EntityT, PrimaryKeyT> {
+
+  private static final Logger logger = LoggerFactory.getLogger(TableLog.class);
+
+  /**
+   * Legacy text tombstone lines start with an empty primary key field, which no record can have.
+   */
+  private static final String TOMBSTONE_PREFIX = "|";
+  public static final String COMPACTION_FILE_SUFFIX = ".compacting";
+  public static final String MIGRATION_FILE_SUFFIX = ".migrating";
+  public static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+  public static final String CHECKPOINT_FILE_SUFFIX = ".checkpointing";
+  public static final String SEALED_FILE_SUFFIX = ".sealed";
+
+  /**
+   * A snapshot file starts with the format header followed by the log offset and the amount of
+   * log entries it covers, and then has an entry per live record.
+   */
+  private static final int SNAPSHOT_METADATA_LENGTH = 2 * Long.BYTES;
+  private static final byte[] NO_METADATA = new byte[0];
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final Path filePath;
+  private final Path snapshotFilePath;
+  private final Path sealedFilePath;
+  private final LogWriter writer;
+  private final MeteredLock writeLock = new MeteredLock();
+
+  // Amount of record and tombstone entries in the sealed segment and the table file
+  private final AtomicLong entries = new AtomicLong();
+  // Amount of the entries covered by the snapshot or the sealed segment
+  private volatile long checkpointedEntries;
+  // Whether the file has been checked for a torn tail, which has to happen before any append
+  private volatile boolean recovered;
+
+
+  /**
+   * Constructs a log of the provided file with default durability settings.
+   *
+   * @param databaseTable Database table the file belongs to.
+   * @param filePath      Path to the log file.
+   */
+  public TableLog(DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath) {
+    this(databaseTable, filePath, Durability.DEFAULT);
+  }
+
+  /**
+   * Constructs a log of the provided file.
+   *
+   * @param databaseTable Database table the file belongs to.
+   * @param filePath      Path to the log file.
+   * @param durability    Durability settings of appends.
+   */
+  public TableLog(DatabaseTable<EntityT, PrimaryKeyT> databaseTable, Path filePath,
+                  Durability durability) {
+    this.databaseTable = databaseTable;
+    this.filePath = filePath;
+    this.snapshotFilePath = filePath.resolveSibling(filePath.getFileName()
+        + SNAPSHOT_FILE_SUFFIX);
+    this.sealedFilePath = filePath.resolveSibling(filePath.getFileName() + SEALED_FILE_SUFFIX);
+    this.writer = new LogWriter(filePath, durability);
+  }
+
+
+  /**
+   * Returns a path to the log file.
+   *
+   * @return Path to the log file.
+   */
+  public Path getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Returns a path to the snapshot of the log, which may not exist.
+   *
+   * @return Path to the snapshot file.
+   */
+  public Path getSnapshotFilePath() {
+    return snapshotFilePath;
+  }
+
+  /**
+   * Returns a path to the sealed segment of the log, which may not exist.
+   *
+   * @return Path to the sealed segment file.
+   */
+  public Path getSealedFilePath() {
+    return sealedFilePath;
+  }
+
+  /**
+   * Returns a lock which has to be held while the log file or its index are modified.
+   *
+   * <p>The lock makes the writers of the shard take turns, while readers of its index never wait
+   * for it.
+   *
+   * @return Log write lock.
+   */
+  public MeteredLock getWriteLock() {
+    return writeLock;
+  }
+
+  /**
+   * Returns amount of record and tombstone entries in the sealed segment and the table file.
+   *
+   * @return Amount of log entries.
+   */
+  public long getEntries() {
+    return entries.get();
+  }
+
+  /**
+   * Returns amount of entries appended after the snapshot, which are replayed by `load`.
+   *
+   * @return Amount of log tail entries.
+   */
+  public long getTailEntries() {
+    return entries.get() - checkpointedEntries;
+  }
+
+  /**
+   * Reads the table file and returns its live records, skipping deleted ones.
+   *
+   * <p>If there is a snapshot, it's read along with the entries appended after it, otherwise the
+   * sealed segment and the whole file are read. Files are scanned in parallel by `TableScanner`.
+   * Every range keeps the latest record or tombstone per primary key, and adjacent ranges are
+   * merged so the later one wins.
+   *
+   * @return Live records of the table by their primary keys.
+   * @throws IOException Occurs if the table file can't be read.
+   */
+  public Map<PrimaryKeyT, EntityT> load() throws IOException {
+    Map<PrimaryKeyT, EntityT> records = loadChanges();
+
+    // Tombstones are kept as null values until the ranges are merged
+    records.values().removeIf(Objects::isNull);
+
+    return records;
+  }
+
+  /**
+   * Reads the table file the same way as `load`, but keeps the primary keys of deleted records
+   * mapped to null, so the deletions can be replayed over records stored elsewhere, e.g. in an
+   * `LsmTree`.
+   *
+   * @return Live records and null tombstones of the table by their primary keys.
+   * @throws IOException Occurs if the table file can't be read.
+   */
+  public Map<PrimaryKeyT, EntityT> loadChanges() throws IOException {
+    writer.flush();
+
+    if (RecordFormat.needsMigration(filePath)) {
+      return migrate();
+    }
+
+    // The snapshot is taken after the compaction which sealed the segment, so it covers it
+    Replay snapshot = readSnapshot();
+    Replay base = snapshot != null ? snapshot : readSealed();
+    Replay tail = scanRecoveringTornTail(base.logOffset);
+
+    entries.set(base.entries + tail.entries);
+    checkpointedEntries = base.entries;
+
+    return base.merge(tail).records;
+  }
+
+  /**
+   * Rewrites the table file in the current binary format if it is written in the legacy text one
+   * or in an older binary version.
+   *
+   * @throws IOException Occurs if the table file can't be read or rewritten.
+   */
+  public void migrateIfNeeded() throws IOException {
+    if (RecordFormat.needsMigration(filePath)) {
+      migrate();
+    }
+  }
+
+  /**
+   * Returns all entries of the sealed segment and the table file in the text format: serialized
+   * records and tombstones of deleted ones prefixed with `|`. Useful for debugging and tests.
+   *
+   * @return List of the log entries.
+   * @throws IOException Occurs if the files can't be read.
+   */
+  public List<String> readEntries() throws IOException {
+    writer.flush();
+
+    if (RecordFormat.isLegacyText(filePath)) {
+      try (Stream<String> lines = Files.lines(filePath)) {
+        return lines.filter(line -> !line.isBlank()).collect(Collectors.toList());
+      }
+    }
+
+    BiConsumer<List<String>, RecordReader> accumulator = (lines, reader) -> {
+      boolean tombstone = reader.isTombstone();
+      String serialized = databaseTable.serialize(databaseTable.decode(reader));
+
+      lines.add(tombstone ? TOMBSTONE_PREFIX + serialized : serialized);
+    };
+    BinaryOperator<List<String>> combiner = (left, right) -> {
+      left.addAll(right);
+      return left;
+    };
+    List<String> lines = new ArrayList<>();
+
+    if (Files.exists(sealedFilePath)) {
+      try (SealedSegment segment = SealedSegment.open(sealedFilePath)) {
+        lines.addAll(segment.scan(ArrayList::new, accumulator, combiner));
+      }
+    }
+    lines.addAll(TableScanner.scan(filePath, ArrayList::new, accumulator, combiner));
+
+    return lines;
+  }
+
+  /**
+   * Appends a created record to the table file.
+   *
+   * <p>The record is written according to the durability mode once the returned commit is
+   * awaited, or the log is flushed.
+   *
+   * @param record A record to append.
+   * @return Commit to wait for the record to become durable.
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public LogCommit append(EntityT record) throws IOException {
+    return write(encode(record, false));
+  }
+
+  /**
+   * Appends a tombstone of a deleted record to the table file.
+   *
+   * @param record A deleted record.
+   * @return Commit to wait for the tombstone to become durable.
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public LogCommit appendTombstone(EntityT record) throws IOException {
+    return write(encode(record, true));
+  }
+
+  /**
+   * Writes all pending appends to the table file.
+   *
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  /**
+   * Writes all pending appends to the table file and returns its length. The length covers all
+   * appended entries as long as the write lock is held.
+   *
+   * @return Length of the table file.
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public long getFlushedLength() throws IOException {
+    writer.flush();
+
+    return Files.exists(filePath) ? Files.size(filePath) : 0;
+  }
+
+  /**
+   * Writes all pending appends to the table file and closes it.
+   *
+   * @throws IOException Occurs if the table file can't be written.
+   */
+  public void close() throws IOException {
+    writer.close();
+  }
+
+  /**
+   * Writes a snapshot of the live records, so the next `load` replays only entries appended after
+   * it.
+   *
+   * <p>Appends are paused only while the covered log offset is taken. The records are read from
+   * the index afterwards, so the snapshot may already reflect some of the later entries, which
+   * are replayed over it by `load` anyway. The snapshot is written to a temporary file which
+   * atomically replaces the previous one.
+   *
+   * @param primaryKeyIndex Index of the live records of the log.
+   * @throws IOException Occurs if the snapshot can't be written.
+   */
+  public synchronized void checkpoint(PrimaryKeyIndex<EntityT, PrimaryKeyT> primaryKeyIndex)
+      throws IOException {
+    Path checkpointFilePath = filePath.resolveSibling(filePath.getFileName()
+        + CHECKPOINT_FILE_SUFFIX);
+
+    // Builds the index first, which migrates a legacy text file
+    Collection<EntityT> liveRecords = primaryKeyIndex.values();
+    long logOffset;
+    long logEntries;
+
+    writeLock.lock();
+    try {
+      writer.flush();
+      logOffset = Files.size(filePath);
+      logEntries = entries.get();
+    } finally {
+      writeLock.unlock();
+    }
+
+    byte[] metadata = ByteBuffer.allocate(SNAPSHOT_METADATA_LENGTH)
+        .putLong(logOffset)
+        .putLong(logEntries)
+        .array();
+
+    writeRecords(checkpointFilePath, metadata, liveRecords, null);
+    Files.move(checkpointFilePath, snapshotFilePath, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+
+    checkpointedEntries = logEntries;
+  }
+
+  /**
+   * Deletes the table file along with its snapshot and sealed segment, e.g. once its records are
+   * moved elsewhere.
+   *
+   * @throws IOException Occurs if the files can't be deleted.
+   */
+  public void delete() throws IOException {
+    writer.close();
+
+    // Files without their table file would be orphans, while the other way round is valid
+    Files.deleteIfExists(snapshotFilePath);
+    Files.deleteIfExists(sealedFilePath);
+    Files.delete(filePath);
+  }
+
+  /**
+   * Seals live records into a new sealed segment and empties the table file.
+   *
+   * <p>Live records are sorted by primary key hashes and written to a temporary segment without
+   * holding the write lock. Entries which were appended meanwhile are copied to a temporary table
+   * file under the lock. Then the segment replaces the sealed one, and the table file is replaced
+   * after it: if a crash comes in between, the old table file is replayed over the new segment,
+   * which gives the same records.
+   *
+   * @param throttle        Limits the write rate of the compaction.
+   * @param primaryKeyIndex Index of the live records of the log.
+   * @throws IOException Occurs if the table file can't be rewritten.
+   */
+  public synchronized void compact(IoThrottle throttle,
+                                   PrimaryKeyIndex<EntityT, PrimaryKeyT> primaryKeyIndex)
+      throws IOException {
+    Path compactedFilePath = filePath.resolveSibling(filePath.getFileName()
+        + COMPACTION_FILE_SUFFIX);
+    Path compactedSegmentPath = sealedFilePath.resolveSibling(sealedFilePath.getFileName()
+        + COMPACTION_FILE_SUFFIX);
+
+    long compactedLength;
+    long compactedEntries;
+    List<EntityT> liveRecords;
+
+    writeLock.lock();
+    try {
+      // Builds the index first, which migrates a legacy text file
+      liveRecords = new ArrayList<>(primaryKeyIndex.values());
+      writer.flush();
+      compactedLength = Files.size(filePath);
+      compactedEntries = entries.get();
+    } finally {
+      writeLock.unlock();
+    }
+
+    writeSealed(compactedSegmentPath, liveRecords, throttle);
+
+    writeLock.lock();
+    try {
+      long tailEntries = entries.get() - compactedEntries;
+
+      writeTail(compactedLength, compactedFilePath);
+
+      // The snapshot offset points into the old file
+      Files.deleteIfExists(snapshotFilePath);
+      Files.move(compactedSegmentPath, sealedFilePath, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      Files.move(compactedFilePath, filePath, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      writer.close();
+
+      entries.set(liveRecords.size() + tailEntries);
+      checkpointedEntries = liveRecords.size();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Drops the entries before the offset from the table file once their records are stored
+   * elsewhere, e.g. flushed to segments of an `LsmTree`.
+   *
+   * <p>Entries appended after the offset are copied to a temporary table file under the write
+   * lock, which replaces the table file. The snapshot and the sealed segment are deleted first,
+   * since they hold the records of the dropped entries only.
+   *
+   * @param logOffset  Table file length taken by `getFlushedLength` under the write lock.
+   * @param logEntries Amount of log entries at the time the length was taken.
+   * @throws IOException Occurs if the table file can't be rewritten.
+   */
+  public synchronized void truncateHead(long logOffset, long logEntries) throws IOException {
+    Path truncatedFilePath = filePath.resolveSibling(filePath.getFileName()
+        + COMPACTION_FILE_SUFFIX);
+
+    writeLock.lock();
+    try {
+      long tailEntries = entries.get() - logEntries;
+
+      writeTail(logOffset, truncatedFilePath);
+
+      Files.deleteIfExists(snapshotFilePath);
+      Files.deleteIfExists(sealedFilePath);
+      Files.move(truncatedFilePath, filePath, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+      writer.close();
+
+      entries.set(tailEntries);
+      checkpointedEntries = 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+
+  private byte[] encode(EntityT record, boolean tombstone) {
+    RecordWriter writer = new RecordWriter();
+    databaseTable.encode(record, writer);
+
+    return writer.toEntry(tombstone);
+  }
+
+  private LogCommit write(byte[] entry) throws IOException {
+    // An entry appended after a torn tail would be truncated along with it
+    if (!recovered) {
+      load();
+    }
+
+    LogCommit commit = writer.append(entry);
+    entries.incrementAndGet();
+
+    return commit;
+  }
+
+  // Writes the header and the entries after the offset to the target file, under the write lock
+  private void writeTail(long logOffset, Path targetFilePath) throws IOException {
+    writer.flush();
+
+    try (FileChannel source = FileChannel.open(filePath, StandardOpenOption.READ);
+         FileChannel target = FileChannel.open(targetFilePath, StandardOpenOption.CREATE,
+             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.wrap(RecordFormat.header());
+
+      while (header.hasRemaining()) {
+        target.write(header);
+      }
+      // A file which was empty has got the header with the tail
+      copyTail(source, Math.max(logOffset, RecordFormat.HEADER_LENGTH), target);
+      target.force(true);
+    }
+  }
+
+  private Replay scanRecoveringTornTail(long start) throws IOException {
+    try {
+      Replay replay = TableScanner.scan(filePath, start, Replay::new, Replay::accept,
+          Replay::merge);
+      recovered = true;
+
+      return replay;
+    } catch (CorruptedEntryException exc) {
+      if (!TableScanner.isTornTail(filePath, exc.getOffset())) {
+        throw exc;
+      }
+
+      logger.warn("Truncating a torn tail of {} bytes off {}.", exc.getCorruptedLength(),
+          filePath);
+
+      try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+        channel.truncate(exc.getOffset());
+        channel.force(true);
+      }
+
+      return scanRecoveringTornTail(start);
+    }
+  }
+
+  // Returns the records along with null tombstones, like `loadChanges`
+  private Map<PrimaryKeyT, EntityT> migrate() throws IOException {
+    logger.info("Migrating {} to the current record format...", filePath);
+
+    Replay replay;
+
+    if (RecordFormat.isLegacyText(filePath)) {
+      replay = new Replay();
+
+      try (Stream<String> lines = Files.lines(filePath)) {
+        lines.filter(line -> !line.isBlank()).forEach(replay::acceptLegacy);
+      }
+    } else {
+      replay = readSealed().merge(scanRecoveringTornTail(RecordFormat.HEADER_LENGTH));
+    }
+
+    List<EntityT> liveRecords = replay.records.values().stream()
+        .filter(Objects::nonNull)
+        .collect(Collectors.toList());
+    Path migratedFilePath = filePath.resolveSibling(filePath.getFileName()
+        + MIGRATION_FILE_SUFFIX);
+
+    liveRecords.forEach(databaseTable::prepareRecordForStorage);
+    writeRecords(migratedFilePath, NO_METADATA, liveRecords, null);
+    Files.deleteIfExists(snapshotFilePath);
+    Files.move(migratedFilePath, filePath, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    // The migrated table file holds the sealed records as well
+    Files.deleteIfExists(sealedFilePath);
+    writer.close();
+
+    entries.set(liveRecords.size());
+    checkpointedEntries = 0;
+    recovered = true;
+
+    return replay.records;
+  }
+
+  // Returns null if there is no usable snapshot
+  private Replay readSnapshot() throws IOException {
+    Replay snapshot;
+
+    if (!Files.exists(snapshotFilePath)) {
+      return null;
+    }
+
+    ByteBuffer metadata = ByteBuffer.allocate(RecordFormat.HEADER_LENGTH
+        + SNAPSHOT_METADATA_LENGTH);
+
+    try (FileChannel channel = FileChannel.open(snapshotFilePath, StandardOpenOption.READ)) {
+      while (metadata.hasRemaining()) {
+        if (channel.read(metadata) == -1) {
+          logger.warn("Ignoring {} which is truncated.", snapshotFilePath);
+          return null;
+        }
+      }
+    }
+
+    RecordFormat.checkHeader(metadata.flip(), snapshotFilePath);
+    long logOffset = metadata.getLong(RecordFormat.HEADER_LENGTH);
+    long logEntries = metadata.getLong(RecordFormat.HEADER_LENGTH + Long.BYTES);
+
+    // Can only happen if the table file was replaced by hand, the snapshot is of no use then
+    if (logOffset > Files.size(filePath)) {
+      logger.warn("Ignoring {} which is ahead of its table file.", snapshotFilePath);
+      return null;
+    }
+
+    try {
+      snapshot = TableScanner.scan(snapshotFilePath, metadata.capacity(), Replay::new,
+          Replay::accept, Replay::merge);
+    } catch (CorruptedEntryException exc) {
+      logger.warn("Ignoring {} which is corrupted.", snapshotFilePath);
+      return null;
+    }
+
+    snapshot.logOffset = logOffset;
+    snapshot.entries = logEntries;
+
+    return snapshot;
+  }
+
+  private Replay readSealed() throws IOException {
+    if (!Files.exists(sealedFilePath)) {
+      return new Replay();
+    }
+
+    try (SealedSegment segment = SealedSegment.open(sealedFilePath)) {
+      return segment.scan(Replay::new, Replay::accept, Replay::merge);
+    }
+  }
+
+  private void writeSealed(Path targetFilePath, List<EntityT> records, IoThrottle throttle)
+      throws IOException {
+    records.sort(Comparator.comparingInt(record -> databaseTable.getPrimaryKey(record)
+        .hashCode()));
+
+    int[] keyHashes = new int[records.size()];
+    for (int i = 0; i < keyHashes.length; i++) {
+      keyHashes[i] = databaseTable.getPrimaryKey(records.get(i)).hashCode();
+    }
+
+    SealedSegment.write(targetFilePath, throttle, keyHashes,
+        () -> records.stream().map(record -> encode(record, false)).iterator());
+  }
+
+  private void writeRecords(Path targetFilePath, byte[] metadata, Collection<EntityT> records,
+                            IoThrottle throttle) throws IOException {
+    RecordWriter writer = new RecordWriter();
+
+    try (FileChannel channel = FileChannel.open(targetFilePath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+         OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+      output.write(RecordFormat.header());
+      output.write(metadata);
+
+      for (EntityT record : records) {
+        writer.reset();
+        databaseTable.encode(record, writer);
+        byte[] entry = writer.toEntry(false);
+
+        if (throttle != null) {
+          throttle.acquire(entry.length);
+        }
+        output.write(entry);
+      }
+
+      output.flush();
+      channel.force(true);
+    }
+  }
+
+  private static void copyTail(FileChannel source, long position, FileChannel target)
+      throws IOException {
+    long size = source.size();
+
+    while (position < size) {
+      position += source.transferTo(position, size - position, target);
+    }
+  }
+
+
+  private class Replay {
+
+    private final Map<PrimaryKeyT, EntityT> records = new HashMap<>();
+    private long entries;
+    // Offset of the log tail to replay over a snapshot
+    private long logOffset;
+
+    private void accept(RecordReader reader) {
+      // A tombstone only needs its key, the other fields are skipped undecoded
+      if (reader.isTombstone()) {
+        records.put(databaseTable.decodePrimaryKey(reader), null);
+      } else {
+        EntityT record = databaseTable.decode(reader);
+        records.put(databaseTable.getPrimaryKey(record), record);
+      }
+
+      entries++;
+    }
+
+    private void acceptLegacy(String line) {
+      if (line.startsWith(TOMBSTONE_PREFIX)) {
+        EntityT record = databaseTable.deserialize(line.substring(TOMBSTONE_PREFIX.length()));
+        records.put(databaseTable.getPrimaryKey(record), null);
+      } else {
+        EntityT record = databaseTable.deserialize(line);
+        records.put(databaseTable.getPrimaryKey(record), record);
+      }
+
+      entries++;
+    }
+
+    private Replay merge(Replay later) {
+      records.putAll(later.records);
+      entries += later.entries;
+
+      return this;
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel scanner of table files.
+ *
+ * <p>A file is split into byte ranges aligned on entry boundaries, which are found by skipping
+ * over entry lengths without decoding payloads. Every range is memory-mapped, verified against
+ * the entry checksums and decoded on the common ForkJoinPool into its own accumulator, and the
+ * accumulators are combined in the file order, the same way `Stream.collect` does it.
+ *
+ * <p>If an entry is truncated or corrupted, all ranges are still read up to it, and then a
+ * `CorruptedEntryException` tells its offset, so the caller can decide whether it's a torn tail.
+ */
+public class TableScanner {
+
+  private static final long MIN_RANGE_SIZE = 1024 * 1024;
+  private static final long BOUNDARY_WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final int MAX_VAR_LONG_SIZE = 10;
+
+  private final FileChannel channel;
+  private final long size;
+  private final byte version;
+
+  // Offset of the first corrupted entry, the file size if there is none
+  private final AtomicLong corruptedOffset;
+
+
+  private TableScanner(FileChannel channel, long size, byte version) {
+    this.channel = channel;
+    this.size = size;
+    this.version = version;
+    this.corruptedOffset = new AtomicLong(size);
+  }
+
+
+  /**
+   * Scans all entries of the file.
+   *
+   * @param filePath    Path to a table file.
+   * @param supplier    Creates an empty accumulator for a range.
+   * @param accumulator Adds an entry to an accumulator. The reader is positioned on the entry
+   *                    payload and must not be used after the call.
+   * @param combiner    Combines accumulators of two adjacent ranges, the left one goes first.
+   * @param <ResultT>   Accumulator type.
+   * @return Accumulator holding all entries of the file.
+   * @throws CorruptedEntryException Occurs if an entry is truncated or corrupted.
+   * @throws IOException             Occurs if the file can't be read or is not a table file.
+   */
+  public static <ResultT> ResultT scan(Path filePath, Supplier<ResultT> supplier,
+                                       BiConsumer<ResultT, RecordReader> accumulator,
+                                       BinaryOperator<ResultT> combiner) throws IOException {
+    return scan(filePath, RecordFormat.HEADER_LENGTH, supplier, accumulator, combiner);
+  }
+
+  /**
+   * Scans entries of the file which start at the provided offset or later.
+   *
+   * @param filePath    Path to a table file.
+   * @param start       Offset of an entry boundary to start from, e.g. a log offset recorded by
+   *                    a snapshot. Offsets inside the file header are treated as its end.
+   * @param supplier    Creates an empty accumulator for a range.
+   * @param accumulator Adds an entry to an accumulator. The reader is positioned on the entry
+   *                    payload and must not be used after the call.
+   * @param combiner    Combines accumulators of two adjacent ranges, the left one goes first.
+   * @param <ResultT>   Accumulator type.
+   * @return Accumulator holding the scanned entries.
+   * @throws CorruptedEntryException Occurs if an entry is truncated or corrupted.
+   * @throws IOException             Occurs if the file can't be read or is not a table file.
+   */
+  public static <ResultT> ResultT scan(Path filePath, long start, Supplier<ResultT> supplier,
+                                       BiConsumer<ResultT, RecordReader> accumulator,
+                                       BinaryOperator<ResultT> combiner) throws IOException {
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long dataStart = Math.max(start, RecordFormat.HEADER_LENGTH);
+
+      if (size == 0) {
+        return supplier.get();
+      }
+
+      byte version = RecordFormat.checkHeader(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, RecordFormat.HEADER_LENGTH)),
+          filePath);
+
+      if (dataStart >= size) {
+        return supplier.get();
+      }
+
+      TableScanner scanner = new TableScanner(channel, size, version);
+      List<Long> boundaries = scanner.findRangeBoundaries(dataStart);
+
+      ResultT result = IntStream.range(0, boundaries.size() - 1)
+          .parallel()
+          .mapToObj(range -> scanner.read(boundaries.get(range), boundaries.get(range + 1),
+              supplier, accumulator))
+          .reduce(combiner)
+          .orElseGet(supplier);
+
+      if (scanner.corruptedOffset.get() < size) {
+        throw new CorruptedEntryException(filePath, scanner.corruptedOffset.get(), size);
+      }
+
+      return result;
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Checks if a corrupted entry is a torn tail, i.e. a partial last write: entries are appended
+   * in order, so it is one if no whole entry can be parsed anywhere after it. An entry without a
+   * checksum can't be told apart from garbage, so in a file of such entries only an entry running
+   * past the end of the file is a torn tail.
+   *
+   * @param filePath Path to a table file.
+   * @param offset   Offset of the corrupted entry, see `CorruptedEntryException`.
+   * @return True if the file can be truncated at the offset without dropping any whole entry.
+   * @throws IOException Occurs if the file can't be read or is not a table file.
+   */
+  public static boolean isTornTail(Path filePath, long offset) throws IOException {
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+      byte version = RecordFormat.checkHeader(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, RecordFormat.HEADER_LENGTH), filePath);
+      // A whole entry found within the first 2 GiB after the corruption is enough to tell
+      ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+          Math.min(channel.size() - offset, Integer.MAX_VALUE));
+
+      if (version == RecordFormat.UNCHECKSUMMED_VERSION) {
+        return channel.size() - offset < Integer.MAX_VALUE && entryEnd(tail, 0, 0) < 0;
+      }
+
+      for (int position = 1; position < tail.limit(); position++) {
+        // Every entry has a primary key, so the header of an empty payload is garbage, e.g. zeros
+        if ((tail.get(position) & 0xFE) == 0) {
+          continue;
+        }
+
+        int end = entryEnd(tail, position, RecordFormat.CHECKSUM_LENGTH);
+        int checksumOffset = end - RecordFormat.CHECKSUM_LENGTH;
+
+        if (end > 0 && tail.getInt(checksumOffset)
+            == RecordFormat.checksum(tail, position, checksumOffset - position)) {
+          return false;
+        }
+      }
+
+      return true;
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+
+  // Returns the end of the entry at the position, or -1 if it's malformed or runs past the limit
+  private static int entryEnd(ByteBuffer buffer, int position, int checksumLength) {
+    long entryHeader;
+
+    try {
+      entryHeader = RecordFormat.getVarLong(buffer, position, buffer.limit());
+    } catch (UncheckedIOException exc) {
+      return -1;
+    }
+
+    long end = position + RecordFormat.varLongSize(entryHeader) + (entryHeader >>> 1)
+        + checksumLength;
+
+    return end > buffer.limit() || end < position ? -1 : (int) end;
+  }
+
+  private List<Long> findRangeBoundaries(long start) throws IOException {
+    List<Long> boundaries = new ArrayList<>();
+    long position = start;
+    long rangeStart = position;
+    int checksumLength = version == RecordFormat.UNCHECKSUMMED_VERSION
+        ? 0
+        : RecordFormat.CHECKSUM_LENGTH;
+
+    MappedByteBuffer window = null;
+    long windowStart = 0;
+    long windowEnd = 0;
+
+    boundaries.add(position);
+
+    while (position < size) {
+      // Entry headers are read through a sliding window, so a file of any size can be split
+      if (window == null || position + MAX_VAR_LONG_SIZE > windowEnd && windowEnd < size) {
+        windowStart = position;
+        windowEnd = Math.min(size, position + BOUNDARY_WINDOW_SIZE);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+      }
+
+      int offset = (int) (position - windowStart);
+      long entryEnd;
+
+      try {
+        long entryHeader = RecordFormat.getVarLong(window, offset, window.limit());
+        entryEnd = position + RecordFormat.varLongSize(entryHeader) + (entryHeader >>> 1)
+            + checksumLength;
+      } catch (UncheckedIOException exc) {
+        entryEnd = Long.MAX_VALUE;
+      }
+
+      // Entries from a truncated one on are left out of the ranges
+      if (entryEnd > size || entryEnd < position) {
+        corruptedOffset.set(position);
+        break;
+      }
+
+      position = entryEnd;
+
+      if (position - rangeStart >= MIN_RANGE_SIZE && position < size) {
+        boundaries.add(position);
+        rangeStart = position;
+      }
+    }
+
+    boundaries.add(position);
+
+    return boundaries;
+  }
+
+  private <ResultT> ResultT read(long start, long end, Supplier<ResultT> supplier,
+                                 BiConsumer<ResultT, RecordReader> accumulator) {
+    ResultT result = supplier.get();
+
+    if (start == end) {
+      return result;
+    }
+
+    RecordReader reader;
+
+    try {
+      ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      reader = new RecordReader(range, version);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+
+    try {
+      while (reader.nextEntry()) {
+        accumulator.accept(result, reader);
+      }
+    } catch (UncheckedIOException exc) {
+      // The rest of the range is skipped, the earliest corrupted entry of all ranges is reported
+      corruptedOffset.accumulateAndGet(start + reader.getEntryStart(), Math::min);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,159 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A part of a database table, stored by the table `StorageEngine`.
+ *
+ * <p>Records are spread over shards by their primary key hashes, so an operation over a single
+ * record touches a single shard and holds a single shard lock. Reads never take the lock, writes
+ * are made by a single thread at a time, which holds the shard write lock.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public interface TableShard<EntityT, PrimaryKeyT> {
+
+  /**
+   * Returns the shard index of the shard with `pk` among `shardCount` shards.
+   *
+   * @param pk         A primary key.
+   * @param shardCount Amount of table shards.
+   * @return Shard index.
+   */
+  static int indexOf(Object pk, int shardCount) {
+    return Math.floorMod(pk.hashCode(), shardCount);
+  }
+
+
+  /**
+   * Returns a path to the shard file, which is only created by engines storing records in files.
+   *
+   * @return Path to the shard file.
+   */
+  Path getFilePath();
+
+  /**
+   * Returns a lock which serializes writes to the shard.
+   *
+   * @return Shard write lock.
+   */
+  MeteredLock getWriteLock();
+
+  /**
+   * Returns a record stored by the provided `pk`.
+   *
+   * @param pk Primary key to look a record up by.
+   * @return Found record or an empty optional.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  Optional<EntityT> get(PrimaryKeyT pk) throws IOException;
+
+  /**
+   * Checks if a record with the provided `pk` is stored.
+   *
+   * @param pk Primary key to check.
+   * @return True if the record exists.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  boolean contains(PrimaryKeyT pk) throws IOException;
+
+  /**
+   * Returns all live records of the shard.
+   *
+   * @return Unmodifiable view of the records.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  Collection<EntityT> values() throws IOException;
+
+  /**
+   * Returns amount of live records of the shard.
+   *
+   * @return Amount of records.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  int size() throws IOException;
+
+  /**
+   * Stores a freshly created record. The caller holds the write lock.
+   *
+   * @param record A record to store.
+   * @return Commit to await, outside of the locks, before the record is reported as created.
+   * @throws IOException Occurs if the record can't be written.
+   */
+  LogCommit insert(EntityT record) throws IOException;
+
+  /**
+   * Deletes a stored record. The caller holds the write lock.
+   *
+   * @param record A record to delete.
+   * @return Commit to await, outside of the locks, before the record is reported as deleted.
+   * @throws IOException Occurs if the deletion can't be written.
+   */
+  LogCommit delete(EntityT record) throws IOException;
+
+  /**
+   * Returns size and accuracy of the Bloom filter of the shard keys.
+   *
+   * @return Filter stats or an empty optional if the shard keys are not filtered.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  Optional<BloomFilterStats> getFilterStats() throws IOException;
+
+  /**
+   * Prepares the shard storage on the database startup, e.g. creates or migrates its file.
+   *
+   * @throws IOException Filesystem error.
+   */
+  void init() throws IOException;
+
+  /**
+   * Returns the shard file entries in the text format: serialized records and tombstones of
+   * deleted ones.
+   *
+   * @return Shard file entries, none if the engine doesn't store records in files.
+   * @throws IOException Occurs if the shard file can't be read.
+   */
+  List<String> readEntries() throws IOException;
+
+  /**
+   * Returns amount of writes since the previous checkpoint, which a restart has to replay.
+   *
+   * @return Amount of written entries, 0 if the shard is not loaded or doesn't need checkpoints.
+   */
+  long getTailEntries();
+
+  /**
+   * Returns amount of stored entries of deleted records, which a compaction would drop.
+   *
+   * @return Amount of dead entries, 0 if the shard doesn't need compactions.
+   * @throws IOException Occurs if the shard can't be read.
+   */
+  long getDeadEntries() throws IOException;
+
+  /**
+   * Persists the shard state, so a restart replays only the later writes.
+   *
+   * @throws IOException Occurs if the state can't be written.
+   */
+  void checkpoint() throws IOException;
+
+  /**
+   * Drops entries of deleted records from the shard storage.
+   *
+   * @param throttle Limits the write rate of the compaction.
+   * @throws IOException Occurs if the storage can't be rewritten.
+   */
+  void compact(IoThrottle throttle) throws IOException;
+
+  /**
+   * Writes pending writes and releases the shard files.
+   *
+   * @throws IOException Occurs if the pending writes can't be written.
+   */
+  void close() throws IOException;
+}
@@ -0,0 +1,299 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dictionary of URL prefixes shared by records of a table, so a record stores the id of the
+ * longest known prefix of its URL and the rest of the URL.
+ *
+ * <p>A prefix is a scheme and a host (`https://example.com/`), or a scheme, a host and the first
+ * path segment (`https://example.com/articles/`) once the segment has been seen in
+ * `PROMOTION_COUNT` URLs. A URL is counted by `encode`, which is thus called once per stored
+ * record, while records which are already stored are encoded by `find`. Prefixes are never
+ * removed, and ids are assigned in order of addition.
+ *
+ * <p>The dictionary is persisted in a file of the table file format, an entry per prefix in the
+ * id order. A prefix is appended and synced to the file before its id is returned, so a table
+ * file never refers to a prefix missing from the dictionary. A torn tail of the file is
+ * truncated on load, as no id of it has been returned, while a corrupted entry followed by valid
+ * ones fails the load: dropping it would hand its id and the ids after it to other prefixes.
+ *
+ * <p>Lookups never block, additions are synchronized.
+ */
+public class UrlPrefixDictionary {
+
+  public static final String FILE_SUFFIX = ".prefixes";
+  public static final int NO_PREFIX = 0;
+  // Ids are kept in two bytes by the off-heap URL map
+  public static final int MAX_PREFIXES = (1 << Short.SIZE) - 1;
+  public static final int PROMOTION_COUNT = 8;
+
+  private static final Logger logger = LoggerFactory.getLogger(UrlPrefixDictionary.class);
+
+  private static final int MAX_PREFIX_LENGTH = 256;
+  private static final int MAX_CANDIDATES = 10_000;
+
+  private final Path filePath;
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  // Path segment prefixes which are not common enough yet, mapped to amount of their URLs
+  private final Map<String, Integer> candidates = new ConcurrentHashMap<>();
+
+  // Indexed by ids, the empty prefix goes first, null until the file is loaded
+  private volatile String[] prefixes;
+
+
+  /**
+   * Constructs a dictionary stored in the provided file, which is read on first use.
+   *
+   * @param filePath Path to the dictionary file.
+   */
+  public UrlPrefixDictionary(Path filePath) {
+    this.filePath = filePath;
+  }
+
+
+  public Path getFilePath() {
+    return filePath;
+  }
+
+  /**
+   * Returns the id of the longest prefix of the URL, adding the prefixes of the URL which are
+   * common enough to the dictionary. Every call counts the URL towards promotion of its path
+   * segment, so a URL should be passed once.
+   *
+   * @param url A URL.
+   * @return Prefix id, `NO_PREFIX` if the URL has no known prefix or is null.
+   * @throws UncheckedIOException Occurs if the dictionary file can't be read or written.
+   */
+  public int encode(String url) {
+    getPrefixes();
+
+    String hostPrefix = hostPrefixOf(url);
+
+    if (hostPrefix == null) {
+      return NO_PREFIX;
+    }
+
+    String segmentPrefix = segmentPrefixOf(url, hostPrefix);
+
+    if (segmentPrefix != null) {
+      Integer id = ids.get(segmentPrefix);
+
+      if (id != null) {
+        return id;
+      }
+
+      if (candidates.merge(segmentPrefix, 1, Integer::sum) >= PROMOTION_COUNT) {
+        candidates.remove(segmentPrefix);
+        id = add(segmentPrefix);
+
+        if (id != NO_PREFIX) {
+          return id;
+        }
+      } else if (candidates.size() > MAX_CANDIDATES) {
+        // Rare segments are forgotten instead of piling up
+        candidates.clear();
+      }
+    }
+
+    Integer id = ids.get(hostPrefix);
+
+    return id != null ? id : add(hostPrefix);
+  }
+
+  /**
+   * Returns the id of the longest known prefix of the URL, without adding prefixes.
+   *
+   * @param url A URL.
+   * @return Prefix id, `NO_PREFIX` if the URL has no known prefix or is null.
+   * @throws UncheckedIOException Occurs if the dictionary file can't be read.
+   */
+  public int find(String url) {
+    getPrefixes();
+
+    String hostPrefix = hostPrefixOf(url);
+
+    if (hostPrefix == null) {
+      return NO_PREFIX;
+    }
+
+    String segmentPrefix = segmentPrefixOf(url, hostPrefix);
+    Integer id = segmentPrefix == null ? null : ids.get(segmentPrefix);
+
+    if (id == null) {
+      id = ids.get(hostPrefix);
+    }
+
+    return id != null ? id : NO_PREFIX;
+  }
+
+  /**
+   * Returns a prefix by its id.
+   *
+   * @param id A prefix id returned by the dictionary.
+   * @return The prefix, empty for `NO_PREFIX`.
+   * @throws UncheckedIOException  Occurs if the dictionary file can't be read.
+   * @throws IllegalStateException Occurs if the dictionary has no such prefix, i.e. the
+   *                               dictionary file doesn't belong to the table.
+   */
+  public String getPrefix(int id) {
+    String[] loadedPrefixes = getPrefixes();
+
+    if (id < 0 || id >= loadedPrefixes.length) {
+      throw new IllegalStateException(
+          String.format("%s has no URL prefix %d.", filePath, id));
+    }
+
+    return loadedPrefixes[id];
+  }
+
+  public int size() {
+    return getPrefixes().length - 1;
+  }
+
+
+  private static String hostPrefixOf(String url) {
+    int schemeEnd = url == null ? -1 : url.indexOf("://");
+
+    if (schemeEnd < 0) {
+      return null;
+    }
+
+    int hostEnd = url.indexOf('/', schemeEnd + 3);
+
+    return hostEnd < 0 || hostEnd >= MAX_PREFIX_LENGTH || hostEnd >= pathEnd(url)
+        ? null
+        : url.substring(0, hostEnd + 1);
+  }
+
+  private static String segmentPrefixOf(String url, String hostPrefix) {
+    int segmentEnd = url.indexOf('/', hostPrefix.length());
+
+    return segmentEnd < 0 || segmentEnd >= MAX_PREFIX_LENGTH || segmentEnd >= pathEnd(url)
+        ? null
+        : url.substring(0, segmentEnd + 1);
+  }
+
+  // Slashes of a query or a fragment don't separate path segments
+  private static int pathEnd(String url) {
+    int queryStart = url.indexOf('?');
+    int fragmentStart = url.indexOf('#');
+
+    return Math.min(queryStart < 0 ? url.length() : queryStart,
+        fragmentStart < 0 ? url.length() : fragmentStart);
+  }
+
+  private synchronized int add(String prefix) {
+    String[] loadedPrefixes = getPrefixes();
+    Integer id = ids.get(prefix);
+
+    if (id != null) {
+      return id;
+    } else if (loadedPrefixes.length > MAX_PREFIXES) {
+      return NO_PREFIX;
+    }
+
+    RecordWriter writer = new RecordWriter();
+    writer.writeString(prefix);
+
+    try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer entry = ByteBuffer.wrap(writer.toEntry(false));
+
+      if (channel.size() == 0) {
+        writeFully(channel, ByteBuffer.wrap(RecordFormat.header()));
+      }
+      writeFully(channel, entry);
+
+      // Table file entries referring to the prefix may be written right after it
+      channel.force(true);
+    } catch (IOException exc) {
+      throw new UncheckedIOException(exc);
+    }
+
+    String[] updatedPrefixes = Arrays.copyOf(loadedPrefixes, loadedPrefixes.length + 1);
+    updatedPrefixes[loadedPrefixes.length] = prefix;
+    prefixes = updatedPrefixes;
+    ids.put(prefix, loadedPrefixes.length);
+
+    return loadedPrefixes.length;
+  }
+
+  private String[] getPrefixes() {
+    String[] loadedPrefixes = prefixes;
+
+    if (loadedPrefixes == null) {
+      synchronized (this) {
+        loadedPrefixes = prefixes;
+
+        if (loadedPrefixes == null) {
+          try {
+            loadedPrefixes = load();
+          } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+          }
+
+          for (int id = NO_PREFIX + 1; id < loadedPrefixes.length; id++) {
+            ids.put(loadedPrefixes[id], id);
+          }
+          prefixes = loadedPrefixes;
+        }
+      }
+    }
+
+    return loadedPrefixes;
+  }
+
+  private String[] load() throws IOException {
+    String[] loadedPrefixes = {""};
+
+    if (!Files.exists(filePath) || Files.size(filePath) == 0) {
+      return loadedPrefixes;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(filePath));
+    byte version = RecordFormat.checkHeader(buffer, filePath);
+    RecordReader reader = new RecordReader(buffer.position(RecordFormat.HEADER_LENGTH), version);
+    int size = 1;
+
+    try {
+      while (reader.nextEntry()) {
+        if (size == loadedPrefixes.length) {
+          loadedPrefixes = Arrays.copyOf(loadedPrefixes, size * 2);
+        }
+        loadedPrefixes[size++] = reader.readString();
+      }
+    } catch (UncheckedIOException exc) {
+      if (!TableScanner.isTornTail(filePath, reader.getEntryStart())) {
+        throw new CorruptedEntryException(filePath, reader.getEntryStart(), buffer.limit());
+      }
+
+      logger.warn("Truncating a torn tail of {} bytes off {}.",
+          buffer.limit() - reader.getEntryStart(), filePath);
+
+      try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+        channel.truncate(reader.getEntryStart());
+        channel.force(true);
+      }
+    }
+
+    return Arrays.copyOf(loadedPrefixes, size);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
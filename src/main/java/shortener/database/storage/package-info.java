@@ -0,0 +1,4 @@
+/**
+ * Database storage - table files layout, write path and their maintenance.
+ */
+package shortener.database.storage;
@@ -0,0 +1,374 @@
+package shortener.database.tables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.changes.ChangeFeed;
+import shortener.database.storage.ChangeLog;
+import shortener.database.storage.Durability;
+import shortener.database.storage.FileStorageEngine;
+import shortener.database.storage.FileTableShard;
+import shortener.database.storage.LockStats;
+import shortener.database.storage.LsmTree;
+import shortener.database.storage.MeteredLock;
+import shortener.database.storage.StorageEngine;
+import shortener.database.storage.TableLog;
+import shortener.database.storage.TableShard;
+
+/**
+ * Base implementation of a database table which is sharded by primary key hashes.
+ *
+ * <p>Shard files are named after the table (`aliases.0`, `aliases.1`...) and are spread over the
+ * root directories round-robin. A table of a single shard is stored in a file named exactly
+ * after the table. The shards are created by the table `StorageEngine`. The change feed of a
+ * persistent table is logged to `<table>.changes` in the first root directory.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public abstract class AbstractDatabaseTable<EntityT, PrimaryKeyT>
+    implements DatabaseTable<EntityT, PrimaryKeyT> {
+
+  private static final Logger logger = LoggerFactory.getLogger(AbstractDatabaseTable.class);
+
+  private final String tableName;
+  private final List<Path> rootPaths;
+  private final StorageEngine engine;
+  private final List<TableShard<EntityT, PrimaryKeyT>> shards;
+  private final Map<IndexDefinition<EntityT, ?>, SecondaryIndex<EntityT, PrimaryKeyT, ?>>
+      secondaryIndexes = new LinkedHashMap<>();
+  private final MeteredLock creationLock = new MeteredLock();
+  private final ChangeFeed<EntityT> changeFeed;
+
+
+  /**
+   * Constructs a table.
+   *
+   * @param tableName        Table name.
+   * @param rootPaths        Paths to the root directories to spread the shards over.
+   * @param shardCount       Amount of table shards.
+   * @param durability       Durability settings of the shard file appends.
+   * @param indexDefinitions Secondary indexes of the table.
+   */
+  protected AbstractDatabaseTable(String tableName, List<Path> rootPaths, int shardCount,
+                                  Durability durability,
+                                  List<IndexDefinition<EntityT, ?>> indexDefinitions) {
+    this(tableName, rootPaths, shardCount, new FileStorageEngine(durability), indexDefinitions);
+  }
+
+  /**
+   * Constructs a table whose shards are created by the provided storage engine.
+   *
+   * @param tableName        Table name.
+   * @param rootPaths        Paths to the root directories to spread the shards over.
+   * @param shardCount       Amount of table shards.
+   * @param engine           Storage engine of the shards.
+   * @param indexDefinitions Secondary indexes of the table.
+   */
+  protected AbstractDatabaseTable(String tableName, List<Path> rootPaths, int shardCount,
+                                  StorageEngine engine,
+                                  List<IndexDefinition<EntityT, ?>> indexDefinitions) {
+    if (rootPaths.isEmpty() || shardCount < 1) {
+      throw new IllegalArgumentException("A table needs a root directory and a shard.");
+    }
+
+    this.tableName = tableName;
+    this.rootPaths = List.copyOf(rootPaths);
+    this.engine = engine;
+
+    List<TableShard<EntityT, PrimaryKeyT>> tableShards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      tableShards.add(engine.createShard(this, shardFilePath(i, shardCount),
+          filtersPrimaryKeys()));
+    }
+    shards = Collections.unmodifiableList(tableShards);
+
+    for (IndexDefinition<EntityT, ?> definition : indexDefinitions) {
+      secondaryIndexes.put(definition, new SecondaryIndex<>(this, definition));
+    }
+
+    ChangeLog<EntityT> changeLog = engine.isPersistent()
+        ? new ChangeLog<>(this, this.rootPaths.get(0).resolve(tableName + ChangeLog.FILE_SUFFIX),
+            ChangeLog.MAX_FILE_ENTRIES_DEFAULT)
+        : null;
+    changeFeed = new ChangeFeed<>(tableName, changeLog, ChangeFeed.CAPACITY_DEFAULT);
+  }
+
+
+  @Override
+  public String getTableName() {
+    return tableName;
+  }
+
+
+  public StorageEngine getEngine() {
+    return engine;
+  }
+
+
+  @Override
+  public List<TableShard<EntityT, PrimaryKeyT>> getShards() {
+    return shards;
+  }
+
+
+  @Override
+  public TableShard<EntityT, PrimaryKeyT> getShard(PrimaryKeyT pk) {
+    return shards.get(TableShard.indexOf(pk, shards.size()));
+  }
+
+
+  @Override
+  public Map<PrimaryKeyT, EntityT> createRecordMap(Map<PrimaryKeyT, EntityT> loadedRecords) {
+    return new ConcurrentHashMap<>(loadedRecords);
+  }
+
+
+  @Override
+  public Set<PrimaryKeyT> createPrimaryKeySet() {
+    return ConcurrentHashMap.newKeySet();
+  }
+
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <KeyT> SecondaryIndex<EntityT, PrimaryKeyT, KeyT> getSecondaryIndex(
+      IndexDefinition<EntityT, KeyT> definition) {
+    SecondaryIndex<EntityT, PrimaryKeyT, ?> index = secondaryIndexes.get(definition);
+
+    if (index == null) {
+      throw new IllegalArgumentException(
+          String.format("Table %s has no %s index.", tableName, definition.name()));
+    }
+
+    return (SecondaryIndex<EntityT, PrimaryKeyT, KeyT>) index;
+  }
+
+
+  @Override
+  public Collection<SecondaryIndex<EntityT, PrimaryKeyT, ?>> getSecondaryIndexes() {
+    return Collections.unmodifiableCollection(secondaryIndexes.values());
+  }
+
+
+  @Override
+  public MeteredLock getCreationLock() {
+    return creationLock;
+  }
+
+
+  @Override
+  public ChangeFeed<EntityT> getChangeFeed() {
+    return changeFeed;
+  }
+
+
+  @Override
+  public LockStats getWriteLockStats() {
+    return LockStats.combine(shards.stream()
+        .map(shard -> shard.getWriteLock().getStats())
+        .collect(Collectors.toList()));
+  }
+
+
+  /**
+   * Returns whether shard indexes are backed by Bloom filters of primary keys, which is worth it
+   * for tables with frequent lookups of absent keys. Called by the constructor.
+   *
+   * @return True to filter primary keys.
+   */
+  protected boolean filtersPrimaryKeys() {
+    return false;
+  }
+
+
+  /**
+   * Checks if a record with the provided `pk` exists.
+   *
+   * @param pk Primary key to check.
+   * @return True if the record exists.
+   * @throws IOException Occurs if the shard index is not built yet and can't be read.
+   */
+  protected boolean containsRecord(PrimaryKeyT pk) throws IOException {
+    return getShard(pk).contains(pk);
+  }
+
+
+  @Override
+  public Path getWritableFilePath() {
+    return shards.get(0).getFilePath();
+  }
+
+
+  @Override
+  public Path getWritableFilePath(PrimaryKeyT pk) {
+    return getShard(pk).getFilePath();
+  }
+
+
+  @Override
+  public Stream<String> readTable() throws IOException {
+    List<String> entries = new ArrayList<>();
+
+    for (TableShard<EntityT, PrimaryKeyT> shard : shards) {
+      entries.addAll(shard.readEntries());
+    }
+
+    return entries.stream();
+  }
+
+
+  @Override
+  public Stream<EntityT> streamRecords() throws IOException {
+    List<Collection<EntityT>> shardRecords = new ArrayList<>(shards.size());
+
+    for (TableShard<EntityT, PrimaryKeyT> shard : shards) {
+      shardRecords.add(shard.values());
+    }
+
+    return shardRecords.parallelStream().flatMap(Collection::parallelStream);
+  }
+
+
+  /**
+   * Creates missing shard files and moves records of a previous shard layout into them.
+   *
+   * <p>The layout changes whenever the amount of shards or root directories is reconfigured.
+   * Files of the previous layout are read, their live records are appended to the shards they
+   * belong to now, and then the files are removed.
+   *
+   * <p>Shard files of the legacy text format are migrated to the binary one. Records of LSM trees
+   * of shards which no longer store records in them are appended to the shard files. Temporary
+   * files of interrupted rewrites, and snapshots, sealed segments and LSM trees of removed files
+   * are deleted. Files are left alone if the table engine doesn't store records in them.
+   *
+   * @throws IOException Filesystem error.
+   */
+  public void initShards() throws IOException {
+    for (TableShard<EntityT, PrimaryKeyT> shard : shards) {
+      shard.init();
+    }
+
+    // Files of an engine which doesn't store records in them are left for a later switch back
+    if (!engine.isPersistent()) {
+      return;
+    }
+
+    Set<Path> shardFilePaths = shards.stream()
+        .map(shard -> shard.getFilePath().toAbsolutePath().normalize())
+        .collect(Collectors.toSet());
+    Pattern shardFileName = FileTableShard.fileNamePattern(tableName);
+    Pattern temporaryFileName = Pattern.compile(shardFileName.pattern()
+        + "(" + Pattern.quote(TableLog.SEALED_FILE_SUFFIX) + ")?"
+        + "(" + Pattern.quote(TableLog.COMPACTION_FILE_SUFFIX)
+        + "|" + Pattern.quote(TableLog.MIGRATION_FILE_SUFFIX)
+        + "|" + Pattern.quote(TableLog.CHECKPOINT_FILE_SUFFIX) + ")");
+    Pattern companionFileName = Pattern.compile(shardFileName.pattern()
+        + "(" + Pattern.quote(TableLog.SNAPSHOT_FILE_SUFFIX)
+        + "|" + Pattern.quote(TableLog.SEALED_FILE_SUFFIX)
+        + "|" + Pattern.quote(LsmTree.DIRECTORY_SUFFIX) + ")");
+
+    for (Path rootPath : new HashSet<>(rootPaths)) {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(rootPath)) {
+        for (Path filePath : files) {
+          String fileName = filePath.getFileName().toString();
+
+          if (temporaryFileName.matcher(fileName).matches()) {
+            // Leftover of an interrupted compaction, migration or checkpoint, the shard file is
+            // intact
+            Files.delete(filePath);
+          } else if (companionFileName.matcher(fileName).matches()) {
+            deleteCompanionIfOrphaned(filePath);
+          } else if (shardFileName.matcher(fileName).matches()
+              && !shardFilePaths.contains(filePath.toAbsolutePath().normalize())) {
+            moveRecordsToShards(filePath);
+          }
+        }
+      }
+    }
+  }
+
+
+  private Path shardFilePath(int shard, int shardCount) {
+    Path rootPath = rootPaths.get(shard % rootPaths.size());
+
+    return shardCount == 1
+        ? rootPath.resolve(tableName)
+        : rootPath.resolve(tableName + "." + shard);
+  }
+
+  private void moveRecordsToShards(Path filePath) throws IOException {
+    logger.info("Moving {} records to the current shard layout...", filePath);
+
+    TableLog<EntityT, PrimaryKeyT> log = new TableLog<>(this, filePath);
+    LsmTree<EntityT, PrimaryKeyT> lsmTree = null;
+    Map<PrimaryKeyT, EntityT> records;
+
+    if (Files.isDirectory(LsmTree.directoryOf(filePath))) {
+      lsmTree = new LsmTree<>(this, log, LsmTree.MEMTABLE_ENTRIES_DEFAULT);
+      records = lsmTree.open(log.loadChanges());
+    } else {
+      records = log.load();
+    }
+
+    try {
+      records.forEach((pk, record) -> {
+        try {
+          logOf(getShard(pk)).append(record);
+        } catch (IOException exc) {
+          throw new UncheckedIOException(exc);
+        }
+      });
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+
+    // The moved records have to be written before the old file is gone
+    for (TableShard<EntityT, PrimaryKeyT> shard : shards) {
+      logOf(shard).flush();
+    }
+
+    if (lsmTree != null) {
+      lsmTree.close();
+      LsmTree.delete(filePath);
+    }
+    log.delete();
+  }
+
+  // Shards of a persistent engine are shard files
+  private TableLog<EntityT, PrimaryKeyT> logOf(TableShard<EntityT, PrimaryKeyT> shard) {
+    return ((FileTableShard<EntityT, PrimaryKeyT>) shard).getLog();
+  }
+
+  private static void deleteCompanionIfOrphaned(Path companionFilePath) throws IOException {
+    String fileName = companionFilePath.getFileName().toString();
+    Path filePath = companionFilePath.resolveSibling(
+        fileName.substring(0, fileName.lastIndexOf('.')));
+
+    // Snapshots, sealed segments and LSM trees of files of a previous layout are deleted along
+    // with them
+    if (!Files.exists(filePath)) {
+      if (Files.isDirectory(companionFilePath)) {
+        LsmTree.delete(filePath);
+      } else {
+        Files.deleteIfExists(companionFilePath);
+      }
+    }
+  }
+}
@@ -3,24 +3,70 @@ package shortener.database.tables;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
 import javax.inject.Singleton;
 import shortener.database.entities.Alias;
+import shortener.database.storage.BloomFilterStats;
+import shortener.database.storage.Durability;
+import shortener.database.storage.FileStorageEngine;
+import shortener.database.storage.OffHeapMapStats;
+import shortener.database.storage.RecordFormat;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.StorageEngine;
+import shortener.database.storage.TableShard;
+import shortener.database.storage.UrlPrefixDictionary;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
  * Alias database table implementation.
  */
 @Singleton
-public class AliasTable implements DatabaseTable<Alias, String> {
+public class AliasTable extends AbstractDatabaseTable<Alias, String> {
 
-  private static final String TABLE_NAME = "aliases";
+  public static final String TABLE_NAME = "aliases";
+  public static final IndexDefinition<Alias, Long> USER_ID_INDEX =
+      new IndexDefinition<>("userId", Alias::userId, false);
 
-  private final Path filePath;
+  private final List<OffHeapAliasMap> recordMaps = new CopyOnWriteArrayList<>();
+  // Shared by the shards, kept next to the first one
+  private final UrlPrefixDictionary urlPrefixes;
 
 
   public AliasTable(Path rootPath) {
-    filePath = rootPath.resolve(TABLE_NAME);
+    this(List.of(rootPath), 1, Durability.DEFAULT);
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param durability Durability settings of the table file appends.
+   */
+  public AliasTable(List<Path> rootPaths, int shardCount, Durability durability) {
+    this(rootPaths, shardCount, new FileStorageEngine(durability));
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories, whose shards are created by
+   * the provided storage engine, e.g. one storing aliases in LSM trees, so the table may outgrow
+   * the heap.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param engine     Storage engine of the shards.
+   */
+  public AliasTable(List<Path> rootPaths, int shardCount, StorageEngine engine) {
+    super(TABLE_NAME, rootPaths, shardCount, engine, List.of(USER_ID_INDEX));
+
+    urlPrefixes = new UrlPrefixDictionary(
+        rootPaths.get(0).resolve(TABLE_NAME + UrlPrefixDictionary.FILE_SUFFIX));
   }
 
 
@@ -40,19 +86,80 @@ public class AliasTable implements DatabaseTable<Alias, String> {
 
 
   @Override
-  public String getTableName() {
-    return TABLE_NAME;
+  public String getPrimaryKey(Alias record) {
+    return record.alias();
+  }
+
+
+  /**
+   * Returns size and accuracy of the Bloom filters of aliases of all shards.
+   *
+   * @return Alias filter stats.
+   * @throws IOException Occurs if a shard index is not built yet and can't be read.
+   */
+  public BloomFilterStats getAliasFilterStats() throws IOException {
+    List<BloomFilterStats> stats = new ArrayList<>();
+
+    for (TableShard<Alias, String> shard : getShards()) {
+      shard.getFilterStats().ifPresent(stats::add);
+    }
+
+    return BloomFilterStats.combine(stats);
+  }
+
+
+  /**
+   * Returns memory usage of the off-heap alias maps of the loaded shards.
+   *
+   * @return Off-heap alias map stats.
+   */
+  public OffHeapMapStats getAliasMapStats() {
+    return OffHeapMapStats.combine(recordMaps.stream()
+        .map(OffHeapAliasMap::getStats)
+        .collect(Collectors.toList()));
+  }
+
+
+  /**
+   * Returns the dictionary of prefixes of URLs stored by the table.
+   *
+   * @return URL prefix dictionary.
+   */
+  public UrlPrefixDictionary getUrlPrefixes() {
+    return urlPrefixes;
+  }
+
+
+  @Override
+  public Map<String, Alias> createRecordMap(Map<String, Alias> loadedRecords) {
+    // Tens of millions of aliases are read by redirects, keeping them off the heap spares the GC
+    OffHeapAliasMap recordMap = new OffHeapAliasMap(urlPrefixes);
+
+    recordMap.putAll(loadedRecords);
+    recordMaps.add(recordMap);
+
+    return recordMap;
+  }
+
+
+  @Override
+  public Set<String> createPrimaryKeySet() {
+    // Postings of the user id index, walked by searches of aliases of a user
+    return new PackedAliasSet();
+  }
+
+
+  @Override
+  protected boolean filtersPrimaryKeys() {
+    // Aliases are checked for collisions on every creation, and mostly don't exist
+    return true;
   }
 
 
   @Override
   public Alias prepareRecordForCreation(Alias recordToCreate)
       throws UniqueViolation, IOException {
-    boolean aliasWithSimilarAliasExists =
-        readTable().parallel()
-            .anyMatch(line -> deserialize(line).alias().equals(recordToCreate.alias()));
-
-    if (aliasWithSimilarAliasExists) {
+    if (containsRecord(recordToCreate.alias())) {
       throw new UniqueViolation(TABLE_NAME);
     }
 
@@ -61,16 +168,57 @@ public class AliasTable implements DatabaseTable<Alias, String> {
 
 
   @Override
-  public Path getWritableFilePath() {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return filePath;
+  public void prepareRecordForStorage(Alias record) {
+    // Most URLs share a host, and often a path segment, with many others
+    urlPrefixes.encode(record.url());
+  }
+
+
+  @Override
+  public void encode(Alias record, RecordWriter writer) {
+    // Stored records are encoded again by the change log, tombstones and rewrites, which mustn't
+    // count their URLs again
+    int prefixId = urlPrefixes.find(record.url());
+
+    writer.writeString(record.alias());
+    writer.writeLong(prefixId);
+    writer.writeString(record.url() == null
+        ? null
+        : record.url().substring(urlPrefixes.getPrefix(prefixId).length()));
+    writer.writeLong(record.userId());
+  }
+
+
+  @Override
+  public void encodePortable(Alias record, RecordWriter writer) {
+    // The URL prefix dictionary is local to the instance
+    writer.writeString(record.alias());
+    writer.writeString(record.url());
+    writer.writeLong(record.userId());
+  }
+
+
+  @Override
+  public Alias decode(RecordReader reader) {
+    String alias = reader.readString();
+    String url;
+
+    if (reader.getVersion() <= RecordFormat.UNPREFIXED_VERSION) {
+      url = reader.readString();
+    } else {
+      int prefixId = (int) reader.readLong();
+      String suffix = reader.readString();
+
+      url = suffix == null ? null : urlPrefixes.getPrefix(prefixId) + suffix;
+    }
+
+    return new Alias(alias, url, reader.readLong());
   }
 
 
   @Override
-  public Stream<String> readTable() throws IOException {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return Files.lines(filePath).filter(line -> line != null && !line.isBlank());
+  public String decodePrimaryKey(RecordReader reader) {
+    return reader.readString();
   }
 
 
@@ -2,7 +2,17 @@ package shortener.database.tables;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
+import shortener.database.changes.ChangeFeed;
+import shortener.database.storage.LockStats;
+import shortener.database.storage.MeteredLock;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.TableShard;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
@@ -20,6 +30,99 @@ public interface DatabaseTable<EntityT, PrimaryKeyT> {
    */
   String getTableName();
 
+  /**
+   * Returns a primary key of the provided `record`.
+   *
+   * @param record A table record.
+   * @return Primary key of the record.
+   */
+  PrimaryKeyT getPrimaryKey(EntityT record);
+
+  /**
+   * Returns all shards of the table.
+   *
+   * @return Table shards.
+   */
+  List<TableShard<EntityT, PrimaryKeyT>> getShards();
+
+  /**
+   * Returns a shard which stores a record with the provided `pk`.
+   *
+   * @param pk A primary key.
+   * @return Table shard.
+   */
+  TableShard<EntityT, PrimaryKeyT> getShard(PrimaryKeyT pk);
+
+  /**
+   * Creates the map which holds live records of a shard index.
+   *
+   * <p>The map is read concurrently and is written to by a single thread at a time, which holds
+   * the shard write lock.
+   *
+   * @param loadedRecords Records loaded from the shard file.
+   * @return Map of the loaded records.
+   */
+  Map<PrimaryKeyT, EntityT> createRecordMap(Map<PrimaryKeyT, EntityT> loadedRecords);
+
+  /**
+   * Creates the set which holds primary keys of records sharing a secondary index key.
+   *
+   * <p>The set is read concurrently and is written to by a single thread at a time, which
+   * computes the index entry.
+   *
+   * @return Empty set of primary keys.
+   */
+  Set<PrimaryKeyT> createPrimaryKeySet();
+
+  /**
+   * Returns live records of all shards.
+   *
+   * @return Parallel stream of the table records.
+   * @throws IOException Occurs if a shard index is not built yet and can't be read.
+   */
+  Stream<EntityT> streamRecords() throws IOException;
+
+  /**
+   * Returns a secondary index of the table declared by the provided `definition`.
+   *
+   * @param definition Index declaration, one of the table constants.
+   * @param <KeyT>     Indexed value type.
+   * @return Secondary index.
+   * @throws IllegalArgumentException Thrown if the table doesn't declare the index.
+   */
+  <KeyT> SecondaryIndex<EntityT, PrimaryKeyT, KeyT> getSecondaryIndex(
+      IndexDefinition<EntityT, KeyT> definition);
+
+  /**
+   * Returns all secondary indexes of the table, which have to be updated on every write.
+   *
+   * @return Table secondary indexes.
+   */
+  Collection<SecondaryIndex<EntityT, PrimaryKeyT, ?>> getSecondaryIndexes();
+
+  /**
+   * Returns a lock which serializes record creations, since `prepareRecordForCreation` checks
+   * uniqueness over all shards.
+   *
+   * @return Table creation lock.
+   */
+  MeteredLock getCreationLock();
+
+  /**
+   * Returns the feed of the table writes, which `Database` publishes to under the shard write
+   * lock.
+   *
+   * @return Table change feed.
+   */
+  ChangeFeed<EntityT> getChangeFeed();
+
+  /**
+   * Returns contention of the write locks of all table shards.
+   *
+   * @return Combined shard write lock stats.
+   */
+  LockStats getWriteLockStats();
+
   /**
    * Returns a unique primary key depending on db state or provided `recordToCreate`.
    *
@@ -35,28 +138,84 @@ public interface DatabaseTable<EntityT, PrimaryKeyT> {
       throws UniqueViolation, IOException;
 
   /**
-   * Returns a path to a file.
+   * Returns a path to a file of the first table shard, the only one of an unsharded table.
    *
    * @return Path to a file to write to.
    */
   Path getWritableFilePath();
 
   /**
-   * Returns a stream of serialized records.
+   * Returns a path to a file of the shard which stores a record with the provided `pk`.
    *
-   * @return Stream of serialized table records.
+   * @param pk A primary key.
+   * @return Path to a file to write to.
+   */
+  Path getWritableFilePath(PrimaryKeyT pk);
+
+  /**
+   * Returns a stream of all shard files entries in the text format: serialized records and
+   * tombstones of deleted ones.
+   *
+   * @return Stream of the table log entries.
    */
   Stream<String> readTable() throws IOException;
 
   /**
-   * Serializes a record to a csv-string.
+   * Prepares the table for storing a record for the first time, i.e. once it's created, applied
+   * or migrated. Unlike `encode`, which runs on every rewrite of stored records, it runs once per
+   * stored record.
+   *
+   * @param record A record to be stored.
+   */
+  default void prepareRecordForStorage(EntityT record) {
+  }
+
+  /**
+   * Writes fields of a record to a binary table file entry, the primary key goes first.
+   *
+   * @param record A record to encode.
+   * @param writer Entry payload writer.
+   */
+  void encode(EntityT record, RecordWriter writer);
+
+  /**
+   * Writes fields of a record to an entry sent to another instance, in the layout of
+   * `RecordFormat.PORTABLE_VERSION`, which doesn't refer to state of this instance.
+   *
+   * @param record A record to encode.
+   * @param writer Entry payload writer.
+   */
+  default void encodePortable(EntityT record, RecordWriter writer) {
+    encode(record, writer);
+  }
+
+  /**
+   * Reads a record of a binary table file entry, the fields are read in the `encode` order.
+   *
+   * @param reader Reader positioned on the entry payload.
+   * @return Decoded record.
+   */
+  EntityT decode(RecordReader reader);
+
+  /**
+   * Reads only the primary key of a binary table file entry, leaving the other fields undecoded.
+   *
+   * <p>Used where the rest of the record is not needed, e.g. for tombstones on a table file load.
+   *
+   * @param reader Reader positioned on the entry payload.
+   * @return Decoded primary key.
+   */
+  PrimaryKeyT decodePrimaryKey(RecordReader reader);
+
+  /**
+   * Serializes a record to a csv-string of the legacy text table format.
    *
    * @return csv-string.
    */
   String serialize(EntityT record);
 
   /**
-   * Creates a new record of a serialized string.
+   * Creates a new record of a string serialized in the legacy text table format.
    *
    * @param serialized A csv-serialized record.
    * @return Deserialized record.
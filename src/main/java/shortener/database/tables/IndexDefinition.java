@@ -0,0 +1,19 @@
+package shortener.database.tables;
+
+import java.util.function.Function;
+
+/**
+ * Declaration of a secondary index of a database table.
+ *
+ * <p>Tables declare their indexes as constants (e.g. `UserTable.EMAIL_INDEX`), which are used
+ * to query the `Database` by an indexed field value.
+ *
+ * @param name   Index name, usually the name of the indexed field.
+ * @param key    Extracts the indexed value of a record.
+ * @param unique Whether two records can't share the same indexed value.
+ * @param <EntityT> Table entity type.
+ * @param <KeyT>    Indexed value type.
+ */
+public record IndexDefinition<EntityT, KeyT>(String name, Function<EntityT, KeyT> key,
+                                             boolean unique) {
+}
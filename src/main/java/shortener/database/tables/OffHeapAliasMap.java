@@ -0,0 +1,221 @@
+package shortener.database.tables;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import shortener.database.entities.Alias;
+import shortener.database.storage.OffHeapMapStats;
+import shortener.database.storage.OffHeapUrlMap;
+import shortener.database.storage.UrlPrefixDictionary;
+
+/**
+ * Records map of an alias table shard index which keeps aliases off the heap.
+ *
+ * <p>Short base62 aliases, which random aliases are, are packed into `long` keys of an
+ * {@link OffHeapUrlMap}, and their records are built on lookups. Other aliases, and records the
+ * off-heap map can't hold, are kept in an ordinary map on the heap. A shard holds up to
+ * `OffHeapUrlMap.MAX_ENTRIES` aliases off the heap, a table of more has to be split into more
+ * shards.
+ *
+ * <p>Lookups never block. Writes are expected to be serialized by the shard write lock.
+ */
+class OffHeapAliasMap extends AbstractMap<String, Alias> {
+
+  private static final Logger logger = LoggerFactory.getLogger(OffHeapAliasMap.class);
+
+  // 62^10 keys and shorter ones fit a positive long
+  static final int MAX_PACKED_LENGTH = 10;
+
+  private static final String DIGITS =
+      "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+  private final OffHeapUrlMap packedRecords;
+  private final Map<String, Alias> heapRecords = new ConcurrentHashMap<>();
+  private final Set<Entry<String, Alias>> entrySet = new EntrySet();
+  // Written under the shard write lock
+  private boolean warnedFull;
+
+
+  /**
+   * Constructs a map.
+   *
+   * @param urlPrefixes Dictionary of URL prefixes of the table, which off-heap records refer to.
+   */
+  OffHeapAliasMap(UrlPrefixDictionary urlPrefixes) {
+    packedRecords = new OffHeapUrlMap(OffHeapUrlMap.INITIAL_CAPACITY_DEFAULT, urlPrefixes);
+  }
+
+
+  /**
+   * Packs a base62 alias into a positive key.
+   *
+   * <p>Digits are counted from 1, so aliases which differ by leading zeros get different keys.
+   *
+   * @param alias An alias.
+   * @return Packed alias or 0 if the alias is not a base62 string of up to `MAX_PACKED_LENGTH`
+   *         characters.
+   */
+  static long pack(String alias) {
+    if (alias.isEmpty() || alias.length() > MAX_PACKED_LENGTH) {
+      return 0;
+    }
+
+    long key = 0;
+
+    for (int i = 0; i < alias.length(); i++) {
+      int digit = DIGITS.indexOf(alias.charAt(i));
+
+      if (digit < 0) {
+        return 0;
+      }
+
+      key = key * DIGITS.length() + digit + 1;
+    }
+
+    return key;
+  }
+
+  /**
+   * Unpacks an alias packed by `pack`.
+   *
+   * @param key A packed alias.
+   * @return The alias.
+   */
+  static String unpack(long key) {
+    StringBuilder alias = new StringBuilder(MAX_PACKED_LENGTH);
+
+    for (long rest = key; rest > 0; rest = (rest - 1) / DIGITS.length()) {
+      alias.append(DIGITS.charAt((int) ((rest - 1) % DIGITS.length())));
+    }
+
+    return alias.reverse().toString();
+  }
+
+
+  @Override
+  public Alias get(Object key) {
+    if (!(key instanceof String)) {
+      return null;
+    }
+
+    String alias = (String) key;
+    long packedAlias = pack(alias);
+    Alias record = packedAlias == 0
+        ? null
+        : packedRecords.get(packedAlias, (packedKey, url, userId) -> new Alias(alias, url, userId));
+
+    return record != null ? record : heapRecords.get(alias);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    if (!(key instanceof String)) {
+      return false;
+    }
+
+    String alias = (String) key;
+    long packedAlias = pack(alias);
+
+    return packedAlias != 0 && packedRecords.contains(packedAlias)
+        || heapRecords.containsKey(alias);
+  }
+
+  @Override
+  public Alias put(String alias, Alias record) {
+    Alias previous = get(alias);
+    long packedAlias = pack(alias);
+
+    if (packedAlias != 0 && record.url() != null && record.userId() != null
+        && packedRecords.put(packedAlias, record.url(), record.userId())) {
+      heapRecords.remove(alias);
+    } else {
+      if (packedAlias != 0 && !warnedFull && packedRecords.size() >= OffHeapUrlMap.MAX_ENTRIES) {
+        warnedFull = true;
+        logger.warn("An aliases shard holds {} aliases off the heap, which is its limit, so "
+            + "further ones are kept on the heap. Raise `database.table-shards.aliases`.",
+            OffHeapUrlMap.MAX_ENTRIES);
+      }
+
+      heapRecords.put(alias, record);
+
+      if (packedAlias != 0) {
+        packedRecords.remove(packedAlias);
+      }
+    }
+
+    return previous;
+  }
+
+  @Override
+  public Alias remove(Object key) {
+    Alias previous = get(key);
+
+    if (previous != null) {
+      long packedAlias = pack(previous.alias());
+
+      if (packedAlias != 0) {
+        packedRecords.remove(packedAlias);
+      }
+      heapRecords.remove(previous.alias());
+    }
+
+    return previous;
+  }
+
+  @Override
+  public int size() {
+    return packedRecords.size() + heapRecords.size();
+  }
+
+  @Override
+  public Set<Entry<String, Alias>> entrySet() {
+    return entrySet;
+  }
+
+
+  /**
+   * Returns memory usage of the aliases kept off the heap.
+   *
+   * @return Off-heap map stats.
+   */
+  OffHeapMapStats getStats() {
+    return packedRecords.getStats();
+  }
+
+
+  private class EntrySet extends AbstractSet<Entry<String, Alias>> {
+
+    @Override
+    public Iterator<Entry<String, Alias>> iterator() {
+      Iterator<Entry<String, Alias>> packedEntries =
+          packedRecords.iterator((packedKey, url, userId) -> {
+            String alias = unpack(packedKey);
+
+            return new SimpleImmutableEntry<>(alias, new Alias(alias, url, userId));
+          });
+      Iterator<Entry<String, Alias>> heapEntries = heapRecords.entrySet().iterator();
+
+      return new Iterator<>() {
+        @Override
+        public boolean hasNext() {
+          return packedEntries.hasNext() || heapEntries.hasNext();
+        }
+
+        @Override
+        public Entry<String, Alias> next() {
+          return packedEntries.hasNext() ? packedEntries.next() : heapEntries.next();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return OffHeapAliasMap.this.size();
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package shortener.database.tables;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Postings list of aliases which share a secondary index key, e.g. aliases of a user.
+ *
+ * <p>Aliases packed by {@link OffHeapAliasMap#pack} are kept in a primitive `long` array, so a
+ * posting takes 8 bytes instead of a `String` and a hash set node. Aliases which can't be packed
+ * are kept in an ordinary set, which is only created for the first of them.
+ *
+ * <p>Packed aliases are kept sorted and looked up by a binary search, except for a short tail of
+ * the latest ones, which is merged into the sorted part once it outgrows the square root of the
+ * size. An add thus neither scans nor copies the whole list, and building postings of a user
+ * with many aliases isn't quadratic.
+ *
+ * <p>Reads never block and see a snapshot of the list. Writes are expected to be serialized by
+ * the caller, e.g. by `ConcurrentHashMap.compute` of the secondary index.
+ */
+class PackedAliasSet extends AbstractSet<String> {
+
+  private static final int INITIAL_CAPACITY = 4;
+  private static final int MIN_TAIL_LENGTH = 16;
+
+  // Appends write past the size of every published snapshot, merges and removals copy the array
+  private volatile Postings postings = new Postings(new long[INITIAL_CAPACITY], 0, 0);
+  private volatile Set<String> unpackedAliases;
+
+
+  @Override
+  public boolean contains(Object alias) {
+    if (!(alias instanceof String)) {
+      return false;
+    }
+
+    long packedAlias = OffHeapAliasMap.pack((String) alias);
+
+    if (packedAlias != 0) {
+      return postings.indexOf(packedAlias) >= 0;
+    }
+
+    Set<String> loadedAliases = unpackedAliases;
+
+    return loadedAliases != null && loadedAliases.contains(alias);
+  }
+
+  @Override
+  public boolean add(String alias) {
+    long packedAlias = OffHeapAliasMap.pack(alias);
+
+    if (packedAlias == 0) {
+      if (unpackedAliases == null) {
+        unpackedAliases = ConcurrentHashMap.newKeySet();
+      }
+
+      return unpackedAliases.add(alias);
+    }
+
+    Postings loadedPostings = postings;
+
+    if (loadedPostings.indexOf(packedAlias) >= 0) {
+      return false;
+    }
+
+    if (loadedPostings.tailLength() >= Math.max(MIN_TAIL_LENGTH,
+        (int) Math.sqrt(loadedPostings.size()))) {
+      loadedPostings = loadedPostings.merge();
+    }
+
+    long[] packedAliases = loadedPostings.packedAliases();
+    int size = loadedPostings.size();
+
+    if (size == packedAliases.length) {
+      packedAliases = Arrays.copyOf(packedAliases, size * 2);
+    }
+    packedAliases[size] = packedAlias;
+    postings = new Postings(packedAliases, loadedPostings.sortedSize(), size + 1);
+
+    return true;
+  }
+
+  @Override
+  public boolean remove(Object alias) {
+    if (!(alias instanceof String)) {
+      return false;
+    }
+
+    long packedAlias = OffHeapAliasMap.pack((String) alias);
+
+    if (packedAlias == 0) {
+      Set<String> loadedAliases = unpackedAliases;
+
+      return loadedAliases != null && loadedAliases.remove(alias);
+    }
+
+    Postings loadedPostings = postings;
+    int index = loadedPostings.indexOf(packedAlias);
+
+    if (index < 0) {
+      return false;
+    }
+
+    long[] packedAliases = new long[Math.max(INITIAL_CAPACITY, loadedPostings.size() - 1)];
+    int size = loadedPostings.size();
+
+    System.arraycopy(loadedPostings.packedAliases(), 0, packedAliases, 0, index);
+    System.arraycopy(loadedPostings.packedAliases(), index + 1, packedAliases, index,
+        size - index - 1);
+    postings = new Postings(packedAliases,
+        loadedPostings.sortedSize() - (index < loadedPostings.sortedSize() ? 1 : 0), size - 1);
+
+    return true;
+  }
+
+  @Override
+  public int size() {
+    Set<String> loadedAliases = unpackedAliases;
+
+    return postings.size() + (loadedAliases == null ? 0 : loadedAliases.size());
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    Postings loadedPostings = postings;
+    Set<String> loadedAliases = unpackedAliases;
+    Iterator<String> unpackedIterator = loadedAliases == null
+        ? Collections.emptyIterator()
+        : loadedAliases.iterator();
+
+    return new Iterator<>() {
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        return index < loadedPostings.size() || unpackedIterator.hasNext();
+      }
+
+      @Override
+      public String next() {
+        if (index < loadedPostings.size()) {
+          return OffHeapAliasMap.unpack(loadedPostings.packedAliases()[index++]);
+        } else if (unpackedIterator.hasNext()) {
+          return unpackedIterator.next();
+        }
+
+        throw new NoSuchElementException();
+      }
+    };
+  }
+
+
+  // Aliases before `sortedSize` are sorted, the tail after them is in the order of addition
+  private record Postings(long[] packedAliases, int sortedSize, int size) {
+
+    int indexOf(long packedAlias) {
+      int index = Arrays.binarySearch(packedAliases, 0, sortedSize, packedAlias);
+
+      if (index >= 0) {
+        return index;
+      }
+
+      for (int i = sortedSize; i < size; i++) {
+        if (packedAliases[i] == packedAlias) {
+          return i;
+        }
+      }
+
+      return -1;
+    }
+
+    int tailLength() {
+      return size - sortedSize;
+    }
+
+    // Copies the postings into a new array, the tail merged into the sorted part
+    Postings merge() {
+      long[] tail = Arrays.copyOfRange(packedAliases, sortedSize, size);
+      long[] merged = new long[packedAliases.length];
+      int sortedIndex = 0;
+      int tailIndex = 0;
+      int index = 0;
+
+      Arrays.sort(tail);
+      while (sortedIndex < sortedSize && tailIndex < tail.length) {
+        merged[index++] = packedAliases[sortedIndex] < tail[tailIndex]
+            ? packedAliases[sortedIndex++]
+            : tail[tailIndex++];
+      }
+      System.arraycopy(packedAliases, sortedIndex, merged, index, sortedSize - sortedIndex);
+      System.arraycopy(tail, tailIndex, merged, index + sortedSize - sortedIndex,
+          tail.length - tailIndex);
+
+      return new Postings(merged, size, size);
+    }
+  }
+}
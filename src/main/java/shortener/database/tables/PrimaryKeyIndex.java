@@ -0,0 +1,218 @@
+package shortener.database.tables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import shortener.database.storage.BloomFilterStats;
+import shortener.database.storage.LsmTree;
+import shortener.database.storage.ScalableBloomFilter;
+import shortener.database.storage.TableLog;
+
+/**
+ * In-memory primary key index of a database table shard.
+ *
+ * <p>The index is built by replaying the shard log on first access and is kept in sync by the
+ * `Database` on every `create`/`delete`, so a lookup by a primary key never touches the disk.
+ * It holds live records only, which makes it the source for table reads.
+ *
+ * <p>An index can be backed by a Bloom filter of its keys, which answers lookups of absent keys
+ * without touching the records map, e.g. alias collision checks.
+ *
+ * <p>A shard may store its records in an `LsmTree` instead, then the index is the tree opened over
+ * the shard log, and lookups read the tree segments.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ */
+public class PrimaryKeyIndex<EntityT, PrimaryKeyT> {
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final TableLog<EntityT, PrimaryKeyT> log;
+  private final boolean filtered;
+  // Null if the records are kept in memory
+  private final LsmTree<EntityT, PrimaryKeyT> lsmTree;
+
+  private volatile Map<PrimaryKeyT, EntityT> records;
+  // Built along with the records, null if the index is not filtered
+  private volatile ScalableBloomFilter filter;
+
+
+  /**
+   * Constructs an index of the provided log.
+   *
+   * @param databaseTable Database table the log belongs to.
+   * @param log           Log to build the index of.
+   * @param filtered      Whether the index is backed by a Bloom filter of its keys.
+   */
+  public PrimaryKeyIndex(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                         TableLog<EntityT, PrimaryKeyT> log, boolean filtered) {
+    this(databaseTable, log, filtered, null);
+  }
+
+  /**
+   * Constructs an index of the provided log, which may be backed by an LSM tree.
+   *
+   * @param databaseTable Database table the log belongs to.
+   * @param log           Log to build the index of.
+   * @param filtered      Whether the index is backed by a Bloom filter of its keys.
+   * @param lsmTree       Tree the records are stored in, or null to keep them in memory.
+   */
+  public PrimaryKeyIndex(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                         TableLog<EntityT, PrimaryKeyT> log, boolean filtered,
+                         LsmTree<EntityT, PrimaryKeyT> lsmTree) {
+    this.databaseTable = databaseTable;
+    this.log = log;
+    this.filtered = filtered;
+    this.lsmTree = lsmTree;
+  }
+
+
+  /**
+   * Returns a record indexed by the provided `pk`.
+   *
+   * @param pk Primary key to look a record up by.
+   * @return Found record or an empty optional.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read, or
+   *                     if the LSM tree can't be read.
+   */
+  public Optional<EntityT> get(PrimaryKeyT pk) throws IOException {
+    Map<PrimaryKeyT, EntityT> loadedRecords = getRecords();
+
+    if (isDefinitelyAbsent(pk)) {
+      return Optional.empty();
+    }
+
+    try {
+      return Optional.ofNullable(loadedRecords.get(pk));
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Checks if a record with the provided `pk` is indexed.
+   *
+   * @param pk Primary key to check.
+   * @return True if the record exists.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read, or
+   *                     if the LSM tree can't be read.
+   */
+  public boolean contains(PrimaryKeyT pk) throws IOException {
+    Map<PrimaryKeyT, EntityT> loadedRecords = getRecords();
+
+    try {
+      return !isDefinitelyAbsent(pk) && loadedRecords.containsKey(pk);
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Returns all live records of the table.
+   *
+   * @return Unmodifiable view of the indexed records.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read.
+   */
+  public Collection<EntityT> values() throws IOException {
+    return Collections.unmodifiableCollection(getRecords().values());
+  }
+
+  /**
+   * Returns amount of live records of the table.
+   *
+   * @return Amount of indexed records.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read.
+   */
+  public int size() throws IOException {
+    return getRecords().size();
+  }
+
+  /**
+   * Adds a freshly created record to the index.
+   *
+   * @param record A record that has been written to the table.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read.
+   */
+  public void put(EntityT record) throws IOException {
+    Map<PrimaryKeyT, EntityT> loadedRecords = getRecords();
+    PrimaryKeyT pk = databaseTable.getPrimaryKey(record);
+
+    // The key is added to the filter first, so a concurrent lookup never misses the record
+    if (filter != null) {
+      filter.add(pk);
+    }
+
+    try {
+      loadedRecords.put(pk, record);
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Removes a record from the index.
+   *
+   * @param pk Primary key of a deleted record.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read.
+   */
+  public void remove(PrimaryKeyT pk) throws IOException {
+    Map<PrimaryKeyT, EntityT> loadedRecords = getRecords();
+
+    try {
+      loadedRecords.remove(pk);
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+
+  /**
+   * Returns size and accuracy of the Bloom filter of the index keys.
+   *
+   * @return Filter stats or an empty optional if the index is not filtered.
+   * @throws IOException Occurs if the index is not built yet and the table file can't be read.
+   */
+  public Optional<BloomFilterStats> getFilterStats() throws IOException {
+    getRecords();
+
+    return Optional.ofNullable(filter).map(ScalableBloomFilter::getStats);
+  }
+
+
+  private boolean isDefinitelyAbsent(PrimaryKeyT pk) {
+    ScalableBloomFilter loadedFilter = filter;
+
+    return loadedFilter != null && !loadedFilter.mightContain(pk);
+  }
+
+  private Map<PrimaryKeyT, EntityT> getRecords() throws IOException {
+    Map<PrimaryKeyT, EntityT> loadedRecords = records;
+
+    if (loadedRecords == null) {
+      synchronized (this) {
+        loadedRecords = records;
+
+        if (loadedRecords == null) {
+          loadedRecords = lsmTree != null
+              ? lsmTree.open(log.loadChanges())
+              : databaseTable.createRecordMap(log.load());
+
+          if (filtered) {
+            ScalableBloomFilter loadedFilter = new ScalableBloomFilter(
+                Math.max(ScalableBloomFilter.INITIAL_CAPACITY_DEFAULT, loadedRecords.size()),
+                ScalableBloomFilter.FALSE_POSITIVE_RATE_DEFAULT);
+            loadedRecords.keySet().forEach(loadedFilter::add);
+            filter = loadedFilter;
+          }
+
+          records = loadedRecords;
+        }
+      }
+    }
+
+    return loadedRecords;
+  }
+}
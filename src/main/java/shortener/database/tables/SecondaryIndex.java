@@ -0,0 +1,161 @@
+package shortener.database.tables;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory secondary index of a database table, which maps an indexed value to primary keys.
+ *
+ * <p>The index is built from the table records on first access and is kept in sync by the
+ * `Database` on every `create`/`delete`. The primary key index stays the source of truth:
+ * `lookup` resolves found keys through it and drops records which don't match anymore.
+ *
+ * @param <EntityT>     Table entity type.
+ * @param <PrimaryKeyT> Table primary key type.
+ * @param <KeyT>        Indexed value type.
+ */
+public class SecondaryIndex<EntityT, PrimaryKeyT, KeyT> {
+
+  private final DatabaseTable<EntityT, PrimaryKeyT> databaseTable;
+  private final IndexDefinition<EntityT, KeyT> definition;
+
+  private volatile Map<KeyT, Set<PrimaryKeyT>> primaryKeys;
+
+
+  /**
+   * Constructs an index of the table.
+   *
+   * @param databaseTable Database table to index.
+   * @param definition    Index declaration.
+   */
+  public SecondaryIndex(DatabaseTable<EntityT, PrimaryKeyT> databaseTable,
+                        IndexDefinition<EntityT, KeyT> definition) {
+    this.databaseTable = databaseTable;
+    this.definition = definition;
+  }
+
+
+  public IndexDefinition<EntityT, KeyT> getDefinition() {
+    return definition;
+  }
+
+  /**
+   * Returns records which have the provided indexed `key`.
+   *
+   * @param key Indexed value to look records up by.
+   * @return Stream of found records.
+   * @throws IOException Occurs if the index is not built yet and the table can't be read.
+   */
+  public Stream<EntityT> lookup(KeyT key) throws IOException {
+    if (key == null) {
+      return Stream.empty();
+    }
+
+    Set<PrimaryKeyT> found = getPrimaryKeys().getOrDefault(key, Collections.emptySet());
+
+    try {
+      return found.stream()
+          .map(pk -> {
+            try {
+              return databaseTable.getShard(pk).get(pk).orElse(null);
+            } catch (IOException exc) {
+              throw new UncheckedIOException(exc);
+            }
+          })
+          .filter(record -> record != null && key.equals(definition.key().apply(record)))
+          .collect(Collectors.toList())
+          .stream();
+    } catch (UncheckedIOException exc) {
+      throw exc.getCause();
+    }
+  }
+
+  /**
+   * Checks if there is a record with the provided indexed `key`.
+   *
+   * @param key Indexed value to check.
+   * @return True if a record exists.
+   * @throws IOException Occurs if the index is not built yet and the table can't be read.
+   */
+  public boolean contains(KeyT key) throws IOException {
+    return lookup(key).findAny().isPresent();
+  }
+
+  /**
+   * Adds a freshly created record to the index.
+   *
+   * @param record A record that has been added to the primary key index.
+   * @throws IOException Occurs if the index is not built yet and the table can't be read.
+   */
+  public void add(EntityT record) throws IOException {
+    add(getPrimaryKeys(), record);
+  }
+
+  /**
+   * Removes a deleted record from the index.
+   *
+   * @param record A record that has been removed from the primary key index.
+   * @throws IOException Occurs if the index is not built yet and the table can't be read.
+   */
+  public void remove(EntityT record) throws IOException {
+    KeyT key = definition.key().apply(record);
+
+    if (key == null) {
+      return;
+    }
+
+    PrimaryKeyT pk = databaseTable.getPrimaryKey(record);
+
+    getPrimaryKeys().computeIfPresent(key, (indexedKey, keys) -> {
+      keys.remove(pk);
+      return keys.isEmpty() ? null : keys;
+    });
+  }
+
+
+  private Map<KeyT, Set<PrimaryKeyT>> getPrimaryKeys() throws IOException {
+    Map<KeyT, Set<PrimaryKeyT>> builtPrimaryKeys = primaryKeys;
+
+    if (builtPrimaryKeys == null) {
+      synchronized (this) {
+        builtPrimaryKeys = primaryKeys;
+
+        if (builtPrimaryKeys == null) {
+          Map<KeyT, Set<PrimaryKeyT>> newPrimaryKeys = new ConcurrentHashMap<>();
+
+          try (Stream<EntityT> records = databaseTable.streamRecords()) {
+            records.forEach(record -> add(newPrimaryKeys, record));
+          }
+
+          builtPrimaryKeys = newPrimaryKeys;
+          primaryKeys = builtPrimaryKeys;
+        }
+      }
+    }
+
+    return builtPrimaryKeys;
+  }
+
+  private void add(Map<KeyT, Set<PrimaryKeyT>> index, EntityT record) {
+    KeyT key = definition.key().apply(record);
+
+    if (key == null) {
+      return;
+    }
+
+    PrimaryKeyT pk = Objects.requireNonNull(databaseTable.getPrimaryKey(record));
+
+    index.compute(key, (indexedKey, keys) -> {
+      Set<PrimaryKeyT> updatedKeys = keys == null ? databaseTable.createPrimaryKeySet() : keys;
+      updatedKeys.add(pk);
+      return updatedKeys;
+    });
+  }
+}
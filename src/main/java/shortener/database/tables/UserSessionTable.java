@@ -3,24 +3,52 @@ package shortener.database.tables;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Stream;
+import java.util.List;
 import javax.inject.Singleton;
 import shortener.database.entities.UserSession;
+import shortener.database.storage.Durability;
+import shortener.database.storage.FileStorageEngine;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.StorageEngine;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
  * UserSession database table implementation.
  */
 @Singleton
-public class UserSessionTable implements DatabaseTable<UserSession, String> {
+public class UserSessionTable extends AbstractDatabaseTable<UserSession, String> {
 
-  private static final String TABLE_NAME = "usersessions";
-
-  private final Path filePath;
+  public static final String TABLE_NAME = "usersessions";
+  public static final IndexDefinition<UserSession, Long> USER_ID_INDEX =
+      new IndexDefinition<>("userId", UserSession::userId, false);
 
 
   public UserSessionTable(Path rootPath) {
-    filePath = rootPath.resolve(TABLE_NAME);
+    this(List.of(rootPath), 1, Durability.DEFAULT);
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param durability Durability settings of the table file appends.
+   */
+  public UserSessionTable(List<Path> rootPaths, int shardCount, Durability durability) {
+    this(rootPaths, shardCount, new FileStorageEngine(durability));
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories, whose shards are created by
+   * the provided storage engine.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param engine     Storage engine of the shards.
+   */
+  public UserSessionTable(List<Path> rootPaths, int shardCount, StorageEngine engine) {
+    super(TABLE_NAME, rootPaths, shardCount, engine, List.of(USER_ID_INDEX));
   }
 
 
@@ -40,19 +68,15 @@ public class UserSessionTable implements DatabaseTable<UserSession, String> {
 
 
   @Override
-  public String getTableName() {
-    return TABLE_NAME;
+  public String getPrimaryKey(UserSession record) {
+    return record.token();
   }
 
 
   @Override
   public UserSession prepareRecordForCreation(UserSession recordToCreate)
       throws UniqueViolation, IOException {
-    boolean sessionForSimilarUserExists =
-        readTable().parallel()
-            .anyMatch(line -> deserialize(line).token().equals(recordToCreate.token()));
-
-    if (sessionForSimilarUserExists) {
+    if (containsRecord(recordToCreate.token())) {
       throw new UniqueViolation(TABLE_NAME);
     }
 
@@ -61,16 +85,23 @@ public class UserSessionTable implements DatabaseTable<UserSession, String> {
 
 
   @Override
-  public Path getWritableFilePath() {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return filePath;
+  public void encode(UserSession record, RecordWriter writer) {
+    writer.writeString(record.token());
+    writer.writeLong(record.userId());
+  }
+
+
+  @Override
+  public UserSession decode(RecordReader reader) {
+    String token = reader.readString();
+
+    return new UserSession(reader.readLong(), token);
   }
 
 
   @Override
-  public Stream<String> readTable() throws IOException {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return Files.lines(filePath).filter(line -> line != null && !line.isBlank());
+  public String decodePrimaryKey(RecordReader reader) {
+    return reader.readString();
   }
 
 
@@ -3,24 +3,60 @@ package shortener.database.tables;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Stream;
+import java.util.List;
 import javax.inject.Singleton;
 import shortener.database.entities.User;
+import shortener.database.storage.Durability;
+import shortener.database.storage.FileStorageEngine;
+import shortener.database.storage.IdSequence;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.StorageEngine;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
  * User database table implementation.
  */
 @Singleton
-public class UserTable implements DatabaseTable<User, Long> {
+public class UserTable extends AbstractDatabaseTable<User, Long> {
 
-  private static final String TABLE_NAME = "users";
+  public static final String TABLE_NAME = "users";
+  public static final IndexDefinition<User, String> EMAIL_INDEX =
+      new IndexDefinition<>("email", User::email, true);
 
-  private final Path filePath;
+  private final IdSequence idSequence;
 
 
   public UserTable(Path rootPath) {
-    filePath = rootPath.resolve(TABLE_NAME);
+    this(List.of(rootPath), 1, Durability.DEFAULT);
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param durability Durability settings of the table file appends.
+   */
+  public UserTable(List<Path> rootPaths, int shardCount, Durability durability) {
+    this(rootPaths, shardCount, new FileStorageEngine(durability));
+  }
+
+  /**
+   * Constructs a table sharded over the provided root directories, whose shards are created by
+   * the provided storage engine.
+   *
+   * @param rootPaths  Paths to the root directories.
+   * @param shardCount Amount of table shards.
+   * @param engine     Storage engine of the shards.
+   */
+  public UserTable(List<Path> rootPaths, int shardCount, StorageEngine engine) {
+    super(TABLE_NAME, rootPaths, shardCount, engine, List.of(EMAIL_INDEX));
+
+    idSequence = new IdSequence(
+        rootPaths.get(0).resolve(TABLE_NAME + IdSequence.SEQUENCE_FILE_SUFFIX),
+        IdSequence.BLOCK_SIZE_DEFAULT,
+        () -> streamRecords().mapToLong(User::id).max().orElse(0L));
   }
 
 
@@ -40,44 +76,41 @@ public class UserTable implements DatabaseTable<User, Long> {
 
 
   @Override
-  public String getTableName() {
-    return TABLE_NAME;
+  public Long getPrimaryKey(User record) {
+    return record.id();
   }
 
 
   @Override
   public User prepareRecordForCreation(User recordToCreate)
       throws UniqueViolation, IOException {
-    boolean userWithSimilarEmailExists =
-        readTable().parallel()
-            .anyMatch(line -> deserialize(line).email().equals(recordToCreate.email()));
-
-    if (userWithSimilarEmailExists) {
+    if (getSecondaryIndex(EMAIL_INDEX).contains(recordToCreate.email())) {
       throw new UniqueViolation(TABLE_NAME);
     }
 
-    long maxId = readTable().parallel().map(line -> {
-      String[] fields = line.split("\\|");
-      return Long.parseLong(fields[0]);
-    }).reduce((acc, id) -> id > acc ? id : acc).orElse(0L);
-
-    Long newPrimaryKey = maxId + 1;
+    Long newPrimaryKey = idSequence.next();
 
     return new User(newPrimaryKey, recordToCreate.email(), recordToCreate.password());
   }
 
 
   @Override
-  public Path getWritableFilePath() {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return filePath;
+  public void encode(User record, RecordWriter writer) {
+    writer.writeLong(record.id());
+    writer.writeString(record.email());
+    writer.writeString(record.password());
+  }
+
+
+  @Override
+  public User decode(RecordReader reader) {
+    return new User(reader.readLong(), reader.readString(), reader.readString());
   }
 
 
   @Override
-  public Stream<String> readTable() throws IOException {
-    // TODO: Add an overloaded method which would accept a pk as a hint for file selection.
-    return Files.lines(filePath).filter(line -> line != null && !line.isBlank());
+  public Long decodePrimaryKey(RecordReader reader) {
+    return reader.readLong();
   }
 
 
@@ -0,0 +1,12 @@
+package shortener.exceptions.cluster;
+
+/**
+ * Exception for a cluster node which can't be reached.
+ */
+public class NodeUnavailable extends IllegalStateException {
+  private static final String message = "Cluster node %s is unavailable!";
+
+  public NodeUnavailable(String node, Throwable cause) {
+    super(String.format(message, node), cause);
+  }
+}
@@ -0,0 +1,22 @@
+package shortener.exceptions.cluster;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.server.exceptions.ExceptionHandler;
+import javax.inject.Singleton;
+
+@Produces
+@Singleton
+@Requires(classes = {NodeUnavailable.class, ExceptionHandler.class})
+class NodeUnavailableHandler implements
+    ExceptionHandler<NodeUnavailable, HttpResponse<String>> {
+
+  @Override
+  public HttpResponse<String> handle(HttpRequest request, NodeUnavailable exception) {
+    return HttpResponse.<String>status(HttpStatus.SERVICE_UNAVAILABLE)
+        .body("The cluster node owning the alias is unavailable");
+  }
+}
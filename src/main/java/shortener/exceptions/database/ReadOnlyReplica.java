@@ -0,0 +1,12 @@
+package shortener.exceptions.database;
+
+/**
+ * Exception for a write to a read-only replica.
+ */
+public class ReadOnlyReplica extends IllegalStateException {
+  private static final String message = "%s can't be written to on a read-only replica!";
+
+  public ReadOnlyReplica(String table) {
+    super(String.format(message, table));
+  }
+}
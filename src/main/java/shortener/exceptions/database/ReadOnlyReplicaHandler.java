@@ -0,0 +1,22 @@
+package shortener.exceptions.database;
+
+import io.micronaut.context.annotation.Requires;
+import io.micronaut.http.HttpRequest;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.server.exceptions.ExceptionHandler;
+import javax.inject.Singleton;
+
+@Produces
+@Singleton
+@Requires(classes = {ReadOnlyReplica.class, ExceptionHandler.class})
+class ReadOnlyReplicaHandler implements
+    ExceptionHandler<ReadOnlyReplica, HttpResponse<String>> {
+
+  @Override
+  public HttpResponse<String> handle(HttpRequest request, ReadOnlyReplica exception) {
+    return HttpResponse.<String>status(HttpStatus.SERVICE_UNAVAILABLE)
+        .body("Read-only replica, send writes to the leader");
+  }
+}
@@ -0,0 +1,37 @@
+package shortener.httphandler;
+
+import com.nimbusds.jose.shaded.json.JSONObject;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecurityRule;
+import javax.inject.Inject;
+import shortener.cluster.ClusterNode;
+
+/**
+ * REST API controller that reports the cluster membership of the instance.
+ */
+@Controller("/cluster")
+@Secured(SecurityRule.IS_ANONYMOUS)
+public class ClusterController {
+
+  @Inject
+  ClusterNode cluster;
+
+  /**
+   * Entrypoint for checking the cluster membership.
+   *
+   * @return  200 OK - returns the address of the node, the members of the cluster and whether
+   *          partitions are still being streamed to the node
+   */
+  @Get
+  public HttpResponse<Object> getStatus() {
+    JSONObject jsonResponse = new JSONObject();
+    jsonResponse.put("node", cluster.getAddress());
+    jsonResponse.put("members", cluster.getMembers());
+    jsonResponse.put("rebalancing", cluster.isRebalancing());
+
+    return HttpResponse.ok(jsonResponse);
+  }
+}
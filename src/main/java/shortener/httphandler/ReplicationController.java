@@ -0,0 +1,36 @@
+package shortener.httphandler;
+
+import com.nimbusds.jose.shaded.json.JSONObject;
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.rules.SecurityRule;
+import javax.inject.Inject;
+import shortener.database.Database;
+
+/**
+ * REST API controller that reports the replication state of the instance.
+ */
+@Controller("/replication")
+@Secured(SecurityRule.IS_ANONYMOUS)
+public class ReplicationController {
+
+  @Inject
+  Database db;
+
+  /**
+   * Entrypoint for checking the replication lag.
+   *
+   * @return  200 OK - returns the role of the instance and, on a replica, the lag of each
+   *          followed table
+   */
+  @Get
+  public HttpResponse<Object> getStatus() {
+    JSONObject jsonResponse = new JSONObject();
+    jsonResponse.put("role", db.isReadOnly() ? "replica" : "leader");
+    jsonResponse.put("tables", db.getReplicationStatus());
+
+    return HttpResponse.ok(jsonResponse);
+  }
+}
@@ -1,73 +1,98 @@
 package shortener.urls;
 
 import java.util.List;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import shortener.database.Database;
+import shortener.cache.InvalidationBus;
+import shortener.cache.LocalCache;
+import shortener.cluster.ClusterNode;
 import shortener.database.Repository;
 import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
 import shortener.exceptions.database.NotFound;
 import shortener.exceptions.database.UniqueViolation;
-import shortener.urls.utils.RandomStringGenerator;
+import shortener.urls.ids.AliasIdAllocator;
+import shortener.urls.ids.AliasScrambler;
 
 /**
  * Urls repository.
+ *
+ * <p>Aliases are partitioned across the cluster, so every operation is routed to the node owning
+ * the alias, see `ClusterNode`. A standalone instance owns all of them. Lookups are cached, and
+ * deletions invalidate the cached alias on all instances, see `InvalidationBus`. Generated
+ * aliases are scrambled ids unique across instances, see `AliasIdAllocator` and `AliasScrambler`.
  */
 @Singleton
 public class UrlRepository implements Repository<Alias, String> {
 
   @Inject
-  Database db;
+  ClusterNode cluster;
+
+  @Inject
+  InvalidationBus invalidationBus;
+
+  @Inject
+  AliasIdAllocator aliasIds;
+
+  @Inject
+  AliasScrambler aliasScrambler;
+
+  private LocalCache<Alias> cache;
+
+  @PostConstruct
+  void createCache() {
+    cache = invalidationBus.createCache(AliasTable.TABLE_NAME);
+  }
 
   @Override
   public List<Alias> search() {
-    return db.search(db.aliasTable);
+    return cluster.search();
   }
 
   public List<Alias> searchByUserId(Long userId) {
-    return db.search(db.aliasTable, alias -> alias.userId().equals(userId));
+    return cluster.searchByUserId(userId);
   }
 
   @Override
   public Alias get(String pk) throws NotFound {
-    return db.get(db.aliasTable, pk);
+    return cache.get(pk, cluster::get);
   }
 
   @Override
   public Alias create(Alias record) throws UniqueViolation {
-    return db.create(db.aliasTable, record);
+    return cluster.create(record);
   }
 
   /**
-   * Creates an Alias with randomly-generated `alias`.
+   * Creates an Alias with generated `alias`.
+   *
+   * <p>Allocated ids are never reused, so the generated alias can only be taken by one chosen by
+   * a user or generated randomly by an older version, in which case the next id is tried.
    *
    * @param url    A url to create an alias for.
    * @param userId Creator's id.
    * @return Created alias.
    */
   public Alias createRandomAlias(String url, Long userId) {
-    String randomAlias = null;
-
-    for (int generationRetries = 0; generationRetries <= 100; generationRetries++) {
-      randomAlias = RandomStringGenerator.generate(Alias.ALIAS_LENGTH_DEFAULT);
+    for (int generationRetries = 0; ; generationRetries++) {
+      String generatedAlias = aliasScrambler.toAlias(aliasIds.next());
 
       try {
-        db.get(db.aliasTable, randomAlias);
-
+        return create(new Alias(generatedAlias, url, userId));
+      } catch (UniqueViolation exc) {
         if (generationRetries >= 100) {
           throw new RuntimeException("Failed to generate a random alias for a given url.");
         }
-      } catch (NotFound exc) {
-        break;
       }
     }
-
-    // `randomAlias` should be defined by this moment
-    return create(new Alias(randomAlias, url, userId));
   }
 
   @Override
   public Alias delete(String pk) throws NotFound {
-    return db.delete(db.aliasTable, pk);
+    Alias deletedAlias = cluster.delete(pk);
+    invalidationBus.invalidate(cache, pk);
+
+    return deletedAlias;
   }
 }
@@ -0,0 +1,153 @@
+package shortener.urls.ids;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.storage.IdLeaseRegistry;
+import shortener.database.storage.IdLeaseRegistry.IdRange;
+
+/**
+ * Allocator of the ids generated aliases are made of.
+ *
+ * <p>Ids are handed out of a range leased from `IdLeaseRegistry` without locking, and ranges of
+ * different instances are disjoint, so an id is unique across instances without checking it
+ * against the aliases. Once fewer than `alias-ids.renew-below` ids are left in the range, the
+ * next one is leased in the background, so allocations don't wait for the lease file.
+ */
+@Singleton
+public class AliasIdAllocator implements Closeable {
+
+  private final IdLeaseRegistry registry;
+  private final long leaseSize;
+  private final long renewBelow;
+  private final ExecutorService renewals;
+
+  private volatile Lease current = new Lease(new IdRange(0, 0));
+  // Guarded by the allocator
+  private CompletableFuture<IdRange> renewal;
+
+
+  /**
+   * Constructs an allocator leasing ranges from the configured lease file.
+   *
+   * @param configuration         Alias id configuration.
+   * @param databaseConfiguration Database configuration, which locates the default lease file.
+   */
+  @Inject
+  public AliasIdAllocator(AliasIdConfiguration configuration,
+                          DatabaseConfiguration databaseConfiguration) {
+    this(new IdLeaseRegistry(configuration.getLeaseFilePath(databaseConfiguration)),
+        configuration.getLeaseSize(), configuration.getRenewBelow());
+  }
+
+  /**
+   * Constructs an allocator leasing ranges from the provided registry.
+   *
+   * @param registry   Lease registry shared by the instances.
+   * @param leaseSize  Amount of ids leased at once.
+   * @param renewBelow Amount of ids left in the range once the next range is leased.
+   */
+  public AliasIdAllocator(IdLeaseRegistry registry, long leaseSize, long renewBelow) {
+    if (leaseSize < 1 || renewBelow < 0 || renewBelow > leaseSize) {
+      throw new IllegalArgumentException(
+          "Lease size should be positive and not less than the renewal threshold.");
+    }
+
+    this.registry = registry;
+    this.leaseSize = leaseSize;
+    this.renewBelow = renewBelow;
+    this.renewals = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "alias-id-lease");
+      thread.setDaemon(true);
+
+      return thread;
+    });
+  }
+
+
+  /**
+   * Returns the next alias id.
+   *
+   * @return Id unique across the instances sharing the lease registry.
+   */
+  public long next() {
+    while (true) {
+      Lease lease = current;
+      long id = lease.nextId.getAndIncrement();
+
+      if (id < lease.range.end()) {
+        if (lease.range.end() - id <= renewBelow && lease.renewing.compareAndSet(false, true)) {
+          renew();
+        }
+
+        return id;
+      }
+
+      advance(lease);
+    }
+  }
+
+  /**
+   * Stops renewing leases on shutdown.
+   */
+  @Override
+  @PreDestroy
+  public void close() {
+    renewals.shutdownNow();
+  }
+
+
+  private synchronized void renew() {
+    if (renewal == null) {
+      renewal = CompletableFuture.supplyAsync(this::lease, renewals);
+    }
+  }
+
+  // Replaces the exhausted lease with the renewed one, leasing it right away if it's not pending
+  private synchronized void advance(Lease exhausted) {
+    if (current != exhausted) {
+      return;
+    }
+
+    try {
+      IdRange range = renewal == null ? lease() : renewal.join();
+      current = new Lease(range);
+    } catch (CompletionException exc) {
+      throw exc.getCause() instanceof RuntimeException
+          ? (RuntimeException) exc.getCause()
+          : exc;
+    } finally {
+      renewal = null;
+    }
+  }
+
+  private IdRange lease() {
+    try {
+      return registry.lease(leaseSize);
+    } catch (IOException exc) {
+      throw new RuntimeException("Alias id lease failure.", exc);
+    }
+  }
+
+
+  private static class Lease {
+
+    private final IdRange range;
+    private final AtomicLong nextId;
+    private final AtomicBoolean renewing = new AtomicBoolean();
+
+    private Lease(IdRange range) {
+      this.range = range;
+      this.nextId = new AtomicLong(range.start());
+    }
+  }
+}
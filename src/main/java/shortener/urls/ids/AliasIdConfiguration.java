@@ -0,0 +1,67 @@
+package shortener.urls.ids;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import java.nio.file.Path;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.storage.IdLeaseRegistry;
+import shortener.database.tables.AliasTable;
+
+/**
+ * Alias id configuration, bound to the `alias-ids` section of `application.yml`.
+ */
+@ConfigurationProperties("alias-ids")
+public class AliasIdConfiguration {
+
+  private String leaseFile = "";
+  private long leaseSize = 10_000;
+  private long renewBelow = 2_500;
+  private long scrambleKey = 0x5DEECE66DL;
+
+
+  public String getLeaseFile() {
+    return leaseFile;
+  }
+
+  public void setLeaseFile(String leaseFile) {
+    this.leaseFile = leaseFile;
+  }
+
+  public long getLeaseSize() {
+    return leaseSize;
+  }
+
+  public void setLeaseSize(long leaseSize) {
+    this.leaseSize = leaseSize;
+  }
+
+  public long getRenewBelow() {
+    return renewBelow;
+  }
+
+  public void setRenewBelow(long renewBelow) {
+    this.renewBelow = renewBelow;
+  }
+
+  public long getScrambleKey() {
+    return scrambleKey;
+  }
+
+  public void setScrambleKey(long scrambleKey) {
+    this.scrambleKey = scrambleKey;
+  }
+
+  /**
+   * Returns the path to the lease file.
+   *
+   * @param databaseConfiguration Database configuration.
+   * @return The configured lease file, or `aliases.leases` in the first database root directory.
+   */
+  public Path getLeaseFilePath(DatabaseConfiguration databaseConfiguration) {
+    if (!leaseFile.isBlank()) {
+      return Path.of(leaseFile);
+    }
+
+    return Path.of(databaseConfiguration.getRootDirectories().get(0),
+        AliasTable.TABLE_NAME + IdLeaseRegistry.LEASE_FILE_SUFFIX);
+  }
+}
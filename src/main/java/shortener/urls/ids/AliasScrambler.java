@@ -0,0 +1,126 @@
+package shortener.urls.ids;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import shortener.database.entities.Alias;
+import shortener.urls.utils.Base62;
+
+/**
+ * Bijective mapping of alias ids to aliases which don't look sequential.
+ *
+ * <p>The first 62^n ids map to aliases of the minimal length n, the next 62^(n+1) ones to aliases
+ * one character longer, and so on, so aliases grow once the shorter ones are used up. Within a
+ * length, the id is permuted by a keyed Feistel network, cycle-walking out of the bit space of the
+ * network until the value fits the base62 space of the length. Distinct ids thus give distinct
+ * aliases, as long as all instances share `alias-ids.scramble-key`.
+ */
+@Singleton
+public class AliasScrambler {
+
+  private static final int ROUNDS = 4;
+
+  private final int minLength;
+  private final long[] roundKeys = new long[ROUNDS];
+
+
+  /**
+   * Constructs a scrambler of the configured key and the default alias length.
+   *
+   * @param configuration Alias id configuration.
+   */
+  @Inject
+  public AliasScrambler(AliasIdConfiguration configuration) {
+    this(configuration.getScrambleKey(), Alias.ALIAS_LENGTH_DEFAULT);
+  }
+
+  /**
+   * Constructs a scrambler of the provided key.
+   *
+   * @param key       Key of the permutation.
+   * @param minLength Length of the aliases of the first ids.
+   */
+  public AliasScrambler(long key, int minLength) {
+    if (minLength < 1) {
+      throw new IllegalArgumentException("Alias length should be positive.");
+    }
+
+    this.minLength = minLength;
+    for (int i = 0; i < ROUNDS; i++) {
+      key += 0x9E3779B97F4A7C15L;
+      roundKeys[i] = mix(key);
+    }
+  }
+
+
+  /**
+   * Maps an alias id to its alias.
+   *
+   * @param id Non-negative alias id, below `Long.MAX_VALUE`, which no leased range includes.
+   * @return Alias, distinct for distinct ids.
+   */
+  public String toAlias(long id) {
+    if (id < 0 || id == Long.MAX_VALUE) {
+      throw new IllegalArgumentException("Alias id should be non-negative and below the maximum.");
+    }
+
+    int length = minLength;
+    long index = id;
+    long lengthSpace = space(length);
+
+    while (index >= lengthSpace) {
+      index -= lengthSpace;
+      length++;
+      lengthSpace = space(length);
+    }
+
+    return Base62.encode(permute(index, lengthSpace), length);
+  }
+
+
+  // Amount of aliases of the length, capped at `Long.MAX_VALUE`, which no id of the length reaches
+  private static long space(int length) {
+    long space = 1;
+
+    for (int i = 0; i < length; i++) {
+      if (space > Long.MAX_VALUE / Base62.RADIX) {
+        return Long.MAX_VALUE;
+      }
+      space *= Base62.RADIX;
+    }
+
+    return space;
+  }
+
+  // Permutes [0, domain) by walking the cycle of the Feistel permutation until it's back in range
+  private long permute(long value, long domain) {
+    int halfBits = Math.max(1, (64 - Long.numberOfLeadingZeros(domain - 1) + 1) / 2);
+
+    do {
+      value = feistel(value, halfBits);
+    } while (Long.compareUnsigned(value, domain) >= 0);
+
+    return value;
+  }
+
+  private long feistel(long value, int halfBits) {
+    long mask = (1L << halfBits) - 1;
+    long left = (value >>> halfBits) & mask;
+    long right = value & mask;
+
+    for (long roundKey : roundKeys) {
+      long next = left ^ (mix(right ^ roundKey) & mask);
+      left = right;
+      right = next;
+    }
+
+    return (left << halfBits) | right;
+  }
+
+  // SplitMix64 finalizer
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+
+    return value ^ (value >>> 31);
+  }
+}
@@ -0,0 +1,41 @@
+package shortener.urls.utils;
+
+/**
+ * Url helper class encoding numbers into alpha numeric strings.
+ */
+public class Base62 {
+
+  private static final String upper = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+  private static final String lower = "abcdefghijklmnopqrstuvwxyz";
+  private static final String num = "1234567890";
+
+  private static final String alphaNumeric = upper + lower + num;
+
+  public static final int RADIX = alphaNumeric.length();
+
+  /**
+   * Encode a non-negative number into an alpha numeric string of at least the specified length.
+   *
+   * @param value     number to be encoded
+   * @param minLength length the string is padded to with the zero digit
+   * @return alpha numeric string, distinct for distinct numbers
+   */
+  public static String encode(long value, int minLength) {
+    if (value < 0) {
+      throw new IllegalArgumentException("Only non-negative numbers can be encoded.");
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    do {
+      sb.append(alphaNumeric.charAt((int) (value % RADIX)));
+      value /= RADIX;
+    } while (value > 0);
+
+    while (sb.length() < minLength) {
+      sb.append(alphaNumeric.charAt(0));
+    }
+
+    return sb.reverse().toString();
+  }
+}
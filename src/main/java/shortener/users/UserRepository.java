@@ -6,6 +6,7 @@ import javax.inject.Singleton;
 import shortener.database.Database;
 import shortener.database.Repository;
 import shortener.database.entities.User;
+import shortener.database.tables.UserTable;
 import shortener.exceptions.database.NotFound;
 import shortener.exceptions.database.UniqueViolation;
 import shortener.users.protection.HashFunction;
@@ -30,8 +31,7 @@ public class UserRepository implements Repository<User, Long> {
   }
 
   public User getByEmail(String email) throws NotFound {
-    return db.search(db.userTable, u -> u.email().equals(email), 1).stream().findFirst()
-        .orElseThrow(() -> new NotFound(db.userTable.getTableName(), email));
+    return db.getBy(db.userTable, UserTable.EMAIL_INDEX, email);
   }
 
   @Override
@@ -1,16 +1,23 @@
 package shortener.users;
 
 import java.util.List;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import shortener.cache.InvalidationBus;
+import shortener.cache.LocalCache;
 import shortener.database.Database;
 import shortener.database.Repository;
 import shortener.database.entities.UserSession;
+import shortener.database.tables.UserSessionTable;
 import shortener.exceptions.database.NotFound;
 import shortener.exceptions.database.UniqueViolation;
 
 /**
  * A database repository for UserSession entity.
+ *
+ * <p>Sessions are cached, since every authenticated request looks its token up, and sign-outs
+ * invalidate the cached session on all instances, see `InvalidationBus`.
  */
 @Singleton
 public class UserSessionRepository implements Repository<UserSession, String> {
@@ -18,18 +25,28 @@ public class UserSessionRepository implements Repository<UserSession, String> {
   @Inject
   Database db;
 
+  @Inject
+  InvalidationBus invalidationBus;
+
+  private LocalCache<UserSession> cache;
+
+  @PostConstruct
+  void createCache() {
+    cache = invalidationBus.createCache(UserSessionTable.TABLE_NAME);
+  }
+
   @Override
   public List<UserSession> search() {
     return db.search(db.userSessionTable);
   }
 
   public List<UserSession> searchByUserId(Long userId) throws NotFound {
-    return db.search(db.userSessionTable, us -> us.userId().equals(userId));
+    return db.searchBy(db.userSessionTable, UserSessionTable.USER_ID_INDEX, userId);
   }
 
   @Override
   public UserSession get(String token) throws NotFound {
-    return db.get(db.userSessionTable, token);
+    return cache.get(token, key -> db.get(db.userSessionTable, key));
   }
 
   @Override
@@ -39,6 +56,9 @@ public class UserSessionRepository implements Repository<UserSession, String> {
 
   @Override
   public UserSession delete(String token) throws NotFound {
-    return db.delete(db.userSessionTable, token);
+    UserSession deletedSession = db.delete(db.userSessionTable, token);
+    invalidationBus.invalidate(cache, token);
+
+    return deletedSession;
   }
 }
@@ -0,0 +1,129 @@
+package shortener.cache;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.cache.InvalidationBus.Invalidation;
+
+public class InvalidationBusTest {
+
+  private static final long TIMEOUT_MILLIS = 5_000;
+
+  private int firstPort;
+  private int secondPort;
+  private InvalidationBus first;
+  private InvalidationBus second;
+  private LocalCache<String> firstCache;
+  private LocalCache<String> secondCache;
+
+  @BeforeEach
+  void startBuses() throws IOException {
+    firstPort = freePort();
+    secondPort = freePort();
+
+    first = new InvalidationBus(
+        CacheConfiguration.of(firstPort, List.of("localhost:" + secondPort)));
+    second = new InvalidationBus(
+        CacheConfiguration.of(secondPort, List.of("localhost:" + firstPort)));
+    firstCache = first.createCache("aliases");
+    secondCache = second.createCache("aliases");
+  }
+
+  @AfterEach
+  void closeBuses() {
+    first.close();
+    second.close();
+  }
+
+  private static int freePort() throws IOException {
+    try (DatagramSocket socket = new DatagramSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("The invalidation has not arrived in time.");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private void sendToSecond(long senderId, long sequence, List<Invalidation> invalidations)
+      throws IOException {
+    byte[] datagram = InvalidationBus.encode(senderId, sequence, invalidations);
+
+    try (DatagramSocket socket = new DatagramSocket()) {
+      socket.send(new DatagramPacket(datagram, datagram.length,
+          new InetSocketAddress("localhost", secondPort)));
+    }
+  }
+
+  @Test
+  void invalidationsReachOtherInstances() throws Exception {
+    firstCache.get("alias", key -> "first");
+    secondCache.get("alias", key -> "first");
+    secondCache.get("other", key -> "other");
+
+    first.invalidate(firstCache, "alias");
+
+    Assertions.assertThat(firstCache.size()).isZero();
+    await(() -> secondCache.size() == 1);
+    Assertions.assertThat(secondCache.get("alias", key -> "second")).isEqualTo("second");
+    Assertions.assertThat(second.getStats().resyncs()).isZero();
+  }
+
+  @Test
+  void invalidationsAreBatchedAndCoalesced() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      first.invalidate(firstCache, "alias-" + i % 10);
+    }
+
+    // Every invalidation is either sent, in a batch of 10 keys at most, or coalesced
+    await(() -> first.getStats().coalesced() + 10 * first.getStats().sentBatches() >= 1000);
+    await(() -> second.getStats().receivedBatches() == first.getStats().sentBatches());
+    InvalidationBusStats stats = first.getStats();
+
+    Assertions.assertThat(stats.published()).isEqualTo(1000);
+    Assertions.assertThat(stats.sentBatches()).isLessThan(100);
+    Assertions.assertThat(stats.coalesced()).isGreaterThan(0);
+  }
+
+  @Test
+  void gapInSequenceNumbersDropsAllEntries() throws Exception {
+    secondCache.get("alias", key -> "cached");
+    sendToSecond(42, 1, List.of(new Invalidation("aliases", "unrelated")));
+    await(() -> second.getStats().receivedBatches() == 1);
+
+    Assertions.assertThat(secondCache.size()).isEqualTo(1);
+
+    // Batch 2 has been lost
+    sendToSecond(42, 3, List.of(new Invalidation("aliases", "unrelated")));
+    await(() -> second.getStats().resyncs() == 1);
+
+    Assertions.assertThat(secondCache.size()).isZero();
+  }
+
+  @Test
+  void heartbeatRevealsLostLatestBatch() throws Exception {
+    sendToSecond(42, 1, List.of(new Invalidation("aliases", "unrelated")));
+    await(() -> second.getStats().receivedBatches() == 1);
+    secondCache.get("alias", key -> "cached");
+
+    sendToSecond(42, 1, List.of());
+    sendToSecond(42, 2, List.of());
+    await(() -> second.getStats().resyncs() == 1);
+
+    Assertions.assertThat(secondCache.size()).isZero();
+  }
+}
@@ -0,0 +1,79 @@
+package shortener.cache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import shortener.exceptions.database.NotFound;
+
+public class LocalCacheTest {
+
+  @Test
+  void recordsAreLoadedOnceUntilInvalidated() {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ofHours(1), 100);
+    AtomicInteger loads = new AtomicInteger();
+
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertThat(cache.get("key", key -> key + loads.incrementAndGet()))
+          .isEqualTo("key1");
+    }
+
+    cache.invalidate("key");
+
+    Assertions.assertThat(cache.get("key", key -> key + loads.incrementAndGet()))
+        .isEqualTo("key2");
+  }
+
+  @Test
+  void entriesExpire() throws InterruptedException {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ofMillis(20), 100);
+    cache.get("key", key -> "stale");
+    Thread.sleep(50);
+
+    Assertions.assertThat(cache.get("key", key -> "fresh")).isEqualTo("fresh");
+  }
+
+  @Test
+  void recordLoadedDuringInvalidationIsNotCached() {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ofHours(1), 100);
+
+    Assertions.assertThat(cache.get("key", key -> {
+      // Another thread deletes the record while it's being loaded
+      cache.invalidate(key);
+      return "stale";
+    })).isEqualTo("stale");
+    Assertions.assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void absentRecordsAreNotCached() {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ofHours(1), 100);
+
+    Assertions.assertThatThrownBy(() -> cache.get("key", key -> {
+      throw new NotFound("aliases", key);
+    })).isInstanceOf(NotFound.class);
+    Assertions.assertThat(cache.get("key", key -> "created")).isEqualTo("created");
+  }
+
+  @Test
+  void fullCacheDropsEntries() {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ofHours(1), 100);
+
+    for (int i = 0; i < 1000; i++) {
+      cache.get("key-" + i, key -> key);
+    }
+
+    Assertions.assertThat(cache.size()).isLessThanOrEqualTo(100);
+  }
+
+  @Test
+  void zeroTtlDisablesCaching() {
+    LocalCache<String> cache = new LocalCache<>("aliases", Duration.ZERO, 100);
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.get("key", key -> key + loads.incrementAndGet());
+
+    Assertions.assertThat(cache.get("key", key -> key + loads.incrementAndGet()))
+        .isEqualTo("key2");
+  }
+}
@@ -0,0 +1,229 @@
+package shortener.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.Database;
+import shortener.database.entities.Alias;
+import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.UniqueViolation;
+
+public class ClusterTest {
+
+  private static final String ROOT_DIRECTORY_PREFIX = "cluster-node-db-";
+  private static final int NODES = 3;
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  private final List<Node> nodes = new ArrayList<>();
+
+  @AfterAll
+  static void purgeDbs() {
+    for (int i = 0; i < NODES; i++) {
+      TestUtils.purgeDirectory(new File(ROOT_DIRECTORY_PREFIX + i));
+    }
+  }
+
+  @BeforeEach
+  void purgeNodeDbs() {
+    purgeDbs();
+  }
+
+  @AfterEach
+  void closeNodes() throws IOException {
+    for (Node node : nodes) {
+      node.close();
+    }
+  }
+
+  private Node startNode(List<Node> seeds) throws IOException {
+    String rootDirectory = ROOT_DIRECTORY_PREFIX + nodes.size();
+    Database.init(rootDirectory);
+
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+
+    Database db = new Database(rootDirectory);
+    ClusterNode cluster = new ClusterNode(db, ClusterConfiguration.of(port,
+        seeds.stream().map(seed -> seed.cluster.getAddress()).collect(Collectors.toList())));
+    Node node = new Node(db, cluster);
+    nodes.add(node);
+
+    return node;
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("The cluster has not rebalanced in time.");
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  private void awaitRebalanced() throws InterruptedException {
+    List<Node> running = nodes.stream().filter(node -> !node.closed).collect(Collectors.toList());
+
+    await(() -> running.stream().allMatch(node -> !node.cluster.isRebalancing()
+        && node.cluster.getMembers().size() == running.size()));
+  }
+
+  private static List<String> aliases(int count) {
+    return IntStream.range(0, count).mapToObj(i -> "alias-" + i).collect(Collectors.toList());
+  }
+
+  // Checks that every alias is stored by its owner only
+  private void assertPartitioned(List<String> aliases) throws InterruptedException {
+    List<Node> running = nodes.stream().filter(node -> !node.closed).collect(Collectors.toList());
+
+    await(() -> aliases.stream().allMatch(alias -> running.stream()
+        .filter(node -> node.storesLocally(alias))
+        .map(node -> node.cluster.getAddress())
+        .collect(Collectors.toList())
+        .equals(List.of(running.get(0).owner(alias)))));
+  }
+
+  @Test
+  void aliasesArePartitionedAndServedByAnyNode() throws Exception {
+    Node first = startNode(List.of());
+    Node second = startNode(List.of(first));
+    Node third = startNode(List.of(first));
+    awaitRebalanced();
+
+    List<String> aliases = aliases(300);
+    for (int i = 0; i < aliases.size(); i++) {
+      nodes.get(i % NODES).cluster.create(
+          new Alias(aliases.get(i), "https://example.com/" + i, i % 2 == 0 ? 1L : 2L));
+    }
+
+    assertPartitioned(aliases);
+    Assertions.assertThat(nodes).allMatch(node -> node.storesAnyOf(aliases));
+
+    for (Node node : nodes) {
+      Assertions.assertThat(node.cluster.get("alias-7").url()).isEqualTo("https://example.com/7");
+      Assertions.assertThat(node.cluster.searchByUserId(2L)).hasSize(150);
+      Assertions.assertThat(node.cluster.search()).hasSize(300);
+    }
+
+    Assertions.assertThatThrownBy(
+        () -> third.cluster.create(new Alias("alias-1", "https://example.org", 3L))
+    ).isInstanceOf(UniqueViolation.class);
+
+    Assertions.assertThat(second.cluster.delete("alias-1").url())
+        .isEqualTo("https://example.com/1");
+    Assertions.assertThat(first.cluster.exists("alias-1")).isFalse();
+    Assertions.assertThatThrownBy(() -> third.cluster.get("alias-1"))
+        .isInstanceOf(NotFound.class);
+  }
+
+  @Test
+  void partitionsAreStreamedWhenNodesJoinAndLeave() throws Exception {
+    Node first = startNode(List.of());
+    List<String> aliases = aliases(300);
+    for (String alias : aliases) {
+      first.cluster.create(new Alias(alias, "https://example.com/" + alias, 1L));
+    }
+
+    Node second = startNode(List.of(first));
+    Node third = startNode(List.of(second));
+    awaitRebalanced();
+    assertPartitioned(aliases);
+
+    Assertions.assertThat(nodes).allMatch(node -> node.storesAnyOf(aliases));
+    Assertions.assertThat(third.cluster.get("alias-9").url())
+        .isEqualTo("https://example.com/alias-9");
+
+    // A leaving node drops the aliases it has streamed
+    second.cluster.close();
+    Assertions.assertThat(second.db.search(second.db.aliasTable)).isEmpty();
+
+    second.close();
+    awaitRebalanced();
+    assertPartitioned(aliases);
+
+    Assertions.assertThat(first.cluster.search()).hasSize(300);
+    Assertions.assertThat(third.cluster.searchByUserId(1L)).hasSize(300);
+  }
+
+
+  @Test
+  void urlsOfAnyContentAndLengthAreRoutedAndStreamed() throws Exception {
+    Node first = startNode(List.of());
+    List<String> aliases = aliases(50);
+    for (String alias : aliases) {
+      first.cluster.create(new Alias(alias, "https://example.com/a|b?" + alias + "=|", 1L));
+    }
+
+    Node second = startNode(List.of(first));
+    awaitRebalanced();
+    assertPartitioned(aliases);
+
+    // Created through both nodes, so half of them are forwarded to the owner
+    String longUrl = "https://example.com/" + "x".repeat(70_000);
+    for (int i = 0; i < 10; i++) {
+      nodes.get(i % 2).cluster.create(new Alias("long-" + i, longUrl + "|" + i, 2L));
+    }
+
+    for (Node node : List.of(first, second)) {
+      for (String alias : aliases) {
+        Assertions.assertThat(node.cluster.get(alias).url())
+            .isEqualTo("https://example.com/a|b?" + alias + "=|");
+      }
+      for (int i = 0; i < 10; i++) {
+        Assertions.assertThat(node.cluster.get("long-" + i).url()).isEqualTo(longUrl + "|" + i);
+      }
+      Assertions.assertThat(node.cluster.searchByUserId(2L)).hasSize(10);
+    }
+    Assertions.assertThat(nodes).allMatch(node -> node.storesAnyOf(aliases));
+  }
+
+
+  /**
+   * Database of a cluster node along with the node.
+   */
+  private static final class Node {
+
+    private final Database db;
+    private final ClusterNode cluster;
+    private boolean closed;
+
+    private Node(Database db, ClusterNode cluster) {
+      this.db = db;
+      this.cluster = cluster;
+    }
+
+    private boolean storesLocally(String alias) {
+      return db.exists(db.aliasTable, alias);
+    }
+
+    private String owner(String alias) {
+      return new HashRing(cluster.getMembers(), HashRing.VIRTUAL_NODES_DEFAULT).getOwner(alias);
+    }
+
+    private boolean storesAnyOf(List<String> aliases) {
+      return aliases.stream().anyMatch(this::storesLocally);
+    }
+
+    private void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        cluster.close();
+        db.close();
+      }
+    }
+  }
+}
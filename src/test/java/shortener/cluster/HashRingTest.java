@@ -0,0 +1,62 @@
+package shortener.cluster;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HashRingTest {
+
+  private static final int KEYS = 30_000;
+
+  @Test
+  void keysAreSpreadEvenlyOverNodes() {
+    HashRing ring = new HashRing(List.of("node-a:1", "node-b:1", "node-c:1"),
+        HashRing.VIRTUAL_NODES_DEFAULT);
+    Map<String, Integer> owned = new HashMap<>();
+
+    IntStream.range(0, KEYS)
+        .forEach(i -> owned.merge(ring.getOwner("alias-" + i), 1, Integer::sum));
+
+    Assertions.assertThat(owned.keySet())
+        .containsExactlyInAnyOrder("node-a:1", "node-b:1", "node-c:1");
+    Assertions.assertThat(owned.values())
+        .allMatch(count -> count > KEYS * 0.25 && count < KEYS * 0.42);
+  }
+
+  @Test
+  void joiningNodeTakesKeysOnlyFromOthers() {
+    HashRing ring = new HashRing(List.of("node-a:1", "node-b:1", "node-c:1"),
+        HashRing.VIRTUAL_NODES_DEFAULT);
+    HashRing joined = ring.with("node-d:1");
+
+    long moved = IntStream.range(0, KEYS)
+        .mapToObj(i -> "alias-" + i)
+        .filter(key -> !ring.getOwner(key).equals(joined.getOwner(key)))
+        .peek(key -> Assertions.assertThat(joined.getOwner(key)).isEqualTo("node-d:1"))
+        .count();
+
+    Assertions.assertThat(moved).isBetween((long) (KEYS * 0.18), (long) (KEYS * 0.32));
+    Assertions.assertThat(joined.without("node-d:1").getOwner("alias-42"))
+        .isEqualTo(ring.getOwner("alias-42"));
+  }
+
+  @Test
+  void ringDoesNotDependOnNodeOrder() {
+    HashRing ring = new HashRing(List.of("node-a:1", "node-b:1"), 16);
+    HashRing reordered = new HashRing(List.of("node-b:1", "node-a:1"), 16);
+
+    Assertions.assertThat(IntStream.range(0, 1000).mapToObj(i -> "alias-" + i))
+        .allMatch(key -> ring.getOwner(key).equals(reordered.getOwner(key)));
+  }
+
+  @Test
+  void ringNeedsNodes() {
+    Assertions.assertThatThrownBy(() -> new HashRing(List.of(), 16))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> new HashRing(List.of("node-a:1"), 16).without("node-a:1"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -4,13 +4,23 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import shortener.TestUtils;
+import shortener.database.entities.Alias;
 import shortener.database.entities.User;
+import shortener.database.tables.AliasTable;
+import shortener.database.tables.UserTable;
 import shortener.exceptions.database.NotFound;
 import shortener.exceptions.database.UniqueViolation;
 
@@ -18,7 +28,8 @@ public class DatabaseTest {
 
   private static final String TEST_DATABASE_DIRECTORY = "test-db";
 
-  Database db = new Database(TEST_DATABASE_DIRECTORY);
+  Database db;
+  private final List<Database> reopenedDbs = new ArrayList<>();
 
   @AfterAll
   static void purgeDb() {
@@ -30,6 +41,29 @@ public class DatabaseTest {
     TestUtils.purgeDirectory(new File(TEST_DATABASE_DIRECTORY));
 
     Database.init(TEST_DATABASE_DIRECTORY);
+
+    // Constructed over the purged directory, so no file of a previous test is picked up
+    db = new Database(TEST_DATABASE_DIRECTORY);
+  }
+
+  @AfterEach
+  void closeDb() {
+    reopenedDbs.forEach(Database::close);
+    reopenedDbs.clear();
+    db.close();
+  }
+
+  private Database reopen() {
+    return reopen(DatabaseConfiguration.of(TEST_DATABASE_DIRECTORY));
+  }
+
+  // Opens another instance over the test database, which is closed after the test
+  private Database reopen(DatabaseConfiguration configuration) {
+    Database reopenedDb = new Database(configuration);
+
+    reopenedDbs.add(reopenedDb);
+
+    return reopenedDb;
   }
 
   @Test
@@ -50,9 +84,7 @@ public class DatabaseTest {
     Assertions.assertThat(record.id()).isEqualTo(1L);
 
     // Check the filesystem
-    Path tablePath = Path.of(TEST_DATABASE_DIRECTORY, db.userTable.getTableName());
-
-    Assertions.assertThat(Files.lines(tablePath)
+    Assertions.assertThat(db.userTable.readTable()
         .anyMatch(line -> line.contains(record.id().toString()) && line.contains(record.email())))
         .isTrue();
   }
@@ -67,6 +99,17 @@ public class DatabaseTest {
     ).isInstanceOf(UniqueViolation.class);
   }
 
+  @Test
+  void createAfterRestartAssignsLargerId() {
+    User record = db.create(db.userTable, new User(null, "first@email.com", "pa$$word"));
+
+    Database reopenedDb = reopen();
+    User nextRecord =
+        reopenedDb.create(reopenedDb.userTable, new User(null, "second@email.com", "pa$$word"));
+
+    Assertions.assertThat(nextRecord.id()).isGreaterThan(record.id());
+  }
+
   @Test
   void searchSuccessfullyReturnsRecords() {
     db.create(db.userTable, new User(null, "1@email.com", "pa$$word"));
@@ -94,12 +137,73 @@ public class DatabaseTest {
     Assertions.assertThat(record).isNotNull().isEqualTo(createdRecord);
   }
 
+  @Test
+  void getRetrievesRecordWrittenBeforeIndexWasBuilt() throws IOException {
+    Path tablePath = Path.of(TEST_DATABASE_DIRECTORY, db.userTable.getTableName());
+    Files.write(tablePath, "7|test@email.com|pa$$word\n".getBytes());
+
+    Assertions.assertThat(db.get(db.userTable, 7L))
+        .isEqualTo(new User(7L, "test@email.com", "pa$$word"));
+  }
+
   @Test
   void getThrowsIfRecordNotFound() {
     Assertions.assertThatThrownBy(() -> db.get(db.userTable, 1337L))
         .isInstanceOf(NotFound.class);
   }
 
+  @Test
+  void existsChecksAliasesOfLoadedAndCreatedRecords() throws IOException {
+    db.create(db.aliasTable, new Alias("created", "https://example.com", 1L));
+
+    Database reopenedDb = reopen();
+    reopenedDb.create(reopenedDb.aliasTable, new Alias("later", "https://example.com", 1L));
+
+    Assertions.assertThat(reopenedDb.exists(reopenedDb.aliasTable, "created")).isTrue();
+    Assertions.assertThat(reopenedDb.exists(reopenedDb.aliasTable, "later")).isTrue();
+    Assertions.assertThat(reopenedDb.exists(reopenedDb.aliasTable, "missing")).isFalse();
+    Assertions.assertThat(reopenedDb.aliasTable.getAliasFilterStats().insertions()).isEqualTo(2L);
+  }
+
+  @Test
+  void searchByReturnsRecordsWithIndexedKey() {
+    db.create(db.aliasTable, new Alias("first", "https://example.com", 1L));
+    db.create(db.aliasTable, new Alias("second", "https://example.com", 1L));
+    db.create(db.aliasTable, new Alias("other", "https://example.com", 2L));
+
+    Assertions.assertThat(db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, 1L))
+        .extracting(Alias::alias)
+        .containsExactlyInAnyOrder("first", "second");
+  }
+
+  @Test
+  void searchByDoesNotReturnDeletedRecords() {
+    db.create(db.aliasTable, new Alias("deleted", "https://example.com", 1L));
+    db.create(db.aliasTable, new Alias("kept", "https://example.com", 1L));
+
+    db.delete(db.aliasTable, "deleted");
+
+    Assertions.assertThat(db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, 1L))
+        .extracting(Alias::alias)
+        .containsExactly("kept");
+  }
+
+  @Test
+  void getByRetrievesRecordWrittenBeforeIndexWasBuilt() throws IOException {
+    Path tablePath = Path.of(TEST_DATABASE_DIRECTORY, db.userTable.getTableName());
+    Files.write(tablePath, "7|test@email.com|pa$$word\n".getBytes());
+
+    Assertions.assertThat(db.getBy(db.userTable, UserTable.EMAIL_INDEX, "test@email.com"))
+        .isEqualTo(new User(7L, "test@email.com", "pa$$word"));
+  }
+
+  @Test
+  void getByThrowsIfRecordNotFound() {
+    Assertions.assertThatThrownBy(
+        () -> db.getBy(db.userTable, UserTable.EMAIL_INDEX, "missing@email.com")
+    ).isInstanceOf(NotFound.class);
+  }
+
   @Test
   void deleteSuccessfullyRemovesRecord() throws IOException {
     User createdRecord = db.create(db.userTable, new User(null, "test@email.com", "pa$$word"));
@@ -108,17 +212,193 @@ public class DatabaseTest {
 
     Assertions.assertThat(deletedRecord).isEqualTo(createdRecord);
 
-    // Check filesystem
-    Path tablePath = Path.of(TEST_DATABASE_DIRECTORY, db.userTable.getTableName());
-
-    System.out.println(Files.readAllLines(tablePath));
+    // Deleted records are physically removed from the table file by a compaction
+    db.compact(db.userTable);
 
-    Assertions.assertThat(Files.lines(tablePath))
+    // Check filesystem
+    Assertions.assertThat(db.userTable.readTable())
         .noneMatch(
             line -> line.contains(deletedRecord.id().toString())
                 && line.contains(deletedRecord.email()));
   }
 
+  @Test
+  void getThrowsIfRecordWasDeleted() {
+    User createdRecord = db.create(db.userTable, new User(null, "test@email.com", "pa$$word"));
+
+    db.delete(db.userTable, createdRecord.id());
+
+    Assertions.assertThatThrownBy(() -> db.get(db.userTable, createdRecord.id()))
+        .isInstanceOf(NotFound.class);
+  }
+
+  @Test
+  void deletedRecordIsNotLoadedByAnotherDatabaseInstance() {
+    User deletedRecord = db.create(db.userTable, new User(null, "deleted@email.com", "pa$$word"));
+    User keptRecord = db.create(db.userTable, new User(null, "kept@email.com", "pa$$word"));
+
+    db.delete(db.userTable, deletedRecord.id());
+
+    Database reopenedDb = reopen();
+
+    Assertions.assertThat(reopenedDb.search(reopenedDb.userTable)).containsExactly(keptRecord);
+  }
+
+  @Test
+  void reopenedDatabaseLoadsCheckpointAndLogTail() {
+    Alias checkpointedRecord = db.create(db.aliasTable,
+        new Alias("checkpointed", "https://example.com", 1L));
+    Alias deletedRecord = db.create(db.aliasTable,
+        new Alias("deleted", "https://example.com", 1L));
+
+    db.checkpoint(db.aliasTable);
+
+    Alias laterRecord = db.create(db.aliasTable, new Alias("later", "https://example.com", 1L));
+    db.delete(db.aliasTable, deletedRecord.alias());
+
+    Database reopenedDb = reopen();
+
+    Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable))
+        .containsExactlyInAnyOrder(checkpointedRecord, laterRecord);
+    Assertions.assertThat(reopenedDb.aliasTable.getShards().get(0).getTailEntries())
+        .isEqualTo(2L);
+  }
+
+  @Test
+  void shardedDatabaseSpreadsRecordsOverShardFiles() {
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(TEST_DATABASE_DIRECTORY);
+    configuration.setRootDirectories(
+        List.of(TEST_DATABASE_DIRECTORY + "/disk-0", TEST_DATABASE_DIRECTORY + "/disk-1"));
+    configuration.setShards(4);
+
+    Database shardedDb = reopen(configuration);
+    for (int i = 0; i < 20; i++) {
+      shardedDb.create(shardedDb.aliasTable, new Alias("alias-" + i, "https://example.com", 1L));
+    }
+
+    Assertions.assertThat(shardedDb.aliasTable.getShards()).hasSize(4);
+    Assertions.assertThat(new File(TEST_DATABASE_DIRECTORY + "/disk-1", "aliases.3")).exists();
+    Assertions.assertThat(shardedDb.search(shardedDb.aliasTable)).hasSize(20);
+    Assertions.assertThat(shardedDb.get(shardedDb.aliasTable, "alias-7").alias())
+        .isEqualTo("alias-7");
+    Assertions.assertThat(shardedDb.aliasTable.getWritableFilePath("alias-7"))
+        .isEqualTo(shardedDb.aliasTable.getShard("alias-7").getFilePath());
+  }
+
+  @Test
+  void changingShardCountMovesRecordsToNewShards() {
+    for (int i = 0; i < 20; i++) {
+      db.create(db.aliasTable, new Alias("alias-" + i, "https://example.com", 1L));
+    }
+    db.delete(db.aliasTable, "alias-0");
+
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(TEST_DATABASE_DIRECTORY);
+    configuration.setTableShards(Map.of(db.aliasTable.getTableName(), 3));
+
+    Database reshardedDb = reopen(configuration);
+
+    Assertions.assertThat(reshardedDb.search(reshardedDb.aliasTable)).hasSize(19);
+    Assertions.assertThat(new File(TEST_DATABASE_DIRECTORY, "aliases").exists()).isFalse();
+  }
+
+  @Test
+  void lsmTablesKeepRecordsOnDiskAcrossRestarts() {
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(TEST_DATABASE_DIRECTORY);
+    configuration.setLsmTables(List.of(AliasTable.TABLE_NAME));
+
+    Database lsmDb = new Database(configuration);
+    try {
+      for (int i = 0; i < 20; i++) {
+        lsmDb.create(lsmDb.aliasTable, new Alias("alias-" + i, "https://example.com", 1L));
+      }
+      lsmDb.delete(lsmDb.aliasTable, "alias-0");
+      lsmDb.checkpoint(lsmDb.aliasTable);
+      lsmDb.delete(lsmDb.aliasTable, "alias-1");
+    } finally {
+      lsmDb.close();
+    }
+
+    Database reopenedDb = new Database(configuration);
+    try {
+      Assertions.assertThat(new File(TEST_DATABASE_DIRECTORY, "aliases.lsm")).isDirectory();
+      Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable)).hasSize(18);
+      Assertions.assertThat(reopenedDb.get(reopenedDb.aliasTable, "alias-7").alias())
+          .isEqualTo("alias-7");
+      Assertions.assertThat(reopenedDb.searchBy(reopenedDb.aliasTable, AliasTable.USER_ID_INDEX,
+          1L)).hasSize(18);
+      Assertions.assertThatThrownBy(() -> reopenedDb.get(reopenedDb.aliasTable, "alias-1"))
+          .isInstanceOf(NotFound.class);
+    } finally {
+      reopenedDb.close();
+    }
+
+    // Records are moved back to the table file once the table is no longer stored in LSM trees
+    Database inMemoryDb = reopen();
+
+    Assertions.assertThat(new File(TEST_DATABASE_DIRECTORY, "aliases.lsm")).doesNotExist();
+    Assertions.assertThat(inMemoryDb.search(inMemoryDb.aliasTable)).hasSize(18);
+  }
+
+  @Test
+  void concurrentWritersNeitherLoseNorDuplicateRecords() throws Exception {
+    int threads = 8;
+    int operations = 200;
+    AtomicInteger uniqueViolations = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> writers = new ArrayList<>();
+
+    for (int thread = 0; thread < threads; thread++) {
+      int writer = thread;
+
+      writers.add(executor.submit(() -> {
+        for (int i = 0; i < operations; i++) {
+          db.create(db.aliasTable, new Alias("own-" + writer + "-" + i, "https://example.com",
+              (long) writer));
+          db.create(db.userTable, new User(null, writer + "-" + i + "@email.com", "pa$$word"));
+
+          // Every writer tries to take the same alias, only one of them may succeed
+          try {
+            db.create(db.aliasTable, new Alias("shared-" + i, "https://example.com",
+                (long) writer));
+          } catch (UniqueViolation exc) {
+            uniqueViolations.incrementAndGet();
+          }
+
+          if (i % 2 == 0) {
+            db.delete(db.aliasTable, "own-" + writer + "-" + i);
+          }
+
+          // Readers run along with the writers
+          db.search(db.aliasTable);
+        }
+      }));
+    }
+
+    for (Future<?> writer : writers) {
+      writer.get();
+    }
+    executor.shutdown();
+
+    List<Alias> aliases = db.search(db.aliasTable);
+    List<User> users = db.search(db.userTable);
+
+    Assertions.assertThat(uniqueViolations.get()).isEqualTo((threads - 1) * operations);
+    Assertions.assertThat(aliases).hasSize(threads * operations / 2 + operations);
+    Assertions.assertThat(aliases).extracting(Alias::alias).doesNotHaveDuplicates();
+    Assertions.assertThat(users).hasSize(threads * operations);
+    Assertions.assertThat(users).extracting(User::id).doesNotHaveDuplicates();
+
+    Database reopenedDb = reopen();
+
+    Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable))
+        .containsExactlyInAnyOrder(aliases.toArray());
+    Assertions.assertThat(reopenedDb.search(reopenedDb.userTable)).hasSize(users.size());
+
+    Assertions.assertThat(db.aliasTable.getCreationLock().getStats().acquisitions())
+        .isEqualTo(2L * threads * operations);
+    Assertions.assertThat(db.aliasTable.getWriteLockStats().queueLength()).isEqualTo(0);
+  }
+
   @Test
   void deleteThrowsIfNoRecordFound() {
     Assertions.assertThatThrownBy(() -> db.delete(db.userTable, 1337L))
@@ -0,0 +1,298 @@
+package shortener.database.changes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.entities.UserSession;
+import shortener.database.storage.ChangeLog;
+import shortener.database.storage.CorruptedEntryException;
+import shortener.database.tables.UserSessionTable;
+
+public class ChangeFeedTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "change-feed-test-db";
+  private static final int CAPACITY = 16;
+
+  private final Path rootPath = Path.of(TEST_ROOT_DIRECTORY);
+  private final Path filePath = rootPath.resolve("usersessions" + ChangeLog.FILE_SUFFIX);
+  private final UserSessionTable table = new UserSessionTable(rootPath);
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(rootPath);
+  }
+
+  private ChangeFeed<UserSession> openFeed(int capacity, long maxFileEntries) {
+    return new ChangeFeed<>(UserSessionTable.TABLE_NAME,
+        new ChangeLog<>(table, filePath, maxFileEntries), capacity);
+  }
+
+  private static UserSession session(long i) {
+    return new UserSession(i, "token-" + i);
+  }
+
+  private static List<Long> sequences(List<Change<UserSession>> changes) {
+    return changes.stream().map(Change::sequence).collect(Collectors.toList());
+  }
+
+  private static List<Long> range(long from, long to) {
+    return LongStream.rangeClosed(from, to).boxed().collect(Collectors.toList());
+  }
+
+  @Test
+  void subscribersReceiveOnlyRequestedChangesInOrder() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    feed.publish(ChangeType.CREATE, session(0));
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    feed.subscribe(subscriber);
+    subscriber.request(2);
+
+    for (long i = 1; i <= 4; i++) {
+      feed.publish(ChangeType.CREATE, session(i));
+    }
+    feed.publish(ChangeType.DELETE, session(1));
+
+    // Changes published before the subscription are not delivered
+    Assertions.assertThat(subscriber.take(2)).containsExactly(
+        new Change<>(2, ChangeType.CREATE, session(1)),
+        new Change<>(3, ChangeType.CREATE, session(2)));
+    Thread.sleep(100);
+    Assertions.assertThat(subscriber.drain()).isEmpty();
+
+    subscriber.request(10);
+
+    Assertions.assertThat(subscriber.take(3)).containsExactly(
+        new Change<>(4, ChangeType.CREATE, session(3)),
+        new Change<>(5, ChangeType.CREATE, session(4)),
+        new Change<>(6, ChangeType.DELETE, session(1)));
+
+    feed.close();
+
+    Assertions.assertThat(subscriber.awaitTermination()).isNull();
+  }
+
+  @Test
+  void laggingSubscribersCatchUpFromLog() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(4, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    for (long i = 1; i <= 3000; i++) {
+      feed.publish(i % 3 == 0 ? ChangeType.DELETE : ChangeType.CREATE, session(i));
+    }
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    feed.subscribe(1, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+    List<Change<UserSession>> changes = subscriber.take(3000);
+
+    Assertions.assertThat(sequences(changes)).isEqualTo(range(1, 3000));
+    Assertions.assertThat(changes.get(1499))
+        .isEqualTo(new Change<>(1500, ChangeType.DELETE, session(1500)));
+
+    feed.close();
+  }
+
+  @Test
+  void subscribersResumeFromStoredSequenceAfterRestart() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    for (long i = 1; i <= 10; i++) {
+      feed.publish(ChangeType.CREATE, session(i));
+    }
+    feed.close();
+
+    ChangeFeed<UserSession> reopenedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+
+    // A closed log leaves no gap in the sequence numbers
+    Assertions.assertThat(reopenedFeed.getLastSequence()).isEqualTo(10);
+    Assertions.assertThat(reopenedFeed.publish(ChangeType.DELETE, session(3))).isEqualTo(11);
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    reopenedFeed.subscribe(7, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(subscriber.take(5)).containsExactly(
+        new Change<>(7, ChangeType.CREATE, session(7)),
+        new Change<>(8, ChangeType.CREATE, session(8)),
+        new Change<>(9, ChangeType.CREATE, session(9)),
+        new Change<>(10, ChangeType.CREATE, session(10)),
+        new Change<>(11, ChangeType.DELETE, session(3)));
+
+    reopenedFeed.close();
+  }
+
+  @Test
+  void tornTailIsTruncatedAndSequenceNumbersAreSkipped() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    for (long i = 1; i <= 3; i++) {
+      feed.publish(ChangeType.CREATE, session(i));
+    }
+    feed.close();
+    Files.write(filePath, new byte[] {42, 1, 2}, StandardOpenOption.APPEND);
+
+    ChangeFeed<UserSession> reopenedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    long sequence = reopenedFeed.publish(ChangeType.CREATE, session(4));
+
+    // Changes after the last persisted one might have been delivered before the crash
+    Assertions.assertThat(sequence).isEqualTo(3 + CAPACITY + 1);
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    reopenedFeed.subscribe(1, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    // The skipped changes are lost, so the subscriber has to start over
+    Assertions.assertThat(sequences(subscriber.take(3))).containsExactly(1L, 2L, 3L);
+    Assertions.assertThat(subscriber.awaitTermination())
+        .isInstanceOf(IllegalStateException.class);
+
+    RecordingSubscriber<UserSession> skippedSubscriber = new RecordingSubscriber<>();
+    reopenedFeed.subscribe(sequence - 1, skippedSubscriber);
+    skippedSubscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(skippedSubscriber.awaitTermination())
+        .isInstanceOf(IllegalStateException.class);
+
+    RecordingSubscriber<UserSession> resumedSubscriber = new RecordingSubscriber<>();
+    reopenedFeed.subscribe(sequence, resumedSubscriber);
+    resumedSubscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(sequences(resumedSubscriber.take(1))).containsExactly(sequence);
+
+    reopenedFeed.close();
+  }
+
+  @Test
+  void sequenceNumbersSkippedOnEarlierRestartsFailSubscriptions() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    feed.publish(ChangeType.CREATE, session(1));
+    feed.close();
+    Files.write(filePath, new byte[] {42, 1, 2}, StandardOpenOption.APPEND);
+
+    ChangeFeed<UserSession> reopenedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    long sequence = reopenedFeed.publish(ChangeType.CREATE, session(2));
+    reopenedFeed.close();
+    Files.write(filePath, new byte[] {42, 1, 2}, StandardOpenOption.APPEND);
+
+    ChangeFeed<UserSession> restartedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    restartedFeed.open();
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    restartedFeed.subscribe(2, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(subscriber.awaitTermination())
+        .isInstanceOf(IllegalStateException.class);
+
+    RecordingSubscriber<UserSession> resumedSubscriber = new RecordingSubscriber<>();
+    restartedFeed.subscribe(sequence, resumedSubscriber);
+    resumedSubscriber.request(1);
+
+    Assertions.assertThat(sequences(resumedSubscriber.take(1))).containsExactly(sequence);
+
+    restartedFeed.close();
+  }
+
+  @Test
+  void openFailsOnCorruptedChangeFollowedByValidOnes() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    feed.publish(ChangeType.CREATE, session(1));
+    feed.close();
+    long corruptedOffset = Files.size(filePath);
+
+    ChangeFeed<UserSession> reopenedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    for (long i = 2; i <= 4; i++) {
+      reopenedFeed.publish(ChangeType.CREATE, session(i));
+    }
+    reopenedFeed.close();
+    long fileLength = Files.size(filePath);
+
+    // A bit flips in the payload of a persisted change
+    byte[] file = Files.readAllBytes(filePath);
+    file[(int) corruptedOffset + 3] ^= 0x10;
+    Files.write(filePath, file);
+
+    ChangeFeed<UserSession> corruptedFeed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+
+    Assertions.assertThatThrownBy(corruptedFeed::open)
+        .isInstanceOf(CorruptedEntryException.class);
+    Assertions.assertThat(Files.size(filePath)).isEqualTo(fileLength);
+  }
+
+  @Test
+  void subscribersOfDroppedChangesGetError() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(4, 10);
+    for (long i = 1; i <= 50; i++) {
+      feed.publish(ChangeType.CREATE, session(i));
+    }
+
+    RecordingSubscriber<UserSession> droppedSubscriber = new RecordingSubscriber<>();
+    feed.subscribe(1, droppedSubscriber);
+    droppedSubscriber.request(1);
+
+    Assertions.assertThat(droppedSubscriber.awaitTermination())
+        .isInstanceOf(IllegalStateException.class);
+
+    // The archived file and the current one are retained
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    feed.subscribe(31, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(sequences(subscriber.take(20))).isEqualTo(range(31, 50));
+    Assertions.assertThat(Files.exists(Path.of(filePath + ChangeLog.ARCHIVE_FILE_SUFFIX)))
+        .isTrue();
+
+    feed.close();
+  }
+
+  @Test
+  void feedWithoutLogRetainsOnlyRing() throws Exception {
+    ChangeFeed<UserSession> feed = new ChangeFeed<>(UserSessionTable.TABLE_NAME, null, 4);
+    for (long i = 1; i <= 10; i++) {
+      feed.publish(ChangeType.CREATE, session(i));
+    }
+
+    RecordingSubscriber<UserSession> droppedSubscriber = new RecordingSubscriber<>();
+    feed.subscribe(1, droppedSubscriber);
+    droppedSubscriber.request(1);
+
+    Assertions.assertThat(droppedSubscriber.awaitTermination())
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("before 7");
+
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    feed.subscribe(7, subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    Assertions.assertThat(sequences(subscriber.take(4))).isEqualTo(range(7, 10));
+    Assertions.assertThat(Files.exists(filePath)).isFalse();
+
+    feed.close();
+  }
+
+  @Test
+  void nonPositiveRequestIsAnError() throws Exception {
+    ChangeFeed<UserSession> feed = openFeed(CAPACITY, ChangeLog.MAX_FILE_ENTRIES_DEFAULT);
+    RecordingSubscriber<UserSession> subscriber = new RecordingSubscriber<>();
+    feed.subscribe(subscriber);
+    subscriber.request(0);
+
+    Assertions.assertThat(subscriber.awaitTermination())
+        .isInstanceOf(IllegalArgumentException.class);
+
+    feed.close();
+  }
+}
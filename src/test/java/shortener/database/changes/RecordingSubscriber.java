@@ -0,0 +1,107 @@
+package shortener.database.changes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Change feed subscriber which records the delivered changes for assertions.
+ *
+ * @param <EntityT> Table entity type.
+ */
+public class RecordingSubscriber<EntityT> implements Flow.Subscriber<Change<EntityT>> {
+
+  private static final long TIMEOUT_SECONDS = 5;
+
+  private final BlockingQueue<Change<EntityT>> changes = new LinkedBlockingQueue<>();
+  private final CountDownLatch subscribed = new CountDownLatch(1);
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private volatile Flow.Subscription subscription;
+  private volatile Throwable error;
+
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    this.subscription = subscription;
+    subscribed.countDown();
+  }
+
+  @Override
+  public void onNext(Change<EntityT> item) {
+    changes.add(item);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    error = throwable;
+    terminated.countDown();
+  }
+
+  @Override
+  public void onComplete() {
+    terminated.countDown();
+  }
+
+
+  /**
+   * Requests more changes once subscribed.
+   *
+   * @param n Amount of changes.
+   * @throws InterruptedException Occurs if interrupted while waiting for the subscription.
+   */
+  public void request(long n) throws InterruptedException {
+    subscribed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    subscription.request(n);
+  }
+
+  /**
+   * Waits for the provided amount of changes.
+   *
+   * @param count Amount of changes.
+   * @return Delivered changes, fewer if they don't arrive in time.
+   * @throws InterruptedException Occurs if interrupted while waiting.
+   */
+  public List<Change<EntityT>> take(int count) throws InterruptedException {
+    List<Change<EntityT>> taken = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      Change<EntityT> change = changes.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      if (change == null) {
+        break;
+      }
+      taken.add(change);
+    }
+
+    return taken;
+  }
+
+  /**
+   * Returns the changes delivered so far without waiting.
+   *
+   * @return Delivered changes.
+   */
+  public List<Change<EntityT>> drain() {
+    List<Change<EntityT>> drained = new ArrayList<>();
+    changes.drainTo(drained);
+
+    return drained;
+  }
+
+  /**
+   * Waits for completion or an error.
+   *
+   * @return The error, null if the subscription has completed.
+   * @throws InterruptedException Occurs if interrupted while waiting.
+   */
+  public Throwable awaitTermination() throws InterruptedException {
+    if (!terminated.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      throw new AssertionError("The subscription has not terminated.");
+    }
+
+    return error;
+  }
+}
@@ -0,0 +1,45 @@
+package shortener.database.replication;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.exceptions.database.NotFound;
+
+/**
+ * Replica run in a separate process by `ReplicationTest`, standing in for another host.
+ *
+ * <p>Reads aliases from stdin, one per line, and answers each with a line of the looked up URL
+ * prefixed by `url `, or `absent`. Log lines go to stdout too, so they lack the prefixes.
+ */
+public class ReplicaProcess {
+
+  static final String URL_PREFIX = "url ";
+  static final String ABSENT = "absent";
+
+  /**
+   * Starts a replica.
+   *
+   * @param args Root directory of the replica and the `host:port` of the leader.
+   * @throws IOException Occurs if the root directory can't be set up.
+   */
+  public static void main(String[] args) throws IOException {
+    Database.init(args[0]);
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(args[0]);
+    configuration.setLeader(args[1]);
+    Database db = new Database(configuration);
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+    String alias;
+
+    while ((alias = in.readLine()) != null) {
+      try {
+        System.out.println(URL_PREFIX + db.get(db.aliasTable, alias).url());
+      } catch (NotFound exc) {
+        System.out.println(ABSENT);
+      }
+      System.out.flush();
+    }
+  }
+}
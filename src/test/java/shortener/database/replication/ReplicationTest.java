@@ -0,0 +1,243 @@
+package shortener.database.replication;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+import shortener.exceptions.database.ReadOnlyReplica;
+
+public class ReplicationTest {
+
+  private static final String LEADER_DIRECTORY = "replication-leader-db";
+  private static final String REPLICA_DIRECTORY = "replication-replica-db";
+  private static final long TIMEOUT_MILLIS = 10_000;
+
+  private int port;
+  private Database leader;
+
+  @AfterAll
+  static void purgeDbs() {
+    TestUtils.purgeDirectory(new File(LEADER_DIRECTORY));
+    TestUtils.purgeDirectory(new File(REPLICA_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupLeader() throws IOException {
+    purgeDbs();
+    Database.init(LEADER_DIRECTORY);
+
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    leader = openLeader();
+  }
+
+  @AfterEach
+  void closeLeader() {
+    leader.close();
+  }
+
+  private Database openLeader() {
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(LEADER_DIRECTORY);
+    configuration.setReplicationPort(port);
+
+    return new Database(configuration);
+  }
+
+  private Database openReplica() throws IOException {
+    Database.init(REPLICA_DIRECTORY);
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(REPLICA_DIRECTORY);
+    configuration.setLeader("localhost:" + port);
+
+    return new Database(configuration);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+    while (!condition.getAsBoolean()) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new AssertionError("The replica has not caught up in time.");
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  @Test
+  void replicaCopiesSnapshotAndAppliesChanges() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      leader.create(leader.aliasTable, new Alias("alias-" + i, "https://example.com/" + i, 1L));
+    }
+    leader.delete(leader.aliasTable, "alias-0");
+
+    Database replica = openReplica();
+    await(() -> replica.exists(replica.aliasTable, "alias-9"));
+
+    leader.create(leader.aliasTable, new Alias("later", "https://example.org", 2L));
+    leader.delete(leader.aliasTable, "alias-1");
+    await(() -> replica.exists(replica.aliasTable, "later")
+        && !replica.exists(replica.aliasTable, "alias-1"));
+
+    Assertions.assertThat(replica.search(replica.aliasTable))
+        .hasSize(9)
+        .hasSameElementsAs(leader.search(leader.aliasTable));
+    Assertions.assertThat(replica.searchBy(replica.aliasTable, AliasTable.USER_ID_INDEX, 2L))
+        .extracting(Alias::alias)
+        .containsExactly("later");
+
+    long leaderSequence = leader.aliasTable.getChangeFeed().getLastSequence();
+    await(() -> replica.getReplicationStatus().get(0).lag() == 0);
+
+    ReplicationStatus status = replica.getReplicationStatus().get(0);
+
+    Assertions.assertThat(status.table()).isEqualTo(AliasTable.TABLE_NAME);
+    Assertions.assertThat(status.synced()).isTrue();
+    Assertions.assertThat(status.appliedSequence()).isEqualTo(leaderSequence);
+    Assertions.assertThat(leader.getReplicationStatus()).isEmpty();
+
+    // A replica serves reads only, and only of the replicated tables
+    Assertions.assertThatThrownBy(
+        () -> replica.create(replica.aliasTable, new Alias("own", "https://example.org", 3L))
+    ).isInstanceOf(ReadOnlyReplica.class);
+    Assertions.assertThat(replica.search(replica.userTable)).isEmpty();
+
+    replica.close();
+  }
+
+  @Test
+  void replicaResumesAfterLeaderRestart() throws Exception {
+    leader.create(leader.aliasTable, new Alias("before", "https://example.com", 1L));
+
+    Database replica = openReplica();
+    await(() -> replica.exists(replica.aliasTable, "before"));
+
+    leader.close();
+    leader = openLeader();
+    leader.create(leader.aliasTable, new Alias("after", "https://example.com", 1L));
+    leader.delete(leader.aliasTable, "before");
+
+    await(() -> replica.exists(replica.aliasTable, "after")
+        && !replica.exists(replica.aliasTable, "before"));
+
+    replica.close();
+  }
+
+  @Test
+  void replicaReceivesUrlsOfAnyContentAndLength() throws Exception {
+    Alias delimited = new Alias("delimited", "https://example.com/a|b?c=1|2", 1L);
+    Alias longUrl = new Alias("long", "https://example.com/" + "x".repeat(70_000), 1L);
+    leader.create(leader.aliasTable, delimited);
+
+    Database replica = openReplica();
+    await(() -> replica.exists(replica.aliasTable, "delimited"));
+
+    leader.create(leader.aliasTable, longUrl);
+    leader.create(leader.aliasTable, new Alias("after", "https://example.org/|", 2L));
+    await(() -> replica.exists(replica.aliasTable, "after"));
+
+    Assertions.assertThat(replica.get(replica.aliasTable, "delimited")).isEqualTo(delimited);
+    Assertions.assertThat(replica.get(replica.aliasTable, "long")).isEqualTo(longUrl);
+    Assertions.assertThat(replica.get(replica.aliasTable, "after").url())
+        .isEqualTo("https://example.org/|");
+
+    replica.close();
+  }
+
+  @Test
+  void replicaProcessServesLookupsAndResyncsAfterRestart() throws Exception {
+    leader.create(leader.aliasTable, new Alias("first", "https://example.com/first", 1L));
+
+    try (RunningReplica replica = new RunningReplica()) {
+      replica.awaitLookup("first", "https://example.com/first");
+
+      leader.create(leader.aliasTable, new Alias("second", "https://example.com/second", 1L));
+      leader.delete(leader.aliasTable, "first");
+
+      replica.awaitLookup("second", "https://example.com/second");
+      replica.awaitLookup("first", null);
+    }
+
+    leader.create(leader.aliasTable, new Alias("third", "https://example.com/third", 1L));
+
+    // A restarted replica copies a fresh snapshot
+    try (RunningReplica replica = new RunningReplica()) {
+      replica.awaitLookup("third", "https://example.com/third");
+
+      Assertions.assertThat(replica.lookup("second")).isEqualTo("https://example.com/second");
+      Assertions.assertThat(replica.lookup("first")).isNull();
+    }
+  }
+
+
+  /**
+   * `ReplicaProcess` run by the test.
+   */
+  private class RunningReplica implements AutoCloseable {
+
+    private final Process process;
+    private final Writer input;
+    private final BufferedReader output;
+
+    private RunningReplica() throws IOException {
+      String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+      process = new ProcessBuilder(java, "--enable-preview",
+          "-cp", System.getProperty("java.class.path"),
+          ReplicaProcess.class.getName(), REPLICA_DIRECTORY, "localhost:" + port)
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+      input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+      output = new BufferedReader(
+          new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private String lookup(String alias) throws IOException {
+      input.write(alias + "\n");
+      input.flush();
+
+      String line;
+      while ((line = output.readLine()) != null) {
+        if (line.startsWith(ReplicaProcess.URL_PREFIX)) {
+          return line.substring(ReplicaProcess.URL_PREFIX.length());
+        } else if (line.equals(ReplicaProcess.ABSENT)) {
+          return null;
+        }
+      }
+
+      throw new AssertionError("The replica process has exited.");
+    }
+
+    private void awaitLookup(String alias, String url) throws InterruptedException {
+      await(() -> {
+        try {
+          return Objects.equals(lookup(alias), url);
+        } catch (IOException exc) {
+          throw new AssertionError(exc);
+        }
+      });
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package shortener.database.storage;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.entities.Alias;
+
+public class FileStorageEngineTest extends StorageEngineConformanceTest {
+
+  @Override
+  protected void configureEngine(DatabaseConfiguration configuration) {
+    configuration.setEngine(FileStorageEngine.NAME);
+  }
+
+  @Test
+  void recordsSurviveRestart() {
+    Alias record = db.create(db.aliasTable, new Alias("kept", "https://example.com", 1L));
+    db.create(db.aliasTable, new Alias("deleted", "https://example.com", 1L));
+    db.delete(db.aliasTable, "deleted");
+    db.close();
+
+    Database reopenedDb = openDatabase(1);
+
+    Assertions.assertThat(reopenedDb.aliasTable.getEngine()).isInstanceOf(FileStorageEngine.class);
+    Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable)).containsExactly(record);
+  }
+}
@@ -0,0 +1,90 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.storage.IdLeaseRegistry.IdRange;
+
+public class IdLeaseRegistryTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "lease-test-db";
+
+  private final Path filePath = Path.of(TEST_ROOT_DIRECTORY, "aliases.leases");
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void leasesFollowEachOtherAcrossRestarts() throws IOException {
+    IdLeaseRegistry registry = new IdLeaseRegistry(filePath);
+
+    Assertions.assertThat(registry.lease(10)).isEqualTo(new IdRange(0, 10));
+    Assertions.assertThat(registry.lease(5)).isEqualTo(new IdRange(10, 15));
+
+    IdLeaseRegistry restartedRegistry = new IdLeaseRegistry(filePath);
+
+    Assertions.assertThat(restartedRegistry.getNextId()).isEqualTo(15);
+    Assertions.assertThat(restartedRegistry.lease(10)).isEqualTo(new IdRange(15, 25));
+  }
+
+  @Test
+  void concurrentLeasesOfInstancesAreDisjoint() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    // Every thread leases through its own registry, as a separate instance would
+    List<Future<List<IdRange>>> futures = IntStream.range(0, 8)
+        .mapToObj(thread -> executor.submit(() -> {
+          IdLeaseRegistry registry = new IdLeaseRegistry(filePath);
+          List<IdRange> ranges = new ArrayList<>();
+
+          for (int i = 0; i < 50; i++) {
+            ranges.add(registry.lease(100));
+          }
+          return ranges;
+        }))
+        .collect(Collectors.toList());
+
+    List<IdRange> ranges = new ArrayList<>();
+    for (Future<List<IdRange>> future : futures) {
+      ranges.addAll(future.get());
+    }
+    executor.shutdown();
+
+    Assertions.assertThat(ranges.stream().map(IdRange::start).collect(Collectors.toSet()))
+        .hasSize(400);
+    Assertions.assertThat(ranges).allMatch(range -> range.start() % 100 == 0);
+    Assertions.assertThat(new IdLeaseRegistry(filePath).getNextId()).isEqualTo(40_000);
+  }
+
+  @Test
+  void exhaustedIdSpaceIsNotLeased() throws IOException {
+    IdLeaseRegistry registry = new IdLeaseRegistry(filePath);
+    registry.lease(Long.MAX_VALUE - 10);
+
+    Assertions.assertThatThrownBy(() -> registry.lease(11))
+        .isInstanceOf(IllegalStateException.class);
+    Assertions.assertThat(registry.lease(10)).isEqualTo(new IdRange(Long.MAX_VALUE - 10,
+        Long.MAX_VALUE));
+  }
+}
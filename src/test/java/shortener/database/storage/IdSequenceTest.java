@@ -0,0 +1,87 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+
+public class IdSequenceTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "sequence-test-db";
+
+  private final Path filePath = Path.of(TEST_ROOT_DIRECTORY, "users.sequence");
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void nextStartsAfterLastIdAndReservesBlock() throws IOException {
+    IdSequence sequence = new IdSequence(filePath, 10, () -> 41L);
+
+    Assertions.assertThat(sequence.next()).isEqualTo(42L);
+    Assertions.assertThat(sequence.next()).isEqualTo(43L);
+    Assertions.assertThat(Files.readString(filePath)).isEqualTo("51");
+  }
+
+  @Test
+  void nextGrowsAcrossRestartsWithoutReadingTable() throws IOException {
+    IdSequence sequence = new IdSequence(filePath, 10, () -> 0L);
+    long lastId = 0;
+    for (int i = 0; i < 25; i++) {
+      lastId = sequence.next();
+    }
+
+    IdSequence restartedSequence = new IdSequence(filePath, 10, () -> {
+      throw new IOException("The table should not be read.");
+    });
+
+    Assertions.assertThat(restartedSequence.next()).isGreaterThan(lastId);
+  }
+
+  @Test
+  void concurrentNextReturnsUniqueIds() throws Exception {
+    IdSequence sequence = new IdSequence(filePath, 16, () -> 0L);
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    List<Future<?>> futures = IntStream.range(0, 8)
+        .mapToObj(thread -> executor.submit(() -> {
+          for (int i = 0; i < 500; i++) {
+            ids.add(sequence.next());
+          }
+          return null;
+        }))
+        .collect(Collectors.toList());
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assertions.assertThat(ids).hasSize(4000);
+    Assertions.assertThat(Long.parseLong(Files.readString(filePath)))
+        .isGreaterThanOrEqualTo(4000L);
+  }
+
+}
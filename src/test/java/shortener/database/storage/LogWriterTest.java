@@ -0,0 +1,114 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+
+public class LogWriterTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "writer-test-db";
+
+  private final Path filePath = Path.of(TEST_ROOT_DIRECTORY, "entries");
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+    Files.createFile(filePath);
+  }
+
+  @Test
+  void groupCommitWritesEntryOnceCommitIsAwaited() throws IOException {
+    LogWriter writer = new LogWriter(filePath,
+        new Durability(DurabilityMode.GROUP_COMMIT, Duration.ofMillis(1), 16));
+
+    LogCommit commit = writer.append(entry("first"));
+
+    Assertions.assertThat(Files.size(filePath)).isEqualTo(0L);
+
+    commit.await();
+
+    Assertions.assertThat(scan()).containsExactly("first");
+  }
+
+  @Test
+  void osBufferedWritesEntryRightAway() throws IOException {
+    LogWriter writer = new LogWriter(filePath,
+        new Durability(DurabilityMode.OS_BUFFERED, Duration.ZERO, 1));
+
+    writer.append(entry("first"));
+    writer.append(entry("second"));
+
+    Assertions.assertThat(scan()).containsExactly("first", "second");
+  }
+
+  @Test
+  void closeWritesPendingEntries() throws IOException {
+    LogWriter writer = new LogWriter(filePath,
+        new Durability(DurabilityMode.ALWAYS_FSYNC, Duration.ZERO, 1));
+
+    writer.append(entry("first"));
+    writer.close();
+
+    Assertions.assertThat(scan()).containsExactly("first");
+  }
+
+  @Test
+  void concurrentAppendsAreAllWritten() throws Exception {
+    LogWriter writer = new LogWriter(filePath, Durability.DEFAULT);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+
+    for (int thread = 0; thread < 8; thread++) {
+      int threadIndex = thread;
+
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 100; i++) {
+          writer.append(entry(threadIndex + "-" + i)).await();
+        }
+        return null;
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    Assertions.assertThat(scan()).hasSize(800).doesNotHaveDuplicates();
+  }
+
+  private static byte[] entry(String value) {
+    RecordWriter recordWriter = new RecordWriter();
+    recordWriter.writeString(value);
+
+    return recordWriter.toEntry(false);
+  }
+
+  private List<String> scan() throws IOException {
+    return TableScanner.scan(filePath, ArrayList::new, (values, reader) -> {
+      values.add(reader.readString());
+    }, (left, right) -> {
+      left.addAll(right);
+      return left;
+    });
+  }
+
+}
@@ -0,0 +1,31 @@
+package shortener.database.storage;
+
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+
+public class LsmStorageEngineTest extends StorageEngineConformanceTest {
+
+  @Override
+  protected void configureEngine(DatabaseConfiguration configuration) {
+    configuration.setEngine(FileStorageEngine.NAME);
+    configuration.setLsmTables(List.of(AliasTable.TABLE_NAME));
+  }
+
+  @Test
+  void flushedRecordsSurviveRestart() {
+    Alias record = db.create(db.aliasTable, new Alias("kept", "https://example.com", 1L));
+    db.checkpoint(db.aliasTable);
+    db.create(db.aliasTable, new Alias("deleted", "https://example.com", 1L));
+    db.delete(db.aliasTable, "deleted");
+    db.close();
+
+    Database reopenedDb = openDatabase(1);
+
+    Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable)).containsExactly(record);
+  }
+}
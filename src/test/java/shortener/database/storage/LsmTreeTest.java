@@ -0,0 +1,135 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+
+public class LsmTreeTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "lsm-test-db";
+
+  private final AliasTable table = new AliasTable(Path.of(TEST_ROOT_DIRECTORY));
+  private final TableLog<Alias, String> log =
+      ((FileTableShard<Alias, String>) table.getShards().get(0)).getLog();
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+
+    AliasTable.init(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void flushesAndCompactionsKeepNewestRecords() throws IOException {
+    LsmTree<Alias, String> tree = open();
+    Map<String, Alias> expected = new HashMap<>();
+
+    // Every flush overwrites half of the records of the previous one and deletes one of them
+    for (int flush = 0; flush <= LsmTree.LEVEL0_SEGMENTS; flush++) {
+      for (int i = flush * 500; i < flush * 500 + 1000; i++) {
+        Alias record = new Alias("alias-" + i, "https://example.com/" + flush, 1L);
+
+        create(tree, record);
+        expected.put(record.alias(), record);
+      }
+
+      delete(tree, expected.remove("alias-" + flush * 500));
+      tree.flush();
+    }
+
+    Assertions.assertThat(tree.getLevelSegments()[0]).isEqualTo(1);
+    Assertions.assertThat(tree.getLevelSegments()[1]).isPositive();
+    Assertions.assertThat(log.getEntries()).isZero();
+    Assertions.assertThat(tree.size()).isEqualTo(expected.size());
+    Assertions.assertThat(Map.copyOf(tree)).isEqualTo(expected);
+    Assertions.assertThat(tree.get("alias-500")).isNull();
+    Assertions.assertThat(tree.get("alias-2999")).isEqualTo(expected.get("alias-2999"));
+
+    tree.close();
+
+    LsmTree<Alias, String> reopenedTree = open();
+    reopenedTree.compact(new IoThrottle(Long.MAX_VALUE));
+
+    Assertions.assertThat(reopenedTree.getLevelSegments()[0]).isZero();
+    Assertions.assertThat(reopenedTree.size()).isEqualTo(expected.size());
+    Assertions.assertThat(Map.copyOf(reopenedTree)).isEqualTo(expected);
+
+    reopenedTree.close();
+  }
+
+  @Test
+  void openReplaysLogOverSegments() throws IOException {
+    Alias flushedRecord = new Alias("flushed", "https://example.com", 1L);
+    Alias deletedRecord = new Alias("deleted", "https://example.com", 1L);
+    Alias laterRecord = new Alias("later", "https://example.com", 2L);
+
+    LsmTree<Alias, String> tree = open();
+    create(tree, flushedRecord);
+    create(tree, deletedRecord);
+    tree.flush();
+    delete(tree, deletedRecord);
+    create(tree, laterRecord);
+    tree.close();
+
+    LsmTree<Alias, String> reopenedTree = open();
+
+    Assertions.assertThat(reopenedTree)
+        .isEqualTo(Map.of("flushed", flushedRecord, "later", laterRecord));
+    Assertions.assertThat(reopenedTree.containsKey("deleted")).isFalse();
+    Assertions.assertThat(log.getEntries()).isEqualTo(2L);
+
+    reopenedTree.close();
+  }
+
+  @Test
+  void openDeletesFilesMissingFromManifest() throws IOException {
+    Alias record = new Alias("flushed", "https://example.com", 1L);
+
+    LsmTree<Alias, String> tree = open();
+    create(tree, record);
+    tree.flush();
+    tree.close();
+
+    Path leftoverPath = tree.getDirectory().resolve("42.sst.tmp");
+    Files.write(leftoverPath, new byte[] {1, 2, 3});
+
+    LsmTree<Alias, String> reopenedTree = open();
+
+    Assertions.assertThat(leftoverPath).doesNotExist();
+    Assertions.assertThat(reopenedTree.get("flushed")).isEqualTo(record);
+
+    reopenedTree.close();
+  }
+
+
+  private LsmTree<Alias, String> open() throws IOException {
+    // Flushes are only done by hand
+    return new LsmTree<>(table, log, Integer.MAX_VALUE).open(log.loadChanges());
+  }
+
+  private void create(LsmTree<Alias, String> tree, Alias record) throws IOException {
+    log.append(record);
+    tree.put(record.alias(), record);
+  }
+
+  private void delete(LsmTree<Alias, String> tree, Alias record) throws IOException {
+    log.appendTombstone(record);
+    tree.remove(record.alias());
+  }
+}
@@ -0,0 +1,28 @@
+package shortener.database.storage;
+
+import java.io.File;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.entities.Alias;
+
+public class MemoryStorageEngineTest extends StorageEngineConformanceTest {
+
+  @Override
+  protected void configureEngine(DatabaseConfiguration configuration) {
+    configuration.setEngine(MemoryStorageEngine.NAME);
+  }
+
+  @Test
+  void recordsAreLostOnRestart() {
+    db.create(db.aliasTable, new Alias("lost", "https://example.com", 1L));
+    db.checkpoint(db.aliasTable);
+    db.close();
+
+    Database reopenedDb = openDatabase(1);
+
+    Assertions.assertThat(new File(TEST_DATABASE_DIRECTORY, "aliases").length()).isZero();
+    Assertions.assertThat(reopenedDb.search(reopenedDb.aliasTable)).isEmpty();
+  }
+}
@@ -0,0 +1,126 @@
+package shortener.database.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapUrlMapTest {
+
+  private static final OffHeapUrlMap.EntryMapper<String> URL_AND_OWNER =
+      (key, url, owner) -> url + "|" + owner;
+
+  @Test
+  void getReturnsPutEntriesUntilRemoved() {
+    OffHeapUrlMap map = new OffHeapUrlMap();
+
+    Assertions.assertThat(map.put(1, "https://example.com/\u00fcn\u00efcode", 7)).isTrue();
+    Assertions.assertThat(map.put(2, "https://example.com", 8)).isTrue();
+    Assertions.assertThat(map.put(2, "https://example.org", 9)).isTrue();
+
+    Assertions.assertThat(map.get(1, URL_AND_OWNER))
+        .isEqualTo("https://example.com/\u00fcn\u00efcode|7");
+    Assertions.assertThat(map.get(2, URL_AND_OWNER))
+        .isEqualTo("https://example.org|9");
+    Assertions.assertThat(map.size()).isEqualTo(2);
+
+    Assertions.assertThat(map.remove(1)).isTrue();
+    Assertions.assertThat(map.remove(1)).isFalse();
+    Assertions.assertThat(map.contains(1)).isFalse();
+    Assertions.assertThat(map.get(1, URL_AND_OWNER)).isNull();
+    Assertions.assertThat(map.size()).isEqualTo(1);
+  }
+
+  @Test
+  void resizeKeepsEntriesReadableAndWritable() {
+    OffHeapUrlMap map = new OffHeapUrlMap(16);
+    Map<Long, String> expected = new HashMap<>();
+
+    for (long key = 1; key <= 20_000; key++) {
+      map.put(key, "https://example.com/" + key, key);
+      expected.put(key, "https://example.com/" + key + "|" + key);
+
+      // Entries are written and removed while previous tables are migrated
+      if (key % 3 == 0) {
+        map.remove(key - 1);
+        expected.remove(key - 1);
+      }
+
+      if (key % 1000 == 0) {
+        Assertions.assertThat(map.get(key / 2 + 1, URL_AND_OWNER))
+            .isEqualTo(expected.get(key / 2 + 1));
+      }
+    }
+
+    Map<Long, String> entries = new HashMap<>();
+    map.iterator((key, url, owner) -> Map.entry(key, url + "|" + owner))
+        .forEachRemaining(entry -> entries.put(entry.getKey(), entry.getValue()));
+    List<Long> returnedKeys = new ArrayList<>();
+    map.iterator((key, url, owner) -> key).forEachRemaining(returnedKeys::add);
+
+    Assertions.assertThat(entries).isEqualTo(expected);
+    Assertions.assertThat(returnedKeys).hasSize(expected.size());
+    Assertions.assertThat(map.size()).isEqualTo(expected.size());
+    Assertions.assertThat(map.getStats().slots()).isGreaterThanOrEqualTo(2L * expected.size());
+  }
+
+  @Test
+  void resizeReclaimsArenaOfRemovedEntries() {
+    OffHeapUrlMap map = new OffHeapUrlMap();
+    String url = "https://example.com/" + "a".repeat(1000);
+
+    IntStream.rangeClosed(1, 5000).forEach(key -> {
+      map.put(key, url, key);
+      map.remove(key);
+    });
+    IntStream.rangeClosed(1, 100).forEach(key -> map.put(key, url, key));
+
+    OffHeapMapStats stats = map.getStats();
+
+    Assertions.assertThat(stats.entries()).isEqualTo(100L);
+    Assertions.assertThat(stats.garbageBytes()).isLessThan(2L << 20);
+    Assertions.assertThat(stats.totalBytes()).isEqualTo(stats.slotBytes() + stats.arenaBytes());
+    Assertions.assertThat(map.get(100, URL_AND_OWNER)).isEqualTo(url + "|100");
+  }
+
+  @Test
+  void getRestoresUrlsStoredAfterKnownPrefixes() throws IOException {
+    Path filePath = Files.createTempFile("urls", UrlPrefixDictionary.FILE_SUFFIX);
+
+    try {
+      UrlPrefixDictionary dictionary = new UrlPrefixDictionary(filePath);
+      dictionary.encode("https://example.com/");
+      OffHeapUrlMap map = new OffHeapUrlMap(16, dictionary);
+      OffHeapUrlMap unprefixedMap = new OffHeapUrlMap(16);
+
+      for (long key = 1; key <= 100; key++) {
+        map.put(key, "https://example.com/" + key, key);
+        unprefixedMap.put(key, "https://example.com/" + key, key);
+      }
+      map.put(101, "https://example.org/", 101);
+
+      Assertions.assertThat(map.get(42, URL_AND_OWNER)).isEqualTo("https://example.com/42|42");
+      Assertions.assertThat(map.get(101, URL_AND_OWNER)).isEqualTo("https://example.org/|101");
+      Assertions.assertThat(map.getStats().arenaBytes())
+          .isLessThanOrEqualTo(unprefixedMap.getStats().arenaBytes());
+    } finally {
+      Files.deleteIfExists(filePath);
+    }
+  }
+
+  @Test
+  void putRejectsUrlsLongerThanArenaEntries() {
+    OffHeapUrlMap map = new OffHeapUrlMap();
+
+    Assertions.assertThat(map.put(1, "a".repeat(OffHeapUrlMap.MAX_URL_LENGTH + 1), 1)).isFalse();
+    Assertions.assertThat(map.contains(1)).isFalse();
+    Assertions.assertThatThrownBy(() -> map.put(0, "https://example.com", 1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
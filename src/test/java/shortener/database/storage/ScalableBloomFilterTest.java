@@ -0,0 +1,74 @@
+package shortener.database.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ScalableBloomFilterTest {
+
+  @Test
+  void mightContainHasNoFalseNegativesAcrossStages() {
+    ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+
+    IntStream.range(0, 10_000).forEach(i -> filter.add("alias-" + i));
+
+    Assertions.assertThat(filter.getStats().stages()).isGreaterThan(1);
+    Assertions.assertThat(IntStream.range(0, 10_000).boxed())
+        .allMatch(i -> filter.mightContain("alias-" + i));
+  }
+
+  @Test
+  void falsePositiveRateStaysNearTarget() {
+    ScalableBloomFilter filter = new ScalableBloomFilter(1000, 0.01);
+
+    IntStream.range(0, 50_000).forEach(i -> filter.add("alias-" + i));
+
+    long falsePositives = IntStream.range(0, 100_000)
+        .filter(i -> filter.mightContain("absent-" + i))
+        .count();
+
+    Assertions.assertThat(falsePositives / 100_000.0).isLessThan(0.02);
+    Assertions.assertThat(filter.getStats().falsePositiveRate()).isLessThan(0.01);
+  }
+
+  @Test
+  void getStatsCombinesFilters() {
+    ScalableBloomFilter first = new ScalableBloomFilter();
+    ScalableBloomFilter second = new ScalableBloomFilter();
+
+    IntStream.range(0, 10).forEach(i -> first.add(i));
+    IntStream.range(0, 30).forEach(i -> second.add(i));
+
+    BloomFilterStats stats = BloomFilterStats.combine(
+        List.of(first.getStats(), second.getStats()));
+
+    Assertions.assertThat(stats.insertions()).isEqualTo(40L);
+    Assertions.assertThat(stats.stages()).isEqualTo(2);
+    Assertions.assertThat(stats.sizeInBits())
+        .isEqualTo(first.getStats().sizeInBits() + second.getStats().sizeInBits());
+  }
+
+  @Test
+  void readFromRestoresWrittenFilter() throws IOException {
+    ScalableBloomFilter filter = new ScalableBloomFilter(100, 0.01);
+    IntStream.range(0, 1000).forEach(i -> filter.add("alias-" + i));
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    filter.writeTo(new DataOutputStream(output));
+    ScalableBloomFilter readFilter = ScalableBloomFilter.readFrom(
+        new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+
+    Assertions.assertThat(readFilter.getStats()).isEqualTo(filter.getStats());
+    Assertions.assertThat(IntStream.range(0, 1000).boxed())
+        .allMatch(i -> readFilter.mightContain("alias-" + i));
+    Assertions.assertThatThrownBy(() -> ScalableBloomFilter.readFrom(
+        new DataInputStream(new ByteArrayInputStream(new byte[] {0, 0, 0, 0}))))
+        .isInstanceOf(IOException.class);
+  }
+}
@@ -0,0 +1,132 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+
+public class SealedSegmentTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "segment-test-db";
+
+  private final Path filePath = Path.of(TEST_ROOT_DIRECTORY, "entries.sealed");
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void scanAndFindReadCompressedBlocks() throws IOException {
+    // Big enough to take many blocks, every hash but the last one has two entries
+    List<String> values = IntStream.range(0, 40_001)
+        .mapToObj(i -> "https://example.com/" + i / 2 + "/" + i)
+        .collect(Collectors.toList());
+    write(IntStream.range(0, values.size()).map(i -> i / 2).toArray(), values);
+
+    try (SealedSegment segment = SealedSegment.open(filePath)) {
+      List<String> scanned = segment.scan(ArrayList::new,
+          (lines, reader) -> lines.add(reader.readString()), (left, right) -> {
+            left.addAll(right);
+            return left;
+          });
+
+      Assertions.assertThat(scanned).isEqualTo(values);
+      Assertions.assertThat(segment.getEntries()).isEqualTo(values.size());
+      Assertions.assertThat(Files.size(filePath))
+          .isLessThan(values.stream().mapToLong(String::length).sum() / 2);
+
+      for (int i : new int[] {0, 1, 12_345, 40_000}) {
+        String found = segment.find(i / 2, reader -> {
+          String value = reader.readString();
+          return value.equals(values.get(i)) ? value : null;
+        });
+
+        Assertions.assertThat(found).isEqualTo(values.get(i));
+      }
+
+      String missing = segment.find(-1, RecordReader::readString);
+      String unmatched = segment.find(20_001, reader -> null);
+
+      Assertions.assertThat(missing).isNull();
+      Assertions.assertThat(unmatched).isNull();
+    }
+  }
+
+  @Test
+  void cursorReadsEntriesFromBlockOfKeyHash() throws IOException {
+    List<String> values = IntStream.range(0, 20_000)
+        .mapToObj(i -> "https://example.com/" + i)
+        .collect(Collectors.toList());
+    write(IntStream.range(0, values.size()).toArray(), values);
+
+    try (SealedSegment segment = SealedSegment.open(filePath)) {
+      Assertions.assertThat(readAll(segment.cursor())).isEqualTo(values);
+
+      List<String> fromKeyHash = readAll(segment.cursor(15_000));
+      int firstIndex = values.indexOf(fromKeyHash.get(0));
+
+      Assertions.assertThat(firstIndex).isBetween(1, 15_000);
+      Assertions.assertThat(fromKeyHash).isEqualTo(values.subList(firstIndex, values.size()));
+
+      SealedSegment.Cursor cursor = segment.cursor();
+      RecordWriter writer = new RecordWriter();
+      writer.writeString(values.get(0));
+
+      Assertions.assertThat(cursor.next()).isTrue();
+      Assertions.assertThat(cursor.copyEntry()).isEqualTo(writer.toEntry(false));
+    }
+  }
+
+  @Test
+  void writeRejectsUnsortedKeyHashes() {
+    Assertions.assertThatThrownBy(() -> write(new int[] {2, 1}, List.of("first", "second")))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void openThrowsIfIndexIsCorrupted() throws IOException {
+    write(new int[] {1, 2}, List.of("first", "second"));
+
+    byte[] content = Files.readAllBytes(filePath);
+    content[content.length - 1] ^= 1;
+    Files.write(filePath, content);
+
+    Assertions.assertThatThrownBy(() -> SealedSegment.open(filePath))
+        .isInstanceOf(IOException.class);
+  }
+
+
+  private static List<String> readAll(SealedSegment.Cursor cursor) throws IOException {
+    List<String> values = new ArrayList<>();
+
+    while (cursor.next()) {
+      values.add(cursor.getReader().readString());
+    }
+
+    return values;
+  }
+
+  private void write(int[] keyHashes, List<String> values) throws IOException {
+    SealedSegment.write(filePath, null, keyHashes, () -> values.stream().map(value -> {
+      RecordWriter writer = new RecordWriter();
+      writer.writeString(value);
+      return writer.toEntry(false);
+    }).iterator());
+  }
+}
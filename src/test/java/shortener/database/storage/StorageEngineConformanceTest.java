@@ -0,0 +1,233 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.Database;
+import shortener.database.DatabaseConfiguration;
+import shortener.database.changes.Change;
+import shortener.database.changes.ChangeType;
+import shortener.database.changes.RecordingSubscriber;
+import shortener.database.entities.Alias;
+import shortener.database.entities.User;
+import shortener.database.tables.AliasTable;
+import shortener.database.tables.UserTable;
+import shortener.exceptions.database.NotFound;
+import shortener.exceptions.database.UniqueViolation;
+
+/**
+ * Behavior of `Database` reads and writes which every storage engine has to keep. An engine is
+ * checked by a subclass which configures the tables to be stored by it.
+ */
+public abstract class StorageEngineConformanceTest {
+
+  protected static final String TEST_DATABASE_DIRECTORY = "engine-test-db";
+
+  protected Database db;
+
+  @AfterAll
+  static void purgeDb() {
+    TestUtils.purgeDirectory(new File(TEST_DATABASE_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupDb() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_DATABASE_DIRECTORY));
+
+    Database.init(TEST_DATABASE_DIRECTORY);
+
+    db = openDatabase(1);
+  }
+
+  /**
+   * Configures the tables to be stored by the checked engine.
+   *
+   * @param configuration Configuration of a database in the test directory.
+   */
+  protected abstract void configureEngine(DatabaseConfiguration configuration);
+
+  protected Database openDatabase(int shards) {
+    DatabaseConfiguration configuration = DatabaseConfiguration.of(TEST_DATABASE_DIRECTORY);
+    configuration.setShards(shards);
+    configureEngine(configuration);
+
+    return new Database(configuration);
+  }
+
+  @Test
+  void createdRecordsAreFoundByPrimaryKey() {
+    Alias alias = db.create(db.aliasTable, new Alias("alias", "https://example.com", 1L));
+    User user = db.create(db.userTable, new User(null, "test@email.com", "pa$$word"));
+
+    Assertions.assertThat(db.get(db.aliasTable, "alias")).isEqualTo(alias);
+    Assertions.assertThat(db.get(db.userTable, user.id())).isEqualTo(user);
+    Assertions.assertThat(user.id()).isEqualTo(1L);
+    Assertions.assertThat(db.exists(db.aliasTable, "alias")).isTrue();
+    Assertions.assertThat(db.exists(db.aliasTable, "absent")).isFalse();
+    Assertions.assertThatThrownBy(() -> db.get(db.aliasTable, "absent"))
+        .isInstanceOf(NotFound.class);
+  }
+
+  @Test
+  void createThrowsIfRecordIsNotUnique() {
+    db.create(db.aliasTable, new Alias("alias", "https://example.com", 1L));
+    db.create(db.userTable, new User(null, "same@email.com", "pa$$word"));
+
+    Assertions.assertThatThrownBy(
+        () -> db.create(db.aliasTable, new Alias("alias", "https://example.org", 2L))
+    ).isInstanceOf(UniqueViolation.class);
+    Assertions.assertThatThrownBy(
+        () -> db.create(db.userTable, new User(null, "same@email.com", "pa$$word"))
+    ).isInstanceOf(UniqueViolation.class);
+    Assertions.assertThat(db.get(db.aliasTable, "alias").url()).isEqualTo("https://example.com");
+  }
+
+  @Test
+  void deletedRecordsAreGoneFromAllReads() {
+    Alias deleted = db.create(db.aliasTable, new Alias("deleted", "https://example.com", 1L));
+    Alias kept = db.create(db.aliasTable, new Alias("kept", "https://example.com", 1L));
+
+    Assertions.assertThat(db.delete(db.aliasTable, "deleted")).isEqualTo(deleted);
+    Assertions.assertThatThrownBy(() -> db.get(db.aliasTable, "deleted"))
+        .isInstanceOf(NotFound.class);
+    Assertions.assertThatThrownBy(() -> db.delete(db.aliasTable, "deleted"))
+        .isInstanceOf(NotFound.class);
+    Assertions.assertThat(db.exists(db.aliasTable, "deleted")).isFalse();
+    Assertions.assertThat(db.search(db.aliasTable)).containsExactly(kept);
+    Assertions.assertThat(db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, 1L))
+        .containsExactly(kept);
+
+    // A deleted primary key may be taken again
+    Alias recreated = db.create(db.aliasTable, new Alias("deleted", "https://example.org", 2L));
+
+    Assertions.assertThat(db.get(db.aliasTable, "deleted")).isEqualTo(recreated);
+  }
+
+  @Test
+  void writesArePublishedToChangeFeedInOrder() throws Exception {
+    RecordingSubscriber<Alias> subscriber = new RecordingSubscriber<>();
+    db.aliasTable.getChangeFeed().subscribe(subscriber);
+    subscriber.request(Long.MAX_VALUE);
+
+    Alias alias = db.create(db.aliasTable, new Alias("alias", "https://example.com", 1L));
+    db.delete(db.aliasTable, "alias");
+    List<Change<Alias>> changes = subscriber.take(2);
+
+    Assertions.assertThat(changes).extracting(Change::type)
+        .containsExactly(ChangeType.CREATE, ChangeType.DELETE);
+    Assertions.assertThat(changes).extracting(Change::record).containsExactly(alias, alias);
+    Assertions.assertThat(changes.get(1).sequence()).isEqualTo(changes.get(0).sequence() + 1);
+  }
+
+  @Test
+  void searchFiltersAndLimitsRecords() {
+    for (int i = 0; i < 10; i++) {
+      db.create(db.aliasTable, new Alias("alias-" + i, "https://example.com/" + i, (long) i % 2));
+    }
+
+    Assertions.assertThat(db.search(db.aliasTable)).hasSize(10);
+    Assertions.assertThat(db.search(db.aliasTable, alias -> alias.userId() == 0L))
+        .hasSize(5)
+        .allMatch(alias -> alias.userId() == 0L);
+    Assertions.assertThat(db.search(db.aliasTable, alias -> alias.userId() == 1L, 3))
+        .hasSize(3)
+        .allMatch(alias -> alias.userId() == 1L);
+    Assertions.assertThat(db.search(db.userTable)).isEmpty();
+  }
+
+  @Test
+  void secondaryIndexesFindRecords() {
+    User user = db.create(db.userTable, new User(null, "test@email.com", "pa$$word"));
+    db.create(db.aliasTable, new Alias("first", "https://example.com", user.id()));
+    db.create(db.aliasTable, new Alias("second", "https://example.com", user.id()));
+    db.create(db.aliasTable, new Alias("other", "https://example.com", user.id() + 1));
+
+    Assertions.assertThat(db.getBy(db.userTable, UserTable.EMAIL_INDEX, "test@email.com"))
+        .isEqualTo(user);
+    Assertions.assertThatThrownBy(
+        () -> db.getBy(db.userTable, UserTable.EMAIL_INDEX, "absent@email.com")
+    ).isInstanceOf(NotFound.class);
+    Assertions.assertThat(db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, user.id()))
+        .extracting(Alias::alias)
+        .containsExactlyInAnyOrder("first", "second");
+  }
+
+  @Test
+  void maintenanceKeepsRecords() {
+    for (int i = 0; i < 10; i++) {
+      db.create(db.aliasTable, new Alias("alias-" + i, "https://example.com", 1L));
+    }
+    db.delete(db.aliasTable, "alias-0");
+
+    db.checkpoint(db.aliasTable);
+    db.compact(db.aliasTable);
+    db.create(db.aliasTable, new Alias("later", "https://example.com", 1L));
+
+    Assertions.assertThat(db.search(db.aliasTable)).hasSize(10);
+    Assertions.assertThat(db.exists(db.aliasTable, "alias-0")).isFalse();
+    Assertions.assertThat(db.get(db.aliasTable, "alias-9").alias()).isEqualTo("alias-9");
+  }
+
+  @Test
+  void shardedTablesSpreadRecords() {
+    Database shardedDb = openDatabase(4);
+
+    for (int i = 0; i < 20; i++) {
+      shardedDb.create(shardedDb.aliasTable, new Alias("alias-" + i, "https://example.com", 1L));
+    }
+    shardedDb.delete(shardedDb.aliasTable, "alias-7");
+
+    Assertions.assertThat(shardedDb.aliasTable.getShards()).hasSize(4);
+    Assertions.assertThat(shardedDb.search(shardedDb.aliasTable)).hasSize(19);
+    Assertions.assertThat(shardedDb.get(shardedDb.aliasTable, "alias-8").alias())
+        .isEqualTo("alias-8");
+    Assertions.assertThat(shardedDb.exists(shardedDb.aliasTable, "alias-7")).isFalse();
+  }
+
+  @Test
+  void concurrentWritersNeitherLoseNorDuplicateRecords() throws Exception {
+    int threads = 4;
+    int operations = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> writers = new ArrayList<>();
+
+    for (int thread = 0; thread < threads; thread++) {
+      int writer = thread;
+
+      writers.add(executor.submit(() -> {
+        for (int i = 0; i < operations; i++) {
+          db.create(db.aliasTable, new Alias("own-" + writer + "-" + i, "https://example.com",
+              (long) writer));
+          db.create(db.userTable, new User(null, writer + "-" + i + "@email.com", "pa$$word"));
+
+          if (i % 2 == 0) {
+            db.delete(db.aliasTable, "own-" + writer + "-" + i);
+          }
+
+          db.search(db.aliasTable);
+        }
+      }));
+    }
+
+    for (Future<?> writer : writers) {
+      writer.get();
+    }
+    executor.shutdown();
+
+    Assertions.assertThat(db.search(db.aliasTable)).hasSize(threads * operations / 2);
+    Assertions.assertThat(db.search(db.userTable)).extracting(User::id)
+        .hasSize(threads * operations)
+        .doesNotHaveDuplicates();
+    Assertions.assertThat(db.searchBy(db.aliasTable, AliasTable.USER_ID_INDEX, 0L))
+        .hasSize(operations / 2);
+  }
+}
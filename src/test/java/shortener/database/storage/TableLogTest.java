@@ -0,0 +1,288 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.entities.Alias;
+import shortener.database.tables.AliasTable;
+
+public class TableLogTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "storage-test-db";
+
+  private final AliasTable table = new AliasTable(Path.of(TEST_ROOT_DIRECTORY));
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+
+    AliasTable.init(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void loadSkipsDeletedRecords() throws IOException {
+    TableLog<Alias, String> log = firstShard().getLog();
+    Alias deletedRecord = new Alias("deleted", "https://example.com", 1L);
+    Alias recreatedRecord = new Alias("recreated", "https://example.com", 1L);
+
+    log.append(deletedRecord);
+    log.append(recreatedRecord);
+    log.appendTombstone(deletedRecord);
+    log.appendTombstone(recreatedRecord);
+    log.append(recreatedRecord);
+
+    Assertions.assertThat(log.load()).isEqualTo(Map.of("recreated", recreatedRecord));
+    Assertions.assertThat(log.getEntries()).isEqualTo(5L);
+  }
+
+  @Test
+  void compactKeepsOnlyLiveRecords() throws IOException {
+    Alias deletedRecord = new Alias("deleted", "https://example.com", 1L);
+    Alias keptRecord = new Alias("kept", "https://example.com", 1L);
+
+    FileTableShard<Alias, String> shard = firstShard();
+
+    for (Alias record : List.of(deletedRecord, keptRecord)) {
+      shard.getLog().append(record);
+      shard.getPrimaryKeyIndex().put(record);
+    }
+    shard.getLog().appendTombstone(deletedRecord);
+    shard.getPrimaryKeyIndex().remove(deletedRecord.alias());
+
+    shard.compact(new IoThrottle(Long.MAX_VALUE));
+
+    Assertions.assertThat(table.readTable()).containsExactly(table.serialize(keptRecord));
+    Assertions.assertThat(shard.getLog().getEntries()).isEqualTo(1L);
+  }
+
+  @Test
+  void compactSealsLiveRecordsAndKeepsLaterOnesInTableFile() throws IOException {
+    Alias sealedRecord = new Alias("sealed", "https://example.com", 1L);
+    Alias deletedRecord = new Alias("deleted", "https://example.com", 1L);
+    Alias laterRecord = new Alias("later", "https://example.com", 1L);
+
+    FileTableShard<Alias, String> shard = firstShard();
+
+    for (Alias record : List.of(sealedRecord, deletedRecord)) {
+      shard.getLog().append(record);
+      shard.getPrimaryKeyIndex().put(record);
+    }
+    shard.compact(new IoThrottle(Long.MAX_VALUE));
+
+    shard.getLog().append(laterRecord);
+    shard.getLog().appendTombstone(deletedRecord);
+    shard.getLog().flush();
+
+    TableLog<Alias, String> reopenedLog = new TableLog<>(table, table.getWritableFilePath());
+
+    // The block index of the segment finds a sealed record by its primary key hash
+    try (SealedSegment segment = SealedSegment.open(reopenedLog.getSealedFilePath())) {
+      Assertions.assertThat(findSealed(segment, "sealed")).isEqualTo(sealedRecord);
+      Assertions.assertThat(findSealed(segment, "deleted")).isEqualTo(deletedRecord);
+      Assertions.assertThat(findSealed(segment, "later")).isNull();
+    }
+    Assertions.assertThat(reopenedLog.load())
+        .isEqualTo(Map.of("sealed", sealedRecord, "later", laterRecord));
+    Assertions.assertThat(reopenedLog.getEntries()).isEqualTo(4L);
+    Assertions.assertThat(reopenedLog.getTailEntries()).isEqualTo(2L);
+    Assertions.assertThat(shard.getLog().readEntries()).hasSize(4);
+  }
+
+  @Test
+  void truncateHeadKeepsOnlyLaterEntries() throws IOException {
+    TableLog<Alias, String> log = firstShard().getLog();
+    Alias flushedRecord = new Alias("flushed", "https://example.com", 1L);
+
+    log.append(flushedRecord);
+    long logOffset = log.getFlushedLength();
+    long logEntries = log.getEntries();
+    log.appendTombstone(flushedRecord);
+
+    log.truncateHead(logOffset, logEntries);
+
+    Map<String, Alias> changes = new HashMap<>();
+    changes.put("flushed", null);
+
+    Assertions.assertThat(log.loadChanges()).isEqualTo(changes);
+    Assertions.assertThat(log.load()).isEmpty();
+    Assertions.assertThat(log.getEntries()).isEqualTo(1L);
+  }
+
+  @Test
+  void loadMigratesLegacyTextFile() throws IOException {
+    Files.write(table.getWritableFilePath(),
+        List.of("deleted|https://example.com|1", "kept|https://example.com/?a=1|1",
+            "|deleted|https://example.com|1"));
+
+    TableLog<Alias, String> log = firstShard().getLog();
+
+    Assertions.assertThat(log.load())
+        .isEqualTo(Map.of("kept", new Alias("kept", "https://example.com/?a=1", 1L)));
+    Assertions.assertThat(RecordFormat.isLegacyText(table.getWritableFilePath())).isFalse();
+    Assertions.assertThat(log.readEntries()).containsExactly("kept|https://example.com/?a=1|1");
+  }
+
+  @Test
+  void appendedRecordsSurviveFieldSeparatorInUrl() throws IOException {
+    TableLog<Alias, String> log = firstShard().getLog();
+    Alias record = new Alias("piped", "https://example.com/?q=a|b", 1L);
+
+    log.append(record);
+
+    Assertions.assertThat(log.load()).isEqualTo(Map.of("piped", record));
+  }
+
+  @Test
+  void loadReplaysLogTailOverSnapshot() throws IOException {
+    Alias deletedRecord = new Alias("deleted", "https://example.com", 1L);
+    Alias keptRecord = new Alias("kept", "https://example.com", 1L);
+    Alias laterRecord = new Alias("later", "https://example.com", 1L);
+
+    FileTableShard<Alias, String> shard = firstShard();
+
+    for (Alias record : List.of(deletedRecord, keptRecord)) {
+      shard.getLog().append(record);
+      shard.getPrimaryKeyIndex().put(record);
+    }
+    shard.checkpoint();
+
+    shard.getLog().append(laterRecord);
+    shard.getLog().appendTombstone(deletedRecord);
+    shard.getLog().flush();
+
+    TableLog<Alias, String> reopenedLog = new TableLog<>(table, table.getWritableFilePath());
+
+    Assertions.assertThat(reopenedLog.load())
+        .isEqualTo(Map.of("kept", keptRecord, "later", laterRecord));
+    Assertions.assertThat(reopenedLog.getEntries()).isEqualTo(4L);
+    Assertions.assertThat(reopenedLog.getTailEntries()).isEqualTo(2L);
+  }
+
+  @Test
+  void compactDropsSnapshot() throws IOException {
+    Alias record = new Alias("kept", "https://example.com", 1L);
+    FileTableShard<Alias, String> shard = firstShard();
+
+    shard.getLog().append(record);
+    shard.getPrimaryKeyIndex().put(record);
+    shard.checkpoint();
+
+    shard.compact(new IoThrottle(Long.MAX_VALUE));
+
+    Assertions.assertThat(Files.exists(shard.getLog().getSnapshotFilePath())).isFalse();
+    Assertions.assertThat(new TableLog<>(table, table.getWritableFilePath()).load())
+        .isEqualTo(Map.of("kept", record));
+  }
+
+  @Test
+  void loadIgnoresSnapshotAheadOfTableFile() throws IOException {
+    Alias record = new Alias("lost", "https://example.com", 1L);
+    FileTableShard<Alias, String> shard = firstShard();
+
+    shard.getLog().append(record);
+    shard.getPrimaryKeyIndex().put(record);
+    shard.checkpoint();
+
+    Files.write(table.getWritableFilePath(), RecordFormat.header());
+
+    Assertions.assertThat(new TableLog<>(table, table.getWritableFilePath()).load())
+        .isEqualTo(Map.of());
+  }
+
+  @Test
+  void loadTruncatesTornTail() throws IOException {
+    TableLog<Alias, String> log = firstShard().getLog();
+    Alias record = new Alias("durable", "https://example.com", 1L);
+
+    log.append(record);
+    log.flush();
+    long durableLength = Files.size(table.getWritableFilePath());
+
+    // Only a part of the next entry reached the disk
+    RecordWriter writer = new RecordWriter();
+    table.encode(new Alias("torn", "https://example.com", 1L), writer);
+    byte[] tornEntry = writer.toEntry(false);
+    Files.write(table.getWritableFilePath(), Arrays.copyOf(tornEntry, tornEntry.length - 3),
+        StandardOpenOption.APPEND);
+
+    TableLog<Alias, String> reopenedLog = new TableLog<>(table, table.getWritableFilePath());
+
+    Assertions.assertThat(reopenedLog.load()).isEqualTo(Map.of("durable", record));
+    Assertions.assertThat(Files.size(table.getWritableFilePath())).isEqualTo(durableLength);
+  }
+
+  @Test
+  void loadFailsOnCorruptedEntryFollowedByValidOnes() throws IOException {
+    TableLog<Alias, String> log = firstShard().getLog();
+
+    log.append(new Alias("first", "https://example.com", 1L));
+    log.flush();
+    long corruptedOffset = Files.size(table.getWritableFilePath());
+    log.append(new Alias("second", "https://example.com", 1L));
+    log.append(new Alias("third", "https://example.com", 1L));
+    log.flush();
+    long fileLength = Files.size(table.getWritableFilePath());
+
+    // A bit flips in the payload of an acknowledged entry
+    byte[] file = Files.readAllBytes(table.getWritableFilePath());
+    file[(int) corruptedOffset + 3] ^= 0x10;
+    Files.write(table.getWritableFilePath(), file);
+
+    TableLog<Alias, String> reopenedLog = new TableLog<>(table, table.getWritableFilePath());
+
+    Assertions.assertThatThrownBy(reopenedLog::load).isInstanceOf(CorruptedEntryException.class);
+    Assertions.assertThat(Files.size(table.getWritableFilePath())).isEqualTo(fileLength);
+  }
+
+  @Test
+  void loadMigratesVersionOneFile() throws IOException {
+    Alias record = new Alias("kept", "https://example.com", 1L);
+    // Version 1 payloads keep URLs in full
+    RecordWriter writer = new RecordWriter();
+    writer.writeString(record.alias());
+    writer.writeString(record.url());
+    writer.writeLong(record.userId());
+    byte[] entry = writer.toEntry(false);
+    byte[] header = RecordFormat.header();
+    header[header.length - 1] = RecordFormat.UNCHECKSUMMED_VERSION;
+
+    Files.write(table.getWritableFilePath(), header);
+    Files.write(table.getWritableFilePath(),
+        Arrays.copyOf(entry, entry.length - RecordFormat.CHECKSUM_LENGTH),
+        StandardOpenOption.APPEND);
+
+    TableLog<Alias, String> log = firstShard().getLog();
+
+    Assertions.assertThat(log.load()).isEqualTo(Map.of("kept", record));
+    Assertions.assertThat(RecordFormat.needsMigration(table.getWritableFilePath())).isFalse();
+  }
+
+
+  private FileTableShard<Alias, String> firstShard() {
+    return (FileTableShard<Alias, String>) table.getShards().get(0);
+  }
+
+  private Alias findSealed(SealedSegment segment, String alias) throws IOException {
+    return segment.find(alias.hashCode(), reader -> {
+      Alias record = table.decode(reader);
+      return record.alias().equals(alias) ? record : null;
+    });
+  }
+}
@@ -0,0 +1,135 @@
+package shortener.database.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+
+public class TableScannerTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "scanner-test-db";
+
+  private final Path filePath = Path.of(TEST_ROOT_DIRECTORY, "entries");
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void scanReturnsEntriesInFileOrder() throws IOException {
+    // Big enough to be split into several ranges
+    List<String> values = IntStream.range(0, 200_000)
+        .mapToObj(i -> "alias-" + i + "|https://example.com/" + i)
+        .collect(Collectors.toList());
+    write(values);
+
+    Assertions.assertThat(scan()).isEqualTo(values);
+  }
+
+  @Test
+  void scanOfEmptyFileReturnsEmptyAccumulator() throws IOException {
+    Files.createFile(filePath);
+
+    Assertions.assertThat(scan()).isEmpty();
+  }
+
+  @Test
+  void scanThrowsIfEntryIsTruncated() throws IOException {
+    write(List.of("first", "second"));
+
+    byte[] content = Files.readAllBytes(filePath);
+    Files.write(filePath, Arrays.copyOf(content, content.length - 2));
+
+    Assertions.assertThatThrownBy(this::scan).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void scanReportsFirstEntryWhichDoesNotMatchChecksum() throws IOException {
+    write(List.of("first", "second", "third"));
+
+    byte[] content = Files.readAllBytes(filePath);
+    int secondEntryOffset = RecordFormat.HEADER_LENGTH + entryLength("first");
+    // Flips a character of "second"
+    content[secondEntryOffset + 3] ^= 1;
+    Files.write(filePath, content);
+
+    CorruptedEntryException exception =
+        Assertions.catchThrowableOfType(this::scan, CorruptedEntryException.class);
+
+    Assertions.assertThat(exception.getOffset()).isEqualTo((long) secondEntryOffset);
+  }
+
+  @Test
+  void scanReadsEntriesWithoutChecksumsOfVersionOne() throws IOException {
+    byte[] header = RecordFormat.header();
+    header[header.length - 1] = RecordFormat.UNCHECKSUMMED_VERSION;
+
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(filePath))) {
+      output.write(header);
+
+      for (String value : List.of("first", "second")) {
+        byte[] entry = entry(value);
+        output.write(entry, 0, entry.length - RecordFormat.CHECKSUM_LENGTH);
+      }
+    }
+
+    Assertions.assertThat(scan()).containsExactly("first", "second");
+  }
+
+  @Test
+  void scanThrowsIfFileIsNotBinary() throws IOException {
+    Files.writeString(filePath, "first\nsecond\n");
+
+    Assertions.assertThatThrownBy(this::scan).isInstanceOf(IOException.class);
+  }
+
+  private void write(List<String> values) throws IOException {
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(filePath))) {
+      output.write(RecordFormat.header());
+
+      for (String value : values) {
+        output.write(entry(value));
+      }
+    }
+  }
+
+  private static byte[] entry(String value) {
+    RecordWriter writer = new RecordWriter();
+    writer.writeString(value);
+
+    return writer.toEntry(false);
+  }
+
+  private static int entryLength(String value) {
+    return entry(value).length;
+  }
+
+  private List<String> scan() throws IOException {
+    return TableScanner.scan(filePath, ArrayList::new, (values, reader) -> {
+      values.add(reader.readString());
+    }, (left, right) -> {
+      left.addAll(right);
+      return left;
+    });
+  }
+
+}
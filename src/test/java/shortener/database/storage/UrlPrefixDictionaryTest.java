@@ -0,0 +1,96 @@
+package shortener.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+
+public class UrlPrefixDictionaryTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "prefix-test-db";
+  private static final Path FILE_PATH =
+      Path.of(TEST_ROOT_DIRECTORY, "aliases" + UrlPrefixDictionary.FILE_SUFFIX);
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void encodePromotesCommonPathSegments() {
+    UrlPrefixDictionary dictionary = new UrlPrefixDictionary(FILE_PATH);
+    int hostId = dictionary.encode("https://example.com/articles/0");
+
+    Assertions.assertThat(dictionary.getPrefix(hostId)).isEqualTo("https://example.com/");
+
+    for (int i = 1; i < UrlPrefixDictionary.PROMOTION_COUNT - 1; i++) {
+      Assertions.assertThat(dictionary.encode("https://example.com/articles/" + i))
+          .isEqualTo(hostId);
+    }
+
+    int segmentId = dictionary.encode("https://example.com/articles/last");
+
+    Assertions.assertThat(dictionary.getPrefix(segmentId))
+        .isEqualTo("https://example.com/articles/");
+    Assertions.assertThat(dictionary.find("https://example.com/articles/new"))
+        .isEqualTo(segmentId);
+    Assertions.assertThat(dictionary.find("https://example.com/?q=a/b/")).isEqualTo(hostId);
+    Assertions.assertThat(dictionary.find("https://example.org/")).isEqualTo(0);
+    Assertions.assertThat(dictionary.encode("example.com")).isEqualTo(0);
+    Assertions.assertThat(dictionary.encode(null)).isEqualTo(0);
+    Assertions.assertThat(dictionary.size()).isEqualTo(2);
+  }
+
+  @Test
+  void loadReadsPrefixesAndTruncatesTornTail() throws IOException {
+    UrlPrefixDictionary dictionary = new UrlPrefixDictionary(FILE_PATH);
+    int firstId = dictionary.encode("https://example.com/");
+    int secondId = dictionary.encode("https://example.org/");
+    long fileSize = Files.size(FILE_PATH);
+
+    Files.write(FILE_PATH, new byte[] {42, 1, 2}, StandardOpenOption.APPEND);
+
+    UrlPrefixDictionary loadedDictionary = new UrlPrefixDictionary(FILE_PATH);
+
+    Assertions.assertThat(loadedDictionary.getPrefix(firstId)).isEqualTo("https://example.com/");
+    Assertions.assertThat(loadedDictionary.getPrefix(secondId)).isEqualTo("https://example.org/");
+    Assertions.assertThat(Files.size(FILE_PATH)).isEqualTo(fileSize);
+    Assertions.assertThatThrownBy(() -> loadedDictionary.getPrefix(secondId + 1))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void loadFailsOnCorruptedEntryFollowedByValidOnes() throws IOException {
+    UrlPrefixDictionary dictionary = new UrlPrefixDictionary(FILE_PATH);
+    dictionary.encode("https://example.com/");
+    long corruptedOffset = Files.size(FILE_PATH);
+    dictionary.encode("https://example.org/");
+    dictionary.encode("https://example.net/");
+    long fileSize = Files.size(FILE_PATH);
+
+    // A bit flips in the payload of an entry whose id has been returned
+    byte[] file = Files.readAllBytes(FILE_PATH);
+    file[(int) corruptedOffset + 3] ^= 0x10;
+    Files.write(FILE_PATH, file);
+
+    UrlPrefixDictionary loadedDictionary = new UrlPrefixDictionary(FILE_PATH);
+
+    Assertions.assertThatThrownBy(loadedDictionary::size)
+        .isInstanceOf(UncheckedIOException.class)
+        .hasCauseInstanceOf(CorruptedEntryException.class);
+    Assertions.assertThat(Files.size(FILE_PATH)).isEqualTo(fileSize);
+  }
+}
@@ -2,15 +2,25 @@ package shortener.database.tables;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import shortener.TestUtils;
 import shortener.database.entities.Alias;
+import shortener.database.storage.RecordFormat;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
+import shortener.database.storage.UrlPrefixDictionary;
 import shortener.exceptions.database.UniqueViolation;
 
 
@@ -67,4 +77,128 @@ public class AliasTableTest {
         .isEqualTo(new Alias("al", "https://example.com", 1L));
   }
 
+  @Test
+  void decodeReadsEncodedRecordWithFieldSeparator() {
+    Alias record = new Alias("al", "https://example.com/?q=a|b", 1L);
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(false)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decode(reader)).isEqualTo(record);
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
+  @Test
+  void encodeStoresUrlsAfterSharedPrefixes() {
+    Alias record = new Alias("al", "https://example.com/articles/1", 1L);
+    RecordWriter writer = new RecordWriter();
+    table.prepareRecordForStorage(record);
+
+    // Rewrites of a stored record don't count its URL towards promotion of the path segment
+    for (int i = 0; i < UrlPrefixDictionary.PROMOTION_COUNT; i++) {
+      writer.reset();
+      table.encode(record, writer);
+    }
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(false)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(reader.readString()).isEqualTo("al");
+    Assertions.assertThat(table.getUrlPrefixes().getPrefix((int) reader.readLong()))
+        .isEqualTo("https://example.com/");
+    Assertions.assertThat(reader.readString()).isEqualTo("articles/1");
+  }
+
+  @Test
+  void decodeReadsUnprefixedUrlsOfPreviousVersion() {
+    Alias record = new Alias("al", "https://example.com", 1L);
+    RecordWriter writer = new RecordWriter();
+    writer.writeString(record.alias());
+    writer.writeString(record.url());
+    writer.writeLong(record.userId());
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(false)),
+        RecordFormat.UNPREFIXED_VERSION);
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decode(reader)).isEqualTo(record);
+  }
+
+  @Test
+  void decodePrimaryKeyReadsOnlyPrimaryKey() {
+    Alias record = new Alias("al", "https://example.com", 1L);
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(true)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decodePrimaryKey(reader)).isEqualTo("al");
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
+  @Test
+  void createRecordMapKeepsBase62AliasesOffHeap() {
+    Map<String, Alias> records = table.createRecordMap(Map.of(
+        "Zz09", new Alias("Zz09", "https://example.com", 1L),
+        "0Zz09", new Alias("0Zz09", "https://example.com/\u00fc", 2L),
+        "custom-alias", new Alias("custom-alias", "https://example.org", 3L)));
+
+    Assertions.assertThat(OffHeapAliasMap.unpack(OffHeapAliasMap.pack("0Zz09")))
+        .isEqualTo("0Zz09");
+    Assertions.assertThat(OffHeapAliasMap.pack("custom-alias")).isEqualTo(0L);
+    Assertions.assertThat(records.get("0Zz09"))
+        .isEqualTo(new Alias("0Zz09", "https://example.com/\u00fc", 2L));
+    Assertions.assertThat(records.get("custom-alias"))
+        .isEqualTo(new Alias("custom-alias", "https://example.org", 3L));
+    Assertions.assertThat(records.remove("Zz09"))
+        .isEqualTo(new Alias("Zz09", "https://example.com", 1L));
+    Assertions.assertThat(records.containsKey("Zz09")).isFalse();
+    Assertions.assertThat(new HashMap<>(records)).isEqualTo(Map.of(
+        "0Zz09", new Alias("0Zz09", "https://example.com/\u00fc", 2L),
+        "custom-alias", new Alias("custom-alias", "https://example.org", 3L)));
+    Assertions.assertThat(table.getAliasMapStats().entries()).isEqualTo(1L);
+  }
+
+  @Test
+  void createPrimaryKeySetKeepsPackedPostings() {
+    Set<String> aliases = table.createPrimaryKeySet();
+
+    for (int i = 0; i < 10; i++) {
+      Assertions.assertThat(aliases.add("alias" + i)).isTrue();
+    }
+    Assertions.assertThat(aliases.add("alias3")).isFalse();
+    Assertions.assertThat(aliases.add("custom-alias")).isTrue();
+    Assertions.assertThat(aliases.remove("alias3")).isTrue();
+    Assertions.assertThat(aliases.remove("custom-alias")).isTrue();
+
+    Assertions.assertThat(aliases.contains("alias3")).isFalse();
+    Assertions.assertThat(aliases.contains("alias9")).isTrue();
+    Assertions.assertThat(new HashSet<>(aliases)).isEqualTo(Set.of("alias0", "alias1", "alias2",
+        "alias4", "alias5", "alias6", "alias7", "alias8", "alias9"));
+  }
+
+  @Test
+  void createPrimaryKeySetKeepsLargePostingsConsistent() {
+    Set<String> aliases = table.createPrimaryKeySet();
+    Set<String> expected = new HashSet<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 20_000; i++) {
+      String alias = Long.toString(random.nextInt(10_000), 36);
+
+      if (random.nextInt(4) == 0) {
+        Assertions.assertThat(aliases.remove(alias)).isEqualTo(expected.remove(alias));
+      } else {
+        Assertions.assertThat(aliases.add(alias)).isEqualTo(expected.add(alias));
+      }
+      Assertions.assertThat(aliases.contains(alias)).isEqualTo(expected.contains(alias));
+    }
+
+    Assertions.assertThat(aliases.size()).isEqualTo(expected.size());
+    Assertions.assertThat(new HashSet<>(aliases)).isEqualTo(expected);
+  }
+
 }
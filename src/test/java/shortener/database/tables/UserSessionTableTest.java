@@ -3,6 +3,7 @@ package shortener.database.tables;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -12,6 +13,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import shortener.TestUtils;
 import shortener.database.entities.UserSession;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
 import shortener.exceptions.database.UniqueViolation;
 
 
@@ -69,4 +72,30 @@ public class UserSessionTableTest {
         .isEqualTo(new UserSession(1L, "token-token"));
   }
 
+  @Test
+  void decodeReadsEncodedRecord() {
+    UserSession record = new UserSession(1L, "token-token");
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(false)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decode(reader)).isEqualTo(record);
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
+  @Test
+  void decodePrimaryKeyReadsOnlyPrimaryKey() {
+    UserSession record = new UserSession(1L, "token-token");
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(true)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decodePrimaryKey(reader)).isEqualTo("token-token");
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
 }
@@ -2,6 +2,7 @@ package shortener.database.tables;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -11,6 +12,8 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import shortener.TestUtils;
 import shortener.database.entities.User;
+import shortener.database.storage.RecordReader;
+import shortener.database.storage.RecordWriter;
 import shortener.exceptions.database.UniqueViolation;
 
 
@@ -67,4 +70,30 @@ public class UserTableTest {
         .isEqualTo(new User(1L, "test@email.com", "pa$$word"));
   }
 
+  @Test
+  void decodeReadsEncodedRecord() {
+    User record = new User(1L, "test@email.com", "pa$$word");
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(false)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decode(reader)).isEqualTo(record);
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
+  @Test
+  void decodePrimaryKeyReadsOnlyPrimaryKey() {
+    User record = new User(1L, "test@email.com", "pa$$word");
+    RecordWriter writer = new RecordWriter();
+    table.encode(record, writer);
+
+    RecordReader reader = new RecordReader(ByteBuffer.wrap(writer.toEntry(true)));
+
+    Assertions.assertThat(reader.nextEntry()).isTrue();
+    Assertions.assertThat(table.decodePrimaryKey(reader)).isEqualTo(1L);
+    Assertions.assertThat(reader.nextEntry()).isFalse();
+  }
+
 }
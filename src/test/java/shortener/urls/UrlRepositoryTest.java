@@ -1,5 +1,6 @@
 package shortener.urls;
 
+import io.micronaut.context.annotation.Property;
 import io.micronaut.test.annotation.MockBean;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import java.util.Arrays;
@@ -13,6 +14,8 @@ import shortener.database.tables.AliasTable;
 import shortener.exceptions.database.NotFound;
 import shortener.exceptions.database.UniqueViolation;
 
+// Lookups go to the mocked database every time
+@Property(name = "cache.ttl", value = "0s")
 @MicronautTest
 public class UrlRepositoryTest {
 
@@ -47,7 +50,8 @@ public class UrlRepositoryTest {
         Arrays.asList(new Alias("test", "https://example.com", 1L),
             new Alias("second-alias", "https://example.com", 1L));
 
-    Mockito.when(db.search(Mockito.any(AliasTable.class), Mockito.any()))
+    Mockito.when(db.searchBy(Mockito.any(AliasTable.class),
+        Mockito.eq(AliasTable.USER_ID_INDEX), Mockito.eq(1L)))
         .thenReturn(records);
 
     Assertions.assertThat(testable.searchByUserId(1L)).hasSize(2);
@@ -96,13 +100,22 @@ public class UrlRepositoryTest {
   void createSuccessfullyCreatesRecordWithGeneratedAlias() {
     var record = new Alias("generated", "https://example.com", 1L);
 
-    Mockito.when(db.get(Mockito.any(AliasTable.class), Mockito.any()))
-        .thenThrow(new NotFound("aliases", "generated"));
+    Mockito.when(db.create(Mockito.any(AliasTable.class), Mockito.any()))
+        .thenReturn(record);
+
+    Assertions.assertThat(testable.createRandomAlias("https://example.com", 1L)).isEqualTo(record);
+  }
+
+  @Test
+  void createWithGeneratedAliasSkipsTakenAlias() {
+    var record = new Alias("generated", "https://example.com", 1L);
 
     Mockito.when(db.create(Mockito.any(AliasTable.class), Mockito.any()))
+        .thenThrow(new UniqueViolation("aliases"))
         .thenReturn(record);
 
     Assertions.assertThat(testable.createRandomAlias("https://example.com", 1L)).isEqualTo(record);
+    Mockito.verify(db, Mockito.times(2)).create(Mockito.any(AliasTable.class), Mockito.any());
   }
 
   @Test
@@ -0,0 +1,89 @@
+package shortener.urls.ids;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import shortener.TestUtils;
+import shortener.database.storage.IdLeaseRegistry;
+
+public class AliasIdAllocatorTest {
+
+  private static final String TEST_ROOT_DIRECTORY = "alias-id-test-db";
+
+  private final IdLeaseRegistry registry =
+      new IdLeaseRegistry(Path.of(TEST_ROOT_DIRECTORY, "aliases.leases"));
+
+  @AfterAll
+  static void purgeRootDirectory() {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+  }
+
+  @BeforeEach
+  void setupRootDirectory() throws IOException {
+    TestUtils.purgeDirectory(new File(TEST_ROOT_DIRECTORY));
+    Files.createDirectory(Path.of(TEST_ROOT_DIRECTORY));
+  }
+
+  @Test
+  void nextLeaseIsTakenBeforeRangeRunsOut() throws Exception {
+    try (AliasIdAllocator allocator = new AliasIdAllocator(registry, 10, 3)) {
+      for (long id = 0; id < 7; id++) {
+        Assertions.assertThat(allocator.next()).isEqualTo(id);
+      }
+      Assertions.assertThat(registry.getNextId()).isEqualTo(10);
+
+      // The 3rd id from the end renews the lease
+      Assertions.assertThat(allocator.next()).isEqualTo(7);
+      long deadline = System.currentTimeMillis() + 5_000;
+      while (registry.getNextId() != 20 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      Assertions.assertThat(registry.getNextId()).isEqualTo(20);
+
+      for (long id = 8; id < 15; id++) {
+        Assertions.assertThat(allocator.next()).isEqualTo(id);
+      }
+    }
+  }
+
+  @Test
+  void instancesAllocateUniqueIds() throws Exception {
+    Set<Long> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try (AliasIdAllocator first = new AliasIdAllocator(registry, 100, 25);
+        AliasIdAllocator second = new AliasIdAllocator(registry, 100, 25)) {
+      List<Future<?>> futures = IntStream.range(0, 8)
+          .mapToObj(thread -> executor.submit(() -> {
+            AliasIdAllocator allocator = thread % 2 == 0 ? first : second;
+
+            for (int i = 0; i < 1000; i++) {
+              ids.add(allocator.next());
+            }
+            return null;
+          }))
+          .collect(Collectors.toList());
+
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    executor.shutdown();
+
+    Assertions.assertThat(ids).hasSize(8000);
+    Assertions.assertThat(registry.getNextId()).isLessThanOrEqualTo(8400L);
+  }
+}
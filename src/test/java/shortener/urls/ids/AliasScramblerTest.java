@@ -0,0 +1,63 @@
+package shortener.urls.ids;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AliasScramblerTest {
+
+  @Test
+  void idsOfLengthMapOntoAllAliasesOfLength() {
+    AliasScrambler scrambler = new AliasScrambler(42, 2);
+    Set<String> aliases = new HashSet<>();
+
+    for (long id = 0; id < 62 * 62; id++) {
+      aliases.add(scrambler.toAlias(id));
+    }
+
+    Assertions.assertThat(aliases).hasSize(62 * 62);
+    Assertions.assertThat(aliases).allMatch(alias -> alias.matches("[A-Za-z0-9]{2}"));
+  }
+
+  @Test
+  void aliasesGrowOnceLengthIsUsedUp() {
+    AliasScrambler scrambler = new AliasScrambler(42, 2);
+
+    Assertions.assertThat(scrambler.toAlias(62 * 62 - 1).length()).isEqualTo(2);
+    Assertions.assertThat(scrambler.toAlias(62 * 62).length()).isEqualTo(3);
+    Assertions.assertThat(scrambler.toAlias(62 * 62 + 62 * 62 * 62).length()).isEqualTo(4);
+    Assertions.assertThat(scrambler.toAlias(Long.MAX_VALUE - 1).length()).isEqualTo(11);
+  }
+
+  @Test
+  void consecutiveIdsDontLookSequential() {
+    AliasScrambler scrambler = new AliasScrambler(42, 5);
+    List<String> aliases = new ArrayList<>();
+
+    for (long id = 0; id < 100; id++) {
+      aliases.add(scrambler.toAlias(id));
+    }
+    List<String> sortedAliases = new ArrayList<>(aliases);
+    sortedAliases.sort(null);
+
+    Assertions.assertThat(new HashSet<>(aliases)).hasSize(100);
+    Assertions.assertThat(aliases).allMatch(alias -> alias.length() == 5);
+    Assertions.assertThat(aliases).isNotEqualTo(sortedAliases);
+    Assertions.assertThat(new AliasScrambler(43, 5).toAlias(0)).isNotEqualTo(aliases.get(0));
+  }
+
+  @Test
+  void largeIdsMapToDistinctAliases() {
+    AliasScrambler scrambler = new AliasScrambler(42, 5);
+    Set<String> aliases = new HashSet<>();
+
+    for (long id = Long.MAX_VALUE - 1000; id < Long.MAX_VALUE; id++) {
+      aliases.add(scrambler.toAlias(id));
+    }
+
+    Assertions.assertThat(aliases).hasSize(1000);
+  }
+}
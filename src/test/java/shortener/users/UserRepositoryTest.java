@@ -4,7 +4,6 @@ package shortener.users;
 import io.micronaut.test.annotation.MockBean;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import java.util.Arrays;
-import java.util.Collections;
 import javax.inject.Inject;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -65,20 +64,18 @@ public class UserRepositoryTest {
   void getByEmailSuccessfullyReturnsRecordIfFound() {
     var testUser = new User(1L, "test@email.com", "pa$$word");
 
-    var records =
-        Arrays.asList(testUser,
-            new User(2L, "test2@email.com", "pa$$word"));
-
-    Mockito.when(db.search(Mockito.any(UserTable.class), Mockito.any(), Mockito.anyLong()))
-        .thenReturn(records);
+    Mockito.when(db.getBy(Mockito.any(UserTable.class), Mockito.eq(UserTable.EMAIL_INDEX),
+        Mockito.eq("test@email.com")))
+        .thenReturn(testUser);
 
     Assertions.assertThat(testable.getByEmail("test@email.com")).isEqualTo(testUser);
   }
 
   @Test
   void getByEmailThrowsIfRecordNotFound() {
-    Mockito.when(db.search(Mockito.any(UserTable.class), Mockito.any(), Mockito.anyLong()))
-        .thenReturn(Collections.emptyList());
+    Mockito.when(db.getBy(Mockito.any(UserTable.class), Mockito.eq(UserTable.EMAIL_INDEX),
+        Mockito.any()))
+        .thenThrow(new NotFound("users", "test@email.com"));
 
     Assertions.assertThatThrownBy(() -> testable.getByEmail("test@email.com"))
         .isInstanceOf(NotFound.class);
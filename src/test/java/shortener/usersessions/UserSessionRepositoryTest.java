@@ -3,6 +3,7 @@ package shortener.usersessions;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import io.micronaut.context.annotation.Property;
 import io.micronaut.test.annotation.MockBean;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import javax.inject.Inject;
@@ -14,6 +15,8 @@ import shortener.database.tables.UserSessionTable;
 import shortener.exceptions.database.NotFound;
 import shortener.users.UserSessionRepository;
 
+// Lookups go to the mocked database every time
+@Property(name = "cache.ttl", value = "0s")
 @MicronautTest
 public class UserSessionRepositoryTest {
 